@@ -1,8 +1,10 @@
 package it.cavallium.dbengine.client;
 
 import com.google.common.primitives.Ints;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import it.cavallium.dbengine.database.Column;
 import it.cavallium.dbengine.database.LLKeyValueDatabase;
 import it.cavallium.dbengine.database.UpdateMode;
@@ -10,12 +12,14 @@ import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryDeep;
 import it.cavallium.dbengine.database.collections.SubStageGetterSingle;
 import it.cavallium.dbengine.database.collections.SubStageGetterSingleBytes;
 import it.cavallium.dbengine.database.disk.LLLocalDatabaseConnection;
+import it.cavallium.dbengine.database.serialization.BufferCodec;
+import it.cavallium.dbengine.database.serialization.BufferCodecSerializer;
 import it.cavallium.dbengine.database.serialization.Codec;
 import it.cavallium.dbengine.database.serialization.CodecSerializer;
 import it.cavallium.dbengine.database.serialization.CodecsArray;
-import it.cavallium.dbengine.database.serialization.CodecsStandard;
 import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
@@ -92,11 +96,13 @@ public class CodecsExample {
 	}
 
 	private static SubStageGetterSingle<CurrentCustomType> getNewSubStageGetter() {
-		var newCodec = new NewCustomTypeCodecV2();
-		var newCodecs = new CodecsStandard<CurrentCustomType>();
-		newCodecs.registerCodec(1, new NewCustomTypeCodecV1());
-		newCodecs.registerCodec(2, newCodec);
-		var newSerializer = new CodecSerializer<>(newCodecs, newCodec, 2, true);
+		var oldCodec = new NewCustomTypeBufferCodecV1();
+		var newCodec = new NewCustomTypeBufferCodecV2();
+		var newSerializer = new BufferCodecSerializer<>(PooledByteBufAllocator.DEFAULT, codecId -> switch (codecId) {
+			case 1 -> oldCodec;
+			case 2 -> newCodec;
+			default -> null;
+		}, newCodec, 2, true);
 		return new SubStageGetterSingle<>(newSerializer);
 	}
 
@@ -156,29 +162,45 @@ public class CodecsExample {
 		}
 	}
 
-	private static class NewCustomTypeCodecV1 implements Codec<CurrentCustomType> {
+	/**
+	 * Reads the values written by {@link OldCustomTypeCodec} with {@link java.io.DataOutput#writeUTF(String)}
+	 */
+	private static class NewCustomTypeBufferCodecV1 implements BufferCodec<CurrentCustomType> {
 
 		@Override
-		public @NotNull CurrentCustomType deserialize(@NotNull ByteBufInputStream serialized) throws IOException {
-			return new CurrentCustomType(Integer.parseInt(serialized.readUTF()));
+		public int getSerializedSize(@NotNull CurrentCustomType deserialized) {
+			throw new UnsupportedOperationException("Can't serialize with an old version");
+		}
+
+		@Override
+		public @NotNull CurrentCustomType deserialize(@NotNull ByteBuf serialized) {
+			int length = serialized.readUnsignedShort();
+			var number = serialized.toString(serialized.readerIndex(), length, StandardCharsets.UTF_8);
+			serialized.skipBytes(length);
+			return new CurrentCustomType(Integer.parseInt(number));
 		}
 
 		@Override
-		public void serialize(@NotNull ByteBufOutputStream outputStream, @NotNull CurrentCustomType deserialized) throws IOException {
+		public void serialize(@NotNull ByteBuf output, int index, @NotNull CurrentCustomType deserialized) {
 			throw new UnsupportedOperationException("Can't serialize with an old version");
 		}
 	}
 
-	private static class NewCustomTypeCodecV2 implements Codec<CurrentCustomType> {
+	private static class NewCustomTypeBufferCodecV2 implements BufferCodec<CurrentCustomType> {
+
+		@Override
+		public int getSerializedSize(@NotNull CurrentCustomType deserialized) {
+			return Integer.BYTES;
+		}
 
 		@Override
-		public @NotNull CurrentCustomType deserialize(@NotNull ByteBufInputStream serialized) throws IOException {
+		public @NotNull CurrentCustomType deserialize(@NotNull ByteBuf serialized) {
 			return new CurrentCustomType(serialized.readInt());
 		}
 
 		@Override
-		public void serialize(@NotNull ByteBufOutputStream outputStream, @NotNull CurrentCustomType deserialized) throws IOException {
-			outputStream.writeInt(deserialized.number);
+		public void serialize(@NotNull ByteBuf output, int index, @NotNull CurrentCustomType deserialized) {
+			output.setInt(index, deserialized.number);
 		}
 	}
 
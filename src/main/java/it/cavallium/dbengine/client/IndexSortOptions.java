@@ -0,0 +1,11 @@
+package it.cavallium.dbengine.client;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+
+/**
+ * Sort the documents of the index by a numeric doc values field.
+ * The searches sorted by the same field can terminate early.
+ * The sort of an existing index can't be changed
+ */
+@RecordBuilder
+public record IndexSortOptions(String field, boolean reverse) {}
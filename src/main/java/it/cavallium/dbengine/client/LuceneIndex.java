@@ -3,9 +3,11 @@ package it.cavallium.dbengine.client;
 import it.cavallium.dbengine.client.query.ClientQueryParams;
 import it.cavallium.dbengine.client.query.current.data.Query;
 import it.cavallium.dbengine.database.Delta;
+import it.cavallium.dbengine.database.LLIndexGeneration;
 import it.cavallium.dbengine.database.LLSnapshottable;
 import it.cavallium.dbengine.database.collections.ValueGetter;
 import it.cavallium.dbengine.database.collections.ValueTransformer;
+import java.time.Duration;
 import java.util.Map.Entry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -18,17 +20,21 @@ import reactor.util.function.Tuples;
 @SuppressWarnings("unused")
 public interface LuceneIndex<T, U> extends LLSnapshottable {
 
-	Mono<Void> addDocument(T key, U value);
+	/**
+	 * The writes return their generation: a search with this minimum generation sees the writes,
+	 * see {@link ClientQueryParams#minGeneration()}
+	 */
+	Mono<LLIndexGeneration> addDocument(T key, U value);
 
-	Mono<Void> addDocuments(Flux<Entry<T, U>> entries);
+	Mono<LLIndexGeneration> addDocuments(Flux<Entry<T, U>> entries);
 
-	Mono<Void> deleteDocument(T key);
+	Mono<LLIndexGeneration> deleteDocument(T key);
 
-	Mono<Void> updateDocument(T key, @NotNull U value);
+	Mono<LLIndexGeneration> updateDocument(T key, @NotNull U value);
 
-	Mono<Void> updateDocuments(Flux<Entry<T, U>> entries);
+	Mono<LLIndexGeneration> updateDocuments(Flux<Entry<T, U>> entries);
 
-	default Mono<Void> updateOrDeleteDocument(T key, @Nullable U value) {
+	default Mono<LLIndexGeneration> updateOrDeleteDocument(T key, @Nullable U value) {
 		if (value == null) {
 			return deleteDocument(key);
 		} else {
@@ -36,11 +42,14 @@ public interface LuceneIndex<T, U> extends LLSnapshottable {
 		}
 	}
 
-	default Mono<Void> updateOrDeleteDocumentIfModified(T key, @NotNull Delta<U> delta) {
+	default Mono<LLIndexGeneration> updateOrDeleteDocumentIfModified(T key, @NotNull Delta<U> delta) {
 		return updateOrDeleteDocumentIfModified(key, delta.current(), delta.isModified());
 	}
 
-	default Mono<Void> updateOrDeleteDocumentIfModified(T key, @Nullable U currentValue, boolean modified) {
+	/**
+	 * @return the generation of the write, or empty if the value is not modified
+	 */
+	default Mono<LLIndexGeneration> updateOrDeleteDocumentIfModified(T key, @Nullable U currentValue, boolean modified) {
 		if (modified) {
 			return updateOrDeleteDocument(key, currentValue);
 		} else {
@@ -89,6 +98,12 @@ public interface LuceneIndex<T, U> extends LLSnapshottable {
 
 	Mono<Void> refresh(boolean force);
 
+	/**
+	 * Wait until the writes completed before this call are visible to the searches
+	 * @param maxStaleness maximum time to wait before refreshing the index searcher
+	 */
+	Mono<Void> refresh(Duration maxStaleness);
+
 	private static <T, U> ValueTransformer<T, U> getValueGetterTransformer(ValueGetter<T, U> valueGetter) {
 		return new ValueTransformer<T, U>() {
 			@Override
@@ -2,6 +2,7 @@ package it.cavallium.dbengine.client;
 
 import it.cavallium.dbengine.client.query.ClientQueryParams;
 import it.cavallium.dbengine.client.query.current.data.Query;
+import it.cavallium.dbengine.database.LLIndexGeneration;
 import it.cavallium.dbengine.database.LLKeyScore;
 import it.cavallium.dbengine.database.LLLuceneIndex;
 import it.cavallium.dbengine.database.LLSearchResultShard;
@@ -9,6 +10,7 @@ import it.cavallium.dbengine.database.LLSnapshot;
 import it.cavallium.dbengine.database.LLTerm;
 import it.cavallium.dbengine.database.collections.ValueGetter;
 import it.cavallium.dbengine.database.collections.ValueTransformer;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -38,14 +40,14 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 	}
 
 	@Override
-	public Mono<Void> addDocument(T key, U value) {
+	public Mono<LLIndexGeneration> addDocument(T key, U value) {
 		return indicizer
 				.toDocument(key, value)
 				.flatMap(doc -> luceneIndex.addDocument(indicizer.toIndex(key), doc));
 	}
 
 	@Override
-	public Mono<Void> addDocuments(Flux<Entry<T, U>> entries) {
+	public Mono<LLIndexGeneration> addDocuments(Flux<Entry<T, U>> entries) {
 		return luceneIndex
 				.addDocuments(entries
 						.flatMap(entry -> indicizer
@@ -55,20 +57,20 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 	}
 
 	@Override
-	public Mono<Void> deleteDocument(T key) {
+	public Mono<LLIndexGeneration> deleteDocument(T key) {
 		LLTerm id = indicizer.toIndex(key);
 		return luceneIndex.deleteDocument(id);
 	}
 
 	@Override
-	public Mono<Void> updateDocument(T key, @NotNull U value) {
+	public Mono<LLIndexGeneration> updateDocument(T key, @NotNull U value) {
 		return indicizer
 				.toDocument(key, value)
 				.flatMap(doc -> luceneIndex.updateDocument(indicizer.toIndex(key), doc));
 	}
 
 	@Override
-	public Mono<Void> updateDocuments(Flux<Entry<T, U>> entries) {
+	public Mono<LLIndexGeneration> updateDocuments(Flux<Entry<T, U>> entries) {
 		return luceneIndex
 				.updateDocuments(entries
 						.flatMap(entry -> indicizer
@@ -116,14 +118,26 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 		));
 	}
 
+	/**
+	 * Wait until the searches see the minimum generation of the query.
+	 * The snapshots are not refreshed, so the minimum generation is ignored when searching a snapshot
+	 */
+	private Mono<Void> waitForMinGeneration(ClientQueryParams<?> queryParams) {
+		if (queryParams.minGeneration() == null || queryParams.snapshot() != null) {
+			return Mono.empty();
+		} else {
+			return luceneIndex.waitForGeneration(queryParams.minGeneration());
+		}
+	}
+
 	@Override
 	public Mono<SearchResultKeys<T>> moreLikeThis(ClientQueryParams<SearchResultKey<T>> queryParams,
 			T key,
 			U mltDocumentValue) {
 		Flux<Tuple2<String, Set<String>>> mltDocumentFields
 				= indicizer.getMoreLikeThisDocumentFields(key, mltDocumentValue);
-		return luceneIndex
-				.moreLikeThis(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName(), mltDocumentFields)
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.moreLikeThis(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName(), mltDocumentFields)))
 				.flatMap(this::transformLuceneResultWithTransformer);
 
 	}
@@ -135,12 +149,12 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 			ValueGetter<T, U> valueGetter) {
 		Flux<Tuple2<String, Set<String>>> mltDocumentFields
 				= indicizer.getMoreLikeThisDocumentFields(key, mltDocumentValue);
-		return luceneIndex
-				.moreLikeThis(resolveSnapshot(queryParams.snapshot()),
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.moreLikeThis(resolveSnapshot(queryParams.snapshot()),
 						queryParams.toQueryParams(),
 						indicizer.getKeyFieldName(),
 						mltDocumentFields
-				)
+				)))
 				.flatMap(llSearchResult -> this.transformLuceneResultWithValues(llSearchResult,
 						valueGetter
 				));
@@ -153,38 +167,38 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 			ValueTransformer<T, U> valueTransformer) {
 		Flux<Tuple2<String, Set<String>>> mltDocumentFields
 				= indicizer.getMoreLikeThisDocumentFields(key, mltDocumentValue);
-		return luceneIndex
-				.moreLikeThis(resolveSnapshot(queryParams.snapshot()),
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.moreLikeThis(resolveSnapshot(queryParams.snapshot()),
 						queryParams.toQueryParams(),
 						indicizer.getKeyFieldName(),
 						mltDocumentFields
-				)
+				)))
 				.flatMap(llSearchResult -> this.transformLuceneResultWithTransformer(llSearchResult, valueTransformer));
 	}
 
 	@Override
 	public Mono<SearchResultKeys<T>> search(ClientQueryParams<SearchResultKey<T>> queryParams) {
-		return luceneIndex
-				.search(resolveSnapshot(queryParams.snapshot()),
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.search(resolveSnapshot(queryParams.snapshot()),
 						queryParams.toQueryParams(),
 						indicizer.getKeyFieldName()
-				)
+				)))
 				.flatMap(this::transformLuceneResultWithTransformer);
 	}
 
 	@Override
 	public Mono<SearchResult<T, U>> searchWithValues(ClientQueryParams<SearchResultItem<T, U>> queryParams,
 			ValueGetter<T, U> valueGetter) {
-		return luceneIndex
-				.search(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName())
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.search(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName())))
 				.flatMap(llSearchResult -> this.transformLuceneResultWithValues(llSearchResult, valueGetter));
 	}
 
 	@Override
 	public Mono<SearchResult<T, U>> searchWithTransformer(ClientQueryParams<SearchResultItem<T, U>> queryParams,
 			ValueTransformer<T, U> valueTransformer) {
-		return luceneIndex
-				.search(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName())
+		return waitForMinGeneration(queryParams)
+				.then(Mono.defer(() -> luceneIndex.search(resolveSnapshot(queryParams.snapshot()), queryParams.toQueryParams(), indicizer.getKeyFieldName())))
 				.flatMap(llSearchResult -> this.transformLuceneResultWithTransformer(llSearchResult, valueTransformer));
 	}
 
@@ -221,6 +235,11 @@ public class LuceneIndexImpl<T, U> implements LuceneIndex<T, U> {
 		return luceneIndex.refresh(force);
 	}
 
+	@Override
+	public Mono<Void> refresh(Duration maxStaleness) {
+		return luceneIndex.refresh(maxStaleness);
+	}
+
 	@Override
 	public Mono<LLSnapshot> takeSnapshot() {
 		return luceneIndex.takeSnapshot();
@@ -17,4 +17,7 @@ public record LuceneOptions(Map<String, String> extraFlags,
 														Optional<NRTCachingOptions> nrtCachingOptions,
 														int indexWriterBufferSize,
 														boolean applyAllDeletes,
-														boolean writeAllDeletes) {}
+														boolean writeAllDeletes,
+														Optional<MergePolicyOptions> mergePolicyOptions,
+														Optional<MergeSchedulerOptions> mergeSchedulerOptions,
+														Optional<IndexSortOptions> indexSortOptions) {}
@@ -0,0 +1,12 @@
+package it.cavallium.dbengine.client;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+
+/**
+ * Parameters of the tiered merge policy
+ */
+@RecordBuilder
+public record MergePolicyOptions(double segmentsPerTier,
+																 double maxMergedSegmentMB,
+																 double deletesPctAllowed,
+																 double floorSegmentMB) {}
@@ -0,0 +1,10 @@
+package it.cavallium.dbengine.client;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+
+/**
+ * Parameters of the concurrent merge scheduler
+ * @param maxMergeCount maximum number of pending merges before the indexing threads are stalled
+ */
+@RecordBuilder
+public record MergeSchedulerOptions(int maxThreadCount, int maxMergeCount, boolean autoIOThrottle) {}
@@ -9,10 +9,15 @@ import it.cavallium.dbengine.client.query.current.data.Query;
 import it.cavallium.dbengine.client.query.current.data.QueryParams;
 import it.cavallium.dbengine.client.query.current.data.QueryParamsBuilder;
 import it.cavallium.dbengine.client.query.current.data.ScoreMode;
+import it.cavallium.dbengine.database.LLIndexGeneration;
 import it.cavallium.dbengine.database.LLScoreMode;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * @param minGeneration if set, the search waits until it sees the writes that returned this generation.
+ *                      It's ignored when searching a snapshot
+ */
 @RecordBuilder
 public final record ClientQueryParams<T>(@Nullable CompositeSnapshot snapshot,
 																				 @NotNull Query query,
@@ -20,7 +25,8 @@ public final record ClientQueryParams<T>(@Nullable CompositeSnapshot snapshot,
 																				 long limit,
 																				 @Nullable Float minCompetitiveScore,
 																				 @Nullable MultiSort<T> sort,
-																				 @NotNull LLScoreMode scoreMode) {
+																				 @NotNull LLScoreMode scoreMode,
+																				 @Nullable LLIndexGeneration minGeneration) {
 
 	public static <T> ClientQueryParamsBuilder<T> builder() {
 		return ClientQueryParamsBuilder
@@ -30,7 +36,8 @@ public final record ClientQueryParams<T>(@Nullable CompositeSnapshot snapshot,
 				.limit(Long.MAX_VALUE)
 				.minCompetitiveScore(null)
 				.sort(null)
-				.scoreMode(LLScoreMode.COMPLETE);
+				.scoreMode(LLScoreMode.COMPLETE)
+				.minGeneration(null);
 	}
 
 	public ScoreMode toScoreMode() {
@@ -0,0 +1,22 @@
+package it.cavallium.dbengine.database;
+
+import io.netty.buffer.ByteBuf;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Change of a key, or of a range of keys, of a database
+ * @param sequenceNumber sequence number of the change.
+ *                       Pass the next number to {@link LLKeyValueDatabase#changes(long)} to resume the changes
+ * @param key the changed key, or the first key of the range (inclusive) if the type is DELETE_RANGE
+ * @param value the new value if the type is PUT, the end of the range (exclusive) if the type is DELETE_RANGE,
+ *              otherwise null
+ */
+public record LLChange(long sequenceNumber, LLChangeType type, Column column, ByteBuf key, @Nullable ByteBuf value) {
+
+	public void release() {
+		key.release();
+		if (value != null) {
+			value.release();
+		}
+	}
+}
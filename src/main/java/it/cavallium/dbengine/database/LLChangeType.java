@@ -0,0 +1,5 @@
+package it.cavallium.dbengine.database;
+
+public enum LLChangeType {
+	PUT, DELETE, DELETE_RANGE
+}
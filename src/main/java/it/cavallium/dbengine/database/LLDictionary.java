@@ -56,6 +56,16 @@ public interface LLDictionary extends LLKeyValueDatabaseStructure {
 		return updateAndGetDelta(key, updater, false);
 	}
 
+	/**
+	 * Register a secondary index of the column of this dictionary. From now on every write of the column,
+	 * made by any dictionary of the column, updates each value atomically with its index entries.
+	 * The bulk writes of a column with indexes are split in single-key updates, so they are slower
+	 * and they are not atomic as a whole.
+	 * An index with the same index column replaces the previous one. The update mode must not be
+	 * {@link UpdateMode#DISALLOW}
+	 */
+	void addSecondaryIndex(LLSecondaryIndex index);
+
 	Mono<Void> clear();
 
 	Mono<ByteBuf> remove(ByteBuf key, LLDictionaryResultType resultType);
@@ -68,6 +78,21 @@ public interface LLDictionary extends LLKeyValueDatabaseStructure {
 		return getMulti(snapshot, keys, false);
 	}
 
+	/**
+	 * Get the values of multiple keys, without attaching an object to each key.
+	 * Missing keys are skipped
+	 * @return the key and the value of each existing key, in the same order of the keys
+	 */
+	Flux<Entry<ByteBuf, ByteBuf>> getMultiValues(@Nullable LLSnapshot snapshot,
+			Flux<ByteBuf> keys,
+			boolean existsAlmostCertainly);
+
+	/**
+	 * Check if the keys exist, without reading their values
+	 * @return a flux that contains the existence of each key, in the same order of the keys
+	 */
+	Flux<Boolean> containsMulti(@Nullable LLSnapshot snapshot, Flux<ByteBuf> keys);
+
 	Flux<Entry<ByteBuf, ByteBuf>> putMulti(Flux<Entry<ByteBuf, ByteBuf>> entries, boolean getOldValues);
 
 	<X> Flux<ExtraKeyOperationResult<ByteBuf, X>> updateMulti(Flux<Tuple2<ByteBuf, X>> entries,
@@ -79,6 +104,19 @@ public interface LLDictionary extends LLKeyValueDatabaseStructure {
 		return getRange(snapshot, range, false);
 	}
 
+	/**
+	 * Get a page of the entries of a range
+	 * @param reverse iterate from the last key of the range to the first one
+	 * @param fromKeyExclusive if not null, start from the first key after this key (before it, if reverse).
+	 *                         Pass the last key of the previous page to read the next page
+	 * @param limit maximum number of entries, or -1 for no limit
+	 */
+	Flux<Entry<ByteBuf, ByteBuf>> getRange(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit);
+
 	Flux<List<Entry<ByteBuf, ByteBuf>>> getRangeGrouped(@Nullable LLSnapshot snapshot,
 			LLRange range,
 			int prefixLength,
@@ -92,6 +130,16 @@ public interface LLDictionary extends LLKeyValueDatabaseStructure {
 
 	Flux<ByteBuf> getRangeKeys(@Nullable LLSnapshot snapshot, LLRange range);
 
+	/**
+	 * Get a page of the keys of a range
+	 * @see #getRange(LLSnapshot, LLRange, boolean, ByteBuf, long)
+	 */
+	Flux<ByteBuf> getRangeKeys(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit);
+
 	Flux<List<ByteBuf>> getRangeKeysGrouped(@Nullable LLSnapshot snapshot, LLRange range, int prefixLength);
 
 	Flux<ByteBuf> getRangeKeyPrefixes(@Nullable LLSnapshot snapshot, LLRange range, int prefixLength);
@@ -136,4 +184,12 @@ public interface LLDictionary extends LLKeyValueDatabaseStructure {
 	Mono<ByteBuf> getOneKey(@Nullable LLSnapshot snapshot, LLRange range);
 
 	Mono<Entry<ByteBuf, ByteBuf>> removeOne(LLRange range);
+
+	/**
+	 * Remove the first entries of a range, using the dictionary as a queue.
+	 * The entries are removed atomically
+	 * @param count maximum number of entries to remove
+	 * @return the removed entries, in key order
+	 */
+	Flux<Entry<ByteBuf, ByteBuf>> pollMulti(LLRange range, int count);
 }
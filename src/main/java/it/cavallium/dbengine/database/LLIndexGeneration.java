@@ -0,0 +1,100 @@
+package it.cavallium.dbengine.database;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Generation token returned by the writes of a lucene index.
+ * A search with this minimum generation sees the writes that returned it.
+ *
+ * The generation of each shard is the sequence number of the last write on that shard,
+ * or {@link #NONE} if the writes didn't touch that shard
+ */
+public class LLIndexGeneration {
+
+	/**
+	 * Generation of a shard without writes
+	 */
+	public static final long NONE = -1;
+
+	private final long[] shardGenerations;
+
+	private LLIndexGeneration(long[] shardGenerations) {
+		this.shardGenerations = shardGenerations;
+	}
+
+	/**
+	 * @return the generation of an index with a single shard
+	 */
+	public static LLIndexGeneration of(long generation) {
+		return new LLIndexGeneration(new long[] {generation});
+	}
+
+	/**
+	 * @return the generation of an index with multiple shards, where only the specified shard has been written
+	 */
+	public static LLIndexGeneration ofShard(int shardsCount, int shard, long generation) {
+		var shardGenerations = new long[shardsCount];
+		Arrays.fill(shardGenerations, NONE);
+		shardGenerations[shard] = generation;
+		return new LLIndexGeneration(shardGenerations);
+	}
+
+	/**
+	 * @return the generation of an index without writes
+	 */
+	public static LLIndexGeneration none(int shardsCount) {
+		var shardGenerations = new long[shardsCount];
+		Arrays.fill(shardGenerations, NONE);
+		return new LLIndexGeneration(shardGenerations);
+	}
+
+	public int getShardsCount() {
+		return shardGenerations.length;
+	}
+
+	public long getGeneration(int shard) {
+		return shardGenerations[shard];
+	}
+
+	/**
+	 * @return a generation that includes the writes of both the generations
+	 */
+	public LLIndexGeneration merge(LLIndexGeneration other) {
+		if (other.shardGenerations.length != this.shardGenerations.length) {
+			throw new IllegalArgumentException("The generations have different shards counts: "
+					+ this.shardGenerations.length + " and " + other.shardGenerations.length);
+		}
+		var merged = new long[shardGenerations.length];
+		for (int i = 0; i < merged.length; i++) {
+			merged[i] = Math.max(this.shardGenerations[i], other.shardGenerations[i]);
+		}
+		return new LLIndexGeneration(merged);
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", LLIndexGeneration.class.getSimpleName() + "[", "]")
+				.add("shardGenerations=" + Arrays.toString(shardGenerations))
+				.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		LLIndexGeneration that = (LLIndexGeneration) o;
+
+		return Arrays.equals(shardGenerations, that.shardGenerations);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(shardGenerations);
+	}
+}
@@ -44,6 +44,14 @@ public interface LLKeyValueDatabase extends LLSnapshottable, LLKeyValueDatabaseS
 
 	Mono<Long> getProperty(String propertyName);
 
+	/**
+	 * Get the changes of all the columns, in the same order in which they have been written.
+	 * The flux doesn't complete: after the last change it waits for new writes.
+	 * Release every emitted change
+	 * @param fromSequenceNumber sequence number of the first change, or 0 to start from the oldest available change
+	 */
+	Flux<LLChange> changes(long fromSequenceNumber);
+
 	Mono<Void> verifyChecksum();
 
 	ByteBufAllocator getAllocator();
@@ -6,6 +6,7 @@ import it.cavallium.dbengine.client.query.current.data.Query;
 import it.cavallium.dbengine.client.query.current.data.QueryParams;
 import it.cavallium.dbengine.client.query.current.data.ScoreMode;
 import it.cavallium.dbengine.lucene.LuceneUtils;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -20,15 +21,30 @@ public interface LLLuceneIndex extends LLSnapshottable {
 
 	String getLuceneIndexName();
 
-	Mono<Void> addDocument(LLTerm id, LLDocument doc);
+	/**
+	 * @return the generation of the write, see {@link #waitForGeneration(LLIndexGeneration)}
+	 */
+	Mono<LLIndexGeneration> addDocument(LLTerm id, LLDocument doc);
 
-	Mono<Void> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents);
+	/**
+	 * @return the generation of the writes, see {@link #waitForGeneration(LLIndexGeneration)}
+	 */
+	Mono<LLIndexGeneration> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents);
 
-	Mono<Void> deleteDocument(LLTerm id);
+	/**
+	 * @return the generation of the write, see {@link #waitForGeneration(LLIndexGeneration)}
+	 */
+	Mono<LLIndexGeneration> deleteDocument(LLTerm id);
 
-	Mono<Void> updateDocument(LLTerm id, LLDocument document);
+	/**
+	 * @return the generation of the write, see {@link #waitForGeneration(LLIndexGeneration)}
+	 */
+	Mono<LLIndexGeneration> updateDocument(LLTerm id, LLDocument document);
 
-	Mono<Void> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents);
+	/**
+	 * @return the generation of the writes, see {@link #waitForGeneration(LLIndexGeneration)}
+	 */
+	Mono<LLIndexGeneration> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents);
 
 	Mono<Void> deleteAll();
 
@@ -71,4 +87,16 @@ public interface LLLuceneIndex extends LLSnapshottable {
 	 * Refresh index searcher
 	 */
 	Mono<Void> refresh(boolean force);
+
+	/**
+	 * Wait until the writes completed before this call are visible to the searches.
+	 * The index searcher is refreshed within the specified staleness, even if the index refreshes are backing off
+	 */
+	Mono<Void> refresh(Duration maxStaleness);
+
+	/**
+	 * Wait until the writes that returned the specified generation are visible to the searches.
+	 * The index searcher is refreshed within the minimum refresh interval, instead of forcing a refresh
+	 */
+	Mono<Void> waitForGeneration(LLIndexGeneration generation);
 }
@@ -0,0 +1,26 @@
+package it.cavallium.dbengine.database;
+
+import io.netty.buffer.ByteBuf;
+import java.util.function.BiFunction;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Secondary index of a dictionary. Every indexed value has an entry, with an empty value, in the index dictionary
+ * @param dictionary the dictionary that contains the index entries.
+ *                   It must be a column of the same database of the indexed dictionary
+ * @param indexKeyFunction get the key of the index entry of a key and its value, or null if the value is not indexed.
+ *                         The function must not release the key and the value
+ */
+public record LLSecondaryIndex(LLDictionary dictionary,
+															 BiFunction<ByteBuf, ByteBuf, @Nullable ByteBuf> indexKeyFunction) {
+
+	/**
+	 * Get the key of the index entry. Don't release the key and the value
+	 */
+	public @Nullable ByteBuf getIndexKey(ByteBuf key, @Nullable ByteBuf value) {
+		if (value == null) {
+			return null;
+		}
+		return indexKeyFunction.apply(key, value);
+	}
+}
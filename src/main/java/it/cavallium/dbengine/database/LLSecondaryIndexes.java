@@ -0,0 +1,215 @@
+package it.cavallium.dbengine.database;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Secondary indexes of a column, shared by all the dictionaries of the column.
+ *
+ * The writes of a column with indexes must update the index entries of every key that they change,
+ * so the bulk writes are split in single-key updates by the static methods of this class.
+ * These writes are not atomic as a whole: every key is updated atomically with its index entries
+ */
+public final class LLSecondaryIndexes {
+
+	private volatile List<LLSecondaryIndex> indexes = List.of();
+
+	/**
+	 * Add an index. An index with the same index column replaces the previous one
+	 */
+	public synchronized void add(LLSecondaryIndex index) {
+		var newIndexes = new ArrayList<LLSecondaryIndex>(indexes.size() + 1);
+		for (LLSecondaryIndex existingIndex : indexes) {
+			if (!existingIndex.dictionary().getColumnName().equals(index.dictionary().getColumnName())) {
+				newIndexes.add(existingIndex);
+			}
+		}
+		newIndexes.add(index);
+		this.indexes = List.copyOf(newIndexes);
+	}
+
+	public List<LLSecondaryIndex> get() {
+		return indexes;
+	}
+
+	public boolean isEmpty() {
+		return indexes.isEmpty();
+	}
+
+	private static Function<@Nullable ByteBuf, @Nullable ByteBuf> replaceWith(@Nullable ByteBuf value) {
+		return previous -> {
+			if (previous != null) {
+				previous.release();
+			}
+			return value != null ? value.retain() : null;
+		};
+	}
+
+	private static Mono<ByteBuf> toResult(Mono<Delta<ByteBuf>> deltaMono, LLDictionaryResultType resultType) {
+		return deltaMono.handle((delta, sink) -> {
+			if (delta.current() != null) {
+				delta.current().release();
+			}
+			var previous = delta.previous();
+			switch (resultType) {
+				case PREVIOUS_VALUE -> {
+					if (previous != null) {
+						sink.next(previous);
+					}
+				}
+				case PREVIOUS_VALUE_EXISTENCE -> {
+					if (previous != null) {
+						previous.release();
+					}
+					sink.next(LLUtils.booleanToResponseByteBuffer(previous != null));
+				}
+				case VOID -> {
+					if (previous != null) {
+						previous.release();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@link LLDictionary#put(ByteBuf, ByteBuf, LLDictionaryResultType)} of an indexed dictionary
+	 */
+	public static Mono<ByteBuf> put(LLDictionary dictionary,
+			ByteBuf key,
+			ByteBuf value,
+			LLDictionaryResultType resultType) {
+		try {
+			return Mono
+					.defer(() -> dictionary.updateAndGetDelta(key.retain(), replaceWith(value)))
+					.transform(deltaMono -> toResult(deltaMono, resultType))
+					.doFirst(() -> {
+						key.retain();
+						value.retain();
+					})
+					.doAfterTerminate(() -> {
+						key.release();
+						value.release();
+					});
+		} finally {
+			key.release();
+			value.release();
+		}
+	}
+
+	/**
+	 * {@link LLDictionary#remove(ByteBuf, LLDictionaryResultType)} of an indexed dictionary
+	 */
+	public static Mono<ByteBuf> remove(LLDictionary dictionary, ByteBuf key, LLDictionaryResultType resultType) {
+		try {
+			return Mono
+					.defer(() -> dictionary.updateAndGetDelta(key.retain(), replaceWith(null)))
+					.transform(deltaMono -> toResult(deltaMono, resultType))
+					.doFirst(key::retain)
+					.doAfterTerminate(key::release);
+		} finally {
+			key.release();
+		}
+	}
+
+	/**
+	 * {@link LLDictionary#putMulti(Flux, boolean)} of an indexed dictionary
+	 */
+	public static Flux<Entry<ByteBuf, ByteBuf>> putMulti(LLDictionary dictionary,
+			Flux<Entry<ByteBuf, ByteBuf>> entries,
+			boolean getOldValues) {
+		var resultType = getOldValues ? LLDictionaryResultType.PREVIOUS_VALUE : LLDictionaryResultType.VOID;
+		return entries.concatMap(entry -> Mono.using(
+				entry::getKey,
+				key -> put(dictionary, key.retain(), entry.getValue(), resultType)
+						.map(previous -> Map.entry(key.retain(), previous)),
+				ReferenceCounted::release
+		));
+	}
+
+	/**
+	 * {@link LLDictionary#updateMulti(Flux, BiFunction)} of an indexed dictionary
+	 */
+	public static <X> Flux<ExtraKeyOperationResult<ByteBuf, X>> updateMulti(LLDictionary dictionary,
+			Flux<Tuple2<ByteBuf, X>> entries,
+			BiFunction<ByteBuf, X, ByteBuf> updateFunction) {
+		return entries.concatMap(entry -> Mono.using(
+				entry::getT1,
+				key -> dictionary
+						.updateAndGetDelta(key.retain(), previous -> {
+							if (previous != null) {
+								previous.release();
+							}
+							return updateFunction.apply(key.retain(), entry.getT2());
+						})
+						.map(delta -> {
+							try {
+								return new ExtraKeyOperationResult<>(key.retain(),
+										entry.getT2(),
+										!LLUtils.equals(delta.previous(), delta.current())
+								);
+							} finally {
+								if (delta.previous() != null) {
+									delta.previous().release();
+								}
+								if (delta.current() != null) {
+									delta.current().release();
+								}
+							}
+						}),
+				ReferenceCounted::release
+		));
+	}
+
+	/**
+	 * {@link LLDictionary#setRange(LLRange, Flux)} of an indexed dictionary
+	 */
+	public static Mono<Void> setRange(LLDictionary dictionary, LLRange range, Flux<Entry<ByteBuf, ByteBuf>> entries) {
+		try {
+			return Flux
+					.defer(() -> dictionary.getRangeKeys(null, range.retain()))
+					.concatMap(key -> remove(dictionary, key, LLDictionaryResultType.VOID))
+					.thenMany(entries.concatMap(entry -> put(dictionary,
+							entry.getKey(),
+							entry.getValue(),
+							LLDictionaryResultType.VOID
+					)))
+					.then()
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
+	}
+
+	/**
+	 * {@link LLDictionary#pollMulti(LLRange, int)} of an indexed dictionary.
+	 * A key removed concurrently by another consumer is skipped, so fewer entries could be returned
+	 */
+	public static Flux<Entry<ByteBuf, ByteBuf>> pollMulti(LLDictionary dictionary, LLRange range, int count) {
+		try {
+			return Flux
+					.defer(() -> dictionary.getRangeKeys(null, range.retain(), false, null, count))
+					.concatMap(key -> Mono.using(
+							() -> key,
+							k -> remove(dictionary, k.retain(), LLDictionaryResultType.PREVIOUS_VALUE)
+									.map(removedValue -> Map.entry(k.retain(), removedValue)),
+							ReferenceCounted::release
+					))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
+	}
+}
@@ -8,6 +8,7 @@ import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.IllegalReferenceCountException;
+import it.cavallium.dbengine.lucene.LuceneUtils;
 import it.cavallium.dbengine.lucene.RandomSortField;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -18,6 +19,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FloatPoint;
@@ -32,6 +34,7 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.util.BytesRef;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.rocksdb.RocksDB;
@@ -116,6 +119,16 @@ public class LLUtils {
 		return d;
 	}
 
+	/**
+	 * Convert a document and add its key as binary doc values.
+	 * The searches read the keys of the results from the doc values, instead of decompressing the stored fields
+	 */
+	public static Document toDocument(LLTerm id, LLDocument document) {
+		Document d = toDocument(document);
+		d.add(new BinaryDocValuesField(LuceneUtils.getKeyDocValuesFieldName(id.getKey()), new BytesRef(id.getValue())));
+		return d;
+	}
+
 	public static Collection<Document> toDocuments(Collection<LLDocument> document) {
 		List<Document> d = new ArrayList<>(document.size());
 		for (LLDocument doc : document) {
@@ -127,7 +140,7 @@ public class LLUtils {
 	public static Collection<Document> toDocumentsFromEntries(Collection<Entry<LLTerm, LLDocument>> documentsList) {
 		ArrayList<Document> results = new ArrayList<>(documentsList.size());
 		for (Entry<LLTerm, LLDocument> entry : documentsList) {
-			results.add(LLUtils.toDocument(entry.getValue()));
+			results.add(LLUtils.toDocument(entry.getKey(), entry.getValue()));
 		}
 		return results;
 	}
@@ -437,6 +450,13 @@ public class LLUtils {
 		}
 	}
 
+	public static void releaseEntries(Collection<Entry<ByteBuf, ByteBuf>> entries) {
+		for (Entry<ByteBuf, ByteBuf> entry : entries) {
+			entry.getKey().release();
+			entry.getValue().release();
+		}
+	}
+
 	public static <T> Mono<T> resolveDelta(Mono<Delta<T>> prev, UpdateReturnMode updateReturnMode) {
 		return prev.handle((delta, sink) -> {
 			switch (updateReturnMode) {
@@ -8,9 +8,12 @@ import it.cavallium.dbengine.database.ExtraKeyOperationResult;
 import it.cavallium.dbengine.database.KeyOperationResult;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.LLSecondaryIndex;
 import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.UpdateMode;
 import it.cavallium.dbengine.database.UpdateReturnMode;
+import it.cavallium.dbengine.database.serialization.LazySerializer;
+import it.cavallium.dbengine.database.serialization.SerializedView;
 import it.cavallium.dbengine.database.serialization.Serializer;
 import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
 import java.util.Collections;
@@ -57,25 +60,48 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 	}
 
 	private ByteBuf toKey(ByteBuf suffixKey) {
-		try {
-			assert suffixKeyConsistency(suffixKey.readableBytes());
-			return LLUtils.compositeBuffer(dictionary.getAllocator(), keyPrefix.retain(), suffixKey.retain());
-		} finally {
-			suffixKey.release();
-		}
+		assert suffixKeyConsistency(suffixKey.readableBytes());
+		return toKeyWithoutExt(suffixKey);
+	}
+
+	/**
+	 * Add a secondary index. The index entries are written in the same write batch of the values,
+	 * so the writes of a map with indexes are slower.
+	 *
+	 * <p>The index is registered on the column, see {@link LLDictionary#addSecondaryIndex(LLSecondaryIndex)}:
+	 * all the writes of the keys of this map update it, also when they are made by other instances or directly
+	 * on the {@link LLDictionary}. Add the same index again every time the database is opened.
+	 * The values that are already in the map are not indexed: call {@link DatabaseSecondaryIndex#rebuild()}
+	 * to index them
+	 * @param indexDictionary a dedicated column of the same database, used only by this index
+	 * @param indexExtractor get the index key of a value, or null if the value must not be indexed
+	 */
+	public <I> DatabaseSecondaryIndex<I, T, U> addIndex(LLDictionary indexDictionary,
+			SerializerFixedBinaryLength<I, ByteBuf> indexKeySerializer,
+			Function<U, @Nullable I> indexExtractor) {
+		var index = new DatabaseSecondaryIndex<>(this, indexDictionary, indexKeySerializer, valueSerializer, indexExtractor);
+		dictionary.addSecondaryIndex(index.getLLSecondaryIndex());
+		return index;
+	}
+
+	private DatabaseStageEntry<U> newStage(ByteBuf key) {
+		return new DatabaseSingleMapped<>(
+				new DatabaseSingle<>(dictionary, key, Serializer.noop()),
+				valueSerializer
+		);
 	}
 
 	@Override
 	public Mono<Map<T, U>> get(@Nullable CompositeSnapshot snapshot, boolean existsAlmostCertainly) {
 		return Flux
-				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range.retain(), existsAlmostCertainly))
+				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range().retain(), existsAlmostCertainly))
 				.collectMap(
 						entry -> deserializeSuffix(stripPrefix(entry.getKey(), false)),
 						entry -> deserialize(entry.getValue()),
 						HashMap::new)
 				.filter(map -> !map.isEmpty())
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
@@ -85,7 +111,7 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 						Mono.just(true),
 						b -> get(null, false),
 						b -> dictionary
-								.setRange(range.retain(),
+								.setRange(range().retain(),
 										Flux
 												.fromIterable(Collections.unmodifiableMap(value).entrySet())
 												.map(entry -> Map
@@ -93,8 +119,8 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 												)
 								)
 				)
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
@@ -106,26 +132,29 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 	@Override
 	public Mono<Long> leavesCount(@Nullable CompositeSnapshot snapshot, boolean fast) {
 		return Mono
-				.defer(() -> dictionary.sizeRange(resolveSnapshot(snapshot), range.retain(), fast))
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.defer(() -> dictionary.sizeRange(resolveSnapshot(snapshot), range().retain(), fast))
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
 	public Mono<Boolean> isEmpty(@Nullable CompositeSnapshot snapshot) {
 		return Mono
-				.defer(() -> dictionary.isRangeEmpty(resolveSnapshot(snapshot), range.retain()))
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.defer(() -> dictionary.isRangeEmpty(resolveSnapshot(snapshot), range().retain()))
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
 	public Mono<DatabaseStageEntry<U>> at(@Nullable CompositeSnapshot snapshot, T keySuffix) {
-		return Mono
-				.fromSupplier(() -> new DatabaseSingleMapped<>(
-						new DatabaseSingle<>(dictionary, toKey(serializeSuffix(keySuffix)), Serializer.noop())
-						, valueSerializer)
-				);
+		return Mono.fromSupplier(() -> newStage(toKey(serializeSuffix(keySuffix))));
+	}
+
+	/**
+	 * Get the stage of a value, without deserializing it
+	 */
+	DatabaseStageEntry<ByteBuf> atSerialized(T keySuffix) {
+		return new DatabaseSingle<>(dictionary, toKey(serializeSuffix(keySuffix)), Serializer.noop());
 	}
 
 	@Override
@@ -316,6 +345,32 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 
 	@Override
 	public Flux<Entry<T, U>> getMulti(@Nullable CompositeSnapshot snapshot, Flux<T> keys, boolean existsAlmostCertainly) {
+		return this
+				.getMultiSerialized(snapshot, keys, existsAlmostCertainly)
+				.flatMapSequential(entry -> Mono.fromCallable(() -> Map.entry(entry.getKey(), deserialize(entry.getValue()))));
+	}
+
+	/**
+	 * Get multiple values as views, without decoding them.
+	 * The value serializer must be a {@link LazySerializer}. Release every emitted view
+	 */
+	public <V extends SerializedView<U>> Flux<Entry<T, V>> getMultiViews(@Nullable CompositeSnapshot snapshot,
+			Flux<T> keys,
+			boolean existsAlmostCertainly) {
+		LazySerializer<U, V> lazyValueSerializer = getLazyValueSerializer();
+		return this
+				.getMultiSerialized(snapshot, keys, existsAlmostCertainly)
+				.<Entry<T, V>>map(entry -> Map.entry(entry.getKey(), lazyValueSerializer.view(entry.getValue())))
+				.doOnDiscard(Entry.class, DatabaseMapDictionary::releaseViewEntry);
+	}
+
+	/**
+	 * Get the serialized values of multiple keys, in the same order of the keys. Missing keys are skipped.
+	 * Release every emitted value
+	 */
+	private Flux<Entry<T, ByteBuf>> getMultiSerialized(@Nullable CompositeSnapshot snapshot,
+			Flux<T> keys,
+			boolean existsAlmostCertainly) {
 		return Flux
 				.defer(() -> dictionary
 						.getMulti(resolveSnapshot(snapshot), keys.flatMap(keySuffix -> Mono.fromCallable(() -> {
@@ -327,11 +382,11 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 							}
 						})), existsAlmostCertainly)
 				)
-				.flatMapSequential(entry -> {
+				.<Entry<T, ByteBuf>>map(entry -> {
 					entry.getT2().release();
-					return Mono
-									.fromCallable(() -> Map.entry(entry.getT1(), deserialize(entry.getT3())));
-				});
+					return Map.entry(entry.getT1(), entry.getT3());
+				})
+				.doOnDiscard(Entry.class, DatabaseMapDictionary::releaseViewEntry);
 	}
 
 	private Entry<ByteBuf, ByteBuf> serializeEntry(T key, U value) {
@@ -388,16 +443,13 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 	@Override
 	public Flux<Entry<T, DatabaseStageEntry<U>>> getAllStages(@Nullable CompositeSnapshot snapshot) {
 		return Flux
-				.defer(() -> dictionary.getRangeKeys(resolveSnapshot(snapshot), range.retain()))
+				.defer(() -> dictionary.getRangeKeys(resolveSnapshot(snapshot), range().retain()))
 				.<Entry<T, DatabaseStageEntry<U>>>map(key -> {
 					ByteBuf keySuffixWithExt = stripPrefix(key.retain(), false);
 					try {
 						try {
 							return Map.entry(deserializeSuffix(keySuffixWithExt.retainedSlice()),
-									new DatabaseSingleMapped<>(new DatabaseSingle<>(dictionary,
-											toKey(keySuffixWithExt.retainedSlice()),
-											Serializer.noop()
-									), valueSerializer)
+									newStage(toKey(keySuffixWithExt.retainedSlice()))
 							);
 						} finally {
 							keySuffixWithExt.release();
@@ -406,14 +458,14 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 						key.release();
 					}
 				})
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
 	public Flux<Entry<T, U>> getAllValues(@Nullable CompositeSnapshot snapshot) {
 		return Flux
-				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range.retain()))
+				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range().retain()))
 				.map(serializedEntry -> Map.entry(
 						deserializeSuffix(stripPrefix(serializedEntry.getKey(), false)),
 						valueSerializer.deserialize(serializedEntry.getValue())
@@ -424,8 +476,77 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 					castedEntry.getKey().release();
 					castedEntry.getValue().release();
 				})
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+
+	/**
+	 * Get a page of the entries of the map
+	 * @param reverse iterate from the last key to the first one
+	 * @param fromKeyExclusive if not null, start from the first key after this key (before it, if reverse).
+	 *                         Pass the last key of the previous page to read the next page
+	 * @param limit maximum number of entries, or -1 for no limit
+	 */
+	public Flux<Entry<T, U>> getAllValues(@Nullable CompositeSnapshot snapshot,
+			boolean reverse,
+			@Nullable T fromKeyExclusive,
+			long limit) {
+		return Flux
+				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot),
+						range().retain(),
+						reverse,
+						fromKeyExclusive != null ? toKey(serializeSuffix(fromKeyExclusive)) : null,
+						limit
+				))
+				.map(serializedEntry -> Map.entry(
+						deserializeSuffix(stripPrefix(serializedEntry.getKey(), false)),
+						valueSerializer.deserialize(serializedEntry.getValue())
+				))
+				.doOnDiscard(Entry.class, entry -> {
+					//noinspection unchecked
+					var castedEntry = (Entry<ByteBuf, ByteBuf>) entry;
+					castedEntry.getKey().release();
+					castedEntry.getValue().release();
+				})
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+
+	/**
+	 * Get all the values as views, without decoding them.
+	 * The value serializer must be a {@link LazySerializer}. Release every emitted view
+	 */
+	public <V extends SerializedView<U>> Flux<Entry<T, V>> getAllValueViews(@Nullable CompositeSnapshot snapshot) {
+		LazySerializer<U, V> lazyValueSerializer = getLazyValueSerializer();
+		return Flux
+				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range().retain()))
+				.map(serializedEntry -> Map.entry(
+						deserializeSuffix(stripPrefix(serializedEntry.getKey(), false)),
+						lazyValueSerializer.view(serializedEntry.getValue())
+				))
+				.doOnDiscard(Entry.class, DatabaseMapDictionary::releaseViewEntry)
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <V extends SerializedView<U>> LazySerializer<U, V> getLazyValueSerializer() {
+		if (valueSerializer instanceof LazySerializer) {
+			return (LazySerializer<U, V>) valueSerializer;
+		} else {
+			throw new UnsupportedOperationException("The value serializer doesn't support views");
+		}
+	}
+
+	private static void releaseViewEntry(Entry<?, ?> entry) {
+		if (entry.getKey() instanceof ByteBuf) {
+			((ByteBuf) entry.getKey()).release();
+		}
+		if (entry.getValue() instanceof ByteBuf) {
+			((ByteBuf) entry.getValue()).release();
+		} else if (entry.getValue() instanceof SerializedView) {
+			((SerializedView<?>) entry.getValue()).release();
+		}
 	}
 
 	@Override
@@ -435,33 +556,33 @@ public class DatabaseMapDictionary<T, U> extends DatabaseMapDictionaryDeep<T, U,
 						Mono.just(true),
 						b -> getAllValues(null),
 						b -> dictionary
-								.setRange(range.retain(),
+								.setRange(range().retain(),
 										entries.map(entry ->
 												Map.entry(toKey(serializeSuffix(entry.getKey())), serialize(entry.getValue()))
 										)
 								)
 				)
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
 	public Mono<Void> clear() {
 		return Mono
 				.defer(() -> {
-					if (range.isAll()) {
+					if (range().isAll()) {
 						return dictionary.clear();
-					} else if (range.isSingle()) {
+					} else if (range().isSingle()) {
 						return dictionary
-								.remove(range.getSingle().retain(), LLDictionaryResultType.VOID)
+								.remove(range().getSingle().retain(), LLDictionaryResultType.VOID)
 								.doOnNext(ReferenceCounted::release)
 								.then();
 					} else {
-						return dictionary.setRange(range.retain(), Flux.empty());
+						return dictionary.setRange(range().retain(), Flux.empty());
 					}
 				})
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	/**
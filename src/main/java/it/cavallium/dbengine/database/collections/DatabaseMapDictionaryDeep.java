@@ -6,6 +6,7 @@ import io.netty.util.ReferenceCounted;
 import it.cavallium.dbengine.client.BadBlock;
 import it.cavallium.dbengine.client.CompositeSnapshot;
 import it.cavallium.dbengine.database.Column;
+import it.cavallium.dbengine.database.ExtraKeyOperationResult;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLDictionaryResultType;
 import it.cavallium.dbengine.database.LLRange;
@@ -20,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
@@ -28,7 +30,6 @@ import reactor.util.function.Tuple2;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
-// todo: implement optimized methods
 public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implements DatabaseStageMap<T, U, US> {
 
 	protected final LLDictionary dictionary;
@@ -39,54 +40,65 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	protected final int keyPrefixLength;
 	protected final int keySuffixLength;
 	protected final int keyExtLength;
-	protected final LLRange range;
+	/**
+	 * Range of the keys of this map
+	 */
+	private final LLRange range;
+	/**
+	 * Guarded by this
+	 */
 	private volatile boolean released;
 
-	private static ByteBuf incrementPrefix(ByteBufAllocator alloc, ByteBuf originalKey, int prefixLength) {
-		try {
-			assert originalKey.readableBytes() >= prefixLength;
-			ByteBuf copiedBuf = alloc.buffer(originalKey.writerIndex(), originalKey.writerIndex() + 1);
-			try {
-				boolean overflowed = true;
-				final int ff = 0xFF;
-				int writtenBytes = 0;
-				copiedBuf.writerIndex(prefixLength);
-				for (int i = prefixLength - 1; i >= 0; i--) {
-					int iByte = originalKey.getUnsignedByte(i);
-					if (iByte != ff) {
-						copiedBuf.setByte(i, iByte + 1);
-						writtenBytes++;
-						overflowed = false;
-						break;
-					} else {
-						copiedBuf.setByte(i, 0x00);
-						writtenBytes++;
-						overflowed = true;
-					}
-				}
-				assert prefixLength - writtenBytes >= 0;
-				if (prefixLength - writtenBytes > 0) {
-					copiedBuf.setBytes(0, originalKey, 0, (prefixLength - writtenBytes));
-				}
-
-				copiedBuf.writerIndex(copiedBuf.capacity());
-
-				if (originalKey.writerIndex() - prefixLength > 0) {
-					copiedBuf.setBytes(prefixLength, originalKey, prefixLength, originalKey.writerIndex() - prefixLength);
-				}
+	/**
+	 * Increment the prefix of the key in place.
+	 * If the prefix overflows, every byte of the key is set to 0xFF and a zero byte is appended
+	 */
+	static void incrementPrefix(ByteBuf key, int prefixLength) {
+		assert key.readableBytes() >= prefixLength;
+		int start = key.readerIndex();
+		for (int i = prefixLength - 1; i >= 0; i--) {
+			int iByte = key.getUnsignedByte(start + i);
+			if (iByte != 0xFF) {
+				key.setByte(start + i, iByte + 1);
+				return;
+			} else {
+				key.setByte(start + i, 0x00);
+			}
+		}
+		for (int i = 0; i < key.readableBytes(); i++) {
+			key.setByte(start + i, 0xFF);
+		}
+		key.writeZero(1);
+	}
 
-				if (overflowed) {
-					for (int i = 0; i < copiedBuf.writerIndex(); i++) {
-						copiedBuf.setByte(i, 0xFF);
-					}
-					copiedBuf.writeZero(1);
-				}
-				return copiedBuf.retain();
-			} finally {
-				copiedBuf.release();
+	/**
+	 * Write prefix, suffix and a zero-filled ext into a single buffer
+	 * @param suffixKey the suffix, or null to fill also the suffix with zeroes
+	 * @param extraCapacity additional capacity to reserve, to avoid reallocations if the key will be incremented
+	 */
+	static ByteBuf composeKey(ByteBufAllocator alloc,
+			ByteBuf prefixKey,
+			@Nullable ByteBuf suffixKey,
+			int prefixLength,
+			int suffixLength,
+			int extLength,
+			int extraCapacity) {
+		assert prefixKey.readableBytes() == prefixLength;
+		assert suffixKey == null || suffixKey.readableBytes() == suffixLength;
+		assert suffixLength > 0;
+		assert extLength >= 0;
+		ByteBuf result = alloc.directBuffer(prefixLength + suffixLength + extLength + extraCapacity);
+		try {
+			result.writeBytes(prefixKey, prefixKey.readerIndex(), prefixLength);
+			if (suffixKey != null) {
+				result.writeBytes(suffixKey, suffixKey.readerIndex(), suffixLength);
+				result.writeZero(extLength);
+			} else {
+				result.writeZero(suffixLength + extLength);
 			}
+			return result.retain();
 		} finally {
-			originalKey.release();
+			result.release();
 		}
 	}
 
@@ -96,12 +108,9 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 
 	static ByteBuf nextRangeKey(ByteBufAllocator alloc, ByteBuf prefixKey, int prefixLength, int suffixLength, int extLength) {
 		try {
-			ByteBuf nonIncremented = zeroFillKeySuffixAndExt(alloc, prefixKey.retain(), prefixLength, suffixLength, extLength);
-			try {
-				return incrementPrefix(alloc, nonIncremented.retain(), prefixLength);
-			} finally {
-				nonIncremented.release();
-			}
+			ByteBuf result = composeKey(alloc, prefixKey, null, prefixLength, suffixLength, extLength, 1);
+			incrementPrefix(result, prefixLength);
+			return result;
 		} finally {
 			prefixKey.release();
 		}
@@ -109,21 +118,7 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 
 	protected static ByteBuf zeroFillKeySuffixAndExt(ByteBufAllocator alloc, ByteBuf prefixKey, int prefixLength, int suffixLength, int extLength) {
 		try {
-			assert prefixKey.readableBytes() == prefixLength;
-			assert suffixLength > 0;
-			assert extLength >= 0;
-			ByteBuf zeroSuffixAndExt = alloc.buffer(suffixLength + extLength, suffixLength + extLength);
-			try {
-				zeroSuffixAndExt.writeZero(suffixLength + extLength);
-				ByteBuf result = LLUtils.compositeBuffer(alloc, prefixKey.retain(), zeroSuffixAndExt.retain());
-				try {
-					return result.retain();
-				} finally {
-					result.release();
-				}
-			} finally {
-				zeroSuffixAndExt.release();
-			}
+			return composeKey(alloc, prefixKey, null, prefixLength, suffixLength, extLength, 0);
 		} finally {
 			prefixKey.release();
 		}
@@ -147,18 +142,9 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 			int suffixLength,
 			int extLength) {
 		try {
-			ByteBuf nonIncremented = zeroFillKeyExt(alloc,
-					prefixKey.retain(),
-					suffixKey.retain(),
-					prefixLength,
-					suffixLength,
-					extLength
-			);
-			try {
-				return incrementPrefix(alloc, nonIncremented.retain(), prefixLength + suffixLength);
-			} finally {
-				nonIncremented.release();
-			}
+			ByteBuf result = composeKey(alloc, prefixKey, suffixKey, prefixLength, suffixLength, extLength, 1);
+			incrementPrefix(result, prefixLength + suffixLength);
+			return result;
 		} finally {
 			prefixKey.release();
 			suffixKey.release();
@@ -173,21 +159,7 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 			int suffixLength,
 			int extLength) {
 		try {
-			assert prefixKey.readableBytes() == prefixLength;
-			assert suffixKey.readableBytes() == suffixLength;
-			assert suffixLength > 0;
-			assert extLength >= 0;
-			ByteBuf result = LLUtils.compositeBuffer(alloc,
-					prefixKey.retain(),
-					suffixKey.retain(),
-					alloc.buffer(extLength, extLength).writeZero(extLength)
-			);
-			try {
-				assert result.readableBytes() == prefixLength + suffixLength + extLength;
-				return result.retain();
-			} finally {
-				result.release();
-			}
+			return composeKey(alloc, prefixKey, suffixKey, prefixLength, suffixLength, extLength, 0);
 		} finally {
 			prefixKey.release();
 			suffixKey.release();
@@ -245,35 +217,38 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 			this.keyPrefixLength = keyPrefix.readableBytes();
 			this.keySuffixLength = keySuffixSerializer.getSerializedBinaryLength();
 			this.keyExtLength = keyExtLength;
-			ByteBuf firstKey = firstRangeKey(alloc,
-					keyPrefix.retain(),
-					keyPrefixLength,
-					keySuffixLength,
-					keyExtLength
-			);
-			try {
+			if (keyPrefixLength == 0) {
+				this.range = LLRange.all();
+			} else {
+				ByteBuf firstKey = firstRangeKey(alloc,
+						keyPrefix.retain(),
+						keyPrefixLength,
+						keySuffixLength,
+						keyExtLength
+				);
 				ByteBuf nextRangeKey = nextRangeKey(alloc,
 						keyPrefix.retain(),
 						keyPrefixLength,
 						keySuffixLength,
 						keyExtLength
 				);
-				try {
-					assert keyPrefix.refCnt() > 0;
-					assert keyPrefixLength == 0 || !LLUtils.equals(firstKey, nextRangeKey);
-					this.range = keyPrefixLength == 0 ? LLRange.all() : LLRange.of(firstKey.retain(), nextRangeKey.retain());
-					assert subStageKeysConsistency(keyPrefixLength + keySuffixLength + keyExtLength);
-				} finally {
-					nextRangeKey.release();
-				}
-			} finally {
-				firstKey.release();
+				assert keyPrefix.refCnt() > 0;
+				assert !LLUtils.equals(firstKey, nextRangeKey);
+				this.range = LLRange.of(firstKey, nextRangeKey);
 			}
+			assert subStageKeysConsistency(keyPrefixLength + keySuffixLength + keyExtLength);
 		} finally {
 			prefixKey.release();
 		}
 	}
 
+	protected LLRange range() {
+		if (released) {
+			throw new IllegalStateException("Already released");
+		}
+		return range;
+	}
+
 	@SuppressWarnings("unused")
 	protected boolean suffixKeyConsistency(int keySuffixLength) {
 		return this.keySuffixLength == keySuffixLength;
@@ -325,10 +300,11 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	protected ByteBuf toKeyWithoutExt(ByteBuf suffixKey) {
 		try {
 			assert suffixKey.readableBytes() == keySuffixLength;
-			ByteBuf result = LLUtils.compositeBuffer(alloc, keyPrefix.retain(), suffixKey.retain());
 			assert keyPrefix.refCnt() > 0;
+			ByteBuf result = alloc.directBuffer(keyPrefixLength + keySuffixLength);
 			try {
-				assert result.readableBytes() == keyPrefixLength + keySuffixLength;
+				result.writeBytes(keyPrefix, keyPrefix.readerIndex(), keyPrefixLength);
+				result.writeBytes(suffixKey, suffixKey.readerIndex(), keySuffixLength);
 				return result.retain();
 			} finally {
 				result.release();
@@ -372,17 +348,17 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	@Override
 	public Mono<Long> leavesCount(@Nullable CompositeSnapshot snapshot, boolean fast) {
 		return Mono
-				.defer(() -> dictionary.sizeRange(resolveSnapshot(snapshot), range.retain(), fast))
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.defer(() -> dictionary.sizeRange(resolveSnapshot(snapshot), range().retain(), fast))
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
 	public Mono<Boolean> isEmpty(@Nullable CompositeSnapshot snapshot) {
 		return Mono
-				.defer(() -> dictionary.isRangeEmpty(resolveSnapshot(snapshot), range.retain()))
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.defer(() -> dictionary.isRangeEmpty(resolveSnapshot(snapshot), range().retain()))
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	@Override
@@ -431,9 +407,9 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	@Override
 	public Flux<BadBlock> badBlocks() {
 		return Flux
-				.defer(() -> dictionary.badBlocks(range.retain()))
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.defer(() -> dictionary.badBlocks(range().retain()))
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	private static record GroupBuffers(ByteBuf groupKeyWithExt, ByteBuf groupKeyWithoutExt, ByteBuf groupSuffix) {}
@@ -444,7 +420,7 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 				.defer(() -> {
 					if (LLLocalDictionary.DEBUG_PREFIXES_WHEN_ASSERTIONS_ARE_ENABLED && this.subStageGetter.needsDebuggingKeyFlux()) {
 						return Flux
-								.defer(() -> dictionary.getRangeKeysGrouped(resolveSnapshot(snapshot), range.retain(), keyPrefixLength + keySuffixLength))
+								.defer(() -> dictionary.getRangeKeysGrouped(resolveSnapshot(snapshot), range().retain(), keyPrefixLength + keySuffixLength))
 								.flatMapSequential(rangeKeys -> Flux
 										.using(
 												() -> {
@@ -488,7 +464,7 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 								});
 					} else {
 						return Flux
-								.defer(() -> dictionary.getRangeKeyPrefixes(resolveSnapshot(snapshot), range.retain(), keyPrefixLength + keySuffixLength))
+								.defer(() -> dictionary.getRangeKeyPrefixes(resolveSnapshot(snapshot), range().retain(), keyPrefixLength + keySuffixLength))
 								.flatMapSequential(groupKeyWithoutExt -> Mono
 										.using(
 												() -> {
@@ -508,8 +484,8 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 								);
 					}
 				})
-				.doFirst(range::retain)
-				.doAfterTerminate(range::release);
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
 	}
 
 	private boolean subStageKeysConsistency(int totalKeyLength) {
@@ -524,8 +500,168 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 		}
 	}
 
+	/**
+	 * @return the sub-stage getter if each value is stored in a single entry, null otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	private @Nullable SubStageGetterSingle<U> getSingleSubStageGetter() {
+		if (subStageGetter instanceof SubStageGetterSingle) {
+			return (SubStageGetterSingle<U>) (SubStageGetter<?, ?>) subStageGetter;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Serialize a value into all the entries of its sub-stage
+	 */
+	private List<Entry<ByteBuf, ByteBuf>> serializeSubStageEntries(T keySuffix, U value) {
+		return subStageGetter.serializeEntries(alloc, toKeyWithoutExt(serializeSuffix(keySuffix)), value);
+	}
+
+	@Override
+	public Flux<Entry<T, U>> getMulti(@Nullable CompositeSnapshot snapshot, Flux<T> keys, boolean existsAlmostCertainly) {
+		var singleSubStageGetter = getSingleSubStageGetter();
+		if (singleSubStageGetter != null) {
+			// Each value is stored in a single entry, read all of them with a single multi-get
+			var valueSerializer = singleSubStageGetter.getSerializer();
+			return Flux
+					.defer(() -> dictionary.getMulti(resolveSnapshot(snapshot),
+							keys.map(keySuffix -> Tuples.of(keySuffix, toKeyWithoutExt(serializeSuffix(keySuffix)))),
+							existsAlmostCertainly
+					))
+					.map(entry -> {
+						entry.getT2().release();
+						return Map.entry(entry.getT1(), valueSerializer.deserialize(entry.getT3()));
+					});
+		} else if (subStageGetter.supportsEntriesSerialization()) {
+			// Read the entries of each value with a single range read, without creating the sub-stages
+			return keys.flatMapSequential(keySuffix -> Flux
+					.defer(() -> dictionary.getRange(resolveSnapshot(snapshot),
+							toExtRange(serializeSuffix(keySuffix)),
+							existsAlmostCertainly
+					))
+					.collectList()
+					.doOnDiscard(Entry.class, entry -> {
+						//noinspection unchecked
+						var castedEntry = (Entry<ByteBuf, ByteBuf>) entry;
+						castedEntry.getKey().release();
+						castedEntry.getValue().release();
+					})
+					.flatMap(subStageEntries -> Mono
+							.justOrEmpty(subStageGetter.deserializeEntries(keyPrefixLength + keySuffixLength, subStageEntries))
+							.map(value -> Map.entry(keySuffix, value))
+					)
+			);
+		} else {
+			return DatabaseStageMap.super.getMulti(snapshot, keys, existsAlmostCertainly);
+		}
+	}
+
+	@Override
+	public Mono<Void> putMulti(Flux<Entry<T, U>> entries) {
+		if (getSingleSubStageGetter() != null) {
+			// Each value replaces a single entry, write all of them with a single multi-put
+			return dictionary
+					.putMulti(entries.concatMapIterable(entry -> serializeSubStageEntries(entry.getKey(), entry.getValue())),
+							false
+					)
+					.then();
+		} else if (subStageGetter.supportsEntriesSerialization()) {
+			// The old entries of each value must be deleted, so replace the whole range of each sub-stage.
+			// The ranges are replaced one at a time, so a large input doesn't run unbounded concurrent writes
+			// and a key repeated in the input keeps its last value
+			return entries
+					.concatMap(entry -> Mono.defer(() -> dictionary.setRange(toExtRange(serializeSuffix(entry.getKey())),
+							Flux.defer(() -> Flux.fromIterable(serializeSubStageEntries(entry.getKey(), entry.getValue())))
+					)))
+					.then();
+		} else {
+			return DatabaseStageMap.super.putMulti(entries);
+		}
+	}
+
+	@Override
+	public <X> Flux<ExtraKeyOperationResult<T, X>> updateMulti(Flux<Tuple2<T, X>> entries,
+			BiFunction<@Nullable U, X, @Nullable U> updater) {
+		var singleSubStageGetter = getSingleSubStageGetter();
+		if (singleSubStageGetter == null) {
+			return DatabaseStageMap.super.updateMulti(entries, updater);
+		}
+		var valueSerializer = singleSubStageGetter.getSerializer();
+		BiFunction<@Nullable ByteBuf, X, @Nullable ByteBuf> serializedUpdater = (oldSerialized, extra) -> {
+			try {
+				var result = updater.apply(oldSerialized == null ? null : valueSerializer.deserialize(oldSerialized.retain()),
+						extra
+				);
+				return result == null ? null : valueSerializer.serialize(result);
+			} finally {
+				if (oldSerialized != null) {
+					oldSerialized.release();
+				}
+			}
+		};
+		return dictionary
+				.updateMulti(entries.map(entry -> Tuples.of(toKeyWithoutExt(serializeSuffix(entry.getT1())), entry.getT2())),
+						serializedUpdater
+				)
+				.map(result -> new ExtraKeyOperationResult<>(deserializeSuffix(stripPrefix(result.key(), false)),
+						result.extra(),
+						result.changed()
+				));
+	}
+
+	@Override
+	public Flux<Entry<T, U>> getAllValues(@Nullable CompositeSnapshot snapshot) {
+		if (!subStageGetter.supportsEntriesSerialization()) {
+			return DatabaseStageMap.super.getAllValues(snapshot);
+		}
+		// Read all the entries with a single iteration, grouping them by sub-stage
+		return Flux
+				.defer(() -> dictionary.getRangeGrouped(resolveSnapshot(snapshot),
+						range().retain(),
+						keyPrefixLength + keySuffixLength
+				))
+				.<Entry<T, U>>handle((subStageEntries, sink) -> {
+					T keySuffix;
+					try {
+						ByteBuf groupKey = subStageEntries.get(0).getKey();
+						keySuffix = deserializeSuffix(groupKey.retainedSlice(groupKey.readerIndex() + keyPrefixLength,
+								keySuffixLength
+						));
+					} catch (Throwable ex) {
+						LLUtils.releaseEntries(subStageEntries);
+						sink.error(ex);
+						return;
+					}
+					var value = subStageGetter.deserializeEntries(keyPrefixLength + keySuffixLength, subStageEntries);
+					if (value != null) {
+						sink.next(Map.entry(keySuffix, value));
+					}
+				})
+				.doOnDiscard(List.class, discardedList -> {
+					//noinspection unchecked
+					LLUtils.releaseEntries((List<Entry<ByteBuf, ByteBuf>>) discardedList);
+				})
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+
 	@Override
 	public Flux<Entry<T, U>> setAllValuesAndGetPrevious(Flux<Entry<T, U>> entries) {
+		if (subStageGetter.supportsEntriesSerialization()) {
+			// Replace the whole range at once, without creating the sub-stages
+			return this
+					.getAllValues(null)
+					.concatWith(Mono
+							.defer(() -> dictionary.setRange(range().retain(),
+									entries.concatMapIterable(entry -> serializeSubStageEntries(entry.getKey(), entry.getValue()))
+							))
+							.doFirst(range()::retain)
+							.doAfterTerminate(range()::release)
+							.then(Mono.empty())
+					);
+		}
 		return this
 				.getAllValues(null)
 				.concatWith(this
@@ -548,15 +684,15 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	public Mono<Void> clear() {
 		return Mono
 				.defer(() -> {
-					if (range.isAll()) {
+					if (range().isAll()) {
 						return dictionary.clear();
-					} else if (range.isSingle()) {
+					} else if (range().isSingle()) {
 						return dictionary
-								.remove(range.getSingle().retain(), LLDictionaryResultType.VOID)
+								.remove(range().getSingle().retain(), LLDictionaryResultType.VOID)
 								.doOnNext(ReferenceCounted::release)
 								.then();
 					} else {
-						return dictionary.setRange(range.retain(), Flux.empty());
+						return dictionary.setRange(range().retain(), Flux.empty());
 					}
 				});
 	}
@@ -582,7 +718,7 @@ public class DatabaseMapDictionaryDeep<T, U, US extends DatabaseStage<U>> implem
 	}
 
 	@Override
-	public void release() {
+	public synchronized void release() {
 		if (!released) {
 			released = true;
 			this.range.release();
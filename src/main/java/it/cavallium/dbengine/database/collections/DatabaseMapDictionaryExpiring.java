@@ -0,0 +1,323 @@
+package it.cavallium.dbengine.database.collections;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.client.BadBlock;
+import it.cavallium.dbengine.client.CompositeSnapshot;
+import io.netty.util.ReferenceCounted;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.UpdateMode;
+import it.cavallium.dbengine.database.UpdateReturnMode;
+import it.cavallium.dbengine.database.serialization.Expiring;
+import it.cavallium.dbengine.database.serialization.ExpiringSerializer;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Map whose entries expire after a time to live.
+ *
+ * The expiration time is stored before every value, and the expired entries are treated as absent by every read,
+ * so they don't need to be deleted as soon as they expire.
+ *
+ * To delete the expired entries without scanning the map, store it in a column listed in the "ttlColumns" flag
+ * of the local database: the compactions drop the entries older than the time to live of the column, so the
+ * time to live of the column must not be lower than the time to live of any entry.
+ * In the other columns the expired entries are replaced by the next write of the same key, and the others can be
+ * deleted by {@link #removeExpired()}
+ */
+public class DatabaseMapDictionaryExpiring<T, U> implements DatabaseStageMap<T, U, DatabaseStageEntry<U>> {
+
+	private final DatabaseMapDictionary<T, Expiring<U>> subDictionary;
+	private final Duration defaultTimeToLive;
+
+	protected DatabaseMapDictionaryExpiring(LLDictionary dictionary,
+			ByteBuf prefixKey,
+			SerializerFixedBinaryLength<T, ByteBuf> keySuffixSerializer,
+			Serializer<U, ByteBuf> valueSerializer,
+			Duration defaultTimeToLive) {
+		try {
+			this.subDictionary = DatabaseMapDictionary.tail(dictionary,
+					prefixKey.retain(),
+					keySuffixSerializer,
+					new ExpiringSerializer<>(dictionary.getAllocator(), valueSerializer)
+			);
+			this.defaultTimeToLive = defaultTimeToLive;
+		} finally {
+			prefixKey.release();
+		}
+	}
+
+	public static <T, U> DatabaseMapDictionaryExpiring<T, U> simple(LLDictionary dictionary,
+			SerializerFixedBinaryLength<T, ByteBuf> keySerializer,
+			Serializer<U, ByteBuf> valueSerializer,
+			Duration defaultTimeToLive) {
+		return new DatabaseMapDictionaryExpiring<>(dictionary,
+				dictionary.getAllocator().buffer(0),
+				keySerializer,
+				valueSerializer,
+				defaultTimeToLive
+		);
+	}
+
+	public static <T, U> DatabaseMapDictionaryExpiring<T, U> tail(LLDictionary dictionary,
+			ByteBuf prefixKey,
+			SerializerFixedBinaryLength<T, ByteBuf> keySuffixSerializer,
+			Serializer<U, ByteBuf> valueSerializer,
+			Duration defaultTimeToLive) {
+		return new DatabaseMapDictionaryExpiring<>(dictionary,
+				prefixKey,
+				keySuffixSerializer,
+				valueSerializer,
+				defaultTimeToLive
+		);
+	}
+
+	private static <T, U> boolean isNotExpired(Entry<T, Expiring<U>> entry, long currentTimestamp) {
+		return !entry.getValue().isExpired(currentTimestamp);
+	}
+
+	private static <T, U> Entry<T, U> unwrapEntry(Entry<T, Expiring<U>> entry) {
+		return Map.entry(entry.getKey(), entry.getValue().value());
+	}
+
+	@Override
+	public Mono<DatabaseStageEntry<U>> at(@Nullable CompositeSnapshot snapshot, T key) {
+		return subDictionary
+				.at(snapshot, key)
+				.map(stage -> new DatabaseSingleExpiring<>(stage, defaultTimeToLive));
+	}
+
+	@Override
+	public Mono<U> getValue(@Nullable CompositeSnapshot snapshot, T key, boolean existsAlmostCertainly) {
+		return subDictionary
+				.getValue(snapshot, key, existsAlmostCertainly)
+				.filter(expiring -> !expiring.isExpired(System.currentTimeMillis()))
+				.map(Expiring::value);
+	}
+
+	@Override
+	public Mono<Void> putValue(T key, U value) {
+		return putValue(key, value, defaultTimeToLive);
+	}
+
+	/**
+	 * Put a value with a custom time to live.
+	 * If the column has a time to live, a longer custom time to live is cut by the compactions
+	 */
+	public Mono<Void> putValue(T key, U value, Duration timeToLive) {
+		return Mono
+				.fromCallable(() -> DatabaseSingleExpiring.expireAfter(value, timeToLive, System.currentTimeMillis()))
+				.flatMap(expiring -> subDictionary.putValue(key, expiring));
+	}
+
+	@Override
+	public Mono<U> putValueAndGetPrevious(T key, U value) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMap(now -> subDictionary
+						.putValueAndGetPrevious(key, DatabaseSingleExpiring.expireAfter(value, defaultTimeToLive, now))
+						.filter(previous -> !previous.isExpired(now))
+						.map(Expiring::value)
+				);
+	}
+
+	@Override
+	public Mono<UpdateMode> getUpdateMode() {
+		return subDictionary.getUpdateMode();
+	}
+
+	@Override
+	public Mono<Void> remove(T key) {
+		return subDictionary.remove(key);
+	}
+
+	@Override
+	public Mono<U> removeAndGetPrevious(T key) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMap(now -> subDictionary
+						.removeAndGetPrevious(key)
+						.filter(previous -> !previous.isExpired(now))
+						.map(Expiring::value)
+				);
+	}
+
+	@Override
+	public Flux<Entry<T, U>> getMulti(@Nullable CompositeSnapshot snapshot, Flux<T> keys, boolean existsAlmostCertainly) {
+		return subDictionary
+				.getMulti(snapshot, keys, existsAlmostCertainly)
+				.filter(entry -> isNotExpired(entry, System.currentTimeMillis()))
+				.map(DatabaseMapDictionaryExpiring::unwrapEntry);
+	}
+
+	@Override
+	public Mono<Void> putMulti(Flux<Entry<T, U>> entries) {
+		return subDictionary.putMulti(entries.map(entry -> Map.entry(entry.getKey(),
+				DatabaseSingleExpiring.expireAfter(entry.getValue(), defaultTimeToLive, System.currentTimeMillis())
+		)));
+	}
+
+	@Override
+	public Flux<Entry<T, DatabaseStageEntry<U>>> getAllStages(@Nullable CompositeSnapshot snapshot) {
+		return subDictionary
+				.getAllStages(snapshot)
+				.map(entry -> Map.entry(entry.getKey(), new DatabaseSingleExpiring<>(entry.getValue(), defaultTimeToLive)));
+	}
+
+	@Override
+	public Flux<Entry<T, U>> getAllValues(@Nullable CompositeSnapshot snapshot) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMapMany(now -> subDictionary
+						.getAllValues(snapshot)
+						.filter(entry -> isNotExpired(entry, now))
+						.map(DatabaseMapDictionaryExpiring::unwrapEntry)
+				);
+	}
+
+	@Override
+	public Flux<Entry<T, U>> setAllValuesAndGetPrevious(Flux<Entry<T, U>> entries) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMapMany(now -> subDictionary
+						.setAllValuesAndGetPrevious(entries.map(entry -> Map.entry(entry.getKey(),
+								DatabaseSingleExpiring.expireAfter(entry.getValue(), defaultTimeToLive, now)
+						)))
+						.filter(entry -> isNotExpired(entry, now))
+						.map(DatabaseMapDictionaryExpiring::unwrapEntry)
+				);
+	}
+
+	/**
+	 * Delete the expired entries by scanning the whole map. Use it only if the column has no time to live,
+	 * otherwise the compactions drop the expired entries without writing a tombstone for each of them.
+	 * An entry that is written again while this method is running is not deleted.
+	 * Only the expiration time of the values is read, the values are not deserialized.
+	 *
+	 * With {@link UpdateMode#DISALLOW} the entries can't be deleted atomically: every expired entry is read again
+	 * before deleting it, so an entry written again between the read and the delete is deleted too
+	 */
+	public Mono<Void> removeExpired() {
+		LLDictionary dictionary = subDictionary.dictionary;
+		LLRange range = subDictionary.range();
+		return Mono
+				.zip(Mono.fromCallable(System::currentTimeMillis), dictionary.getUpdateMode())
+				.flatMapMany(tuple -> Flux
+						.defer(() -> dictionary.getRange(null, range.retain()))
+						.<ByteBuf>handle((entry, sink) -> {
+							try {
+								if (ExpiringSerializer.isExpired(entry.getValue(), tuple.getT1())) {
+									sink.next(entry.getKey().retain());
+								}
+							} finally {
+								entry.getKey().release();
+								entry.getValue().release();
+							}
+						})
+						.concatMap(key -> removeIfExpired(dictionary, key, tuple.getT2(), tuple.getT1()))
+						.doOnDiscard(ByteBuf.class, ByteBuf::release)
+				)
+				.doFirst(range::retain)
+				.doAfterTerminate(range::release)
+				.then();
+	}
+
+	/**
+	 * Delete a key if its value is expired
+	 */
+	private static Mono<Void> removeIfExpired(LLDictionary dictionary, ByteBuf key, UpdateMode updateMode, long now) {
+		try {
+			Mono<ByteBuf> result;
+			if (updateMode == UpdateMode.DISALLOW) {
+				result = dictionary
+						.get(null, key.retain())
+						.flatMap(value -> {
+							try {
+								if (!ExpiringSerializer.isExpired(value, now)) {
+									return Mono.empty();
+								}
+							} finally {
+								value.release();
+							}
+							return dictionary.remove(key.retain(), LLDictionaryResultType.VOID);
+						});
+			} else {
+				result = dictionary.update(key.retain(), previous -> {
+					try {
+						if (previous == null || ExpiringSerializer.isExpired(previous, now)) {
+							return null;
+						} else {
+							return previous.retain();
+						}
+					} finally {
+						if (previous != null) {
+							previous.release();
+						}
+					}
+				}, UpdateReturnMode.NOTHING);
+			}
+			return result
+					.doOnNext(ReferenceCounted::release)
+					.then()
+					.doFirst(key::retain)
+					.doAfterTerminate(key::release);
+		} finally {
+			key.release();
+		}
+	}
+
+	@Override
+	public Mono<Void> clear() {
+		return subDictionary.clear();
+	}
+
+	@Override
+	public Mono<Map<T, U>> get(@Nullable CompositeSnapshot snapshot, boolean existsAlmostCertainly) {
+		return getAllValues(snapshot)
+				.collectMap(Entry::getKey, Entry::getValue, HashMap::new)
+				.filter(map -> !map.isEmpty());
+	}
+
+	@Override
+	public Mono<Long> leavesCount(@Nullable CompositeSnapshot snapshot, boolean fast) {
+		if (fast) {
+			// The approximate count includes the expired entries that have not been deleted yet
+			return subDictionary.leavesCount(snapshot, true);
+		} else {
+			return getAllValues(snapshot).count();
+		}
+	}
+
+	@Override
+	public Mono<Boolean> isEmpty(@Nullable CompositeSnapshot snapshot) {
+		return getAllValues(snapshot).hasElements().map(hasElements -> !hasElements);
+	}
+
+	@Override
+	public DatabaseStageEntry<Map<T, U>> entry() {
+		return this;
+	}
+
+	@Override
+	public Mono<Void> close() {
+		return subDictionary.close();
+	}
+
+	@Override
+	public Flux<BadBlock> badBlocks() {
+		return subDictionary.badBlocks();
+	}
+
+	@Override
+	public void release() {
+		subDictionary.release();
+	}
+}
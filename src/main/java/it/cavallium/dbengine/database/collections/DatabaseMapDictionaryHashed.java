@@ -35,6 +35,7 @@ public class DatabaseMapDictionaryHashed<T, U, TH> implements DatabaseStageMap<T
 
 	private final ByteBufAllocator alloc;
 	private final DatabaseMapDictionary<TH, ObjectArraySet<Entry<T, U>>> subDictionary;
+	private final HashedBucketSerializer<T, U> bucketSerializer;
 	private final Function<T, TH> keySuffixHashFunction;
 
 	protected DatabaseMapDictionaryHashed(LLDictionary dictionary,
@@ -48,14 +49,11 @@ public class DatabaseMapDictionaryHashed<T, U, TH> implements DatabaseStageMap<T
 				throw new IllegalArgumentException("Hashed maps only works when UpdateMode is ALLOW");
 			}
 			this.alloc = dictionary.getAllocator();
-			ValueWithHashSerializer<T, U> valueWithHashSerializer
-					= new ValueWithHashSerializer<>(alloc, keySuffixSerializer, valueSerializer);
-			ValuesSetSerializer<Entry<T, U>> valuesSetSerializer
-					= new ValuesSetSerializer<>(alloc, valueWithHashSerializer);
+			this.bucketSerializer = new HashedBucketSerializer<>(alloc, keySuffixSerializer, valueSerializer);
 			this.subDictionary = DatabaseMapDictionary.tail(dictionary,
 					prefixKey.retain(),
 					keySuffixHashSerializer,
-					valuesSetSerializer
+					bucketSerializer
 			);
 			this.keySuffixHashFunction = keySuffixHashFunction;
 		} finally {
@@ -169,9 +167,7 @@ public class DatabaseMapDictionaryHashed<T, U, TH> implements DatabaseStageMap<T
 	}
 
 	private Mono<DatabaseSingleBucket<T, U, TH>> atPrivate(@Nullable CompositeSnapshot snapshot, T key, TH hash) {
-		return subDictionary
-				.at(snapshot, hash)
-				.map(entry -> new DatabaseSingleBucket<>(entry, key));
+		return Mono.fromSupplier(() -> new DatabaseSingleBucket<>(subDictionary.atSerialized(hash), bucketSerializer, key));
 	}
 
 	@Override
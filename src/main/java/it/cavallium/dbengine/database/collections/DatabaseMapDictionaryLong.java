@@ -0,0 +1,180 @@
+package it.cavallium.dbengine.database.collections;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+import it.cavallium.dbengine.client.CompositeSnapshot;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.serialization.LongSerializerFixed;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.unimi.dsi.fastutil.longs.AbstractLong2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * DatabaseMapDictionary with long keys. The methods that take or return primitive keys don't box them
+ */
+public class DatabaseMapDictionaryLong<U> extends DatabaseMapDictionary<Long, U> {
+
+	private final LongSerializerFixed longKeySerializer;
+	private final Serializer<U, ByteBuf> valueSerializer;
+
+	protected DatabaseMapDictionaryLong(LLDictionary dictionary,
+			ByteBuf prefixKey,
+			LongSerializerFixed keySuffixSerializer,
+			Serializer<U, ByteBuf> valueSerializer) {
+		// Do not retain or release or use the prefixKey here
+		super(dictionary, prefixKey, keySuffixSerializer, valueSerializer);
+		prefixKey = null;
+		this.longKeySerializer = keySuffixSerializer;
+		this.valueSerializer = valueSerializer;
+	}
+
+	public static <U> DatabaseMapDictionaryLong<U> simple(LLDictionary dictionary,
+			Serializer<U, ByteBuf> valueSerializer) {
+		return new DatabaseMapDictionaryLong<>(dictionary,
+				dictionary.getAllocator().buffer(0),
+				LongSerializerFixed.create(dictionary.getAllocator()),
+				valueSerializer
+		);
+	}
+
+	public static <U> DatabaseMapDictionaryLong<U> tail(LLDictionary dictionary,
+			ByteBuf prefixKey,
+			Serializer<U, ByteBuf> valueSerializer) {
+		return new DatabaseMapDictionaryLong<>(dictionary,
+				prefixKey,
+				LongSerializerFixed.create(dictionary.getAllocator()),
+				valueSerializer
+		);
+	}
+
+	private ByteBuf toKey(long keySuffix) {
+		ByteBuf key = dictionary.getAllocator().directBuffer(keyPrefixLength + Long.BYTES);
+		key.writeBytes(keyPrefix, keyPrefix.readerIndex(), keyPrefixLength);
+		longKeySerializer.writeLong(key, keySuffix);
+		return key;
+	}
+
+	/**
+	 * Read the key suffix of a full key, without releasing it
+	 */
+	private long getKeySuffix(ByteBuf key) {
+		return longKeySerializer.getLong(key, key.readerIndex() + keyPrefixLength);
+	}
+
+	public Mono<U> getValue(@Nullable CompositeSnapshot snapshot, long keySuffix, boolean existsAlmostCertainly) {
+		return Mono
+				.using(
+						() -> toKey(keySuffix),
+						keyBuf -> dictionary
+								.get(resolveSnapshot(snapshot), keyBuf.retain(), existsAlmostCertainly)
+								.map(valueSerializer::deserialize),
+						ReferenceCounted::release
+				);
+	}
+
+	public Mono<U> getValue(@Nullable CompositeSnapshot snapshot, long keySuffix) {
+		return getValue(snapshot, keySuffix, false);
+	}
+
+	public Mono<Void> putValue(long keySuffix, U value) {
+		return Mono
+				.using(
+						() -> toKey(keySuffix),
+						keyBuf -> Mono
+								.using(
+										() -> valueSerializer.serialize(value),
+										valueBuf -> dictionary
+												.put(keyBuf.retain(), valueBuf.retain(), LLDictionaryResultType.VOID)
+												.doOnNext(ReferenceCounted::release),
+										ReferenceCounted::release
+								),
+						ReferenceCounted::release
+				)
+				.then();
+	}
+
+	public Mono<Void> remove(long keySuffix) {
+		return Mono
+				.using(
+						() -> toKey(keySuffix),
+						keyBuf -> dictionary
+								.remove(keyBuf.retain(), LLDictionaryResultType.VOID)
+								.doOnNext(ReferenceCounted::release),
+						ReferenceCounted::release
+				)
+				.then();
+	}
+
+	/**
+	 * Get the values of multiple keys, in the same order of the keys. Missing keys are skipped
+	 */
+	public Flux<Long2ObjectMap.Entry<U>> getMulti(@Nullable CompositeSnapshot snapshot,
+			LongList keys,
+			boolean existsAlmostCertainly) {
+		// The key suffix is read back from the returned key, so the keys don't need to be boxed or tagged
+		Flux<ByteBuf> keyBufs = Flux.generate(keys::iterator, (iterator, sink) -> {
+			if (iterator.hasNext()) {
+				sink.next(toKey(iterator.nextLong()));
+			} else {
+				sink.complete();
+			}
+			return iterator;
+		});
+		return Flux
+				.defer(() -> dictionary.getMultiValues(resolveSnapshot(snapshot), keyBufs, existsAlmostCertainly))
+				.<Long2ObjectMap.Entry<U>>map(entry -> {
+					try {
+						return new AbstractLong2ObjectMap.BasicEntry<>(getKeySuffix(entry.getKey()),
+								valueSerializer.deserialize(entry.getValue())
+						);
+					} finally {
+						entry.getKey().release();
+					}
+				});
+	}
+
+	/**
+	 * Get all the entries, without boxing the keys
+	 */
+	public Flux<Long2ObjectMap.Entry<U>> getAllValuesLong(@Nullable CompositeSnapshot snapshot) {
+		return Flux
+				.defer(() -> dictionary.getRange(resolveSnapshot(snapshot), range().retain()))
+				.<Long2ObjectMap.Entry<U>>map(serializedEntry -> {
+					try {
+						return new AbstractLong2ObjectMap.BasicEntry<>(getKeySuffix(serializedEntry.getKey()),
+								valueSerializer.deserialize(serializedEntry.getValue())
+						);
+					} finally {
+						serializedEntry.getKey().release();
+					}
+				})
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+
+	/**
+	 * Get all the keys, without boxing them
+	 * @param batchSize maximum number of keys of each emitted list
+	 */
+	public Flux<LongList> getAllKeysLong(@Nullable CompositeSnapshot snapshot, int batchSize) {
+		return Flux
+				.defer(() -> dictionary.getRangeKeys(resolveSnapshot(snapshot), range().retain()))
+				.window(batchSize)
+				.concatMap(keys -> keys.collect(() -> new LongArrayList(batchSize), (LongList list, ByteBuf key) -> {
+					try {
+						list.add(getKeySuffix(key));
+					} finally {
+						key.release();
+					}
+				}))
+				.doOnDiscard(ByteBuf.class, ReferenceCounted::release)
+				.doFirst(range()::retain)
+				.doAfterTerminate(range()::release);
+	}
+}
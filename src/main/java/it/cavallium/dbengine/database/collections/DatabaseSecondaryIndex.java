@@ -0,0 +1,171 @@
+package it.cavallium.dbengine.database.collections;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import it.cavallium.dbengine.client.CompositeSnapshot;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLSecondaryIndex;
+import it.cavallium.dbengine.database.LLSnapshot;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Secondary index of a {@link DatabaseMapDictionary}, updated in the same write of the indexed values.
+ *
+ * Every indexed entry has a key in the index dictionary made of the serialized index key followed by
+ * the key suffix of the entry, so all the entries with the same index key are in the same range.
+ */
+public class DatabaseSecondaryIndex<I, T, U> {
+
+	private final DatabaseMapDictionary<T, U> map;
+	private final LLDictionary indexDictionary;
+	private final SerializerFixedBinaryLength<I, ByteBuf> indexKeySerializer;
+	private final int indexKeyLength;
+	private final Function<U, @Nullable I> indexExtractor;
+	private final LLSecondaryIndex llSecondaryIndex;
+
+	DatabaseSecondaryIndex(DatabaseMapDictionary<T, U> map,
+			LLDictionary indexDictionary,
+			SerializerFixedBinaryLength<I, ByteBuf> indexKeySerializer,
+			Serializer<U, ByteBuf> valueSerializer,
+			Function<U, @Nullable I> indexExtractor) {
+		this.map = map;
+		this.indexDictionary = indexDictionary;
+		this.indexKeySerializer = indexKeySerializer;
+		this.indexKeyLength = indexKeySerializer.getSerializedBinaryLength();
+		this.indexExtractor = indexExtractor;
+		// The index is registered on the whole column and can outlive the map, so it keeps its own copy of the prefix
+		ByteBuf keyPrefix = Unpooled.copiedBuffer(map.keyPrefix);
+		int keyLength = map.keyPrefixLength + map.keySuffixLength;
+		this.llSecondaryIndex = new LLSecondaryIndex(indexDictionary, (key, value) -> {
+			if (key.readableBytes() != keyLength
+					|| !ByteBufUtil.equals(key, key.readerIndex(), keyPrefix, 0, keyPrefix.readableBytes())) {
+				// The key is not in this map
+				return null;
+			}
+			I indexKey = indexExtractor.apply(valueSerializer.deserialize(value.retainedSlice()));
+			if (indexKey == null) {
+				return null;
+			}
+			return toIndexEntryKey(indexKey, key);
+		});
+	}
+
+	LLSecondaryIndex getLLSecondaryIndex() {
+		return llSecondaryIndex;
+	}
+
+	public LLDictionary getIndexDictionary() {
+		return indexDictionary;
+	}
+
+	/**
+	 * Get all the entries of the map that have the specified index key.
+	 * The index is checked again on the values, so the stale index entries are skipped
+	 */
+	public Flux<Entry<T, U>> getByIndex(@Nullable CompositeSnapshot snapshot, I indexKey) {
+		Flux<T> keys = Flux
+				.using(
+						() -> toIndexRange(indexKey),
+						indexRange -> indexDictionary.getRangeKeys(resolveSnapshot(snapshot), indexRange.retain()),
+						LLRange::release
+				)
+				.map(indexEntryKey -> {
+					try {
+						return map.deserializeSuffix(indexEntryKey.retainedSlice(indexEntryKey.readerIndex() + indexKeyLength,
+								map.keySuffixLength
+						));
+					} finally {
+						indexEntryKey.release();
+					}
+				});
+		return map
+				.getMulti(snapshot, keys, true)
+				.filter(entry -> Objects.equals(indexExtractor.apply(entry.getValue()), indexKey));
+	}
+
+	/**
+	 * Index again all the values of the map, replacing all the entries of the index dictionary.
+	 * The map must not be written until the rebuild is complete
+	 */
+	public Mono<Void> rebuild() {
+		Flux<Entry<ByteBuf, ByteBuf>> indexEntries = Flux
+				.defer(() -> map.dictionary.getRange(null, map.range().retain()))
+				.doFirst(map.range()::retain)
+				.doAfterTerminate(map.range()::release)
+				.handle((entry, sink) -> {
+					try {
+						ByteBuf indexEntryKey = llSecondaryIndex.getIndexKey(entry.getKey(), entry.getValue());
+						if (indexEntryKey != null) {
+							sink.next(Map.entry(indexEntryKey, indexDictionary.getAllocator().buffer(0)));
+						}
+					} finally {
+						entry.getKey().release();
+						entry.getValue().release();
+					}
+				});
+		return indexDictionary
+				.clear()
+				.thenMany(Flux.defer(() -> indexDictionary.putMulti(indexEntries, false)))
+				.then();
+	}
+
+	/**
+	 * Get the key of the index entry of a full key of the map. The full key is not released
+	 */
+	private ByteBuf toIndexEntryKey(I indexKey, ByteBuf key) {
+		ByteBuf indexKeyBuf = indexKeySerializer.serialize(indexKey);
+		try {
+			assert indexKeyBuf.readableBytes() == indexKeyLength;
+			assert key.readableBytes() == map.keyPrefixLength + map.keySuffixLength;
+			ByteBuf result = indexDictionary.getAllocator().directBuffer(indexKeyLength + map.keySuffixLength);
+			result.writeBytes(indexKeyBuf, indexKeyBuf.readerIndex(), indexKeyLength);
+			result.writeBytes(key, key.readerIndex() + map.keyPrefixLength, map.keySuffixLength);
+			return result;
+		} finally {
+			indexKeyBuf.release();
+		}
+	}
+
+	private LLRange toIndexRange(I indexKey) {
+		ByteBuf indexKeyBuf = indexKeySerializer.serialize(indexKey);
+		try {
+			ByteBuf first = DatabaseMapDictionaryDeep.firstRangeKey(indexDictionary.getAllocator(),
+					indexKeyBuf.retain(),
+					indexKeyLength,
+					map.keySuffixLength,
+					0
+			);
+			try {
+				ByteBuf end = DatabaseMapDictionaryDeep.nextRangeKey(indexDictionary.getAllocator(),
+						indexKeyBuf.retain(),
+						indexKeyLength,
+						map.keySuffixLength,
+						0
+				);
+				return LLRange.of(first.retain(), end);
+			} finally {
+				first.release();
+			}
+		} finally {
+			indexKeyBuf.release();
+		}
+	}
+
+	private LLSnapshot resolveSnapshot(@Nullable CompositeSnapshot snapshot) {
+		if (snapshot == null) {
+			return null;
+		} else {
+			return snapshot.getSnapshot(indexDictionary);
+		}
+	}
+}
@@ -1,35 +1,27 @@
 package it.cavallium.dbengine.database.collections;
 
+import io.netty.buffer.ByteBuf;
 import it.cavallium.dbengine.client.BadBlock;
 import it.cavallium.dbengine.client.CompositeSnapshot;
-import it.cavallium.dbengine.database.Column;
 import it.cavallium.dbengine.database.Delta;
 import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.UpdateReturnMode;
-import it.unimi.dsi.fastutil.objects.ObjectArraySet;
-import it.unimi.dsi.fastutil.objects.ObjectSets;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.Set;
-import java.util.function.BiFunction;
 import java.util.function.Function;
-import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.warp.commonutils.functional.TriFunction;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @SuppressWarnings("unused")
 public class DatabaseSingleBucket<K, V, TH> implements DatabaseStageEntry<V> {
 
-	private final DatabaseStageEntry<ObjectArraySet<Entry<K, V>>> bucketStage;
-	private final K key;
+	private final DatabaseStageEntry<ByteBuf> bucketStage;
+	private final HashedBucketSerializer<K, V> bucketSerializer;
+	private final byte[] serializedKey;
 
-	public DatabaseSingleBucket(DatabaseStageEntry<ObjectArraySet<Entry<K, V>>> bucketStage, K key) {
+	DatabaseSingleBucket(DatabaseStageEntry<ByteBuf> bucketStage, HashedBucketSerializer<K, V> bucketSerializer, K key) {
 		this.bucketStage = bucketStage;
-		this.key = key;
+		this.bucketSerializer = bucketSerializer;
+		this.serializedKey = bucketSerializer.serializeKey(key);
 	}
 
 	@Override
@@ -62,31 +54,14 @@ public class DatabaseSingleBucket<K, V, TH> implements DatabaseStageEntry<V> {
 			UpdateReturnMode updateReturnMode,
 			boolean existsAlmostCertainly) {
 		return bucketStage
-				.update(oldBucket -> {
-					V oldValue = extractValue(oldBucket);
- 					V newValue = updater.apply(oldValue);
-					
-					if (newValue == null) {
-						return this.removeValueOrDelete(oldBucket);
-					} else {
-						return this.insertValueOrCreate(oldBucket, newValue);
-					}
-				}, updateReturnMode, existsAlmostCertainly)
+				.update(oldBucket -> this.updateBucket(oldBucket, updater), updateReturnMode, existsAlmostCertainly)
 				.flatMap(this::extractValueTransformation);
 	}
 
 	@Override
 	public Mono<Delta<V>> updateAndGetDelta(Function<@Nullable V, @Nullable V> updater, boolean existsAlmostCertainly) {
 		return bucketStage
-				.updateAndGetDelta(oldBucket -> {
-					V oldValue = extractValue(oldBucket);
-					var result = updater.apply(oldValue);
-					if (result == null) {
-						return this.removeValueOrDelete(oldBucket);
-					} else {
-						return this.insertValueOrCreate(oldBucket, result);
-					}
-				}, existsAlmostCertainly)
+				.updateAndGetDelta(oldBucket -> this.updateBucket(oldBucket, updater), existsAlmostCertainly)
 				.transform(mono -> LLUtils.mapDelta(mono, this::extractValue));
 	}
 
@@ -135,61 +110,39 @@ public class DatabaseSingleBucket<K, V, TH> implements DatabaseStageEntry<V> {
 		bucketStage.release();
 	}
 
-	private Mono<V> extractValueTransformation(Set<Entry<K, V>> entries) {
-		return Mono.fromCallable(() -> extractValue(entries));
+	private Mono<V> extractValueTransformation(ByteBuf bucket) {
+		return Mono.fromCallable(() -> extractValue(bucket));
 	}
 
+	/**
+	 * Decode only the value of this key
+	 * @param bucket the serialized bucket, it will be released
+	 */
 	@Nullable
-	private V extractValue(Set<Entry<K, V>> entries) {
-		if (entries == null) return null;
-		for (Entry<K, V> entry : entries) {
-			if (Objects.equals(entry.getKey(), key)) {
-				return entry.getValue();
-			}
-		}
-		return null;
-	}
-
-	@NotNull
-	private ObjectArraySet<Entry<K, V>> insertValueOrCreate(@Nullable ObjectArraySet<Entry<K, V>> entries, V value) {
-		if (entries != null) {
-			var clonedEntries = entries.clone();
-			var it = clonedEntries.iterator();
-			while (it.hasNext()) {
-				var entry = it.next();
-				if (Objects.equals(entry.getKey(), key)) {
-					it.remove();
-					break;
-				}
-			}
-			clonedEntries.add(Map.entry(key, value));
-			return clonedEntries;
-		} else {
-			var oas = new ObjectArraySet<Entry<K, V>>(1);
-			oas.add(Map.entry(key, value));
-			return oas;
-		}
+	private V extractValue(@Nullable ByteBuf bucket) {
+		return bucketSerializer.getValue(bucket, serializedKey);
 	}
 
+	/**
+	 * Replace only the entry of this key, without decoding the other entries of the bucket
+	 * @param oldBucket the serialized bucket, it will be released
+	 */
 	@Nullable
-	private ObjectArraySet<Entry<K, V>> removeValueOrDelete(@Nullable ObjectArraySet<Entry<K, V>> entries) {
-		if (entries != null) {
-			var clonedEntries = entries.clone();
-			var it = clonedEntries.iterator();
-			while (it.hasNext()) {
-				var entry = it.next();
-				if (Objects.equals(entry.getKey(), key)) {
-					it.remove();
-					break;
-				}
-			}
-			if (clonedEntries.size() == 0) {
-				return null;
-			} else {
-				return clonedEntries;
+	private ByteBuf updateBucket(@Nullable ByteBuf oldBucket, Function<@Nullable V, @Nullable V> updater) {
+		V newValue;
+		try {
+			V oldValue = extractValue(oldBucket == null ? null : oldBucket.retain());
+			newValue = updater.apply(oldValue);
+		} catch (Throwable ex) {
+			if (oldBucket != null) {
+				oldBucket.release();
 			}
+			throw ex;
+		}
+		if (newValue == null) {
+			return bucketSerializer.removeValue(oldBucket, serializedKey);
 		} else {
-			return null;
+			return bucketSerializer.putValue(oldBucket, serializedKey, newValue);
 		}
 	}
 }
@@ -0,0 +1,118 @@
+package it.cavallium.dbengine.database.collections;
+
+import it.cavallium.dbengine.client.BadBlock;
+import it.cavallium.dbengine.client.CompositeSnapshot;
+import it.cavallium.dbengine.database.Delta;
+import it.cavallium.dbengine.database.LLUtils;
+import it.cavallium.dbengine.database.serialization.Expiring;
+import java.time.Duration;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Value that expires after a time to live. Expired values are treated as absent.
+ * Every write sets a new expiration time
+ */
+public class DatabaseSingleExpiring<U> implements DatabaseStageEntry<U> {
+
+	private final DatabaseStageEntry<Expiring<U>> expiringSingle;
+	private final Duration timeToLive;
+
+	public DatabaseSingleExpiring(DatabaseStageEntry<Expiring<U>> expiringSingle, Duration timeToLive) {
+		this.expiringSingle = expiringSingle;
+		this.timeToLive = timeToLive;
+	}
+
+	static <U> @Nullable U getIfNotExpired(@Nullable Expiring<U> expiring, long currentTimestamp) {
+		if (expiring == null || expiring.isExpired(currentTimestamp)) {
+			return null;
+		} else {
+			return expiring.value();
+		}
+	}
+
+	static <U> Expiring<U> expireAfter(U value, Duration timeToLive, long currentTimestamp) {
+		long expirationTimestamp;
+		try {
+			expirationTimestamp = Math.addExact(currentTimestamp, timeToLive.toMillis());
+		} catch (ArithmeticException ex) {
+			expirationTimestamp = Expiring.NEVER;
+		}
+		return new Expiring<>(value, expirationTimestamp);
+	}
+
+	@Override
+	public Mono<U> get(@Nullable CompositeSnapshot snapshot, boolean existsAlmostCertainly) {
+		return expiringSingle
+				.get(snapshot, existsAlmostCertainly)
+				.filter(expiring -> !expiring.isExpired(System.currentTimeMillis()))
+				.map(Expiring::value);
+	}
+
+	@Override
+	public Mono<U> setAndGetPrevious(U value) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMap(now -> expiringSingle
+						.setAndGetPrevious(expireAfter(value, timeToLive, now))
+						.filter(previous -> !previous.isExpired(now))
+						.map(Expiring::value)
+				);
+	}
+
+	@Override
+	public Mono<Delta<U>> updateAndGetDelta(Function<@Nullable U, @Nullable U> updater,
+			boolean existsAlmostCertainly) {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMap(now -> expiringSingle
+						.updateAndGetDelta(previous -> {
+							var result = updater.apply(getIfNotExpired(previous, now));
+							if (result == null) {
+								return null;
+							} else {
+								return expireAfter(result, timeToLive, now);
+							}
+						}, existsAlmostCertainly)
+						.transform(mono -> LLUtils.mapDelta(mono, expiring -> getIfNotExpired(expiring, now)))
+				);
+	}
+
+	@Override
+	public Mono<U> clearAndGetPrevious() {
+		return Mono
+				.fromCallable(System::currentTimeMillis)
+				.flatMap(now -> expiringSingle
+						.clearAndGetPrevious()
+						.filter(previous -> !previous.isExpired(now))
+						.map(Expiring::value)
+				);
+	}
+
+	@Override
+	public Mono<Long> leavesCount(@Nullable CompositeSnapshot snapshot, boolean fast) {
+		return get(snapshot).map(prev -> 1L).defaultIfEmpty(0L);
+	}
+
+	@Override
+	public Mono<Boolean> isEmpty(@Nullable CompositeSnapshot snapshot) {
+		return get(snapshot).map(prev -> false).defaultIfEmpty(true);
+	}
+
+	@Override
+	public Mono<Void> close() {
+		return expiringSingle.close();
+	}
+
+	@Override
+	public void release() {
+		expiringSingle.release();
+	}
+
+	@Override
+	public Flux<BadBlock> badBlocks() {
+		return expiringSingle.badBlocks();
+	}
+}
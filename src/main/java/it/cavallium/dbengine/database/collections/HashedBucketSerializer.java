@@ -0,0 +1,436 @@
+package it.cavallium.dbengine.database.collections;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import it.cavallium.dbengine.database.LLUtils;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.ObjectArraySet;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Serializer of the buckets of a hashed map.
+ *
+ * A bucket is made of an header and the entries:
+ * <pre>
+ * byte format
+ * int entriesCount
+ * entriesCount * { int keyHash, int entryOffset }   sorted by keyHash
+ * entriesCount * { int keyLength, key, int valueLength, value }
+ * </pre>
+ * The entry offsets are relative to the beginning of the bucket. The key hash is computed on the serialized key,
+ * so a single entry can be found with a binary search on the header and decoded without decoding the other entries.
+ * The entries can be replaced, added or removed by copying the bytes of the other entries, and a value with the same
+ * serialized length of the previous one (for example a value with a fixed length) is patched in place.
+ *
+ * The buckets written before this format start with the int entries count, so their first byte is always 0,
+ * followed by the entries serialized one after the other. They are still readable, and they are converted to this
+ * format when they are modified
+ */
+class HashedBucketSerializer<K, V> implements Serializer<ObjectArraySet<Entry<K, V>>, ByteBuf> {
+
+	private static final int HEADER_ENTRY_SIZE = Integer.BYTES * 2;
+	/**
+	 * First byte of the buckets written before the sorted hashes format
+	 */
+	private static final byte FORMAT_LEGACY = 0;
+	private static final byte FORMAT_SORTED_HASHES = 1;
+	private static final int FORMAT_SIZE = Byte.BYTES;
+
+	private final ByteBufAllocator allocator;
+	private final Serializer<K, ByteBuf> keySerializer;
+	private final Serializer<V, ByteBuf> valueSerializer;
+
+	HashedBucketSerializer(ByteBufAllocator allocator,
+			Serializer<K, ByteBuf> keySerializer,
+			Serializer<V, ByteBuf> valueSerializer) {
+		this.allocator = allocator;
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+	}
+
+	@Override
+	public @NotNull ObjectArraySet<Entry<K, V>> deserialize(@NotNull ByteBuf serialized) {
+		if (isLegacyOrRelease(serialized)) {
+			return deserializeLegacy(serialized);
+		}
+		try {
+			int start = serialized.readerIndex();
+			int entriesCount = getEntriesCount(serialized, start);
+			var entries = new ObjectArraySet<Entry<K, V>>(entriesCount);
+			for (int i = 0; i < entriesCount; i++) {
+				int entryOffset = start + getEntryOffset(serialized, start, i);
+				int keyLength = serialized.getInt(entryOffset);
+				int valueOffset = entryOffset + Integer.BYTES + keyLength;
+				K key = keySerializer.deserialize(serialized.retainedSlice(entryOffset + Integer.BYTES, keyLength));
+				V value = valueSerializer.deserialize(serialized.retainedSlice(valueOffset + Integer.BYTES,
+						serialized.getInt(valueOffset)
+				));
+				entries.add(Map.entry(key, value));
+			}
+			serialized.readerIndex(serialized.writerIndex());
+			return entries;
+		} finally {
+			serialized.release();
+		}
+	}
+
+	/**
+	 * Decode a bucket written before the sorted hashes format, where the keys and the values are read one after
+	 * the other by their serializers
+	 * @param serialized the bucket, it will be released
+	 */
+	private ObjectArraySet<Entry<K, V>> deserializeLegacy(ByteBuf serialized) {
+		try {
+			int entriesCount = serialized.readInt();
+			var entries = new ObjectArraySet<Entry<K, V>>(entriesCount);
+			for (int i = 0; i < entriesCount; i++) {
+				K key = keySerializer.deserialize(serialized.retain());
+				V value = valueSerializer.deserialize(serialized.retain());
+				entries.add(Map.entry(key, value));
+			}
+			return entries;
+		} finally {
+			serialized.release();
+		}
+	}
+
+	/**
+	 * @return true if the bucket has been written before the sorted hashes format
+	 * @throws IllegalStateException if the format of the bucket is unknown. The bucket is released
+	 */
+	private static boolean isLegacyOrRelease(ByteBuf bucket) {
+		byte format = bucket.getByte(bucket.readerIndex());
+		if (format == FORMAT_SORTED_HASHES) {
+			return false;
+		} else if (format == FORMAT_LEGACY) {
+			return true;
+		} else {
+			bucket.release();
+			throw new IllegalStateException("Unknown hashed bucket format: " + format);
+		}
+	}
+
+	/**
+	 * Convert a bucket written before the sorted hashes format
+	 * @param bucket the bucket, it will be released
+	 * @return the bucket in the sorted hashes format
+	 */
+	private ByteBuf upgrade(ByteBuf bucket) {
+		if (isLegacyOrRelease(bucket)) {
+			return serialize(deserializeLegacy(bucket));
+		} else {
+			return bucket;
+		}
+	}
+
+	@Override
+	public @NotNull ByteBuf serialize(@NotNull ObjectArraySet<Entry<K, V>> deserialized) {
+		int entriesCount = deserialized.size();
+		int[] hashes = new int[entriesCount];
+		ByteBuf[] entries = new ByteBuf[entriesCount];
+		int i = 0;
+		try {
+			for (Entry<K, V> entry : deserialized) {
+				ByteBuf key = keySerializer.serialize(entry.getKey());
+				try {
+					ByteBuf value = valueSerializer.serialize(entry.getValue());
+					hashes[i] = hash(key, key.readerIndex(), key.readableBytes());
+					entries[i] = serializeEntry(key.retain(), value);
+				} finally {
+					key.release();
+				}
+				i++;
+			}
+		} catch (Throwable ex) {
+			for (int j = 0; j < i; j++) {
+				entries[j].release();
+			}
+			throw ex;
+		}
+		return writeBucket(hashes, entries);
+	}
+
+	/**
+	 * Serialize a key to the format used to search it in a bucket
+	 */
+	public byte[] serializeKey(K key) {
+		ByteBuf serializedKey = keySerializer.serialize(key);
+		try {
+			return LLUtils.toArray(serializedKey);
+		} finally {
+			serializedKey.release();
+		}
+	}
+
+	/**
+	 * Decode only the value of a key
+	 * @param bucket the bucket, it will be released
+	 * @param key the serialized key
+	 * @return the value, or null if the key is not in the bucket
+	 */
+	public @Nullable V getValue(@Nullable ByteBuf bucket, byte[] key) {
+		if (bucket == null) {
+			return null;
+		}
+		bucket = upgrade(bucket);
+		try {
+			int start = bucket.readerIndex();
+			int entryOffset = findEntry(bucket, key);
+			if (entryOffset == -1) {
+				return null;
+			}
+			int valueOffset = start + entryOffset + Integer.BYTES + key.length;
+			return valueSerializer.deserialize(bucket.retainedSlice(valueOffset + Integer.BYTES,
+					bucket.getInt(valueOffset)
+			));
+		} finally {
+			bucket.release();
+		}
+	}
+
+	/**
+	 * Set the value of a key, keeping the other entries untouched
+	 * @param bucket the previous bucket, it will be released
+	 * @param key the serialized key
+	 * @param value the new value
+	 * @return the new bucket
+	 */
+	public @NotNull ByteBuf putValue(@Nullable ByteBuf bucket, byte[] key, V value) {
+		if (bucket != null) {
+			bucket = upgrade(bucket);
+		}
+		ByteBuf serializedValue = valueSerializer.serialize(value);
+		try {
+			if (bucket == null) {
+				return writeBucket(new int[] {hash(key)},
+						new ByteBuf[] {serializeEntry(allocator.buffer(key.length).writeBytes(key), serializedValue.retain())}
+				);
+			}
+			int start = bucket.readerIndex();
+			int entryOffset = findEntry(bucket, key);
+			if (entryOffset != -1) {
+				int valueOffset = start + entryOffset + Integer.BYTES + key.length;
+				if (bucket.getInt(valueOffset) == serializedValue.readableBytes()) {
+					// The value has the same length, overwrite it without moving the other entries
+					ByteBuf patched = allocator.buffer(bucket.readableBytes());
+					try {
+						patched.writeBytes(bucket, start, bucket.readableBytes());
+						patched.setBytes(valueOffset - start + Integer.BYTES,
+								serializedValue,
+								serializedValue.readerIndex(),
+								serializedValue.readableBytes()
+						);
+						return patched.retain();
+					} finally {
+						patched.release();
+					}
+				}
+			}
+			return rebuildBucket(bucket.retain(),
+					entryOffset,
+					hash(key),
+					serializeEntry(allocator.buffer(key.length).writeBytes(key), serializedValue.retain())
+			);
+		} finally {
+			serializedValue.release();
+			if (bucket != null) {
+				bucket.release();
+			}
+		}
+	}
+
+	/**
+	 * Remove a key, keeping the other entries untouched
+	 * @param bucket the previous bucket, it will be released
+	 * @param key the serialized key
+	 * @return the new bucket, or null if the bucket is empty
+	 */
+	public @Nullable ByteBuf removeValue(@Nullable ByteBuf bucket, byte[] key) {
+		if (bucket == null) {
+			return null;
+		}
+		bucket = upgrade(bucket);
+		try {
+			int entryOffset = findEntry(bucket, key);
+			if (entryOffset == -1) {
+				return bucket.retain();
+			}
+			if (getEntriesCount(bucket, bucket.readerIndex()) == 1) {
+				return null;
+			}
+			return rebuildBucket(bucket.retain(), entryOffset, 0, null);
+		} finally {
+			bucket.release();
+		}
+	}
+
+	/**
+	 * @return the offset of the entry, relative to the beginning of the bucket, or -1 if the key is missing
+	 */
+	private static int findEntry(ByteBuf bucket, byte[] key) {
+		int start = bucket.readerIndex();
+		int entriesCount = getEntriesCount(bucket, start);
+		int keyHash = hash(key);
+		// Find the first entry with this hash
+		int low = 0;
+		int high = entriesCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getHash(bucket, start, mid) < keyHash) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		// Compare the keys of all the entries with the same hash
+		for (int i = low; i < entriesCount && getHash(bucket, start, i) == keyHash; i++) {
+			int entryOffset = getEntryOffset(bucket, start, i);
+			if (keyEquals(bucket, start + entryOffset, key)) {
+				return entryOffset;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean keyEquals(ByteBuf bucket, int entryIndex, byte[] key) {
+		if (bucket.getInt(entryIndex) != key.length) {
+			return false;
+		}
+		int keyIndex = entryIndex + Integer.BYTES;
+		for (int i = 0; i < key.length; i++) {
+			if (bucket.getByte(keyIndex + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the entries of a bucket, replacing or removing one entry
+	 * @param bucket the previous bucket, it will be released
+	 * @param replacedEntryOffset the offset of the entry to remove, or -1
+	 * @param newEntry the entry to add, or null. It will be released
+	 */
+	private ByteBuf rebuildBucket(ByteBuf bucket, int replacedEntryOffset, int newEntryHash, @Nullable ByteBuf newEntry) {
+		try {
+			int start = bucket.readerIndex();
+			int previousCount = getEntriesCount(bucket, start);
+			int entriesCount = previousCount + (replacedEntryOffset == -1 ? 0 : -1) + (newEntry == null ? 0 : 1);
+			int[] hashes = new int[entriesCount];
+			ByteBuf[] entries = new ByteBuf[entriesCount];
+			int entriesDataEnd = start + bucket.readableBytes();
+			int i = 0;
+			for (int j = 0; j < previousCount; j++) {
+				int entryOffset = getEntryOffset(bucket, start, j);
+				if (entryOffset == replacedEntryOffset) {
+					continue;
+				}
+				int entryIndex = start + entryOffset;
+				int keyLength = bucket.getInt(entryIndex);
+				int valueOffset = entryIndex + Integer.BYTES + keyLength;
+				int entryLength = valueOffset + Integer.BYTES + bucket.getInt(valueOffset) - entryIndex;
+				assert entryIndex + entryLength <= entriesDataEnd;
+				hashes[i] = getHash(bucket, start, j);
+				entries[i] = bucket.retainedSlice(entryIndex, entryLength);
+				i++;
+			}
+			if (newEntry != null) {
+				hashes[i] = newEntryHash;
+				entries[i] = newEntry.retain();
+			}
+			return writeBucket(hashes, entries);
+		} finally {
+			bucket.release();
+			if (newEntry != null) {
+				newEntry.release();
+			}
+		}
+	}
+
+	/**
+	 * @param entries serialized entries, they will be released
+	 */
+	private ByteBuf writeBucket(int[] hashes, ByteBuf[] entries) {
+		int entriesCount = entries.length;
+		int[] order = new int[entriesCount];
+		int size = FORMAT_SIZE + Integer.BYTES + entriesCount * HEADER_ENTRY_SIZE;
+		for (int i = 0; i < entriesCount; i++) {
+			order[i] = i;
+			size += entries[i].readableBytes();
+		}
+		IntArrays.quickSort(order, (a, b) -> Integer.compare(hashes[a], hashes[b]));
+		ByteBuf output = allocator.buffer(size);
+		try {
+			output.writeByte(FORMAT_SORTED_HASHES);
+			output.writeInt(entriesCount);
+			int entryOffset = FORMAT_SIZE + Integer.BYTES + entriesCount * HEADER_ENTRY_SIZE;
+			for (int i : order) {
+				output.writeInt(hashes[i]);
+				output.writeInt(entryOffset);
+				entryOffset += entries[i].readableBytes();
+			}
+			for (int i : order) {
+				output.writeBytes(entries[i], entries[i].readerIndex(), entries[i].readableBytes());
+			}
+			return output.retain();
+		} finally {
+			output.release();
+			for (ByteBuf entry : entries) {
+				entry.release();
+			}
+		}
+	}
+
+	/**
+	 * @param key serialized key, it will be released
+	 * @param value serialized value, it will be released
+	 */
+	private ByteBuf serializeEntry(ByteBuf key, ByteBuf value) {
+		try {
+			ByteBuf entry = allocator.buffer(Integer.BYTES * 2 + key.readableBytes() + value.readableBytes());
+			entry.writeInt(key.readableBytes());
+			entry.writeBytes(key, key.readerIndex(), key.readableBytes());
+			entry.writeInt(value.readableBytes());
+			entry.writeBytes(value, value.readerIndex(), value.readableBytes());
+			return entry;
+		} finally {
+			key.release();
+			value.release();
+		}
+	}
+
+	private static int getEntriesCount(ByteBuf bucket, int start) {
+		return bucket.getInt(start + FORMAT_SIZE);
+	}
+
+	private static int getHash(ByteBuf bucket, int start, int entry) {
+		return bucket.getInt(start + FORMAT_SIZE + Integer.BYTES + entry * HEADER_ENTRY_SIZE);
+	}
+
+	private static int getEntryOffset(ByteBuf bucket, int start, int entry) {
+		return bucket.getInt(start + FORMAT_SIZE + Integer.BYTES + entry * HEADER_ENTRY_SIZE + Integer.BYTES);
+	}
+
+	/**
+	 * Hash of a serialized key. It's stored in the database, so it must never change
+	 */
+	private static int hash(ByteBuf key, int index, int length) {
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + key.getByte(index + i);
+		}
+		return hash;
+	}
+
+	private static int hash(byte[] key) {
+		int hash = 1;
+		for (byte b : key) {
+			hash = 31 * hash + b;
+		}
+		return hash;
+	}
+}
@@ -1,10 +1,13 @@
 package it.cavallium.dbengine.database.collections;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.client.CompositeSnapshot;
 import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLUtils;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map.Entry;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -19,4 +22,31 @@ public interface SubStageGetter<U, US extends DatabaseStage<U>> {
 	boolean isMultiKey();
 
 	boolean needsDebuggingKeyFlux();
+
+	/**
+	 * @return true if the values of the sub-stages can be converted directly from and to their dictionary entries,
+	 * using {@link #serializeEntries} and {@link #deserializeEntries}, without creating the sub-stages
+	 */
+	default boolean supportsEntriesSerialization() {
+		return false;
+	}
+
+	/**
+	 * Serialize a value into all the entries of its sub-stage
+	 * @param prefixKey key prefix of the sub-stage
+	 */
+	default List<Entry<ByteBuf, ByteBuf>> serializeEntries(ByteBufAllocator alloc, ByteBuf prefixKey, U value) {
+		prefixKey.release();
+		throw new UnsupportedOperationException("Entries serialization is not supported");
+	}
+
+	/**
+	 * Deserialize a value from all the entries of its sub-stage, sorted by key. The entries are released
+	 * @param prefixLength length of the key prefix of the sub-stage
+	 * @return null if the sub-stage doesn't have a value
+	 */
+	default @Nullable U deserializeEntries(int prefixLength, List<Entry<ByteBuf, ByteBuf>> entries) {
+		LLUtils.releaseEntries(entries);
+		throw new UnsupportedOperationException("Entries serialization is not supported");
+	}
 }
@@ -1,13 +1,18 @@
 package it.cavallium.dbengine.database.collections;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.util.ReferenceCounted;
 import it.cavallium.dbengine.client.CompositeSnapshot;
 import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.serialization.Serializer;
 import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -80,6 +85,51 @@ public class SubStageGetterMap<T, U> implements SubStageGetter<Map<T, U>, Databa
 		return assertsEnabled && enableAssertionsWhenUsingAssertions;
 	}
 
+	@Override
+	public boolean supportsEntriesSerialization() {
+		return true;
+	}
+
+	@Override
+	public List<Entry<ByteBuf, ByteBuf>> serializeEntries(ByteBufAllocator alloc, ByteBuf prefixKey, Map<T, U> value) {
+		try {
+			var entries = new ArrayList<Entry<ByteBuf, ByteBuf>>(value.size());
+			try {
+				for (Entry<T, U> entry : value.entrySet()) {
+					ByteBuf key = LLUtils.compositeBuffer(alloc, prefixKey.retain(), keySerializer.serialize(entry.getKey()));
+					try {
+						entries.add(Map.entry(key.retain(), valueSerializer.serialize(entry.getValue())));
+					} finally {
+						key.release();
+					}
+				}
+			} catch (Throwable ex) {
+				LLUtils.releaseEntries(entries);
+				throw ex;
+			}
+			return entries;
+		} finally {
+			prefixKey.release();
+		}
+	}
+
+	@Override
+	public @Nullable Map<T, U> deserializeEntries(int prefixLength, List<Entry<ByteBuf, ByteBuf>> entries) {
+		try {
+			// Like DatabaseMapDictionaryDeep.get, return an empty map if there are no entries
+			var map = new HashMap<T, U>(entries.size());
+			for (Entry<ByteBuf, ByteBuf> entry : entries) {
+				ByteBuf key = entry.getKey();
+				map.put(keySerializer.deserialize(key.retainedSlice(key.readerIndex() + prefixLength, getKeyBinaryLength())),
+						valueSerializer.deserialize(entry.getValue().retain())
+				);
+			}
+			return map;
+		} finally {
+			LLUtils.releaseEntries(entries);
+		}
+	}
+
 	private Mono<Void> checkKeyFluxConsistency(ByteBuf prefixKey, List<ByteBuf> keys) {
 		return Mono
 				.fromCallable(() -> {
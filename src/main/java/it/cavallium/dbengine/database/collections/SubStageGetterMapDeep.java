@@ -1,12 +1,18 @@
 package it.cavallium.dbengine.database.collections;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.ReferenceCounted;
 import it.cavallium.dbengine.client.CompositeSnapshot;
 import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -95,6 +101,66 @@ public class SubStageGetterMapDeep<T, U, US extends DatabaseStage<U>> implements
 		return assertsEnabled && enableAssertionsWhenUsingAssertions;
 	}
 
+	@Override
+	public boolean supportsEntriesSerialization() {
+		return subStageGetter.supportsEntriesSerialization();
+	}
+
+	@Override
+	public List<Entry<ByteBuf, ByteBuf>> serializeEntries(ByteBufAllocator alloc, ByteBuf prefixKey, Map<T, U> value) {
+		try {
+			var entries = new ArrayList<Entry<ByteBuf, ByteBuf>>(value.size());
+			try {
+				for (Entry<T, U> entry : value.entrySet()) {
+					ByteBuf subStagePrefixKey = LLUtils.compositeBuffer(alloc,
+							prefixKey.retain(),
+							keySerializer.serialize(entry.getKey())
+					);
+					entries.addAll(subStageGetter.serializeEntries(alloc, subStagePrefixKey, entry.getValue()));
+				}
+			} catch (Throwable ex) {
+				LLUtils.releaseEntries(entries);
+				throw ex;
+			}
+			return entries;
+		} finally {
+			prefixKey.release();
+		}
+	}
+
+	@Override
+	public @Nullable Map<T, U> deserializeEntries(int prefixLength, List<Entry<ByteBuf, ByteBuf>> entries) {
+		int keyLength = keySerializer.getSerializedBinaryLength();
+		var map = new HashMap<T, U>();
+		int groupStart = 0;
+		try {
+			// The entries are sorted, so the entries of each sub-stage are contiguous
+			while (groupStart < entries.size()) {
+				ByteBuf groupKey = entries.get(groupStart).getKey();
+				int groupEnd = groupStart + 1;
+				while (groupEnd < entries.size() && ByteBufUtil.equals(groupKey,
+						groupKey.readerIndex() + prefixLength,
+						entries.get(groupEnd).getKey(),
+						entries.get(groupEnd).getKey().readerIndex() + prefixLength,
+						keyLength
+				)) {
+					groupEnd++;
+				}
+				T key = keySerializer.deserialize(groupKey.retainedSlice(groupKey.readerIndex() + prefixLength, keyLength));
+				var group = entries.subList(groupStart, groupEnd);
+				groupStart = groupEnd;
+				U value = subStageGetter.deserializeEntries(prefixLength + keyLength, group);
+				if (value != null) {
+					map.put(key, value);
+				}
+			}
+			// Like DatabaseMapDictionaryDeep.get, return an empty map if there are no entries
+			return map;
+		} finally {
+			LLUtils.releaseEntries(entries.subList(groupStart, entries.size()));
+		}
+	}
+
 	private Mono<Void> checkKeyFluxConsistency(ByteBuf prefixKey, List<ByteBuf> keys) {
 		return Mono
 				.fromCallable(() -> {
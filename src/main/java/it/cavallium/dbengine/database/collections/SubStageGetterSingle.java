@@ -1,12 +1,15 @@
 package it.cavallium.dbengine.database.collections;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.client.CompositeSnapshot;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.serialization.Serializer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -64,9 +67,40 @@ public class SubStageGetterSingle<T> implements SubStageGetter<T, DatabaseStageE
 		return false;
 	}
 
+	public Serializer<T, ByteBuf> getSerializer() {
+		return serializer;
+	}
+
 	@Override
 	public boolean needsDebuggingKeyFlux() {
 		return assertsEnabled;
 	}
 
+	@Override
+	public boolean supportsEntriesSerialization() {
+		return true;
+	}
+
+	@Override
+	public List<Entry<ByteBuf, ByteBuf>> serializeEntries(ByteBufAllocator alloc, ByteBuf prefixKey, T value) {
+		try {
+			return List.of(Map.entry(prefixKey.retain(), serializer.serialize(value)));
+		} finally {
+			prefixKey.release();
+		}
+	}
+
+	@Override
+	public @Nullable T deserializeEntries(int prefixLength, List<Entry<ByteBuf, ByteBuf>> entries) {
+		try {
+			if (entries.isEmpty()) {
+				return null;
+			}
+			assert entries.size() == 1;
+			return serializer.deserialize(entries.get(0).getValue().retain());
+		} finally {
+			LLUtils.releaseEntries(entries);
+		}
+	}
+
 }
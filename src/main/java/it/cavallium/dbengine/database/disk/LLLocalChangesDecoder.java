@@ -0,0 +1,153 @@
+package it.cavallium.dbengine.database.disk;
+
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+
+import it.cavallium.dbengine.database.Column;
+import it.cavallium.dbengine.database.LLChange;
+import it.cavallium.dbengine.database.LLChangeType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+
+/**
+ * Decode the operations of a write batch read from the WAL.
+ * Every key operation of a batch has its own sequence number, starting from the sequence number of the batch
+ */
+class LLLocalChangesDecoder extends WriteBatch.Handler {
+
+	private static final Column DEFAULT_COLUMN = Column.special(Column.toString(RocksDB.DEFAULT_COLUMN_FAMILY));
+	/**
+	 * Length of the timestamp that TtlDB writes after every value
+	 */
+	private static final int TTL_TIMESTAMP_LENGTH = Integer.BYTES;
+
+	private final Map<Integer, Column> columnsById;
+	private final long fromSequenceNumber;
+	private final boolean ttlTimestamps;
+	private final List<LLChange> changes = new ArrayList<>();
+	private long sequenceNumber;
+
+	/**
+	 * @param fromSequenceNumber skip the changes before this sequence number
+	 * @param ttlTimestamps true if the values are followed by the timestamp of TtlDB
+	 */
+	private LLLocalChangesDecoder(Map<Integer, Column> columnsById,
+			long batchSequenceNumber,
+			long fromSequenceNumber,
+			boolean ttlTimestamps) {
+		this.columnsById = columnsById;
+		this.sequenceNumber = batchSequenceNumber;
+		this.fromSequenceNumber = fromSequenceNumber;
+		this.ttlTimestamps = ttlTimestamps;
+	}
+
+	public static List<LLChange> decode(Map<Integer, Column> columnsById,
+			long batchSequenceNumber,
+			WriteBatch writeBatch,
+			long fromSequenceNumber,
+			boolean ttlTimestamps) throws RocksDBException {
+		var decoder = new LLLocalChangesDecoder(columnsById, batchSequenceNumber, fromSequenceNumber, ttlTimestamps);
+		writeBatch.iterate(decoder);
+		return decoder.changes;
+	}
+
+	private void addChange(int columnFamilyId, LLChangeType type, byte[] key, byte[] value) {
+		long changeSequenceNumber = sequenceNumber++;
+		if (changeSequenceNumber < fromSequenceNumber) {
+			return;
+		}
+		changes.add(new LLChange(changeSequenceNumber,
+				type,
+				columnsById.getOrDefault(columnFamilyId, DEFAULT_COLUMN),
+				wrappedBuffer(key),
+				value != null ? wrappedBuffer(value) : null
+		));
+	}
+
+	@Override
+	public void put(int columnFamilyId, byte[] key, byte[] value) {
+		if (ttlTimestamps && value.length >= TTL_TIMESTAMP_LENGTH) {
+			value = Arrays.copyOf(value, value.length - TTL_TIMESTAMP_LENGTH);
+		}
+		addChange(columnFamilyId, LLChangeType.PUT, key, value);
+	}
+
+	@Override
+	public void put(byte[] key, byte[] value) {
+		put(0, key, value);
+	}
+
+	@Override
+	public void merge(int columnFamilyId, byte[] key, byte[] value) {
+		// Merge operators are not used, the sequence number is consumed anyway
+		sequenceNumber++;
+	}
+
+	@Override
+	public void merge(byte[] key, byte[] value) {
+		merge(0, key, value);
+	}
+
+	@Override
+	public void delete(int columnFamilyId, byte[] key) {
+		addChange(columnFamilyId, LLChangeType.DELETE, key, null);
+	}
+
+	@Override
+	public void delete(byte[] key) {
+		delete(0, key);
+	}
+
+	@Override
+	public void singleDelete(int columnFamilyId, byte[] key) {
+		addChange(columnFamilyId, LLChangeType.DELETE, key, null);
+	}
+
+	@Override
+	public void singleDelete(byte[] key) {
+		singleDelete(0, key);
+	}
+
+	@Override
+	public void deleteRange(int columnFamilyId, byte[] beginKey, byte[] endKey) {
+		addChange(columnFamilyId, LLChangeType.DELETE_RANGE, beginKey, endKey);
+	}
+
+	@Override
+	public void deleteRange(byte[] beginKey, byte[] endKey) {
+		deleteRange(0, beginKey, endKey);
+	}
+
+	@Override
+	public void logData(byte[] blob) {
+	}
+
+	@Override
+	public void putBlobIndex(int columnFamilyId, byte[] key, byte[] value) {
+		sequenceNumber++;
+	}
+
+	@Override
+	public void markBeginPrepare() {
+	}
+
+	@Override
+	public void markEndPrepare(byte[] xid) {
+	}
+
+	@Override
+	public void markNoop(boolean emptyBatch) {
+	}
+
+	@Override
+	public void markRollback(byte[] xid) {
+	}
+
+	@Override
+	public void markCommit(byte[] xid) {
+	}
+}
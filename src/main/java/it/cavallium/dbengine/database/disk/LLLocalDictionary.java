@@ -12,6 +12,8 @@ import it.cavallium.dbengine.database.KeyOperationResult;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLDictionaryResultType;
 import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLSecondaryIndex;
+import it.cavallium.dbengine.database.LLSecondaryIndexes;
 import it.cavallium.dbengine.database.LLSnapshot;
 import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.RepeatedElementList;
@@ -35,6 +37,7 @@ import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -147,6 +150,18 @@ public class LLLocalDictionary implements LLDictionary {
 	private final String getRangeMultiDebugName;
 	private final String getRangeKeysMultiDebugName;
 	private final DatabaseOptions databaseOptions;
+	@Nullable
+	private final LLLocalValueCache valueCache;
+	@Nullable
+	private final LLLocalQueueHints queueHints;
+	/**
+	 * Serializes the polls of the column, so the same head can't be polled twice
+	 */
+	private final ReentrantLock pollLock;
+	/**
+	 * Secondary indexes of the column, shared by all its dictionaries
+	 */
+	private final LLSecondaryIndexes secondaryIndexes;
 
 	public LLLocalDictionary(
 			ByteBufAllocator allocator,
@@ -157,7 +172,11 @@ public class LLLocalDictionary implements LLDictionary {
 			Scheduler dbScheduler,
 			Function<LLSnapshot, Snapshot> snapshotResolver,
 			UpdateMode updateMode,
-			DatabaseOptions databaseOptions) {
+			DatabaseOptions databaseOptions,
+			@Nullable LLLocalValueCache valueCache,
+			@Nullable LLLocalQueueHints queueHints,
+			ReentrantLock pollLock,
+			LLSecondaryIndexes secondaryIndexes) {
 		Objects.requireNonNull(db);
 		this.db = db;
 		Objects.requireNonNull(columnFamilyHandle);
@@ -170,6 +189,10 @@ public class LLLocalDictionary implements LLDictionary {
 		this.getRangeMultiDebugName = databaseName + "(" + columnName + ")" + "::getRangeMulti";
 		this.getRangeKeysMultiDebugName = databaseName + "(" + columnName + ")" + "::getRangeKeysMulti";
 		this.databaseOptions = databaseOptions;
+		this.valueCache = valueCache;
+		this.queueHints = queueHints;
+		this.pollLock = Objects.requireNonNull(pollLock);
+		this.secondaryIndexes = Objects.requireNonNull(secondaryIndexes);
 		alloc = allocator;
 	}
 
@@ -182,8 +205,29 @@ public class LLLocalDictionary implements LLDictionary {
 		return columnName;
 	}
 
+	/**
+	 * Get the read options of a point read. They must be closed in the same thread, after the read
+	 */
+	private PooledReadOptions acquireReadOptions(@Nullable LLSnapshot snapshot) {
+		return PooledReadOptions.acquire(resolveRocksSnapshot(snapshot));
+	}
+
+	/**
+	 * Get the read options of a short iteration, with the bounds of the range already set.
+	 * They must be closed in the same thread, after the iteration
+	 */
+	private PooledReadOptions acquireReadOptions(@Nullable LLSnapshot snapshot, LLRange range) {
+		return PooledReadOptions.acquire(resolveRocksSnapshot(snapshot), range);
+	}
+
+	@Nullable
+	private Snapshot resolveRocksSnapshot(@Nullable LLSnapshot snapshot) {
+		return snapshot != null ? snapshotResolver.apply(snapshot) : null;
+	}
+
 	/**
 	 * Please don't modify the returned ReadOptions! If you want to modify it, wrap it into a new ReadOptions!
+	 * Use {@link #acquireReadOptions(LLSnapshot)} for reads that don't leave the current thread
 	 */
 	private ReadOptions resolveSnapshot(LLSnapshot snapshot) {
 		if (snapshot != null) {
@@ -256,7 +300,14 @@ public class LLLocalDictionary implements LLDictionary {
 							if (logger.isTraceEnabled()) {
 								logger.trace("Reading {}", LLUtils.toStringSafe(key));
 							}
-							return dbGet(cfh, resolveSnapshot(snapshot), key.retain(), existsAlmostCertainly);
+							// Snapshot reads are never cached
+							if (valueCache != null && snapshot == null) {
+								return cachedDbGet(key.retain(), existsAlmostCertainly);
+							} else {
+								try (var readOptions = acquireReadOptions(snapshot)) {
+									return dbGet(cfh, readOptions.readOptions(), key.retain(), existsAlmostCertainly);
+								}
+							}
 						} finally {
 							if (updateMode == UpdateMode.ALLOW) {
 								lock.unlockRead(stamp);
@@ -272,6 +323,35 @@ public class LLLocalDictionary implements LLDictionary {
 		}
 	}
 
+	private ByteBuf cachedDbGet(ByteBuf key, boolean existsAlmostCertainly) throws RocksDBException {
+		try {
+			assert valueCache != null;
+			byte[] cachedValue = valueCache.get(key);
+			if (cachedValue == LLLocalValueCache.MISSING) {
+				return null;
+			} else if (cachedValue != null) {
+				// The cached array is shared, so copy it into the same kind of buffer returned by dbGet
+				if (databaseOptions.allowNettyDirect() && key.isDirect()) {
+					ByteBuf result = alloc.directBuffer(cachedValue.length, cachedValue.length);
+					result.writeBytes(cachedValue);
+					return result;
+				} else {
+					return wrappedBuffer(cachedValue.clone());
+				}
+			}
+			long version = valueCache.getVersion(key);
+			ByteBuf result = dbGet(cfh, null, key.retain(), existsAlmostCertainly);
+			if (result != null) {
+				valueCache.put(key, version, LLUtils.toArray(result));
+			} else {
+				valueCache.putMissing(key, version);
+			}
+			return result;
+		} finally {
+			key.release();
+		}
+	}
+
 	private ByteBuf dbGet(ColumnFamilyHandle cfh,
 			@Nullable ReadOptions readOptions,
 			ByteBuf key,
@@ -279,8 +359,15 @@ public class LLLocalDictionary implements LLDictionary {
 		try {
 			if (databaseOptions.allowNettyDirect() && key.isDirect()) {
 
-				//todo: implement keyMayExist if existsAlmostCertainly is false.
-				// Unfortunately it's not feasible until RocksDB implements keyMayExist with buffers
+				// RocksDB doesn't implement keyMayExist with buffers, so the key is copied into an array.
+				// Copying the key is much cheaper than a full read if the bloom filter excludes it
+				if (!existsAlmostCertainly && !db.keyMayExist(cfh,
+						Objects.requireNonNullElse(readOptions, EMPTY_READ_OPTIONS),
+						LLUtils.toArray(key),
+						null
+				)) {
+					return null;
+				}
 
 				// Create the key nio buffer to pass to RocksDB
 				if (!key.isDirect()) {
@@ -412,6 +499,10 @@ public class LLLocalDictionary implements LLDictionary {
 			} else {
 				db.put(cfh, Objects.requireNonNullElse(writeOptions, EMPTY_WRITE_OPTIONS), LLUtils.toArray(key), LLUtils.toArray(value));
 			}
+			if (valueCache != null) {
+				valueCache.invalidate(key);
+			}
+			onKeyWritten(key);
 		} finally {
 			key.release();
 			value.release();
@@ -441,27 +532,10 @@ public class LLLocalDictionary implements LLDictionary {
 		try {
 			return Mono
 					.fromCallable(() -> {
-						try (var readOpts = new ReadOptions(resolveSnapshot(snapshot))) {
+						try (var pooledReadOpts = acquireReadOptions(snapshot, range)) {
+							var readOpts = pooledReadOpts.readOptions();
 							readOpts.setVerifyChecksums(VERIFY_CHECKSUMS_WHEN_NOT_NEEDED);
 							readOpts.setFillCache(false);
-							if (range.hasMin()) {
-								if (databaseOptions.allowNettyDirect() && range.getMin().isDirect()) {
-									readOpts.setIterateLowerBound(new DirectSlice(Objects.requireNonNull(LLUtils.toDirect(range.getMin()),
-											"This range must use direct buffers"
-									)));
-								} else {
-									readOpts.setIterateLowerBound(new Slice(LLUtils.toArray(range.getMin())));
-								}
-							}
-							if (range.hasMax()) {
-								if (databaseOptions.allowNettyDirect() && range.getMax().isDirect()) {
-									readOpts.setIterateUpperBound(new DirectSlice(Objects.requireNonNull(LLUtils.toDirect(range.getMax()),
-											"This range must use direct buffers"
-									)));
-								} else {
-									readOpts.setIterateUpperBound(new Slice(LLUtils.toArray(range.getMax())));
-								}
-							}
 							try (RocksIterator rocksIterator = db.newIterator(cfh, readOpts)) {
 								if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
 									if (databaseOptions.allowNettyDirect() && range.getMin().isDirect()) {
@@ -506,12 +580,14 @@ public class LLLocalDictionary implements LLDictionary {
 							int size = RocksDB.NOT_FOUND;
 							byte[] keyBytes = LLUtils.toArray(key);
 							Holder<byte[]> data = new Holder<>();
-							var unmodifiableReadOpts = resolveSnapshot(snapshot);
-							if (db.keyMayExist(cfh, unmodifiableReadOpts, keyBytes, data)) {
-								if (data.getValue() != null) {
-									size = data.getValue().length;
-								} else {
-									size = db.get(cfh, unmodifiableReadOpts, keyBytes, NO_DATA);
+							try (var pooledReadOpts = acquireReadOptions(snapshot)) {
+								var unmodifiableReadOpts = pooledReadOpts.readOptions();
+								if (db.keyMayExist(cfh, unmodifiableReadOpts, keyBytes, data)) {
+									if (data.getValue() != null) {
+										size = data.getValue().length;
+									} else {
+										size = db.get(cfh, unmodifiableReadOpts, keyBytes, NO_DATA);
+									}
 								}
 							}
 							return size != RocksDB.NOT_FOUND;
@@ -532,6 +608,9 @@ public class LLLocalDictionary implements LLDictionary {
 
 	@Override
 	public Mono<ByteBuf> put(ByteBuf key, ByteBuf value, LLDictionaryResultType resultType) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.put(this, key, value, resultType);
+		}
 		try {
 			return Mono
 					.defer(() -> getPreviousData(key.retain(), resultType))
@@ -589,6 +668,10 @@ public class LLLocalDictionary implements LLDictionary {
 			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater,
 			UpdateReturnMode updateReturnMode,
 			boolean existsAlmostCertainly) {
+		if (!secondaryIndexes.isEmpty()) {
+			return updateIndexedAndGetDelta(key, updater)
+					.transform(prev -> LLUtils.resolveDelta(prev, updateReturnMode));
+		}
 		try {
 			return Mono
 					.fromCallable(() -> {
@@ -720,6 +803,9 @@ public class LLLocalDictionary implements LLDictionary {
 	public Mono<Delta<ByteBuf>> updateAndGetDelta(ByteBuf key,
 			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater,
 			boolean existsAlmostCertainly) {
+		if (!secondaryIndexes.isEmpty()) {
+			return updateIndexedAndGetDelta(key, updater);
+		}
 		try {
 			return Mono
 					.fromCallable(() -> {
@@ -837,6 +923,109 @@ public class LLLocalDictionary implements LLDictionary {
 		}
 	}
 
+	@Override
+	public void addSecondaryIndex(LLSecondaryIndex index) {
+		if (updateMode == UpdateMode.DISALLOW) {
+			throw new UnsupportedOperationException("Secondary indexes can't be used if update() is disallowed");
+		}
+		if (!(index.dictionary() instanceof LLLocalDictionary indexDictionary) || indexDictionary.db != db) {
+			throw new IllegalArgumentException("The index column " + index.dictionary().getColumnName()
+					+ " is not in the same database");
+		}
+		secondaryIndexes.add(index);
+	}
+
+	/**
+	 * Update a value and the entries of its secondary indexes in the same write batch
+	 */
+	private Mono<Delta<ByteBuf>> updateIndexedAndGetDelta(ByteBuf key,
+			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater) {
+		try {
+			return Mono
+					.fromCallable(() -> {
+						if (updateMode == UpdateMode.DISALLOW) throw new UnsupportedOperationException("update() is disallowed");
+						var indexes = secondaryIndexes.get();
+						// The index entries are derived from the previous value, so two concurrent updates
+						// of the same key must not interleave, even with ALLOW_UNSAFE
+						StampedLock lock = itemsLock.getAt(getLockIndex(key));
+						long stamp = lock.writeLock();
+						try {
+							@Nullable ByteBuf prevData = dbGet(cfh, null, key.retain(), false);
+							try {
+								@Nullable ByteBuf newData = updater.apply(prevData == null ? null : prevData.retainedSlice());
+								try {
+									var changedIndexKeys = new ArrayList<Entry<LLLocalDictionary, ByteBuf>>();
+									try {
+										// Write the value and its index entries in the same batch
+										try (var batch = new WriteBatch()) {
+											if (newData != null) {
+												batch.put(cfh, LLUtils.toArray(key), LLUtils.toArray(newData));
+											} else if (prevData != null) {
+												batch.delete(cfh, LLUtils.toArray(key));
+											}
+											for (LLSecondaryIndex index : indexes) {
+												var indexDictionary = (LLLocalDictionary) index.dictionary();
+												ByteBuf prevIndexKey = index.getIndexKey(key, prevData);
+												ByteBuf newIndexKey = index.getIndexKey(key, newData);
+												if (prevIndexKey != null && newIndexKey != null && LLUtils.equals(prevIndexKey, newIndexKey)) {
+													prevIndexKey.release();
+													newIndexKey.release();
+													continue;
+												}
+												if (prevIndexKey != null) {
+													changedIndexKeys.add(Map.entry(indexDictionary, prevIndexKey));
+													batch.delete(indexDictionary.cfh, LLUtils.toArray(prevIndexKey));
+												}
+												if (newIndexKey != null) {
+													changedIndexKeys.add(Map.entry(indexDictionary, newIndexKey));
+													batch.put(indexDictionary.cfh, LLUtils.toArray(newIndexKey), NO_DATA);
+												}
+											}
+											db.write(EMPTY_WRITE_OPTIONS, batch);
+										}
+										if (valueCache != null) {
+											valueCache.invalidate(key);
+										}
+										if (newData != null) {
+											onKeyWritten(key);
+										}
+										for (Entry<LLLocalDictionary, ByteBuf> changedIndexKey : changedIndexKeys) {
+											if (changedIndexKey.getKey().valueCache != null) {
+												changedIndexKey.getKey().valueCache.invalidate(changedIndexKey.getValue());
+											}
+										}
+									} finally {
+										for (Entry<LLLocalDictionary, ByteBuf> changedIndexKey : changedIndexKeys) {
+											changedIndexKey.getValue().release();
+										}
+									}
+									return new Delta<>(
+											prevData != null ? prevData.retain() : null,
+											newData != null ? newData.retain() : null
+									);
+								} finally {
+									if (newData != null) {
+										newData.release();
+									}
+								}
+							} finally {
+								if (prevData != null) {
+									prevData.release();
+								}
+							}
+						} finally {
+							lock.unlockWrite(stamp);
+						}
+					})
+					.onErrorMap(cause -> new IOException("Failed to read or write " + LLUtils.toStringSafe(key), cause))
+					.subscribeOn(dbScheduler)
+					.doFirst(key::retain)
+					.doAfterTerminate(key::release);
+		} finally {
+			key.release();
+		}
+	}
+
 	private void dbDelete(ColumnFamilyHandle cfh, @Nullable WriteOptions writeOptions, ByteBuf key)
 			throws RocksDBException {
 		try {
@@ -849,6 +1038,9 @@ public class LLLocalDictionary implements LLDictionary {
 			} else {
 				db.delete(cfh, Objects.requireNonNullElse(writeOptions, EMPTY_WRITE_OPTIONS), LLUtils.toArray(key));
 			}
+			if (valueCache != null) {
+				valueCache.invalidate(key);
+			}
 		} finally {
 			key.release();
 		}
@@ -856,6 +1048,9 @@ public class LLLocalDictionary implements LLDictionary {
 
 	@Override
 	public Mono<ByteBuf> remove(ByteBuf key, LLDictionaryResultType resultType) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.remove(this, key, resultType);
+		}
 		try {
 			return Mono
 					.defer(() -> getPreviousData(key.retain(), resultType))
@@ -981,43 +1176,19 @@ public class LLLocalDictionary implements LLDictionary {
 					}
 					return Mono
 									.fromCallable(() -> {
-										Iterable<StampedLock> locks;
-										ArrayList<Long> stamps;
-										if (updateMode == UpdateMode.ALLOW) {
-											locks = itemsLock.bulkGetAt(getLockIndices(keyBufsWindow));
-											stamps = new ArrayList<>();
-											for (var lock : locks) {
-
-												stamps.add(lock.readLock());
-											}
-										} else {
-											locks = null;
-											stamps = null;
-										}
-										try {
-											var columnFamilyHandles = new RepeatedElementList<>(cfh, keysWindow.size());
-											var results = db.multiGetAsList(resolveSnapshot(snapshot), columnFamilyHandles, LLUtils.toArray(keyBufsWindow));
-											var mappedResults = new ArrayList<Tuple3<K, ByteBuf, ByteBuf>>(results.size());
-											for (int i = 0; i < results.size(); i++) {
-												var val = results.get(i);
-												if (val != null) {
-													results.set(i, null);
-													mappedResults.add(Tuples.of(keysWindow.get(i).getT1(),
-															keyBufsWindow.get(i).retain(),
-															wrappedBuffer(val)
-													));
-												}
-											}
-											return mappedResults;
-										} finally {
-											if (updateMode == UpdateMode.ALLOW) {
-												int index = 0;
-												for (var lock : locks) {
-													lock.unlockRead(stamps.get(index));
-													index++;
-												}
+										var results = multiGetWindow(snapshot, keyBufsWindow);
+										var mappedResults = new ArrayList<Tuple3<K, ByteBuf, ByteBuf>>(results.size());
+										for (int i = 0; i < results.size(); i++) {
+											var val = results.get(i);
+											if (val != null) {
+												results.set(i, null);
+												mappedResults.add(Tuples.of(keysWindow.get(i).getT1(),
+														keyBufsWindow.get(i).retain(),
+														wrappedBuffer(val)
+												));
 											}
 										}
+										return mappedResults;
 									})
 									.subscribeOn(dbScheduler)
 									.flatMapMany(Flux::fromIterable)
@@ -1039,8 +1210,159 @@ public class LLLocalDictionary implements LLDictionary {
 				});
 	}
 
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> getMultiValues(@Nullable LLSnapshot snapshot,
+			Flux<ByteBuf> keys,
+			boolean existsAlmostCertainly) {
+		return keys
+				.bufferTimeout(MULTI_GET_WINDOW, MULTI_GET_WINDOW_TIMEOUT)
+				.doOnDiscard(ByteBuf.class, ReferenceCounted::release)
+				.flatMapSequential(keyBufsWindow -> Mono
+								.fromCallable(() -> {
+									var results = multiGetWindow(snapshot, keyBufsWindow);
+									var mappedResults = new ArrayList<Entry<ByteBuf, ByteBuf>>(results.size());
+									for (int i = 0; i < results.size(); i++) {
+										var val = results.get(i);
+										if (val != null) {
+											results.set(i, null);
+											mappedResults.add(Map.entry(keyBufsWindow.get(i).retain(), wrappedBuffer(val)));
+										}
+									}
+									return mappedResults;
+								})
+								.subscribeOn(dbScheduler)
+								.flatMapMany(Flux::fromIterable)
+								.onErrorMap(cause -> new IOException("Failed to read keys "
+										+ Arrays.deepToString(keyBufsWindow.toArray(ByteBuf[]::new)), cause))
+								.doAfterTerminate(() -> keyBufsWindow.forEach(ReferenceCounted::release)),
+						2 // Max concurrency is 2 to read data while preparing the next segment
+				)
+				.doOnDiscard(Entry.class, discardedEntry -> {
+					//noinspection unchecked
+					var entry = (Entry<ByteBuf, ByteBuf>) discardedEntry;
+					entry.getKey().release();
+					entry.getValue().release();
+				});
+	}
+
+	/**
+	 * Read the values of a window of keys. The keys are not released
+	 * @return the value of each key, in the same order of the keys, or null if the key is missing
+	 */
+	private List<byte[]> multiGetWindow(@Nullable LLSnapshot snapshot, List<ByteBuf> keyBufsWindow)
+			throws RocksDBException {
+		Iterable<StampedLock> locks;
+		ArrayList<Long> stamps;
+		if (updateMode == UpdateMode.ALLOW) {
+			locks = itemsLock.bulkGetAt(getLockIndices(keyBufsWindow));
+			stamps = new ArrayList<>();
+			for (var lock : locks) {
+
+				stamps.add(lock.readLock());
+			}
+		} else {
+			locks = null;
+			stamps = null;
+		}
+		try {
+			var columnFamilyHandles = new RepeatedElementList<>(cfh, keyBufsWindow.size());
+			try (var readOptions = acquireReadOptions(snapshot)) {
+				return db.multiGetAsList(readOptions.readOptions(), columnFamilyHandles, LLUtils.toArray(keyBufsWindow));
+			}
+		} finally {
+			if (updateMode == UpdateMode.ALLOW) {
+				int index = 0;
+				for (var lock : locks) {
+					lock.unlockRead(stamps.get(index));
+					index++;
+				}
+			}
+		}
+	}
+
+	@Override
+	public Flux<Boolean> containsMulti(@Nullable LLSnapshot snapshot, Flux<ByteBuf> keys) {
+		return keys
+				.buffer(MULTI_GET_WINDOW)
+				.doOnDiscard(ByteBuf.class, ReferenceCounted::release)
+				.flatMapSequential(keysWindow -> Mono
+								.fromCallable(() -> {
+									Iterable<StampedLock> locks;
+									ArrayList<Long> stamps;
+									if (updateMode == UpdateMode.ALLOW) {
+										locks = itemsLock.bulkGetAt(getLockIndices(keysWindow));
+										stamps = new ArrayList<>();
+										for (var lock : locks) {
+
+											stamps.add(lock.readLock());
+										}
+									} else {
+										locks = null;
+										stamps = null;
+									}
+									try (var readOptions = acquireReadOptions(snapshot)) {
+										// Snapshot reads are never cached
+										var cache = snapshot == null ? valueCache : null;
+										var results = new BooleanArrayList(keysWindow.size());
+										for (ByteBuf key : keysWindow) {
+											results.add(dbContains(readOptions.readOptions(), cache, key));
+										}
+										return results;
+									} finally {
+										if (updateMode == UpdateMode.ALLOW) {
+											int index = 0;
+											for (var lock : locks) {
+												lock.unlockRead(stamps.get(index));
+												index++;
+											}
+										}
+									}
+								})
+								.subscribeOn(dbScheduler)
+								.flatMapMany(Flux::fromIterable)
+								.onErrorMap(cause -> new IOException("Failed to read keys "
+										+ Arrays.deepToString(keysWindow.toArray(ByteBuf[]::new)), cause))
+								.doAfterTerminate(() -> keysWindow.forEach(ReferenceCounted::release)),
+						2 // Max concurrency is 2 to read data while preparing the next segment
+				);
+	}
+
+	/**
+	 * Check if a key exists, using the bloom filters and without copying its value
+	 */
+	private boolean dbContains(ReadOptions readOptions, @Nullable LLLocalValueCache cache, ByteBuf key)
+			throws RocksDBException {
+		long version;
+		if (cache != null) {
+			byte[] cachedValue = cache.get(key);
+			if (cachedValue == LLLocalValueCache.MISSING) {
+				return false;
+			} else if (cachedValue != null) {
+				return true;
+			}
+			version = cache.getVersion(key);
+		} else {
+			version = 0;
+		}
+		byte[] keyBytes = LLUtils.toArray(key);
+		boolean found;
+		Holder<byte[]> data = new Holder<>();
+		if (db.keyMayExist(cfh, readOptions, keyBytes, data)) {
+			found = data.getValue() != null || db.get(cfh, readOptions, keyBytes, NO_DATA) != RocksDB.NOT_FOUND;
+		} else {
+			found = false;
+		}
+		if (cache != null && !found) {
+			cache.putMissing(key, version);
+		}
+		return found;
+	}
+
 	@Override
 	public Flux<Entry<ByteBuf, ByteBuf>> putMulti(Flux<Entry<ByteBuf, ByteBuf>> entries, boolean getOldValues) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.putMulti(this, entries, getOldValues);
+		}
 		return entries
 				.buffer(Math.min(MULTI_GET_WINDOW, CAPPED_WRITE_BATCH_CAP))
 				.flatMapSequential(ew -> Mono
@@ -1078,6 +1400,14 @@ public class LLLocalDictionary implements LLDictionary {
 														db.put(cfh, EMPTY_WRITE_OPTIONS, entry.getKey().nioBuffer(), entry.getValue().nioBuffer());
 													}
 												}
+												if (valueCache != null) {
+													for (Entry<ByteBuf, ByteBuf> entry : entriesWindow) {
+														valueCache.invalidate(entry.getKey());
+													}
+												}
+												for (Entry<ByteBuf, ByteBuf> entry : entriesWindow) {
+													onKeyWritten(entry.getKey());
+												}
 												return null;
 											} finally {
 												if (updateMode == UpdateMode.ALLOW) {
@@ -1135,6 +1465,9 @@ public class LLLocalDictionary implements LLDictionary {
 	@Override
 	public <X> Flux<ExtraKeyOperationResult<ByteBuf, X>> updateMulti(Flux<Tuple2<ByteBuf, X>> entries,
 			BiFunction<ByteBuf, X, ByteBuf> updateFunction) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.updateMulti(this, entries, updateFunction);
+		}
 		return entries
 				.buffer(Math.min(MULTI_GET_WINDOW, CAPPED_WRITE_BATCH_CAP))
 				.flatMapSequential(ew -> Flux
@@ -1227,6 +1560,14 @@ public class LLLocalDictionary implements LLDictionary {
 															i++;
 														}
 													}
+													if (valueCache != null) {
+														for (Tuple2<ByteBuf, X> entry : entriesWindow) {
+															valueCache.invalidate(entry.getT1());
+														}
+													}
+													for (Tuple2<ByteBuf, X> entry : entriesWindow) {
+														onKeyWritten(entry.getT1());
+													}
 													return valueChangedResult;
 												} finally {
 													if (updateMode == UpdateMode.ALLOW) {
@@ -1298,6 +1639,67 @@ public class LLLocalDictionary implements LLDictionary {
 		}
 	}
 
+	@SuppressWarnings("Convert2MethodRef")
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> getRange(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit) {
+		try {
+			return Flux
+					.defer(() -> {
+						if (range.isSingle()) {
+							if (fromKeyExclusive != null && !isAfterFromKey(range.getSingle(), fromKeyExclusive, reverse)) {
+								return Flux.empty();
+							}
+							return getRangeSingle(snapshot, range.getMin().retain(), false);
+						} else {
+							return Flux
+									.using(
+											() -> new LLLocalEntryReactiveRocksIterator(db,
+													alloc,
+													cfh,
+													range.retain(),
+													databaseOptions.allowNettyDirect(),
+													resolveRocksSnapshot(snapshot),
+													reverse,
+													fromKeyExclusive != null ? fromKeyExclusive.retain() : null,
+													getRangeMultiDebugName
+											),
+											llLocalEntryReactiveRocksIterator -> llLocalEntryReactiveRocksIterator.flux(),
+											LLLocalReactiveRocksIterator::release
+									)
+									.subscribeOn(dbScheduler);
+						}
+					})
+					.transform(flux -> limit >= 0 ? flux.take(limit, true) : flux)
+					.doOnDiscard(Entry.class, entry -> {
+						//noinspection unchecked
+						var castedEntry = (Entry<ByteBuf, ByteBuf>) entry;
+						castedEntry.getKey().release();
+						castedEntry.getValue().release();
+					})
+					.doFirst(() -> {
+						range.retain();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.retain();
+						}
+					})
+					.doAfterTerminate(() -> {
+						range.release();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.release();
+						}
+					});
+		} finally {
+			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
+		}
+	}
+
 	@Override
 	public Flux<List<Entry<ByteBuf, ByteBuf>>> getRangeGrouped(@Nullable LLSnapshot snapshot,
 			LLRange range,
@@ -1341,7 +1743,7 @@ public class LLLocalDictionary implements LLDictionary {
 									cfh,
 									range.retain(),
 									databaseOptions.allowNettyDirect(),
-									resolveSnapshot(snapshot),
+									resolveRocksSnapshot(snapshot),
 									getRangeMultiDebugName
 							),
 							llLocalEntryReactiveRocksIterator -> llLocalEntryReactiveRocksIterator.flux(),
@@ -1372,7 +1774,7 @@ public class LLLocalDictionary implements LLDictionary {
 									prefixLength,
 									range.retain(),
 									databaseOptions.allowNettyDirect(),
-									resolveSnapshot(snapshot),
+									resolveRocksSnapshot(snapshot),
 									"getRangeMultiGrouped"
 							),
 							llLocalGroupedEntryReactiveRocksIterator -> llLocalGroupedEntryReactiveRocksIterator.flux(),
@@ -1404,6 +1806,70 @@ public class LLLocalDictionary implements LLDictionary {
 		}
 	}
 
+	@SuppressWarnings("Convert2MethodRef")
+	@Override
+	public Flux<ByteBuf> getRangeKeys(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit) {
+		try {
+			return Flux
+					.defer(() -> {
+						if (range.isSingle()) {
+							if (fromKeyExclusive != null && !isAfterFromKey(range.getSingle(), fromKeyExclusive, reverse)) {
+								return Flux.empty();
+							}
+							return this.getRangeKeysSingle(snapshot, range.getMin().retain());
+						} else {
+							return Flux
+									.using(
+											() -> new LLLocalKeyReactiveRocksIterator(db,
+													alloc,
+													cfh,
+													range.retain(),
+													databaseOptions.allowNettyDirect(),
+													resolveRocksSnapshot(snapshot),
+													reverse,
+													fromKeyExclusive != null ? fromKeyExclusive.retain() : null,
+													getRangeKeysMultiDebugName
+											),
+											llLocalKeyReactiveRocksIterator -> llLocalKeyReactiveRocksIterator.flux(),
+											LLLocalReactiveRocksIterator::release
+									)
+									.subscribeOn(dbScheduler);
+						}
+					})
+					.transform(flux -> limit >= 0 ? flux.take(limit, true) : flux)
+					.doOnDiscard(ByteBuf.class, ReferenceCounted::release)
+					.doFirst(() -> {
+						range.retain();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.retain();
+						}
+					})
+					.doAfterTerminate(() -> {
+						range.release();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.release();
+						}
+					});
+		} finally {
+			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the key comes after the starting key, in the iteration order
+	 */
+	private static boolean isAfterFromKey(ByteBuf key, ByteBuf fromKeyExclusive, boolean reverse) {
+		int compare = Arrays.compareUnsigned(LLUtils.toArray(key), LLUtils.toArray(fromKeyExclusive));
+		return reverse ? compare < 0 : compare > 0;
+	}
+
 	@Override
 	public Flux<List<ByteBuf>> getRangeKeysGrouped(@Nullable LLSnapshot snapshot, LLRange range, int prefixLength) {
 		try {
@@ -1415,7 +1881,7 @@ public class LLLocalDictionary implements LLDictionary {
 									prefixLength,
 									range.retain(),
 									databaseOptions.allowNettyDirect(),
-									resolveSnapshot(snapshot),
+									resolveRocksSnapshot(snapshot),
 									"getRangeKeysGrouped"
 							),
 							LLLocalGroupedReactiveRocksIterator::flux,
@@ -1433,33 +1899,33 @@ public class LLLocalDictionary implements LLDictionary {
 	public Flux<BadBlock> badBlocks(LLRange range) {
 		return Flux
 				.<BadBlock>create(sink -> {
-					try (var ro = new ReadOptions(getReadOptions(null))) {
+					try (var pooledReadOpts = acquireReadOptions(null, range)) {
+						var ro = pooledReadOpts.readOptions();
 						ro.setFillCache(false);
 						if (!range.isSingle()) {
 							ro.setReadaheadSize(32 * 1024);
 						}
 						ro.setVerifyChecksums(true);
-						var rocksIteratorTuple = getRocksIterator(databaseOptions.allowNettyDirect(), ro, range.retain(), db, cfh);
-						try {
-							try (var rocksIterator = rocksIteratorTuple.getT1()) {
-								rocksIterator.seekToFirst();
-								rocksIterator.status();
-								while (rocksIterator.isValid() && !sink.isCancelled()) {
-									try {
-										rocksIterator.status();
-										rocksIterator.key(DUMMY_WRITE_ONLY_BYTE_BUFFER);
-										rocksIterator.status();
-										rocksIterator.value(DUMMY_WRITE_ONLY_BYTE_BUFFER);
-										rocksIterator.status();
-									} catch (RocksDBException ex) {
-										sink.next(new BadBlock(databaseName, Column.special(columnName), null, ex));
-									}
-									rocksIterator.next();
+						try (var rocksIterator = getRocksIterator(databaseOptions.allowNettyDirect(),
+								ro,
+								range.retain(),
+								db,
+								cfh
+						)) {
+							rocksIterator.seekToFirst();
+							rocksIterator.status();
+							while (rocksIterator.isValid() && !sink.isCancelled()) {
+								try {
+									rocksIterator.status();
+									rocksIterator.key(DUMMY_WRITE_ONLY_BYTE_BUFFER);
+									rocksIterator.status();
+									rocksIterator.value(DUMMY_WRITE_ONLY_BYTE_BUFFER);
+									rocksIterator.status();
+								} catch (RocksDBException ex) {
+									sink.next(new BadBlock(databaseName, Column.special(columnName), null, ex));
 								}
+								rocksIterator.next();
 							}
-						} finally {
-							rocksIteratorTuple.getT2().release();
-							rocksIteratorTuple.getT3().release();
 						}
 						sink.complete();
 					} catch (Throwable ex) {
@@ -1482,7 +1948,7 @@ public class LLLocalDictionary implements LLDictionary {
 									prefixLength,
 									range.retain(),
 									databaseOptions.allowNettyDirect(),
-									resolveSnapshot(snapshot),
+									resolveRocksSnapshot(snapshot),
 									true,
 									"getRangeKeysGrouped"
 							),
@@ -1527,7 +1993,7 @@ public class LLLocalDictionary implements LLDictionary {
 									cfh,
 									range.retain(),
 									databaseOptions.allowNettyDirect(),
-									resolveSnapshot(snapshot),
+									resolveRocksSnapshot(snapshot),
 									getRangeKeysMultiDebugName
 							),
 							llLocalKeyReactiveRocksIterator -> llLocalKeyReactiveRocksIterator.flux(),
@@ -1544,6 +2010,9 @@ public class LLLocalDictionary implements LLDictionary {
 
 	@Override
 	public Mono<Void> setRange(LLRange range, Flux<Entry<ByteBuf, ByteBuf>> entries) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.setRange(this, range, entries);
+		}
 		try {
 			if (USE_WINDOW_IN_SET_RANGE) {
 				return Mono
@@ -1615,6 +2084,10 @@ public class LLLocalDictionary implements LLDictionary {
 									batch.clear();
 								}
 							}
+							if (valueCache != null) {
+								valueCache.invalidateRange(range.retain());
+							}
+							invalidateQueueHints();
 							return null;
 						})
 						.subscribeOn(dbScheduler)
@@ -1657,6 +2130,12 @@ public class LLLocalDictionary implements LLDictionary {
 														batch.clear();
 													}
 												}
+												if (valueCache != null) {
+													for (Entry<ByteBuf, ByteBuf> entry : entriesList) {
+														valueCache.invalidate(entry.getKey());
+													}
+												}
+												invalidateQueueHints();
 												return null;
 											} finally {
 												for (Entry<ByteBuf, ByteBuf> entry : entriesList) {
@@ -1697,6 +2176,7 @@ public class LLLocalDictionary implements LLDictionary {
 								.doOnNext(ReferenceCounted::release)
 								.then(Mono.<Void>empty())
 						)
+						.doOnTerminate(this::invalidateQueueHints)
 						.onErrorMap(cause -> new IOException("Failed to write range", cause))
 						.doFirst(range::retain)
 						.doAfterTerminate(range::release);
@@ -1871,6 +2351,9 @@ public class LLLocalDictionary implements LLDictionary {
 	}
 
 	public Mono<Void> clear() {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.setRange(this, LLRange.all(), Flux.empty());
+		}
 		return Mono
 				.<Void>fromCallable(() -> {
 					try (var readOpts = new ReadOptions(getReadOptions(null))) {
@@ -1901,6 +2384,10 @@ public class LLLocalDictionary implements LLDictionary {
 							}
 
 							writeBatch.writeToDbAndClose();
+							if (valueCache != null) {
+								valueCache.invalidateAll();
+							}
+							invalidateQueueHints();
 
 
 							// Compact range
@@ -1940,58 +2427,30 @@ public class LLLocalDictionary implements LLDictionary {
 						} else {
 							return Mono
 									.fromCallable(() -> {
-										try (var readOpts = new ReadOptions(resolveSnapshot(snapshot))) {
+										try (var pooledReadOpts = acquireReadOptions(snapshot, range)) {
+											var readOpts = pooledReadOpts.readOptions();
 											readOpts.setFillCache(false);
 											readOpts.setVerifyChecksums(VERIFY_CHECKSUMS_WHEN_NOT_NEEDED);
-											ReleasableSlice minBound;
-											if (range.hasMin()) {
-												minBound = setIterateBound(databaseOptions.allowNettyDirect(),
-														readOpts,
-														IterateBound.LOWER,
-														range.getMin().retain()
-												);
-											} else {
-												minBound = emptyReleasableSlice();
+											if (fast) {
+												readOpts.setIgnoreRangeDeletions(true);
 											}
-											try {
-												ReleasableSlice maxBound;
-												if (range.hasMax()) {
-													maxBound = setIterateBound(databaseOptions.allowNettyDirect(),
-															readOpts,
-															IterateBound.UPPER,
-															range.getMax().retain()
+											try (var rocksIterator = db.newIterator(cfh, readOpts)) {
+												if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
+													rocksIterSeekTo(databaseOptions.allowNettyDirect(),
+															rocksIterator,
+															range.getMin().retain()
 													);
 												} else {
-													maxBound = emptyReleasableSlice();
+													rocksIterator.seekToFirst();
 												}
-												try {
-													if (fast) {
-														readOpts.setIgnoreRangeDeletions(true);
-
-													}
-													try (var rocksIterator = db.newIterator(cfh, readOpts)) {
-														if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
-															rocksIterSeekTo(databaseOptions.allowNettyDirect(),
-																	rocksIterator,
-																	range.getMin().retain()
-															);
-														} else {
-															rocksIterator.seekToFirst();
-														}
-														long i = 0;
-														rocksIterator.status();
-														while (rocksIterator.isValid()) {
-															rocksIterator.next();
-															rocksIterator.status();
-															i++;
-														}
-														return i;
-													}
-												} finally {
-													maxBound.release();
+												long i = 0;
+												rocksIterator.status();
+												while (rocksIterator.isValid()) {
+													rocksIterator.next();
+													rocksIterator.status();
+													i++;
 												}
-											} finally {
-												minBound.release();
+												return i;
 											}
 										}
 									})
@@ -2012,55 +2471,26 @@ public class LLLocalDictionary implements LLDictionary {
 		try {
 			return Mono
 					.fromCallable(() -> {
-						try (var readOpts = new ReadOptions(resolveSnapshot(snapshot))) {
-							ReleasableSlice minBound;
-							if (range.hasMin()) {
-								minBound = setIterateBound(databaseOptions.allowNettyDirect(),
-										readOpts,
-										IterateBound.LOWER,
-										range.getMin().retain()
-								);
-							} else {
-								minBound = emptyReleasableSlice();
-							}
-							try {
-								ReleasableSlice maxBound;
-								if (range.hasMax()) {
-									maxBound = setIterateBound(databaseOptions.allowNettyDirect(),
-											readOpts,
-											IterateBound.UPPER,
-											range.getMax().retain()
-									);
-								} else {
-									maxBound = emptyReleasableSlice();
-								}
-								try (var rocksIterator = db.newIterator(cfh, readOpts)) {
-									if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
-										rocksIterSeekTo(databaseOptions.allowNettyDirect(), rocksIterator, range.getMin().retain());
-									} else {
-										rocksIterator.seekToFirst();
-									}
-									rocksIterator.status();
-									if (rocksIterator.isValid()) {
-										ByteBuf key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
+						try (var pooledReadOpts = acquireReadOptions(snapshot, range)) {
+							var readOpts = pooledReadOpts.readOptions();
+							try (var rocksIterator = db.newIterator(cfh, readOpts)) {
+								seekToHead(rocksIterator, range, snapshot == null);
+								rocksIterator.status();
+								if (rocksIterator.isValid()) {
+									ByteBuf key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
+									try {
+										ByteBuf value = LLUtils.readDirectNioBuffer(alloc, rocksIterator::value);
 										try {
-											ByteBuf value = LLUtils.readDirectNioBuffer(alloc, rocksIterator::value);
-											try {
-												return Map.entry(key.retain(), value.retain());
-											} finally {
-												value.release();
-											}
+											return Map.entry(key.retain(), value.retain());
 										} finally {
-											key.release();
+											value.release();
 										}
-									} else {
-										return null;
+									} finally {
+										key.release();
 									}
-								} finally {
-									maxBound.release();
+								} else {
+									return null;
 								}
-							} finally {
-								minBound.release();
 							}
 						}
 					})
@@ -2077,47 +2507,18 @@ public class LLLocalDictionary implements LLDictionary {
 		try {
 			return Mono
 					.fromCallable(() -> {
-						try (var readOpts = new ReadOptions(resolveSnapshot(snapshot))) {
-							ReleasableSlice minBound;
-							if (range.hasMin()) {
-								minBound = setIterateBound(databaseOptions.allowNettyDirect(),
-										readOpts,
-										IterateBound.LOWER,
-										range.getMin().retain()
-								);
-							} else {
-								minBound = emptyReleasableSlice();
-							}
-							try {
-								ReleasableSlice maxBound;
-								if (range.hasMax()) {
-									maxBound = setIterateBound(databaseOptions.allowNettyDirect(),
-											readOpts,
-											IterateBound.UPPER,
-											range.getMax().retain()
-									);
+						try (var pooledReadOpts = acquireReadOptions(snapshot, range)) {
+							var readOpts = pooledReadOpts.readOptions();
+							try (var rocksIterator = db.newIterator(cfh, readOpts)) {
+								seekToHead(rocksIterator, range, snapshot == null);
+								ByteBuf key;
+								rocksIterator.status();
+								if (rocksIterator.isValid()) {
+									key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
+									return key;
 								} else {
-									maxBound = emptyReleasableSlice();
-								}
-								try (var rocksIterator = db.newIterator(cfh, readOpts)) {
-									if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
-										rocksIterSeekTo(databaseOptions.allowNettyDirect(), rocksIterator, range.getMin().retain());
-									} else {
-										rocksIterator.seekToFirst();
-									}
-									ByteBuf key;
-									rocksIterator.status();
-									if (rocksIterator.isValid()) {
-										key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
-										return key;
-									} else {
-										return null;
-									}
-								} finally {
-									maxBound.release();
+									return null;
 								}
-							} finally {
-								minBound.release();
 							}
 						}
 					})
@@ -2239,55 +2640,111 @@ public class LLLocalDictionary implements LLDictionary {
 
 	@Override
 	public Mono<Entry<ByteBuf, ByteBuf>> removeOne(LLRange range) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.pollMulti(this, range, 1).singleOrEmpty();
+		}
 		try {
 			return Mono
 					.fromCallable(() -> {
-						try (var readOpts = new ReadOptions(getReadOptions(null))) {
-							ReleasableSlice minBound;
-							if (range.hasMin()) {
-								minBound = setIterateBound(databaseOptions.allowNettyDirect(),
-										readOpts,
-										IterateBound.LOWER,
-										range.getMin().retain()
-								);
-							} else {
-								minBound = emptyReleasableSlice();
+						pollLock.lock();
+						if (queueHints != null) {
+							queueHints.startPoll();
+						}
+						try (var pooledReadOpts = acquireReadOptions(null, range)) {
+							var readOpts = pooledReadOpts.readOptions();
+							try (RocksIterator rocksIterator = db.newIterator(cfh, readOpts)) {
+								seekToHead(rocksIterator, range, true);
+								rocksIterator.status();
+								if (!rocksIterator.isValid()) {
+									return null;
+								}
+								ByteBuf key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
+								ByteBuf value = LLUtils.readDirectNioBuffer(alloc, rocksIterator::value);
+								dbDelete(cfh, null, key.retain());
+								if (queueHints != null) {
+									queueHints.setLastConsumedKey(range, key);
+								}
+								return Map.entry(key, value);
 							}
-							try {
-								ReleasableSlice maxBound;
-								if (range.hasMax()) {
-									maxBound = setIterateBound(databaseOptions.allowNettyDirect(),
-											readOpts,
-											IterateBound.UPPER,
-											range.getMax().retain()
-									);
-								} else {
-									maxBound = emptyReleasableSlice();
+						} finally {
+							if (queueHints != null) {
+								queueHints.endPoll();
+							}
+							pollLock.unlock();
+						}
+					})
+					.onErrorMap(cause -> new IOException("Failed to delete " + range.toString(), cause))
+					.subscribeOn(dbScheduler)
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
+	}
+
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> pollMulti(LLRange range, int count) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.pollMulti(this, range, count);
+		}
+		try {
+			return Mono
+					.fromCallable(() -> {
+						pollLock.lock();
+						if (queueHints != null) {
+							queueHints.startPoll();
+						}
+						var entries = new ArrayList<Entry<ByteBuf, ByteBuf>>(Math.min(count, MULTI_GET_WINDOW));
+						try (var pooledReadOpts = acquireReadOptions(null, range)) {
+							var readOpts = pooledReadOpts.readOptions();
+							try (var rocksIterator = db.newIterator(cfh, readOpts);
+									var batch = new WriteBatch(RESERVED_WRITE_BATCH_SIZE)) {
+								seekToHead(rocksIterator, range, true);
+								rocksIterator.status();
+								while (entries.size() < count && rocksIterator.isValid()) {
+									ByteBuf key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
+									ByteBuf value = LLUtils.readDirectNioBuffer(alloc, rocksIterator::value);
+									entries.add(Map.entry(key, value));
+									batch.delete(cfh, LLUtils.toArray(key));
+									rocksIterator.next();
+									rocksIterator.status();
 								}
-								try (RocksIterator rocksIterator = db.newIterator(cfh, readOpts)) {
-									if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
-										rocksIterSeekTo(databaseOptions.allowNettyDirect(), rocksIterator, range.getMin().retain());
-									} else {
-										rocksIterator.seekToFirst();
+								if (!entries.isEmpty()) {
+									// Delete all the polled entries atomically
+									db.write(EMPTY_WRITE_OPTIONS, batch);
+									if (valueCache != null) {
+										for (Entry<ByteBuf, ByteBuf> entry : entries) {
+											valueCache.invalidate(entry.getKey());
+										}
 									}
-									rocksIterator.status();
-									if (!rocksIterator.isValid()) {
-										return null;
+									if (queueHints != null) {
+										queueHints.setLastConsumedKey(range, entries.get(entries.size() - 1).getKey());
 									}
-									ByteBuf key = LLUtils.readDirectNioBuffer(alloc, rocksIterator::key);
-									ByteBuf value = LLUtils.readDirectNioBuffer(alloc, rocksIterator::value);
-									dbDelete(cfh, null, key);
-									return Map.entry(key, value);
-								} finally {
-									maxBound.release();
 								}
-							} finally {
-								minBound.release();
 							}
+							return entries;
+						} catch (Throwable ex) {
+							for (Entry<ByteBuf, ByteBuf> entry : entries) {
+								entry.getKey().release();
+								entry.getValue().release();
+							}
+							throw ex;
+						} finally {
+							if (queueHints != null) {
+								queueHints.endPoll();
+							}
+							pollLock.unlock();
 						}
 					})
-					.onErrorMap(cause -> new IOException("Failed to delete " + range.toString(), cause))
+					.<Entry<ByteBuf, ByteBuf>>flatMapIterable(entries -> entries)
+					.onErrorMap(cause -> new IOException("Failed to poll " + range.toString(), cause))
 					.subscribeOn(dbScheduler)
+					.doOnDiscard(Entry.class, entry -> {
+						//noinspection unchecked
+						var castedEntry = (Entry<ByteBuf, ByteBuf>) entry;
+						castedEntry.getKey().release();
+						castedEntry.getValue().release();
+					})
 					.doFirst(range::retain)
 					.doAfterTerminate(range::release);
 		} finally {
@@ -2295,34 +2752,93 @@ public class LLLocalDictionary implements LLDictionary {
 		}
 	}
 
+	/**
+	 * Position the iterator on the first key of the range
+	 * @param useQueueHints start from the last consumed key, if the column is used as a queue.
+	 *                      Don't use the hints when reading from a snapshot
+	 */
+	private void seekToHead(RocksIterator rocksIterator, LLRange range, boolean useQueueHints) {
+		byte[] seekKey = useQueueHints && queueHints != null ? queueHints.getSeekKey(range) : null;
+		if (seekKey != null) {
+			// Every key before the last consumed key has been deleted, skip their tombstones
+			rocksIterator.seek(seekKey);
+		} else if (!LLLocalDictionary.PREFER_SEEK_TO_FIRST && range.hasMin()) {
+			rocksIterSeekTo(databaseOptions.allowNettyDirect(), rocksIterator, range.getMin().retain());
+		} else {
+			rocksIterator.seekToFirst();
+		}
+	}
+
+	private void onKeyWritten(ByteBuf key) {
+		if (queueHints != null) {
+			queueHints.onKeyWritten(key);
+		}
+	}
+
+	private void invalidateQueueHints() {
+		if (queueHints != null) {
+			queueHints.invalidateAll();
+		}
+	}
+
+	/**
+	 * @param readOptions read options with the iteration bounds of the range already set,
+	 *                    usually acquired with {@link PooledReadOptions#acquire(Snapshot, LLRange)}
+	 */
 	@NotNull
-	public static Tuple3<RocksIterator, ReleasableSlice, ReleasableSlice> getRocksIterator(boolean allowNettyDirect,
+	public static RocksIterator getRocksIterator(boolean allowNettyDirect,
 			ReadOptions readOptions,
 			LLRange range,
 			RocksDB db,
 			ColumnFamilyHandle cfh) {
+		return getRocksIterator(allowNettyDirect, readOptions, range, false, null, db, cfh);
+	}
+
+	/**
+	 * @param readOptions read options with the iteration bounds of the range already set,
+	 *                    usually acquired with {@link PooledReadOptions#acquire(Snapshot, LLRange)}
+	 * @param reverse position the iterator on the last key of the range, the caller must iterate using prev()
+	 * @param fromKeyExclusive if not null, position the iterator on the first key after this key
+	 *                         (before it, if reverse)
+	 */
+	@NotNull
+	public static RocksIterator getRocksIterator(boolean allowNettyDirect,
+			ReadOptions readOptions,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			RocksDB db,
+			ColumnFamilyHandle cfh) {
 		try {
-			ReleasableSlice sliceMin;
-			ReleasableSlice sliceMax;
-			if (range.hasMin()) {
-				sliceMin = setIterateBound(allowNettyDirect, readOptions, IterateBound.LOWER, range.getMin().retain());
-			} else {
-				sliceMin = emptyReleasableSlice();
-			}
-			if (range.hasMax()) {
-				sliceMax = setIterateBound(allowNettyDirect, readOptions, IterateBound.UPPER, range.getMax().retain());
-			} else {
-				sliceMax = emptyReleasableSlice();
-			}
 			var rocksIterator = db.newIterator(cfh, readOptions);
-			if (!PREFER_SEEK_TO_FIRST && range.hasMin()) {
+			if (fromKeyExclusive != null) {
+				// RocksDB clamps the seek target to the iteration bounds
+				byte[] fromKey = LLUtils.toArray(fromKeyExclusive);
+				if (reverse) {
+					rocksIterator.seekForPrev(fromKey);
+					if (rocksIterator.isValid() && Arrays.equals(rocksIterator.key(), fromKey)) {
+						rocksIterator.prev();
+					}
+				} else {
+					rocksIterator.seek(fromKey);
+					if (rocksIterator.isValid() && Arrays.equals(rocksIterator.key(), fromKey)) {
+						rocksIterator.next();
+					}
+				}
+			} else if (reverse) {
+				// The upper bound is exclusive, so the last key is always inside the range
+				rocksIterator.seekToLast();
+			} else if (!PREFER_SEEK_TO_FIRST && range.hasMin()) {
 				rocksIterSeekTo(allowNettyDirect, rocksIterator, range.getMin().retain());
 			} else {
 				rocksIterator.seekToFirst();
 			}
-			return Tuples.of(rocksIterator, sliceMin, sliceMax);
+			return rocksIterator;
 		} finally {
 			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
 		}
 	}
 }
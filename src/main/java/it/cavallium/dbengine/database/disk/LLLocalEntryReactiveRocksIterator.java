@@ -5,9 +5,10 @@ import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.database.LLRange;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
+import org.rocksdb.Snapshot;
 
 public class LLLocalEntryReactiveRocksIterator extends LLLocalReactiveRocksIterator<Entry<ByteBuf, ByteBuf>> {
 
@@ -16,9 +17,21 @@ public class LLLocalEntryReactiveRocksIterator extends LLLocalReactiveRocksItera
 			ColumnFamilyHandle cfh,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			String debugName) {
-		super(db, alloc, cfh, range, allowNettyDirect, readOptions, true, debugName);
+		super(db, alloc, cfh, range, allowNettyDirect, snapshot, true, debugName);
+	}
+
+	public LLLocalEntryReactiveRocksIterator(RocksDB db,
+			ByteBufAllocator alloc,
+			ColumnFamilyHandle cfh,
+			LLRange range,
+			boolean allowNettyDirect,
+			@Nullable Snapshot snapshot,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			String debugName) {
+		super(db, alloc, cfh, range, allowNettyDirect, snapshot, true, reverse, fromKeyExclusive, debugName);
 	}
 
 	@Override
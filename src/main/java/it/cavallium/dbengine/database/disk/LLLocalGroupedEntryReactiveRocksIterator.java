@@ -5,9 +5,10 @@ import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.database.LLRange;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
+import org.rocksdb.Snapshot;
 
 public class LLLocalGroupedEntryReactiveRocksIterator extends
 		LLLocalGroupedReactiveRocksIterator<Entry<ByteBuf, ByteBuf>> {
@@ -16,9 +17,9 @@ public class LLLocalGroupedEntryReactiveRocksIterator extends
 			int prefixLength,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			String debugName) {
-		super(db, alloc, cfh, prefixLength, range, allowNettyDirect, readOptions, false, true);
+		super(db, alloc, cfh, prefixLength, range, allowNettyDirect, snapshot, false, true);
 	}
 
 	@Override
@@ -3,9 +3,10 @@ package it.cavallium.dbengine.database.disk;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.database.LLRange;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
+import org.rocksdb.Snapshot;
 
 public class LLLocalGroupedKeyReactiveRocksIterator extends LLLocalGroupedReactiveRocksIterator<ByteBuf> {
 
@@ -15,9 +16,9 @@ public class LLLocalGroupedKeyReactiveRocksIterator extends LLLocalGroupedReacti
 			int prefixLength,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			String debugName) {
-		super(db, alloc, cfh, prefixLength, range, allowNettyDirect, readOptions, true, false);
+		super(db, alloc, cfh, prefixLength, range, allowNettyDirect, snapshot, true, false);
 	}
 
 	@Override
@@ -9,12 +9,16 @@ import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryDeep;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
 import org.rocksdb.RocksMutableObject;
+import org.rocksdb.Snapshot;
 import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import static io.netty.buffer.Unpooled.*;
 
 public abstract class LLLocalGroupedReactiveRocksIterator<T> {
@@ -25,7 +29,8 @@ public abstract class LLLocalGroupedReactiveRocksIterator<T> {
 	private final int prefixLength;
 	private final LLRange range;
 	private final boolean allowNettyDirect;
-	private final ReadOptions readOptions;
+	@Nullable
+	private final Snapshot snapshot;
 	private final boolean canFillCache;
 	private final boolean readValues;
 
@@ -33,7 +38,7 @@ public abstract class LLLocalGroupedReactiveRocksIterator<T> {
 			int prefixLength,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			boolean canFillCache,
 			boolean readValues) {
 		this.db = db;
@@ -42,7 +47,7 @@ public abstract class LLLocalGroupedReactiveRocksIterator<T> {
 		this.prefixLength = prefixLength;
 		this.range = range;
 		this.allowNettyDirect = allowNettyDirect;
-		this.readOptions = readOptions;
+		this.snapshot = snapshot;
 		this.canFillCache = canFillCache;
 		this.readValues = readValues;
 	}
@@ -50,10 +55,17 @@ public abstract class LLLocalGroupedReactiveRocksIterator<T> {
 
 	public Flux<List<T>> flux() {
 		return Flux
-				.generate(() -> {
-					var readOptions = new ReadOptions(this.readOptions);
-					readOptions.setFillCache(canFillCache && range.hasMin() && range.hasMax());
-					return LLLocalDictionary.getRocksIterator(allowNettyDirect, readOptions, range.retain(), db, cfh);
+				.<List<T>, Tuple2<RocksIterator, PooledReadOptions>>generate(() -> {
+					var pooledReadOptions = PooledReadOptions.acquire(snapshot, range);
+					try {
+						var readOptions = pooledReadOptions.readOptions();
+						readOptions.setFillCache(canFillCache && range.hasMin() && range.hasMax());
+						var rocksIterator = LLLocalDictionary.getRocksIterator(allowNettyDirect, readOptions, range.retain(), db, cfh);
+						return Tuples.of(rocksIterator, pooledReadOptions);
+					} catch (Throwable ex) {
+						pooledReadOptions.close();
+						throw ex;
+					}
 				}, (tuple, sink) -> {
 					range.retain();
 					try {
@@ -107,8 +119,7 @@ public abstract class LLLocalGroupedReactiveRocksIterator<T> {
 				}, tuple -> {
 					var rocksIterator = tuple.getT1();
 					rocksIterator.close();
-					tuple.getT2().release();
-					tuple.getT3().release();
+					tuple.getT2().close();
 				});
 	}
 
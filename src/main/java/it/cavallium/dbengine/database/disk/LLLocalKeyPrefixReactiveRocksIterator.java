@@ -6,12 +6,16 @@ import io.netty.buffer.ByteBufUtil;
 import it.cavallium.dbengine.database.LLRange;
 import it.cavallium.dbengine.database.LLUtils;
 import java.util.Arrays;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
 import org.rocksdb.RocksMutableObject;
+import org.rocksdb.Snapshot;
 import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import static io.netty.buffer.Unpooled.*;
 
 public class LLLocalKeyPrefixReactiveRocksIterator {
@@ -22,7 +26,8 @@ public class LLLocalKeyPrefixReactiveRocksIterator {
 	private final int prefixLength;
 	private final LLRange range;
 	private final boolean allowNettyDirect;
-	private final ReadOptions readOptions;
+	@Nullable
+	private final Snapshot snapshot;
 	private final boolean canFillCache;
 	private final String debugName;
 
@@ -30,7 +35,7 @@ public class LLLocalKeyPrefixReactiveRocksIterator {
 			int prefixLength,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			boolean canFillCache,
 			String debugName) {
 		this.db = db;
@@ -39,7 +44,7 @@ public class LLLocalKeyPrefixReactiveRocksIterator {
 		this.prefixLength = prefixLength;
 		this.range = range;
 		this.allowNettyDirect = allowNettyDirect;
-		this.readOptions = readOptions;
+		this.snapshot = snapshot;
 		this.canFillCache = canFillCache;
 		this.debugName = debugName;
 	}
@@ -47,13 +52,20 @@ public class LLLocalKeyPrefixReactiveRocksIterator {
 
 	public Flux<ByteBuf> flux() {
 		return Flux
-				.generate(() -> {
-					var readOptions = new ReadOptions(this.readOptions);
-					if (!range.hasMin() || !range.hasMax()) {
-						readOptions.setReadaheadSize(32 * 1024); // 32KiB
-						readOptions.setFillCache(canFillCache);
+				.<ByteBuf, Tuple2<RocksIterator, PooledReadOptions>>generate(() -> {
+					var pooledReadOptions = PooledReadOptions.acquire(snapshot, range);
+					try {
+						var readOptions = pooledReadOptions.readOptions();
+						if (!range.hasMin() || !range.hasMax()) {
+							readOptions.setReadaheadSize(32 * 1024); // 32KiB
+							readOptions.setFillCache(canFillCache);
+						}
+						var rocksIterator = LLLocalDictionary.getRocksIterator(allowNettyDirect, readOptions, range.retain(), db, cfh);
+						return Tuples.of(rocksIterator, pooledReadOptions);
+					} catch (Throwable ex) {
+						pooledReadOptions.close();
+						throw ex;
 					}
-					return LLLocalDictionary.getRocksIterator(allowNettyDirect, readOptions, range.retain(), db, cfh);
 				}, (tuple, sink) -> {
 					range.retain();
 					try {
@@ -95,8 +107,7 @@ public class LLLocalKeyPrefixReactiveRocksIterator {
 				}, tuple -> {
 					var rocksIterator = tuple.getT1();
 					rocksIterator.close();
-					tuple.getT2().release();
-					tuple.getT3().release();
+					tuple.getT2().close();
 				});
 	}
 
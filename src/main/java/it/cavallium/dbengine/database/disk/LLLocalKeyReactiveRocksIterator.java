@@ -3,9 +3,10 @@ package it.cavallium.dbengine.database.disk;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.database.LLRange;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
+import org.rocksdb.Snapshot;
 
 public class LLLocalKeyReactiveRocksIterator extends LLLocalReactiveRocksIterator<ByteBuf> {
 
@@ -14,9 +15,21 @@ public class LLLocalKeyReactiveRocksIterator extends LLLocalReactiveRocksIterato
 			ColumnFamilyHandle cfh,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			String debugName) {
-		super(db, alloc, cfh, range, allowNettyDirect, readOptions, false, debugName);
+		super(db, alloc, cfh, range, allowNettyDirect, snapshot, false, debugName);
+	}
+
+	public LLLocalKeyReactiveRocksIterator(RocksDB db,
+			ByteBufAllocator alloc,
+			ColumnFamilyHandle cfh,
+			LLRange range,
+			boolean allowNettyDirect,
+			@Nullable Snapshot snapshot,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			String debugName) {
+		super(db, alloc, cfh, range, allowNettyDirect, snapshot, false, reverse, fromKeyExclusive, debugName);
 	}
 
 	@Override
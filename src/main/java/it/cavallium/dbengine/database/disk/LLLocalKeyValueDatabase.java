@@ -2,8 +2,10 @@ package it.cavallium.dbengine.database.disk;
 
 import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.database.Column;
+import it.cavallium.dbengine.database.LLChange;
 import it.cavallium.dbengine.client.DatabaseOptions;
 import it.cavallium.dbengine.database.LLKeyValueDatabase;
+import it.cavallium.dbengine.database.LLSecondaryIndexes;
 import it.cavallium.dbengine.database.LLSnapshot;
 import it.cavallium.dbengine.database.UpdateMode;
 import java.io.File;
@@ -21,10 +23,13 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.lang3.time.StopWatch;
 import org.jetbrains.annotations.Nullable;
 import org.rocksdb.BlockBasedTableConfig;
@@ -32,6 +37,7 @@ import org.rocksdb.BloomFilter;
 import org.rocksdb.ClockCache;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.CompactRangeOptions;
 import org.rocksdb.CompactionPriority;
 import org.rocksdb.CompactionStyle;
@@ -47,11 +53,15 @@ import org.rocksdb.RateLimiter;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.Snapshot;
+import org.rocksdb.TransactionLogIterator;
+import org.rocksdb.TtlDB;
 import org.rocksdb.WALRecoveryMode;
 import org.rocksdb.WriteBufferManager;
 import org.warp.commonutils.log.Logger;
 import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
@@ -64,6 +74,10 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 	protected static final Logger logger = LoggerFactory.getLogger(LLLocalKeyValueDatabase.class);
 	private static final ColumnFamilyDescriptor DEFAULT_COLUMN_FAMILY = new ColumnFamilyDescriptor(
 			RocksDB.DEFAULT_COLUMN_FAMILY);
+	/**
+	 * Interval between two reads of the WAL, when all the changes have already been read
+	 */
+	private static final Duration CHANGES_POLL_INTERVAL = Duration.ofMillis(100);
 
 	private final ByteBufAllocator allocator;
 	private final Scheduler dbScheduler;
@@ -75,8 +89,33 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 	private final DatabaseOptions databaseOptions;
 
 	private final boolean enableColumnsBug;
+	/**
+	 * Maximum size in bytes of the value cache of each column. 0 to disable the cache
+	 */
+	private final long valueCacheSize;
+	/**
+	 * Remember also the missing keys in the value cache
+	 */
+	private final boolean valueCacheMisses;
+	/**
+	 * Columns used as queues: their keys are always written after the keys already removed from the head
+	 */
+	private final Set<String> queueColumns;
+	/**
+	 * Time to live in seconds of the columns whose entries are dropped by the compactions when they expire.
+	 * If it's not empty the database is opened with {@link TtlDB}
+	 */
+	private final Map<String, Integer> ttlColumns;
 	private RocksDB db;
 	private final Map<Column, ColumnFamilyHandle> handles;
+	private final Map<Integer, Column> columnsById;
+	/**
+	 * The value caches are shared between all the dictionaries of the same column
+	 */
+	private final ConcurrentHashMap<Column, LLLocalValueCache> valueCaches = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Column, LLLocalQueueHints> queueHints = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Column, ReentrantLock> pollLocks = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Column, LLSecondaryIndexes> secondaryIndexes = new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<Long, Snapshot> snapshotsHandles = new ConcurrentHashMap<>();
 	private final AtomicLong nextSnapshotNumbers = new AtomicLong(1);
 
@@ -91,12 +130,25 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 		this.allocator = allocator;
 		Options rocksdbOptions = openRocksDb(path, databaseOptions);
 		try {
+			this.ttlColumns = parseTtlColumns(databaseOptions);
 			List<ColumnFamilyDescriptor> descriptors = new LinkedList<>();
+			List<Integer> ttlValues = new ArrayList<>();
 			descriptors
 					.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
+			ttlValues.add(0);
 			for (Column column : columns) {
-				descriptors
-						.add(new ColumnFamilyDescriptor(column.name().getBytes(StandardCharsets.US_ASCII)));
+				Integer ttlSeconds = ttlColumns.get(column.name());
+				if (ttlSeconds != null) {
+					// Compact also the files that are not compacted otherwise, so the expired entries are dropped
+					descriptors.add(new ColumnFamilyDescriptor(column.name().getBytes(StandardCharsets.US_ASCII),
+							new ColumnFamilyOptions().setTtl(ttlSeconds)
+					));
+					ttlValues.add(ttlSeconds);
+				} else {
+					descriptors
+							.add(new ColumnFamilyDescriptor(column.name().getBytes(StandardCharsets.US_ASCII)));
+					ttlValues.add(0);
+				}
 			}
 
 			// Get databases directory path
@@ -122,17 +174,34 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 					true
 			);
 			this.enableColumnsBug = "true".equals(databaseOptions.extraFlags().getOrDefault("enableColumnBug", "false"));
+			this.valueCacheSize = Long.parseLong(databaseOptions.extraFlags().getOrDefault("valueCacheSize", "0"));
+			this.valueCacheMisses = "true".equals(databaseOptions.extraFlags().getOrDefault("valueCacheMisses", "false"));
+			this.queueColumns = Set.copyOf(Arrays.asList(databaseOptions
+					.extraFlags()
+					.getOrDefault("queueColumns", "")
+					.split(",")));
 
 			createIfNotExists(descriptors, rocksdbOptions, databaseOptions, dbPath, dbPathString);
 
 			while (true) {
 				try {
 					// a factory method that returns a RocksDB instance
-					this.db = RocksDB.open(new DBOptions(rocksdbOptions),
-							dbPathString,
-							descriptors,
-							handles
-					);
+					if (ttlColumns.isEmpty()) {
+						this.db = RocksDB.open(new DBOptions(rocksdbOptions),
+								dbPathString,
+								descriptors,
+								handles
+						);
+					} else {
+						// A time to live of 0 never expires the entries of the other columns
+						this.db = TtlDB.open(new DBOptions(rocksdbOptions),
+								dbPathString,
+								descriptors,
+								handles,
+								ttlValues,
+								false
+						);
+					}
 					break;
 				} catch (RocksDBException ex) {
 					switch (ex.getMessage()) {
@@ -164,6 +233,9 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 				}
 			}
 
+			this.columnsById = new HashMap<>();
+			this.handles.forEach((column, handle) -> columnsById.put(handle.getID(), column));
+
 			// compactDb(db, handles);
 			flushDb(db, handles);
 		} catch (RocksDBException ex) {
@@ -171,6 +243,31 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 		}
 	}
 
+	/**
+	 * Parse the "ttlColumns" flag, a comma separated list of column=seconds.
+	 *
+	 * TtlDB stores a timestamp after every value of every column, so the flag must be set when the database
+	 * is created, and it can't be removed later. The time to live of a column can be changed
+	 */
+	private static Map<String, Integer> parseTtlColumns(DatabaseOptions databaseOptions) {
+		var ttlColumns = new HashMap<String, Integer>();
+		for (String ttlColumn : databaseOptions.extraFlags().getOrDefault("ttlColumns", "").split(",")) {
+			if (ttlColumn.isBlank()) {
+				continue;
+			}
+			int separatorIndex = ttlColumn.lastIndexOf('=');
+			if (separatorIndex == -1) {
+				throw new IllegalArgumentException("Invalid ttlColumns flag: \"" + ttlColumn + "\", the format is column=seconds");
+			}
+			int ttlSeconds = Integer.parseInt(ttlColumn.substring(separatorIndex + 1).trim());
+			if (ttlSeconds <= 0) {
+				throw new IllegalArgumentException("Invalid time to live of column " + ttlColumn);
+			}
+			ttlColumns.put(ttlColumn.substring(0, separatorIndex).trim(), ttlSeconds);
+		}
+		return Map.copyOf(ttlColumns);
+	}
+
 	@Override
 	public String getDatabaseName() {
 		return name;
@@ -218,6 +315,36 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 		// end force flush
 	}
 
+	/**
+	 * Flush the memtables and the WAL of all the columns
+	 */
+	Mono<Void> flush() {
+		return Mono
+				.<Void>fromCallable(() -> {
+					flushDb(db, new ArrayList<>(handles.values()));
+					return null;
+				})
+				.onErrorMap(cause -> new IOException("Failed to flush database \"" + getDatabaseName() + "\"", cause))
+				.subscribeOn(dbScheduler);
+	}
+
+	/**
+	 * Compact all the columns, waiting for the end of the compaction
+	 */
+	Mono<Void> compact() {
+		return Mono
+				.<Void>fromCallable(() -> {
+					try (var compactRangeOptions = new CompactRangeOptions().setAllowWriteStall(true)) {
+						for (ColumnFamilyHandle cfh : handles.values()) {
+							db.compactRange(cfh, null, null, compactRangeOptions);
+						}
+					}
+					return null;
+				})
+				.onErrorMap(cause -> new IOException("Failed to compact database \"" + getDatabaseName() + "\"", cause))
+				.subscribeOn(dbScheduler);
+	}
+
 	@SuppressWarnings("unused")
 	private void compactDb(RocksDB db, List<ColumnFamilyHandle> handles) {
 		// force compact the database
@@ -393,6 +520,17 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 			options.setUseDirectIoForFlushAndCompaction(true);
 		}
 
+		// Keep the archived WAL files, to read the changes of the database.
+		// Set after the memory profiles, otherwise their defaults would replace the flags
+		var walTtlSeconds = databaseOptions.extraFlags().get("walTtlSeconds");
+		if (walTtlSeconds != null) {
+			options.setWalTtlSeconds(Long.parseLong(walTtlSeconds));
+		}
+		var walSizeLimitMB = databaseOptions.extraFlags().get("walSizeLimitMB");
+		if (walSizeLimitMB != null) {
+			options.setWalSizeLimitMB(Long.parseLong(walSizeLimitMB));
+		}
+
 		tableOptions.setBlockSize(16 * 1024); // 16MiB
 		options.setTableFormatConfig(tableOptions);
 		options.setCompactionPriority(CompactionPriority.MinOverlappingRatio);
@@ -462,11 +600,50 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 						dbScheduler,
 						(snapshot) -> snapshotsHandles.get(snapshot.getSequenceNumber()),
 						updateMode,
-						databaseOptions
+						databaseOptions,
+						getValueCache(columnName),
+						getQueueHints(columnName),
+						getPollLock(columnName),
+						getSecondaryIndexes(columnName)
 				))
 				.subscribeOn(dbScheduler);
 	}
 
+	@Nullable
+	private LLLocalValueCache getValueCache(byte[] columnName) {
+		if (valueCacheSize <= 0) {
+			return null;
+		}
+		return valueCaches.computeIfAbsent(Column.special(Column.toString(columnName)),
+				column -> new LLLocalValueCache(valueCacheSize, valueCacheMisses)
+		);
+	}
+
+	@Nullable
+	private LLLocalQueueHints getQueueHints(byte[] columnName) {
+		var columnNameString = Column.toString(columnName);
+		if (!queueColumns.contains(columnNameString)) {
+			return null;
+		}
+		return queueHints.computeIfAbsent(Column.special(columnNameString), column -> new LLLocalQueueHints());
+	}
+
+	/**
+	 * All the dictionaries of the same column share the same poll lock
+	 */
+	private ReentrantLock getPollLock(byte[] columnName) {
+		return pollLocks.computeIfAbsent(Column.special(Column.toString(columnName)), column -> new ReentrantLock());
+	}
+
+	/**
+	 * All the dictionaries of the same column share the same secondary indexes
+	 */
+	private LLSecondaryIndexes getSecondaryIndexes(byte[] columnName) {
+		return secondaryIndexes.computeIfAbsent(Column.special(Column.toString(columnName)),
+				column -> new LLSecondaryIndexes()
+		);
+	}
+
 	private ColumnFamilyHandle getCfh(byte[] columnName) throws RocksDBException {
 		ColumnFamilyHandle cfh = handles.get(Column.special(Column.toString(columnName)));
 		//noinspection RedundantIfStatement
@@ -489,6 +666,70 @@ public class LLLocalKeyValueDatabase implements LLKeyValueDatabase {
 				.subscribeOn(dbScheduler);
 	}
 
+	@Override
+	public Flux<LLChange> changes(long fromSequenceNumber) {
+		AtomicLong nextSequenceNumber = new AtomicLong(fromSequenceNumber);
+		return Flux
+				.defer(() -> readAvailableChanges(nextSequenceNumber.get()))
+				.doOnNext(change -> nextSequenceNumber.set(change.sequenceNumber() + 1))
+				.repeatWhen(completions -> completions.delayElements(CHANGES_POLL_INTERVAL))
+				.doOnDiscard(LLChange.class, LLChange::release);
+	}
+
+	/**
+	 * Read the changes that are in the WAL, then complete
+	 */
+	private Flux<LLChange> readAvailableChanges(long fromSequenceNumber) {
+		return Flux
+				.defer(() -> {
+					long latestSequenceNumber = db.getLatestSequenceNumber();
+					if (latestSequenceNumber == 0 || fromSequenceNumber > latestSequenceNumber) {
+						return Flux.empty();
+					}
+					AtomicBoolean firstBatch = new AtomicBoolean(true);
+					return Flux.<List<LLChange>, TransactionLogIterator>generate(
+							() -> db.getUpdatesSince(fromSequenceNumber),
+							(iterator, sink) -> readNextChanges(iterator, sink, fromSequenceNumber, firstBatch),
+							TransactionLogIterator::close
+					);
+				})
+				.concatMapIterable(changes -> changes)
+				.onErrorMap(RocksDBException.class, cause -> new IOException("Failed to read the changes of database \""
+						+ getDatabaseName() + "\"", cause))
+				.subscribeOn(dbScheduler);
+	}
+
+	private TransactionLogIterator readNextChanges(TransactionLogIterator iterator,
+			SynchronousSink<List<LLChange>> sink,
+			long fromSequenceNumber,
+			AtomicBoolean firstBatch) {
+		try {
+			if (!iterator.isValid()) {
+				iterator.status();
+				sink.complete();
+				return iterator;
+			}
+			var batch = iterator.getBatch();
+			try (var writeBatch = batch.writeBatch()) {
+				// The WAL files that contain the requested changes could have been deleted already
+				if (firstBatch.getAndSet(false) && fromSequenceNumber > 0 && batch.sequenceNumber() > fromSequenceNumber) {
+					throw new IOException("The changes from sequence number " + fromSequenceNumber
+							+ " are not available anymore, the oldest available change is " + batch.sequenceNumber());
+				}
+				sink.next(LLLocalChangesDecoder.decode(columnsById,
+						batch.sequenceNumber(),
+						writeBatch,
+						fromSequenceNumber,
+						db instanceof TtlDB
+				));
+			}
+			iterator.next();
+		} catch (RocksDBException | IOException ex) {
+			sink.error(ex);
+		}
+		return iterator;
+	}
+
 	@Override
 	public Mono<Void> verifyChecksum() {
 		return Mono
@@ -1,14 +1,19 @@
 package it.cavallium.dbengine.database.disk;
 
 import it.cavallium.dbengine.client.DirectIOOptions;
+import it.cavallium.dbengine.client.IndexSortOptions;
 import it.cavallium.dbengine.client.IndicizerAnalyzers;
 import it.cavallium.dbengine.client.IndicizerSimilarities;
 import it.cavallium.dbengine.client.LuceneOptions;
+import it.cavallium.dbengine.client.MergePolicyOptions;
+import it.cavallium.dbengine.client.MergeSchedulerOptions;
 import it.cavallium.dbengine.client.NRTCachingOptions;
 import it.cavallium.dbengine.client.query.QueryParser;
 import it.cavallium.dbengine.client.query.current.data.QueryParams;
 import it.cavallium.dbengine.database.EnglishItalianStopFilter;
 import it.cavallium.dbengine.database.LLDocument;
+import it.cavallium.dbengine.database.LLIndexGeneration;
+import it.cavallium.dbengine.database.LLItem;
 import it.cavallium.dbengine.database.LLKeyScore;
 import it.cavallium.dbengine.database.LLLuceneIndex;
 import it.cavallium.dbengine.database.LLSearchResult;
@@ -29,6 +34,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -36,6 +42,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexCommit;
@@ -46,6 +53,7 @@ import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
 import org.apache.lucene.index.MergeScheduler;
 import org.apache.lucene.index.SerialMergeScheduler;
 import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.misc.store.DirectIODirectory;
 import org.apache.lucene.queries.mlt.MoreLikeThis;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -59,6 +67,8 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.search.similarities.TFIDFSimilarity;
 import org.apache.lucene.store.ByteBuffersDirectory;
@@ -83,16 +93,17 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 	protected static final Logger logger = LoggerFactory.getLogger(LLLocalLuceneIndex.class);
 	private static final LuceneLocalSearcher localSearcher = new AdaptiveLuceneLocalSearcher();
 	/**
-	 * Global lucene index scheduler.
-	 * There is only a single thread globally to not overwhelm the disk with
-	 * concurrent commits or concurrent refreshes.
+	 * Pool of the heavy tasks threads, shared by the shards of a multi index.
+	 * It's owned by this index only if it has been created by this index
 	 */
-	private static final Scheduler luceneHeavyTasksScheduler = Schedulers.newBoundedElastic(1,
-			Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
-			"lucene",
-			Integer.MAX_VALUE,
-			false
-	);
+	private final Scheduler luceneHeavyTasksPool;
+	private final boolean ownsLuceneHeavyTasksPool;
+	/**
+	 * Scheduler of the commits, of the refreshes and of the other heavy tasks of this index.
+	 * It runs on a single thread of the heavy tasks pool, so the heavy tasks of this index are executed in order
+	 * and they don't run concurrently, while the heavy tasks of different indices can run in parallel
+	 */
+	private final Scheduler luceneHeavyTasksScheduler;
 	// Scheduler used to get callback values of LuceneStreamSearcher without creating deadlocks
 	private final Scheduler luceneSearcherScheduler = Schedulers.newBoundedElastic(
 			4,
@@ -101,19 +112,18 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 			60,
 			false
 	);
-	// Scheduler used to get callback values of LuceneStreamSearcher without creating deadlocks
-	private final Scheduler luceneWriterScheduler = Schedulers.newBoundedElastic(
-			4,
-			Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
-			"lucene-writer",
-			60,
-			false
-	);
+	/**
+	 * Scheduler of the indexing threads. The index writer is thread safe, and every thread writes to its own buffer.
+	 * It's shared by the shards of a multi index, and it's owned by this index only if it has been created by this index
+	 */
+	private final Scheduler luceneWriterScheduler;
+	private final boolean ownsLuceneWriterScheduler;
 
 	private final String luceneIndexName;
 	private final SnapshotDeletionPolicy snapshotter;
 	private final IndexWriter indexWriter;
 	private final SearcherManager searcherManager;
+	private final LuceneRefreshController refreshController;
 	private final Directory directory;
 	/**
 	 * Last snapshot sequence number. 0 is not used
@@ -125,6 +135,18 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 	private final ConcurrentHashMap<Long, LuceneIndexSnapshot> snapshots = new ConcurrentHashMap<>();
 	private final boolean lowMemory;
 	private final Similarity similarity;
+	/**
+	 * Number of threads that convert and write the documents of addDocuments and updateDocuments in parallel
+	 */
+	private final int indexingThreads;
+	/**
+	 * Maximum number of documents added to the index writer at once by addDocuments
+	 */
+	private final int addDocumentsMaxChunkDocuments;
+	/**
+	 * Maximum estimated size of the documents added to the index writer at once by addDocuments
+	 */
+	private final long addDocumentsMaxChunkBytes;
 
 	private final ScheduledTaskLifecycle scheduledTasksLifecycle;
 
@@ -133,6 +155,30 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 			IndicizerAnalyzers indicizerAnalyzers,
 			IndicizerSimilarities indicizerSimilarities,
 			LuceneOptions luceneOptions) throws IOException {
+		this(luceneBasePath, name, indicizerAnalyzers, indicizerSimilarities, luceneOptions, null, null);
+	}
+
+	/**
+	 * @param luceneHeavyTasksPool pool of the heavy tasks threads shared with other indices,
+	 *                             or null to create a pool for this index
+	 * @param luceneWriterScheduler scheduler of the indexing threads shared with other indices,
+	 *                              or null to create a scheduler for this index
+	 */
+	LLLocalLuceneIndex(@Nullable Path luceneBasePath,
+			String name,
+			IndicizerAnalyzers indicizerAnalyzers,
+			IndicizerSimilarities indicizerSimilarities,
+			LuceneOptions luceneOptions,
+			@Nullable Scheduler luceneHeavyTasksPool,
+			@Nullable Scheduler luceneWriterScheduler) throws IOException {
+		if (luceneHeavyTasksPool != null) {
+			this.luceneHeavyTasksPool = luceneHeavyTasksPool;
+			this.ownsLuceneHeavyTasksPool = false;
+		} else {
+			this.luceneHeavyTasksPool = createHeavyTasksPool(1);
+			this.ownsLuceneHeavyTasksPool = true;
+		}
+		this.luceneHeavyTasksScheduler = Schedulers.single(this.luceneHeavyTasksPool);
 		Path directoryPath;
 		if (luceneOptions.inMemory() != (luceneBasePath == null)) {
 			throw new IllegalArgumentException();
@@ -210,6 +256,20 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 		this.snapshotter = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
 		this.lowMemory = lowMemory;
 		this.similarity = LuceneUtils.toPerFieldSimilarityWrapper(indicizerSimilarities);
+		this.indexingThreads = getIndexingThreads(luceneOptions);
+		if (luceneWriterScheduler != null) {
+			this.luceneWriterScheduler = luceneWriterScheduler;
+			this.ownsLuceneWriterScheduler = false;
+		} else {
+			this.luceneWriterScheduler = createWriterScheduler(indexingThreads);
+			this.ownsLuceneWriterScheduler = true;
+		}
+		this.addDocumentsMaxChunkDocuments = Integer.parseInt(luceneOptions
+				.extraFlags()
+				.getOrDefault("addDocumentsMaxChunkDocuments", "1024"));
+		this.addDocumentsMaxChunkBytes = Long.parseLong(luceneOptions
+				.extraFlags()
+				.getOrDefault("addDocumentsMaxChunkBytes", String.valueOf(8L * 1024L * 1024L)));
 
 		IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LuceneUtils.toPerFieldAnalyzerWrapper(indicizerAnalyzers));
 		indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
@@ -220,10 +280,38 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 			mergeScheduler = new SerialMergeScheduler();
 		} else {
 			var concurrentMergeScheduler = new ConcurrentMergeScheduler();
-			concurrentMergeScheduler.enableAutoIOThrottle();
+			if (luceneOptions.mergeSchedulerOptions().isPresent()) {
+				MergeSchedulerOptions mergeSchedulerOptions = luceneOptions.mergeSchedulerOptions().get();
+				concurrentMergeScheduler.setMaxMergesAndThreads(mergeSchedulerOptions.maxMergeCount(),
+						mergeSchedulerOptions.maxThreadCount()
+				);
+				if (mergeSchedulerOptions.autoIOThrottle()) {
+					concurrentMergeScheduler.enableAutoIOThrottle();
+				} else {
+					concurrentMergeScheduler.disableAutoIOThrottle();
+				}
+			} else {
+				concurrentMergeScheduler.enableAutoIOThrottle();
+			}
 			mergeScheduler = concurrentMergeScheduler;
 		}
 		indexWriterConfig.setMergeScheduler(mergeScheduler);
+		if (luceneOptions.mergePolicyOptions().isPresent()) {
+			MergePolicyOptions mergePolicyOptions = luceneOptions.mergePolicyOptions().get();
+			var mergePolicy = new TieredMergePolicy();
+			mergePolicy.setSegmentsPerTier(mergePolicyOptions.segmentsPerTier());
+			mergePolicy.setMaxMergedSegmentMB(mergePolicyOptions.maxMergedSegmentMB());
+			mergePolicy.setDeletesPctAllowed(mergePolicyOptions.deletesPctAllowed());
+			mergePolicy.setFloorSegmentMB(mergePolicyOptions.floorSegmentMB());
+			indexWriterConfig.setMergePolicy(mergePolicy);
+		}
+		if (luceneOptions.indexSortOptions().isPresent()) {
+			IndexSortOptions indexSortOptions = luceneOptions.indexSortOptions().get();
+			indexWriterConfig.setIndexSort(new Sort(new SortedNumericSortField(indexSortOptions.field(),
+					SortField.Type.LONG,
+					indexSortOptions.reverse()
+			)));
+		}
 		indexWriterConfig.setRAMBufferSizeMB(luceneOptions.indexWriterBufferSize() / 1024D / 1024D);
 		indexWriterConfig.setReaderPooling(false);
 		indexWriterConfig.setSimilarity(getSimilarity());
@@ -239,7 +327,54 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 
 		// Start scheduled tasks
 		registerScheduledFixedTask(this::scheduledCommit, luceneOptions.commitDebounceTime());
-		registerScheduledFixedTask(this::scheduledQueryRefresh, luceneOptions.queryRefreshDebounceTime());
+		var maxQueryRefreshDebounceTime = Duration.ofMillis(Long.parseLong(luceneOptions
+				.extraFlags()
+				.getOrDefault("maxQueryRefreshDebounceMillis",
+						String.valueOf(luceneOptions.queryRefreshDebounceTime().toMillis() * 10)
+				)));
+		this.refreshController = new LuceneRefreshController(indexWriter,
+				searcherManager,
+				luceneHeavyTasksScheduler,
+				luceneOptions.queryRefreshDebounceTime(),
+				maxQueryRefreshDebounceTime
+		);
+		refreshController.start();
+	}
+
+	/**
+	 * Create a pool of heavy tasks threads. The concurrency is limited to not overwhelm the disk with
+	 * concurrent commits or concurrent refreshes
+	 * @param concurrency maximum number of heavy tasks running in parallel
+	 */
+	static Scheduler createHeavyTasksPool(int concurrency) {
+		return Schedulers.newBoundedElastic(concurrency,
+				Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+				"lucene",
+				60,
+				false
+		);
+	}
+
+	/**
+	 * @return the number of indexing threads, set by the indexingThreads extra flag. The default is the core count
+	 */
+	static int getIndexingThreads(LuceneOptions luceneOptions) {
+		return Integer.parseInt(luceneOptions
+				.extraFlags()
+				.getOrDefault("indexingThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	}
+
+	/**
+	 * Create a scheduler of indexing threads
+	 * @param threads maximum number of documents converted and written in parallel
+	 */
+	static Scheduler createWriterScheduler(int threads) {
+		return Schedulers.newBoundedElastic(threads,
+				Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+				"lucene-writer",
+				60,
+				false
+		);
 	}
 
 	private Similarity getSimilarity() {
@@ -357,47 +492,107 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 	}
 
 	@Override
-	public Mono<Void> addDocument(LLTerm key, LLDocument doc) {
-		return Mono.<Void>fromCallable(() -> {
+	public Mono<LLIndexGeneration> addDocument(LLTerm key, LLDocument doc) {
+		return Mono.fromCallable(() -> {
 			scheduledTasksLifecycle.startScheduledTask();
 			try {
 				//noinspection BlockingMethodInNonBlockingContext
-				indexWriter.addDocument(LLUtils.toDocument(doc));
-				return null;
+				return LLIndexGeneration.of(indexWriter.addDocument(LLUtils.toDocument(key, doc)));
 			} finally {
 				scheduledTasksLifecycle.endScheduledTask();
 			}
 		}).subscribeOn(luceneWriterScheduler);
 	}
 
+	/**
+	 * Add the documents in chunks, so only a chunk of documents per indexing thread is kept in memory.
+	 * Every indexing thread converts and adds its own chunks, and requests the next chunk only after
+	 * the previous one has been added to the index writer
+	 */
 	@Override
-	public Mono<Void> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents) {
+	public Mono<LLIndexGeneration> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents) {
 		return documents
-				.collectList()
-				.flatMap(documentsList -> Mono
-						.<Void>fromCallable(() -> {
-							scheduledTasksLifecycle.startScheduledTask();
-							try {
-								//noinspection BlockingMethodInNonBlockingContext
-								indexWriter.addDocuments(LLUtils.toDocumentsFromEntries(documentsList));
-								return null;
-							} finally {
-								scheduledTasksLifecycle.endScheduledTask();
-							}
-						})
-						.subscribeOn(luceneWriterScheduler)
-				);
+				.transform(this::splitInChunks)
+				.parallel(indexingThreads, 1)
+				.runOn(luceneWriterScheduler, 1)
+				.concatMap(documentsChunk -> Mono.fromCallable(() -> {
+					scheduledTasksLifecycle.startScheduledTask();
+					try {
+						//noinspection BlockingMethodInNonBlockingContext
+						flushPendingBuffers();
+						//noinspection BlockingMethodInNonBlockingContext
+						return indexWriter.addDocuments(LLUtils.toDocumentsFromEntries(documentsChunk));
+					} finally {
+						scheduledTasksLifecycle.endScheduledTask();
+					}
+				}))
+				.sequential()
+				.transform(this::toGeneration);
+	}
+
+	/**
+	 * The generation of multiple writes is the sequence number of the last completed write
+	 */
+	private Mono<LLIndexGeneration> toGeneration(Flux<Long> sequenceNumbers) {
+		return sequenceNumbers
+				.reduce(Math::max)
+				.map(LLIndexGeneration::of)
+				.defaultIfEmpty(LLIndexGeneration.none(1));
+	}
+
+	/**
+	 * Split the documents in chunks that don't exceed the maximum documents count or the maximum size
+	 */
+	private Flux<List<Entry<LLTerm, LLDocument>>> splitInChunks(Flux<Entry<LLTerm, LLDocument>> documents) {
+		return Flux.defer(() -> {
+			var chunkDocuments = new AtomicInteger();
+			var chunkBytes = new AtomicLong();
+			return documents.bufferUntil(entry -> {
+				long bytes = chunkBytes.addAndGet(estimateSize(entry.getValue()));
+				if (chunkDocuments.incrementAndGet() >= addDocumentsMaxChunkDocuments || bytes >= addDocumentsMaxChunkBytes) {
+					chunkDocuments.set(0);
+					chunkBytes.set(0);
+					return true;
+				} else {
+					return false;
+				}
+			});
+		});
+	}
+
+	private static long estimateSize(LLDocument document) {
+		long size = 0;
+		for (LLItem item : document.getItems()) {
+			size += item.getName().length() * 2L + item.getData().length;
+		}
+		return size;
+	}
+
+	/**
+	 * If the index writer is flushing more bytes than its RAM buffer, the flushes are not keeping up with the writes:
+	 * help flushing the pending buffers on this thread before adding more documents
+	 */
+	private void flushPendingBuffers() throws IOException {
+		long ramBufferBytes = (long) (indexWriter.getConfig().getRAMBufferSizeMB() * 1024D * 1024D);
+		if (ramBufferBytes <= 0) {
+			// Flushing by RAM usage is disabled
+			return;
+		}
+		while (indexWriter.getFlushingBytes() > ramBufferBytes) {
+			if (!indexWriter.flushNextBuffer()) {
+				break;
+			}
+		}
 	}
 
 
 	@Override
-	public Mono<Void> deleteDocument(LLTerm id) {
-		return Mono.<Void>fromCallable(() -> {
+	public Mono<LLIndexGeneration> deleteDocument(LLTerm id) {
+		return Mono.fromCallable(() -> {
 			scheduledTasksLifecycle.startScheduledTask();
 			try {
 				//noinspection BlockingMethodInNonBlockingContext
-				indexWriter.deleteDocuments(LLUtils.toTerm(id));
-				return null;
+				return LLIndexGeneration.of(indexWriter.deleteDocuments(LLUtils.toTerm(id)));
 			} finally {
 				scheduledTasksLifecycle.endScheduledTask();
 			}
@@ -405,41 +600,52 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 	}
 
 	@Override
-	public Mono<Void> updateDocument(LLTerm id, LLDocument document) {
-		return Mono.<Void>fromCallable(() -> {
+	public Mono<LLIndexGeneration> updateDocument(LLTerm id, LLDocument document) {
+		return Mono.fromCallable(() -> {
 			scheduledTasksLifecycle.startScheduledTask();
 			try {
 				//noinspection BlockingMethodInNonBlockingContext
-				indexWriter.updateDocument(LLUtils.toTerm(id), LLUtils.toDocument(document));
+				return LLIndexGeneration.of(indexWriter.updateDocument(LLUtils.toTerm(id), LLUtils.toDocument(id, document)));
 			} finally {
 				scheduledTasksLifecycle.endScheduledTask();
 			}
-			return null;
 		}).subscribeOn(luceneWriterScheduler);
 	}
 
 	@Override
-	public Mono<Void> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents) {
-		return documents.flatMap(this::updateDocuments).then();
+	public Mono<LLIndexGeneration> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents) {
+		return documents.flatMap(this::updateDocuments);
 	}
 
-	private Mono<Void> updateDocuments(Map<LLTerm, LLDocument> documentsMap) {
-		return Mono
-				.<Void>fromCallable(() -> {
+	/**
+	 * Update the documents in parallel on the indexing threads.
+	 * The terms of the map are all different, so the order of the updates doesn't matter
+	 */
+	private Mono<LLIndexGeneration> updateDocuments(Map<LLTerm, LLDocument> documentsMap) {
+		return Flux
+				.fromIterable(documentsMap.entrySet())
+				.transform(this::splitInChunks)
+				.parallel(indexingThreads, 1)
+				.runOn(luceneWriterScheduler, 1)
+				.concatMap(documentsChunk -> Mono.fromCallable(() -> {
 					scheduledTasksLifecycle.startScheduledTask();
 					try {
-						for (Entry<LLTerm, LLDocument> entry : documentsMap.entrySet()) {
+						//noinspection BlockingMethodInNonBlockingContext
+						flushPendingBuffers();
+						long sequenceNumber = LLIndexGeneration.NONE;
+						for (Entry<LLTerm, LLDocument> entry : documentsChunk) {
 							LLTerm key = entry.getKey();
 							LLDocument value = entry.getValue();
 							//noinspection BlockingMethodInNonBlockingContext
-							indexWriter.updateDocument(LLUtils.toTerm(key), LLUtils.toDocument(value));
+							sequenceNumber = indexWriter.updateDocument(LLUtils.toTerm(key), LLUtils.toDocument(key, value));
 						}
-						return null;
+						return sequenceNumber;
 					} finally {
 						scheduledTasksLifecycle.endScheduledTask();
 					}
-				})
-				.subscribeOn(luceneWriterScheduler);
+				}))
+				.sequential()
+				.transform(this::toGeneration);
 	}
 
 	@Override
@@ -619,6 +825,7 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 				.<Void>fromCallable(() -> {
 					logger.debug("Closing IndexWriter...");
 					scheduledTasksLifecycle.cancelAndWait();
+					refreshController.close();
 					//noinspection BlockingMethodInNonBlockingContext
 					indexWriter.close();
 					//noinspection BlockingMethodInNonBlockingContext
@@ -626,7 +833,21 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 					logger.debug("IndexWriter closed");
 					return null;
 				})
-				.subscribeOn(luceneHeavyTasksScheduler);
+				.subscribeOn(luceneHeavyTasksScheduler)
+				// Don't dispose the heavy tasks scheduler from one of its own tasks
+				.publishOn(Schedulers.boundedElastic())
+				.doOnTerminate(this::disposeSchedulers);
+	}
+
+	private void disposeSchedulers() {
+		luceneHeavyTasksScheduler.dispose();
+		if (ownsLuceneHeavyTasksPool) {
+			luceneHeavyTasksPool.dispose();
+		}
+		if (ownsLuceneWriterScheduler) {
+			luceneWriterScheduler.dispose();
+		}
+		luceneSearcherScheduler.dispose();
 	}
 
 	@Override
@@ -653,14 +874,9 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 					scheduledTasksLifecycle.startScheduledTask();
 					try {
 						if (scheduledTasksLifecycle.isCancelled()) return null;
-						if (force) {
-							if (scheduledTasksLifecycle.isCancelled()) return null;
-							//noinspection BlockingMethodInNonBlockingContext
-							searcherManager.maybeRefreshBlocking();
-						} else {
-							//noinspection BlockingMethodInNonBlockingContext
-							searcherManager.maybeRefresh();
-						}
+						// Refresh through the controller, so the waiters of the new generation are completed
+						//noinspection BlockingMethodInNonBlockingContext
+						refreshController.refreshNow(force);
 					} finally {
 						scheduledTasksLifecycle.endScheduledTask();
 					}
@@ -669,6 +885,20 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 				.subscribeOn(luceneHeavyTasksScheduler);
 	}
 
+	@Override
+	public Mono<Void> refresh(Duration maxStaleness) {
+		return refreshController.refresh(maxStaleness);
+	}
+
+	@Override
+	public Mono<Void> waitForGeneration(LLIndexGeneration generation) {
+		if (generation.getShardsCount() != 1) {
+			return Mono.error(new IllegalArgumentException("The generation has "
+					+ generation.getShardsCount() + " shards, but the index has only one shard"));
+		}
+		return refreshController.waitForGeneration(generation.getGeneration(0));
+	}
+
 	private void scheduledCommit() {
 		try {
 			if (indexWriter.hasUncommittedChanges()) {
@@ -679,16 +909,6 @@ public class LLLocalLuceneIndex implements LLLuceneIndex {
 		}
 	}
 
-	@SuppressWarnings("unused")
-	private void scheduledQueryRefresh() {
-		try {
-			boolean refreshStarted = searcherManager.maybeRefresh();
-			// if refreshStarted == false, another thread is currently already refreshing
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		}
-	}
-
 	private LuceneIndexSnapshot resolveSnapshot(@Nullable LLSnapshot snapshot) {
 		if (snapshot == null) {
 			return null;
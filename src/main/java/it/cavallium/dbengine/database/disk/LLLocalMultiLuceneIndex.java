@@ -9,6 +9,7 @@ import it.cavallium.dbengine.client.LuceneIndex;
 import it.cavallium.dbengine.client.LuceneOptions;
 import it.cavallium.dbengine.client.query.current.data.QueryParams;
 import it.cavallium.dbengine.database.LLDocument;
+import it.cavallium.dbengine.database.LLIndexGeneration;
 import it.cavallium.dbengine.database.LLLuceneIndex;
 import it.cavallium.dbengine.database.LLSearchResult;
 import it.cavallium.dbengine.database.LLSearchResultShard;
@@ -51,6 +52,7 @@ import org.warp.commonutils.functional.IOBiConsumer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.GroupedFlux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
@@ -60,7 +62,16 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 	private final ConcurrentHashMap<Long, LLSnapshot[]> registeredSnapshots = new ConcurrentHashMap<>();
 	private final AtomicLong nextSnapshotNumber = new AtomicLong(1);
 	private final LLLocalLuceneIndex[] luceneIndices;
-
+	/**
+	 * Pool of the heavy tasks threads shared by the shards, so the commits of the shards run in parallel.
+	 * The number of threads is limited by the heavyTasksConcurrency extra flag
+	 */
+	private final Scheduler luceneHeavyTasksPool;
+	/**
+	 * Scheduler of the indexing threads shared by the shards, so the indexing threads are limited by the
+	 * indexingThreads extra flag for the whole index, not for each shard
+	 */
+	private final Scheduler luceneWriterScheduler;
 
 	private final LuceneMultiSearcher multiSearcher = new AdaptiveLuceneMultiSearcher();
 
@@ -75,6 +86,14 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 			throw new IOException("Unsupported instances count: " + instancesCount);
 		}
 
+		int heavyTasksConcurrency = Integer.parseInt(luceneOptions
+				.extraFlags()
+				.getOrDefault("heavyTasksConcurrency",
+						String.valueOf(Math.min(instancesCount, Runtime.getRuntime().availableProcessors()))
+				));
+		this.luceneHeavyTasksPool = LLLocalLuceneIndex.createHeavyTasksPool(heavyTasksConcurrency);
+		this.luceneWriterScheduler = LLLocalLuceneIndex.createWriterScheduler(LLLocalLuceneIndex.getIndexingThreads(
+				luceneOptions));
 		LLLocalLuceneIndex[] luceneIndices = new LLLocalLuceneIndex[instancesCount];
 		for (int i = 0; i < instancesCount; i++) {
 			String instanceName;
@@ -87,16 +106,14 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 					instanceName,
 					indicizerAnalyzers,
 					indicizerSimilarities,
-					luceneOptions
+					luceneOptions,
+					luceneHeavyTasksPool,
+					luceneWriterScheduler
 			);
 		}
 		this.luceneIndices = luceneIndices;
 	}
 
-	private LLLocalLuceneIndex getLuceneIndex(LLTerm id) {
-		return luceneIndices[getLuceneIndexId(id)];
-	}
-
 	private int getLuceneIndexId(LLTerm id) {
 		return Math.abs(id.getValue().hashCode()) % luceneIndices.length;
 	}
@@ -107,18 +124,28 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 	}
 
 	@Override
-	public Mono<Void> addDocument(LLTerm id, LLDocument doc) {
-		return getLuceneIndex(id).addDocument(id, doc);
+	public Mono<LLIndexGeneration> addDocument(LLTerm id, LLDocument doc) {
+		int luceneIndexId = getLuceneIndexId(id);
+		return luceneIndices[luceneIndexId]
+				.addDocument(id, doc)
+				.map(generation -> toMultiGeneration(luceneIndexId, generation));
+	}
+
+	/**
+	 * Convert the generation of a shard to the generation of this index
+	 */
+	private LLIndexGeneration toMultiGeneration(int luceneIndexId, LLIndexGeneration shardGeneration) {
+		return LLIndexGeneration.ofShard(luceneIndices.length, luceneIndexId, shardGeneration.getGeneration(0));
 	}
 
 	@SuppressWarnings({"unchecked"})
 	@Override
-	public Mono<Void> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents) {
+	public Mono<LLIndexGeneration> addDocuments(Flux<Entry<LLTerm, LLDocument>> documents) {
 		return documents
 				.bufferTimeout(512, Duration.ofSeconds(2))
 				.flatMap(inputEntries -> {
 					List<Entry<LLTerm, LLDocument>>[] sortedEntries = new List[luceneIndices.length];
-					Mono<Void>[] results = new Mono[luceneIndices.length];
+					Mono<LLIndexGeneration>[] results = new Mono[luceneIndices.length];
 
 					// Sort entries
 					for(var inputEntry : inputEntries) {
@@ -134,45 +161,58 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 					for (List<Entry<LLTerm, LLDocument>> docs : sortedEntries) {
 						if (docs != null && !docs.isEmpty()) {
 							LLLocalLuceneIndex luceneIndex = luceneIndices[luceneIndexId];
-							results[luceneIndexId] = luceneIndex.addDocuments(Flux.fromIterable(docs));
+							int shardId = luceneIndexId;
+							results[luceneIndexId] = luceneIndex
+									.addDocuments(Flux.fromIterable(docs))
+									.map(generation -> toMultiGeneration(shardId, generation));
 						} else {
 							results[luceneIndexId] = Mono.empty();
 						}
 						luceneIndexId++;
 					}
 
-					return Mono.when(results);
+					return Flux.merge(results);
 				})
-				.then();
+				.reduce(LLIndexGeneration::merge)
+				.defaultIfEmpty(LLIndexGeneration.none(luceneIndices.length));
 	}
 
 	@Override
-	public Mono<Void> deleteDocument(LLTerm id) {
-		return getLuceneIndex(id).deleteDocument(id);
+	public Mono<LLIndexGeneration> deleteDocument(LLTerm id) {
+		int luceneIndexId = getLuceneIndexId(id);
+		return luceneIndices[luceneIndexId]
+				.deleteDocument(id)
+				.map(generation -> toMultiGeneration(luceneIndexId, generation));
 	}
 
 	@Override
-	public Mono<Void> updateDocument(LLTerm id, LLDocument document) {
-		return getLuceneIndex(id).updateDocument(id, document);
+	public Mono<LLIndexGeneration> updateDocument(LLTerm id, LLDocument document) {
+		int luceneIndexId = getLuceneIndexId(id);
+		return luceneIndices[luceneIndexId]
+				.updateDocument(id, document)
+				.map(generation -> toMultiGeneration(luceneIndexId, generation));
 	}
 
 	@Override
-	public Mono<Void> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents) {
+	public Mono<LLIndexGeneration> updateDocuments(Mono<Map<LLTerm, LLDocument>> documents) {
 		return documents
 				.flatMapMany(map -> {
-					var sortedMap = new HashMap<LLLocalLuceneIndex, Map<LLTerm, LLDocument>>();
+					var sortedMap = new HashMap<Integer, Map<LLTerm, LLDocument>>();
 					map.forEach((key, value) -> sortedMap
-							.computeIfAbsent(getLuceneIndex(key), _unused -> new HashMap<>())
+							.computeIfAbsent(getLuceneIndexId(key), _unused -> new HashMap<>())
 							.put(key, value)
 					);
 					return Flux.fromIterable(Collections.unmodifiableMap(sortedMap).entrySet());
 				})
 				.flatMap(luceneIndexWithNewDocuments -> {
-					var luceneIndex = luceneIndexWithNewDocuments.getKey();
+					int luceneIndexId = luceneIndexWithNewDocuments.getKey();
 					var docs = luceneIndexWithNewDocuments.getValue();
-					return luceneIndex.updateDocuments(Mono.just(docs));
+					return luceneIndices[luceneIndexId]
+							.updateDocuments(Mono.just(docs))
+							.map(generation -> toMultiGeneration(luceneIndexId, generation));
 				})
-				.then();
+				.reduce(LLIndexGeneration::merge)
+				.defaultIfEmpty(LLIndexGeneration.none(luceneIndices.length));
 	}
 
 	@Override
@@ -257,7 +297,11 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 		return Flux
 				.fromArray(luceneIndices)
 				.flatMap(LLLocalLuceneIndex::close)
-				.then();
+				.then()
+				.doOnTerminate(() -> {
+					luceneHeavyTasksPool.dispose();
+					luceneWriterScheduler.dispose();
+				});
 	}
 
 	@Override
@@ -276,6 +320,28 @@ public class LLLocalMultiLuceneIndex implements LLLuceneIndex {
 				.then();
 	}
 
+	@Override
+	public Mono<Void> refresh(Duration maxStaleness) {
+		return Flux
+				.fromArray(luceneIndices)
+				.flatMap(index -> index.refresh(maxStaleness))
+				.then();
+	}
+
+	@Override
+	public Mono<Void> waitForGeneration(LLIndexGeneration generation) {
+		if (generation.getShardsCount() != luceneIndices.length) {
+			return Mono.error(new IllegalArgumentException("The generation has " + generation.getShardsCount()
+					+ " shards, but the index has " + luceneIndices.length + " shards"));
+		}
+		return Flux
+				.range(0, luceneIndices.length)
+				.filter(luceneIndexId -> generation.getGeneration(luceneIndexId) != LLIndexGeneration.NONE)
+				.flatMap(luceneIndexId -> luceneIndices[luceneIndexId]
+						.waitForGeneration(LLIndexGeneration.of(generation.getGeneration(luceneIndexId))))
+				.then();
+	}
+
 	@Override
 	public Mono<LLSnapshot> takeSnapshot() {
 		return Mono
@@ -0,0 +1,165 @@
+package it.cavallium.dbengine.database.disk;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLUtils;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.bytes.ByteList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Last consumed keys of a column used as a queue.
+ *
+ * In a queue the new keys are always greater than the keys already consumed, so every key of a range that
+ * is smaller than the last key removed from the head of that range has already been deleted.
+ * The next read of the head can seek directly to the last consumed key, instead of skipping
+ * all the tombstones left by the previous removals.
+ *
+ * The hints are keyed by the lower bound of the range: all the keys of a range that are smaller than the last
+ * consumed key are deleted, whatever the upper bound of the range was.
+ * A write of a key smaller than a last consumed key removes that hint.
+ * The writes after all the consumed keys, which are the usual writes of a queue, don't take any lock.
+ *
+ * The polls of a column must be serialized by the caller, so at most one poll is running at a time.
+ */
+public class LLLocalQueueHints {
+
+	private static final ByteList NO_MIN = new ByteArrayList(0);
+
+	/**
+	 * Last consumed keys by range. Written while holding the monitor
+	 */
+	private final ConcurrentHashMap<ByteList, byte[]> lastConsumedKeys = new ConcurrentHashMap<>();
+	/**
+	 * Ranges by last consumed key, so a write finds the hints after it without scanning all of them.
+	 * Guarded by this
+	 */
+	private final TreeMap<byte[], Set<ByteList>> rangesByLastConsumedKey = new TreeMap<>(Arrays::compareUnsigned);
+	/**
+	 * Greatest last consumed key, or null if there are no hints. Written while holding the monitor
+	 */
+	private volatile byte @Nullable [] maxLastConsumedKey;
+	/**
+	 * True between {@link #startPoll()} and {@link #endPoll()}. Written while holding the monitor
+	 */
+	private volatile boolean polling;
+	/**
+	 * Smallest key written during the running poll, which could have been missed by the poll. Guarded by this
+	 */
+	private byte @Nullable [] minKeyWrittenDuringPoll;
+
+	/**
+	 * @return the key where the head of the range should be searched from, or null to start from the range minimum
+	 */
+	public byte @Nullable [] getSeekKey(LLRange range) {
+		return lastConsumedKeys.get(toHintKey(range));
+	}
+
+	/**
+	 * Call this method before reading the head of a range
+	 */
+	public synchronized void startPoll() {
+		polling = true;
+		minKeyWrittenDuringPoll = null;
+	}
+
+	/**
+	 * Call this method after removing a key from the head of the range, before {@link #endPoll()}.
+	 * The hint is not set if a smaller key has been written during the poll
+	 */
+	public synchronized void setLastConsumedKey(LLRange range, ByteBuf key) {
+		byte[] lastConsumedKey = LLUtils.toArray(key);
+		if (minKeyWrittenDuringPoll == null || Arrays.compareUnsigned(minKeyWrittenDuringPoll, lastConsumedKey) >= 0) {
+			var hintKey = toHintKey(range);
+			var previousLastConsumedKey = lastConsumedKeys.put(hintKey, lastConsumedKey);
+			if (previousLastConsumedKey != null) {
+				var ranges = rangesByLastConsumedKey.get(previousLastConsumedKey);
+				ranges.remove(hintKey);
+				if (ranges.isEmpty()) {
+					rangesByLastConsumedKey.remove(previousLastConsumedKey);
+				}
+			}
+			rangesByLastConsumedKey.computeIfAbsent(lastConsumedKey, _unused -> new HashSet<>()).add(hintKey);
+			maxLastConsumedKey = rangesByLastConsumedKey.lastKey();
+		}
+	}
+
+	/**
+	 * Call this method after the poll, also if it failed
+	 */
+	public synchronized void endPoll() {
+		polling = false;
+		minKeyWrittenDuringPoll = null;
+	}
+
+	/**
+	 * Call this method after writing a key
+	 */
+	public void onKeyWritten(ByteBuf key) {
+		// A poll that starts after this check reads the written key, so it doesn't need to know about it
+		if (!polling) {
+			var maxLastConsumedKey = this.maxLastConsumedKey;
+			if (maxLastConsumedKey == null || compareUnsigned(key, maxLastConsumedKey) >= 0) {
+				return;
+			}
+		}
+		onKeyWrittenSlow(LLUtils.toArray(key));
+	}
+
+	private synchronized void onKeyWrittenSlow(byte[] writtenKey) {
+		// The written key would be skipped by the heads that start after it
+		var skippingHints = rangesByLastConsumedKey.tailMap(writtenKey, false);
+		if (!skippingHints.isEmpty()) {
+			for (Set<ByteList> ranges : skippingHints.values()) {
+				for (ByteList hintKey : ranges) {
+					lastConsumedKeys.remove(hintKey);
+				}
+			}
+			skippingHints.clear();
+			maxLastConsumedKey = rangesByLastConsumedKey.isEmpty() ? null : rangesByLastConsumedKey.lastKey();
+		}
+		if (polling && (minKeyWrittenDuringPoll == null
+				|| Arrays.compareUnsigned(writtenKey, minKeyWrittenDuringPoll) < 0)) {
+			minKeyWrittenDuringPoll = writtenKey;
+		}
+	}
+
+	/**
+	 * Call this method when keys could have been written before the current heads, for example after a range
+	 * has been replaced
+	 */
+	public synchronized void invalidateAll() {
+		lastConsumedKeys.clear();
+		rangesByLastConsumedKey.clear();
+		maxLastConsumedKey = null;
+		if (polling) {
+			// Don't set the hint of the running poll
+			minKeyWrittenDuringPoll = new byte[0];
+		}
+	}
+
+	private static int compareUnsigned(ByteBuf key, byte[] other) {
+		int readerIndex = key.readerIndex();
+		int length = Math.min(key.readableBytes(), other.length);
+		for (int i = 0; i < length; i++) {
+			int result = Byte.compareUnsigned(key.getByte(readerIndex + i), other[i]);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(key.readableBytes(), other.length);
+	}
+
+	private static ByteList toHintKey(LLRange range) {
+		if (range.hasMin()) {
+			return ByteArrayList.wrap(LLUtils.toArray(range.getMin()));
+		} else {
+			return NO_MIN;
+		}
+	}
+}
@@ -10,14 +10,16 @@ import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryDeep;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.RocksMutableObject;
+import org.rocksdb.Snapshot;
 import reactor.core.publisher.Flux;
-import reactor.util.function.Tuple3;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import static io.netty.buffer.Unpooled.*;
 import static it.cavallium.dbengine.database.disk.LLLocalDictionary.logger;
@@ -30,8 +32,12 @@ public abstract class LLLocalReactiveRocksIterator<T> {
 	private final ColumnFamilyHandle cfh;
 	private final LLRange range;
 	private final boolean allowNettyDirect;
-	private final ReadOptions readOptions;
+	@Nullable
+	private final Snapshot snapshot;
 	private final boolean readValues;
+	private final boolean reverse;
+	@Nullable
+	private final ByteBuf fromKeyExclusive;
 	private final String debugName;
 
 	public LLLocalReactiveRocksIterator(RocksDB db,
@@ -39,28 +45,61 @@ public abstract class LLLocalReactiveRocksIterator<T> {
 			ColumnFamilyHandle cfh,
 			LLRange range,
 			boolean allowNettyDirect,
-			ReadOptions readOptions,
+			@Nullable Snapshot snapshot,
 			boolean readValues,
 			String debugName) {
+		this(db, alloc, cfh, range, allowNettyDirect, snapshot, readValues, false, null, debugName);
+	}
+
+	/**
+	 * @param reverse iterate from the last key of the range to the first one
+	 * @param fromKeyExclusive if not null, start from the first key after this key (before it, if reverse)
+	 */
+	public LLLocalReactiveRocksIterator(RocksDB db,
+			ByteBufAllocator alloc,
+			ColumnFamilyHandle cfh,
+			LLRange range,
+			boolean allowNettyDirect,
+			@Nullable Snapshot snapshot,
+			boolean readValues,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			String debugName) {
 		this.db = db;
 		this.alloc = alloc;
 		this.cfh = cfh;
 		this.range = range;
 		this.allowNettyDirect = allowNettyDirect;
-		this.readOptions = readOptions;
+		this.snapshot = snapshot;
 		this.readValues = readValues;
+		this.reverse = reverse;
+		this.fromKeyExclusive = fromKeyExclusive;
 		this.debugName = debugName;
 	}
 
 	public Flux<T> flux() {
 		return Flux
-				.<T, @NotNull Tuple3<RocksIterator, ReleasableSlice, ReleasableSlice>>generate(() -> {
-					var readOptions = new ReadOptions(this.readOptions);
-					if (!range.hasMin() || !range.hasMax()) {
-						readOptions.setReadaheadSize(32 * 1024); // 32KiB
-						readOptions.setFillCache(false);
+				.<T, @NotNull Tuple2<RocksIterator, PooledReadOptions>>generate(() -> {
+					var pooledReadOptions = PooledReadOptions.acquire(snapshot, range);
+					try {
+						var readOptions = pooledReadOptions.readOptions();
+						if (!range.hasMin() || !range.hasMax()) {
+							readOptions.setReadaheadSize(32 * 1024); // 32KiB
+							readOptions.setFillCache(false);
+						}
+						var rocksIterator = getRocksIterator(allowNettyDirect,
+								readOptions,
+								range.retain(),
+								reverse,
+								fromKeyExclusive != null ? fromKeyExclusive.retain() : null,
+								db,
+								cfh
+						);
+						return Tuples.of(rocksIterator, pooledReadOptions);
+					} catch (Throwable ex) {
+						pooledReadOptions.close();
+						throw ex;
 					}
-					return getRocksIterator(allowNettyDirect, readOptions, range.retain(), db, cfh);
 				}, (tuple, sink) -> {
 					range.retain();
 					try {
@@ -76,7 +115,11 @@ public abstract class LLLocalReactiveRocksIterator<T> {
 									value = alloc.buffer(0);
 								}
 								try {
-									rocksIterator.next();
+									if (reverse) {
+										rocksIterator.prev();
+									} else {
+										rocksIterator.next();
+									}
 									rocksIterator.status();
 									sink.next(getEntry(key.retain(), value.retain()));
 								} finally {
@@ -97,8 +140,7 @@ public abstract class LLLocalReactiveRocksIterator<T> {
 				}, tuple -> {
 					var rocksIterator = tuple.getT1();
 					rocksIterator.close();
-					tuple.getT2().release();
-					tuple.getT3().release();
+					tuple.getT2().close();
 				})
 				.doFirst(range::retain)
 				.doAfterTerminate(range::release);
@@ -109,6 +151,9 @@ public abstract class LLLocalReactiveRocksIterator<T> {
 	public void release() {
 		if (released.compareAndSet(false, true)) {
 			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
 		} else {
 			throw new IllegalStateException("Already released");
 		}
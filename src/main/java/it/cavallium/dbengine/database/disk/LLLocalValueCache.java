@@ -0,0 +1,141 @@
+package it.cavallium.dbengine.database.disk;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLUtils;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.bytes.ByteList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Size-bounded cache of the most read values of a column.
+ * The eviction policy is W-TinyLFU, so keys that are read only once don't evict the hot keys.
+ *
+ * If enabled, the cache remembers also the keys that have been recently found missing, marking them with
+ * {@link #MISSING}.
+ *
+ * The values of the cache are never modified, so the same array can be shared between multiple readers.
+ */
+public class LLLocalValueCache {
+
+	/**
+	 * Estimated overhead of a cache entry, in bytes
+	 */
+	private static final int ENTRY_OVERHEAD = 64;
+	private static final int STRIPES = 512;
+	/**
+	 * Marker of a missing key, compare it by identity
+	 */
+	static final byte[] MISSING = new byte[0];
+
+	private final Cache<ByteList, byte[]> cache;
+	private final boolean cacheMisses;
+	/**
+	 * Write versions, used to discard values read before a concurrent write
+	 */
+	private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+	public LLLocalValueCache(long maximumSizeBytes, boolean cacheMisses) {
+		this.cacheMisses = cacheMisses;
+		this.cache = Caffeine
+				.newBuilder()
+				.maximumWeight(maximumSizeBytes)
+				.<ByteList, byte[]>weigher((key, value) -> key.size() + value.length + ENTRY_OVERHEAD)
+				.build();
+	}
+
+	/**
+	 * Get the current write version of a key. Pass it to {@link #put(ByteBuf, long, byte[])}
+	 */
+	public long getVersion(ByteBuf key) {
+		return versions.get(getStripe(key));
+	}
+
+	/**
+	 * @return the cached value, {@link #MISSING} if the key is known to be missing,
+	 * or null if the value is not cached
+	 */
+	public byte @Nullable [] get(ByteBuf key) {
+		return cache.getIfPresent(toCacheKey(key));
+	}
+
+	/**
+	 * Cache a value that has been read from the database
+	 * @param version the write version of the key, taken before reading the value from the database
+	 */
+	public void put(ByteBuf key, long version, byte[] value) {
+		int stripe = getStripe(key);
+		// The version is checked while holding the entry, so an outdated value is never visible:
+		// if the key has been written in the meantime, the value could be already outdated
+		cache.asMap().compute(toCacheKey(key), (cacheKey, previousValue) -> {
+			if (versions.get(stripe) == version) {
+				return value;
+			} else {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Remember that a key is missing, if the cache of the missing keys is enabled
+	 * @param version the write version of the key, taken before checking the database
+	 */
+	public void putMissing(ByteBuf key, long version) {
+		if (cacheMisses) {
+			put(key, version, MISSING);
+		}
+	}
+
+	/**
+	 * Call this method after writing or deleting a key
+	 */
+	public void invalidate(ByteBuf key) {
+		versions.incrementAndGet(getStripe(key));
+		cache.invalidate(toCacheKey(key));
+	}
+
+	/**
+	 * Call this method after writing or deleting a range of keys
+	 */
+	public void invalidateRange(LLRange range) {
+		try {
+			if (range.isAll()) {
+				invalidateAll();
+			} else if (range.isSingle()) {
+				invalidate(range.getSingle());
+			} else {
+				byte[] min = range.hasMin() ? LLUtils.toArray(range.getMin()) : null;
+				byte[] max = range.hasMax() ? LLUtils.toArray(range.getMax()) : null;
+				for (int i = 0; i < STRIPES; i++) {
+					versions.incrementAndGet(i);
+				}
+				cache.asMap().keySet().removeIf(key -> {
+					byte[] keyArray = key.toByteArray();
+					return (min == null || Arrays.compareUnsigned(keyArray, min) >= 0)
+							&& (max == null || Arrays.compareUnsigned(keyArray, max) < 0);
+				});
+			}
+		} finally {
+			range.release();
+		}
+	}
+
+	public void invalidateAll() {
+		for (int i = 0; i < STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		cache.invalidateAll();
+	}
+
+	private static ByteList toCacheKey(ByteBuf key) {
+		return ByteArrayList.wrap(LLUtils.toArray(key));
+	}
+
+	private static int getStripe(ByteBuf key) {
+		return Math.abs(LLUtils.hashCode(key) % STRIPES);
+	}
+}
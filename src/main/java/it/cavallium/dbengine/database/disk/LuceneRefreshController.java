@@ -0,0 +1,240 @@
+package it.cavallium.dbengine.database.disk;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.jetbrains.annotations.Nullable;
+import org.warp.commonutils.log.Logger;
+import org.warp.commonutils.log.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Refreshes the searchers of an index only when it's needed.
+ *
+ * Like {@link org.apache.lucene.search.ControlledRealTimeReopenThread}, the generation of the searchers is the
+ * maximum completed sequence number of the index writer before the last reopen: every write with a sequence number
+ * up to that generation is visible to the searches.
+ * The refresh is skipped when the index writer has no new completed operations, and the interval between two
+ * periodic refreshes grows with the time spent by the last reopen, up to a maximum interval.
+ * A search that needs to see some writes can wait for their generation, which triggers a refresh within the
+ * requested staleness even while the periodic refreshes are backing off
+ */
+class LuceneRefreshController {
+
+	private static final Logger logger = LoggerFactory.getLogger(LuceneRefreshController.class);
+	/**
+	 * The interval between two periodic refreshes is at least this many times the duration of the last reopen
+	 */
+	private static final int REOPEN_COST_BACKOFF_FACTOR = 10;
+
+	private final IndexWriter indexWriter;
+	private final ReferenceManager<IndexSearcher> searcherManager;
+	private final Scheduler scheduler;
+	private final Duration minRefreshInterval;
+	private final Duration maxRefreshInterval;
+
+	private final ReentrantLock refreshLock = new ReentrantLock();
+	private final ConcurrentLinkedQueue<GenerationWaiter> waiters = new ConcurrentLinkedQueue<>();
+	/**
+	 * Time of the next scheduled refresh, in {@link System#nanoTime()}
+	 */
+	private final AtomicLong nextRefreshNanos = new AtomicLong(Long.MAX_VALUE);
+	private volatile long searchingGeneration;
+	private volatile long lastReopenNanos = 0;
+	private volatile boolean closed = false;
+
+	private record GenerationWaiter(long generation, MonoSink<Void> sink) {}
+
+	public LuceneRefreshController(IndexWriter indexWriter,
+			ReferenceManager<IndexSearcher> searcherManager,
+			Scheduler scheduler,
+			Duration minRefreshInterval,
+			Duration maxRefreshInterval) {
+		this.indexWriter = indexWriter;
+		this.searcherManager = searcherManager;
+		this.scheduler = scheduler;
+		this.minRefreshInterval = minRefreshInterval;
+		this.maxRefreshInterval = maxRefreshInterval.compareTo(minRefreshInterval) < 0
+				? minRefreshInterval : maxRefreshInterval;
+		// The searcher manager has just been opened, so it sees every completed operation
+		this.searchingGeneration = indexWriter.getMaxCompletedSequenceNumber();
+	}
+
+	public void start() {
+		schedulePeriodicRefresh();
+	}
+
+	/**
+	 * @return the maximum sequence number of the writes that are visible to the searches
+	 */
+	public long getSearchingGeneration() {
+		return searchingGeneration;
+	}
+
+	/**
+	 * Wait until the writes with a sequence number up to the specified generation are visible to the searches
+	 * @param maxStaleness maximum time to wait before refreshing the searchers
+	 */
+	public Mono<Void> waitForGeneration(long generation, Duration maxStaleness) {
+		return Mono.defer(() -> {
+			if (searchingGeneration >= generation) {
+				return Mono.empty();
+			}
+			return Mono.create(sink -> {
+				waiters.add(new GenerationWaiter(generation, sink));
+				if (closed) {
+					completeWaiters(new IOException("The index is closed"));
+				} else if (searchingGeneration >= generation) {
+					// A refresh completed after the check, so nobody else could complete this waiter
+					completeWaiters(null);
+				} else {
+					requestRefreshBefore(System.nanoTime() + maxStaleness.toNanos());
+				}
+			});
+		});
+	}
+
+	/**
+	 * Wait until the writes with a sequence number up to the specified generation are visible to the searches,
+	 * refreshing the searchers within the minimum refresh interval
+	 */
+	public Mono<Void> waitForGeneration(long generation) {
+		return waitForGeneration(generation, minRefreshInterval);
+	}
+
+	/**
+	 * Wait until the writes completed before this call are visible to the searches
+	 * @param maxStaleness maximum time to wait before refreshing the searchers
+	 */
+	public Mono<Void> refresh(Duration maxStaleness) {
+		return Mono.defer(() -> waitForGeneration(indexWriter.getMaxCompletedSequenceNumber(), maxStaleness));
+	}
+
+	/**
+	 * Stop the refreshes and fail the pending waiters. A refresh that is running is awaited
+	 */
+	public void close() {
+		refreshLock.lock();
+		try {
+			closed = true;
+		} finally {
+			refreshLock.unlock();
+		}
+		completeWaiters(new IOException("The index is closed"));
+	}
+
+	private void schedulePeriodicRefresh() {
+		if (closed) {
+			return;
+		}
+		long reopenBackoffNanos = lastReopenNanos * REOPEN_COST_BACKOFF_FACTOR;
+		long delayNanos = Math.min(Math.max(minRefreshInterval.toNanos(), reopenBackoffNanos),
+				maxRefreshInterval.toNanos()
+		);
+		nextRefreshNanos.set(System.nanoTime() + delayNanos);
+		scheduler.schedule(() -> {
+			try {
+				refreshIfNeeded();
+			} finally {
+				// A failed refresh must not stop the periodic refreshes
+				schedulePeriodicRefresh();
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Schedule an additional refresh, unless a refresh is already scheduled before the deadline
+	 */
+	private void requestRefreshBefore(long deadlineNanos) {
+		long scheduledNanos;
+		do {
+			scheduledNanos = nextRefreshNanos.get();
+			if (scheduledNanos <= deadlineNanos) {
+				return;
+			}
+		} while (!nextRefreshNanos.compareAndSet(scheduledNanos, deadlineNanos));
+		scheduler.schedule(this::refreshIfNeeded,
+				Math.max(0, deadlineNanos - System.nanoTime()),
+				TimeUnit.NANOSECONDS
+		);
+	}
+
+	/**
+	 * Refresh the searchers now, on the calling thread
+	 * @param wait if a refresh is already running wait for it and then refresh, otherwise skip this refresh
+	 */
+	public void refreshNow(boolean wait) throws IOException {
+		if (wait) {
+			refreshLock.lock();
+		} else if (!refreshLock.tryLock()) {
+			return;
+		}
+		try {
+			reopen();
+		} finally {
+			refreshLock.unlock();
+		}
+		completeWaiters(null);
+	}
+
+	private void refreshIfNeeded() {
+		refreshLock.lock();
+		try {
+			reopen();
+		} catch (Throwable ex) {
+			logger.error("Failed to refresh the index searchers", ex);
+		} finally {
+			refreshLock.unlock();
+		}
+		completeWaiters(null);
+	}
+
+	/**
+	 * Reopen the searchers if the index writer has new completed operations. Call it holding the refresh lock
+	 */
+	private void reopen() throws IOException {
+		if (closed) {
+			return;
+		}
+		long generation = indexWriter.getMaxCompletedSequenceNumber();
+		if (generation > searchingGeneration) {
+			long reopenStartNanos = System.nanoTime();
+			searcherManager.maybeRefreshBlocking();
+			lastReopenNanos = System.nanoTime() - reopenStartNanos;
+			searchingGeneration = generation;
+		}
+		// The next additional refresh can be requested by the waiters that are not satisfied yet
+		nextRefreshNanos.set(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Complete the waiters whose generation is visible, or all the waiters if there is an error
+	 */
+	private void completeWaiters(@Nullable Throwable error) {
+		long generation = searchingGeneration;
+		Iterator<GenerationWaiter> iterator = waiters.iterator();
+		while (iterator.hasNext()) {
+			var waiter = iterator.next();
+			if (error != null) {
+				iterator.remove();
+				waiter.sink().error(error);
+			} else if (waiter.generation() <= generation) {
+				iterator.remove();
+				waiter.sink().success();
+			}
+		}
+		if (error == null && !waiters.isEmpty() && !closed) {
+			// Some waiters need a newer generation, refresh again within the shortest interval
+			requestRefreshBefore(System.nanoTime() + minRefreshInterval.toNanos());
+		}
+	}
+}
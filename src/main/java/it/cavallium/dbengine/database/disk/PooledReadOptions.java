@@ -0,0 +1,213 @@
+package it.cavallium.dbengine.database.disk;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLUtils;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import org.jetbrains.annotations.Nullable;
+import org.rocksdb.AbstractSlice;
+import org.rocksdb.DirectSlice;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
+
+/**
+ * Read options reused by the reads of the same thread.
+ * Creating ReadOptions and their iteration bounds requires multiple JNI calls and native allocations,
+ * so short reads reuse a per-thread instance, with preallocated direct bound slices,
+ * instead of creating new objects every time.
+ *
+ * The read options must be used only until {@link #close()} is called. They can be closed by another thread,
+ * so a reactive iteration can release them from the thread that terminates it.
+ * If the per-thread instance is already in use, or if the range bounds don't fit the preallocated slices,
+ * new read options are created and they are closed by {@link #close()}.
+ */
+public final class PooledReadOptions implements AutoCloseable {
+
+	/**
+	 * Maximum size of a pooled bound, larger bounds use new slices
+	 */
+	static final int MAX_BOUND_SIZE = 1024;
+	private static final Cleaner CLEANER = Cleaner.create();
+	private static final ThreadLocal<PooledReadOptions> POOL = ThreadLocal.withInitial(PooledReadOptions::new);
+	private static final PooledReadOptions EMPTY = new PooledReadOptions(LLLocalDictionary.EMPTY_READ_OPTIONS,
+			false,
+			null,
+			null
+	);
+
+	// Non-pooled resources
+	private final ReadOptions readOptions;
+	private final boolean ownsReadOptions;
+	@Nullable
+	private final AbstractSlice<?> lowerBound;
+	@Nullable
+	private final AbstractSlice<?> upperBound;
+
+	// Pooled resources
+	private final ReadOptions unboundedReadOptions;
+	private final ReadOptions boundedReadOptions;
+	private final ByteBuffer lowerBoundBuffer;
+	private final ByteBuffer upperBoundBuffer;
+	private final DirectSlice lowerBoundSlice;
+	private final DirectSlice upperBoundSlice;
+	private volatile boolean inUse;
+	private ReadOptions current;
+
+	/**
+	 * Create the pooled instance of the current thread
+	 */
+	private PooledReadOptions() {
+		this.readOptions = null;
+		this.ownsReadOptions = false;
+		this.lowerBound = null;
+		this.upperBound = null;
+		this.lowerBoundBuffer = ByteBuffer.allocateDirect(MAX_BOUND_SIZE);
+		this.upperBoundBuffer = ByteBuffer.allocateDirect(MAX_BOUND_SIZE);
+		this.lowerBoundSlice = new DirectSlice(lowerBoundBuffer, 0);
+		this.upperBoundSlice = new DirectSlice(upperBoundBuffer, 0);
+		// An empty lower bound is equal to no lower bound, an empty upper bound instead excludes every key
+		this.unboundedReadOptions = new ReadOptions().setIterateLowerBound(lowerBoundSlice);
+		this.boundedReadOptions = new ReadOptions()
+				.setIterateLowerBound(lowerBoundSlice)
+				.setIterateUpperBound(upperBoundSlice);
+		var unboundedReadOptions = this.unboundedReadOptions;
+		var boundedReadOptions = this.boundedReadOptions;
+		var lowerBoundSlice = this.lowerBoundSlice;
+		var upperBoundSlice = this.upperBoundSlice;
+		// Release the native resources when the thread dies
+		CLEANER.register(this, () -> {
+			unboundedReadOptions.close();
+			boundedReadOptions.close();
+			lowerBoundSlice.close();
+			upperBoundSlice.close();
+		});
+	}
+
+	/**
+	 * Create a non-pooled instance
+	 */
+	private PooledReadOptions(ReadOptions readOptions,
+			boolean ownsReadOptions,
+			@Nullable AbstractSlice<?> lowerBound,
+			@Nullable AbstractSlice<?> upperBound) {
+		this.readOptions = readOptions;
+		this.ownsReadOptions = ownsReadOptions;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.unboundedReadOptions = null;
+		this.boundedReadOptions = null;
+		this.lowerBoundBuffer = null;
+		this.upperBoundBuffer = null;
+		this.lowerBoundSlice = null;
+		this.upperBoundSlice = null;
+	}
+
+	/**
+	 * Get read options for point reads. Don't modify them
+	 */
+	public static PooledReadOptions acquire(@Nullable Snapshot snapshot) {
+		if (snapshot == null) {
+			return EMPTY;
+		}
+		var pooledReadOptions = POOL.get();
+		if (pooledReadOptions.inUse) {
+			return new PooledReadOptions(new ReadOptions().setSnapshot(snapshot), true, null, null);
+		}
+		pooledReadOptions.inUse = true;
+		pooledReadOptions.current = pooledReadOptions.unboundedReadOptions;
+		pooledReadOptions.lowerBoundSlice.setLength(0);
+		pooledReadOptions.reset(snapshot);
+		return pooledReadOptions;
+	}
+
+	/**
+	 * Get read options for iterations, with the iteration bounds already set
+	 */
+	public static PooledReadOptions acquire(@Nullable Snapshot snapshot, LLRange range) {
+		var pooledReadOptions = POOL.get();
+		if (pooledReadOptions.inUse || !fitsPool(range)) {
+			return createBounded(snapshot, range);
+		}
+		pooledReadOptions.inUse = true;
+		if (range.hasMin()) {
+			copyBound(range.getMin(), pooledReadOptions.lowerBoundBuffer, pooledReadOptions.lowerBoundSlice);
+		} else {
+			pooledReadOptions.lowerBoundSlice.setLength(0);
+		}
+		if (range.hasMax()) {
+			copyBound(range.getMax(), pooledReadOptions.upperBoundBuffer, pooledReadOptions.upperBoundSlice);
+			pooledReadOptions.current = pooledReadOptions.boundedReadOptions;
+		} else {
+			pooledReadOptions.current = pooledReadOptions.unboundedReadOptions;
+		}
+		pooledReadOptions.reset(snapshot);
+		return pooledReadOptions;
+	}
+
+	private static boolean fitsPool(LLRange range) {
+		return (!range.hasMin() || range.getMin().readableBytes() <= MAX_BOUND_SIZE)
+				&& (!range.hasMax() || range.getMax().readableBytes() <= MAX_BOUND_SIZE);
+	}
+
+	private static void copyBound(ByteBuf bound, ByteBuffer boundBuffer, DirectSlice boundSlice) {
+		int length = bound.readableBytes();
+		bound.getBytes(bound.readerIndex(), boundBuffer.clear().limit(length));
+		boundSlice.setLength(length);
+	}
+
+	private static PooledReadOptions createBounded(@Nullable Snapshot snapshot, LLRange range) {
+		var readOptions = new ReadOptions().setSnapshot(snapshot);
+		Slice lowerBound = null;
+		Slice upperBound = null;
+		if (range.hasMin()) {
+			lowerBound = new Slice(LLUtils.toArray(range.getMin()));
+			readOptions.setIterateLowerBound(lowerBound);
+		}
+		if (range.hasMax()) {
+			upperBound = new Slice(LLUtils.toArray(range.getMax()));
+			readOptions.setIterateUpperBound(upperBound);
+		}
+		return new PooledReadOptions(readOptions, true, lowerBound, upperBound);
+	}
+
+	/**
+	 * Reset the options that could have been modified by the previous read
+	 */
+	private void reset(@Nullable Snapshot snapshot) {
+		current
+				.setSnapshot(snapshot)
+				.setFillCache(true)
+				.setVerifyChecksums(true)
+				.setIgnoreRangeDeletions(false)
+				.setReadaheadSize(0);
+	}
+
+	/**
+	 * The read options of ranged reads can be modified, but only before using them
+	 */
+	public ReadOptions readOptions() {
+		if (readOptions != null) {
+			return readOptions;
+		} else {
+			return current;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (readOptions == null) {
+			current = null;
+			inUse = false;
+		} else if (ownsReadOptions) {
+			readOptions.close();
+			if (lowerBound != null) {
+				lowerBound.close();
+			}
+			if (upperBound != null) {
+				upperBound.close();
+			}
+		}
+	}
+}
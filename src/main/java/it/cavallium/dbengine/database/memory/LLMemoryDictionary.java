@@ -2,6 +2,7 @@ package it.cavallium.dbengine.database.memory;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCounted;
 import it.cavallium.dbengine.client.BadBlock;
 import it.cavallium.dbengine.database.Delta;
@@ -9,19 +10,21 @@ import it.cavallium.dbengine.database.ExtraKeyOperationResult;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLDictionaryResultType;
 import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLSecondaryIndex;
+import it.cavallium.dbengine.database.LLSecondaryIndexes;
 import it.cavallium.dbengine.database.LLSnapshot;
 import it.cavallium.dbengine.database.LLUtils;
 import it.cavallium.dbengine.database.UpdateMode;
-import it.unimi.dsi.fastutil.bytes.ByteList;
+import it.cavallium.dbengine.database.memory.VersionedColumn.Version;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.NavigableMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.LongFunction;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -35,25 +38,30 @@ public class LLMemoryDictionary implements LLDictionary {
 	private final String columnName;
 	private final ByteBufAllocator allocator;
 	private final UpdateMode updateMode;
-	private final Getter<Long, ConcurrentSkipListMap<ByteList, ByteList>> snapshots;
-	private final ConcurrentSkipListMap<ByteList, ByteList> mainDb;
-
-	private interface Getter<T, U> {
-		U get(T argument);
-	}
-
-	public LLMemoryDictionary(ByteBufAllocator allocator,
+	/**
+	 * Sequence numbers of the snapshots, by snapshot id
+	 */
+	private final Map<Long, Long> snapshots;
+	private final VersionedColumn column;
+	/**
+	 * Secondary indexes of the column, shared by all its dictionaries
+	 */
+	private final LLSecondaryIndexes secondaryIndexes;
+
+	LLMemoryDictionary(ByteBufAllocator allocator,
 			String databaseName,
 			String columnName,
 			UpdateMode updateMode,
-			ConcurrentHashMap<Long, ConcurrentHashMap<String, ConcurrentSkipListMap<ByteList, ByteList>>> snapshots,
-			ConcurrentHashMap<String, ConcurrentSkipListMap<ByteList, ByteList>> mainDb) {
+			Map<Long, Long> snapshots,
+			Map<String, VersionedColumn> columns,
+			LLSecondaryIndexes secondaryIndexes) {
 		this.databaseName = databaseName;
 		this.columnName = columnName;
 		this.allocator = allocator;
 		this.updateMode = updateMode;
-		this.snapshots = (snapshotId) -> snapshots.get(snapshotId).get(columnName);
-		this.mainDb = mainDb.get(columnName);
+		this.snapshots = snapshots;
+		this.column = columns.get(columnName);
+		this.secondaryIndexes = secondaryIndexes;
 	}
 
 	@Override
@@ -66,79 +74,134 @@ public class LLMemoryDictionary implements LLDictionary {
 		return allocator;
 	}
 
-	private long resolveSnapshot(LLSnapshot snapshot) {
+	/**
+	 * @return the sequence number of the snapshot, or {@link VersionSequencer#LAST_COMMITTED} to read the latest values
+	 */
+	private long resolveSnapshot(@Nullable LLSnapshot snapshot) {
 		if (snapshot == null) {
-			return Long.MIN_VALUE + 1L;
-		} else if (snapshot.getSequenceNumber() == Long.MIN_VALUE + 1L) {
-			throw new IllegalStateException();
+			return VersionSequencer.LAST_COMMITTED;
+		}
+		Long sequenceNumber = snapshots.get(snapshot.getSequenceNumber());
+		if (sequenceNumber == null) {
+			throw new IllegalStateException("Snapshot " + snapshot.getSequenceNumber() + " not found");
+		}
+		return sequenceNumber;
+	}
+
+	/**
+	 * Read multiple keys at the snapshot. Without a snapshot the keys are read at the last committed write,
+	 * which stays readable until the read ends, so a write that is still running is never seen partially
+	 */
+	private <T> Flux<T> readRange(@Nullable LLSnapshot snapshot, LongFunction<Iterable<T>> reader) {
+		if (snapshot != null) {
+			return Flux.defer(() -> Flux.fromIterable(reader.apply(resolveSnapshot(snapshot))));
 		} else {
-			return snapshot.getSequenceNumber();
+			return Flux.using(column::beginRead, sequenceNumber -> Flux.fromIterable(reader.apply(sequenceNumber)),
+					column::endRead
+			);
 		}
 	}
 
-	private Mono<ByteBuf> transformResult(Mono<ByteList> result, LLDictionaryResultType resultType) {
+	/**
+	 * Like {@link #readRange(LLSnapshot, LongFunction)}, but the reader reads all the keys before returning
+	 */
+	private <T> T readRangeNow(@Nullable LLSnapshot snapshot, LongFunction<T> reader) {
+		if (snapshot != null) {
+			return reader.apply(resolveSnapshot(snapshot));
+		}
+		long sequenceNumber = column.beginRead();
+		try {
+			return reader.apply(sequenceNumber);
+		} finally {
+			column.endRead(sequenceNumber);
+		}
+	}
+
+	private Mono<ByteBuf> transformResult(Mono<ByteBuf> result, LLDictionaryResultType resultType) {
 		if (resultType == LLDictionaryResultType.PREVIOUS_VALUE) {
-			// Don't retain the result because it has been removed from the skip list
-			return result.map(this::kk);
+			return result;
 		} else if (resultType == LLDictionaryResultType.PREVIOUS_VALUE_EXISTENCE) {
 			return result
-					.map(prev -> true)
+					.map(prev -> {
+						prev.release();
+						return true;
+					})
 					.defaultIfEmpty(false)
 					.map(LLUtils::booleanToResponseByteBuffer);
 		} else {
-			return result.then(Mono.empty());
+			return result.doOnNext(ReferenceCounted::release).then(Mono.empty());
 		}
 	}
 
-	private ByteList k(ByteBuf buf) {
-		return new BinaryLexicographicList(LLUtils.toArray(buf));
-	}
-
-	private ByteBuf kk(ByteList bytesList) {
-		var buffer = getAllocator().buffer(bytesList.size());
-		buffer.writeBytes(bytesList.toByteArray());
-		return buffer;
-	}
-
-	private Map<ByteList, ByteList> mapSlice(LLSnapshot snapshot, LLRange range) {
+	/**
+	 * Get the versions of the keys of a range.
+	 * The returned map is a view that uses the buffers of the range, so the range must not be released before it
+	 */
+	private NavigableMap<ByteBuf, Version> mapSlice(LLRange range) {
+		NavigableMap<ByteBuf, Version> versions = column.versions();
 		if (range.isAll()) {
-			return snapshots.get(resolveSnapshot(snapshot));
+			return versions;
 		} else if (range.isSingle()) {
-			var key = k(range.getSingle());
-			var value = snapshots
-					.get(resolveSnapshot(snapshot))
-					.get(key);
-			if (value != null) {
-				return Map.of(key, value);
-			} else {
-				return Map.of();
-			}
+			var key = range.getSingle();
+			return versions.subMap(key, true, key, true);
 		} else if (range.hasMin() && range.hasMax()) {
-			var min = k(range.getMin());
-			var max = k(range.getMax());
+			var min = range.getMin();
+			var max = range.getMax();
 			if (min.compareTo(max) > 0) {
-				return Map.of();
+				return Collections.emptyNavigableMap();
 			}
-			return snapshots
-					.get(resolveSnapshot(snapshot))
-					.subMap(min, true, max, false);
+			return versions.subMap(min, true, max, false);
 		} else if (range.hasMin()) {
-			return snapshots
-					.get(resolveSnapshot(snapshot))
-					.tailMap(k(range.getMin()), true);
+			return versions.tailMap(range.getMin(), true);
 		} else {
-			return snapshots
-					.get(resolveSnapshot(snapshot))
-					.headMap(k(range.getMax()), false);
+			return versions.headMap(range.getMax(), false);
 		}
 	}
 
+	/**
+	 * Get the versions of the keys of a range in iteration order, starting after fromKeyExclusive.
+	 * The returned map is a view that uses the buffers of the range and of fromKeyExclusive
+	 */
+	private NavigableMap<ByteBuf, Version> mapSlice(LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive) {
+		ByteBuf min = range.hasMin() ? range.getMin() : null;
+		boolean minInclusive = true;
+		ByteBuf max = range.hasMax() ? range.getMax() : null;
+		boolean maxInclusive = range.isSingle();
+		if (fromKeyExclusive != null) {
+			var fromKey = fromKeyExclusive;
+			if (reverse) {
+				if (max == null || fromKey.compareTo(max) <= 0) {
+					max = fromKey;
+					maxInclusive = false;
+				}
+			} else {
+				if (min == null || fromKey.compareTo(min) >= 0) {
+					min = fromKey;
+					minInclusive = false;
+				}
+			}
+		}
+		NavigableMap<ByteBuf, Version> map = column.versions();
+		if (min != null && max != null) {
+			if (min.compareTo(max) > 0) {
+				return Collections.emptyNavigableMap();
+			}
+			map = map.subMap(min, minInclusive, max, maxInclusive);
+		} else if (min != null) {
+			map = map.tailMap(min, minInclusive);
+		} else if (max != null) {
+			map = map.headMap(max, maxInclusive);
+		}
+		return reverse ? map.descendingMap() : map;
+	}
+
 	@Override
 	public Mono<ByteBuf> get(@Nullable LLSnapshot snapshot, ByteBuf key, boolean existsAlmostCertainly) {
 		try {
 			return Mono
-					.fromCallable(() -> snapshots.get(resolveSnapshot(snapshot)).get(k(key)))
-					.map(this::kk)
+					.fromCallable(() -> column.get(key, resolveSnapshot(snapshot)))
 					.onErrorMap(cause -> new IOException("Failed to read " + LLUtils.toStringSafe(key), cause))
 					.doFirst(key::retain)
 					.doAfterTerminate(key::release);
@@ -149,15 +212,25 @@ public class LLMemoryDictionary implements LLDictionary {
 
 	@Override
 	public Mono<ByteBuf> put(ByteBuf key, ByteBuf value, LLDictionaryResultType resultType) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.put(this, key, value, resultType);
+		}
 		try {
 			return Mono
-					.fromCallable(() -> mainDb.put(k(key), k(value)))
+					.fromCallable(() -> column.put(key, value))
 					.transform(result -> this.transformResult(result, resultType))
 					.onErrorMap(cause -> new IOException("Failed to read " + LLUtils.toStringSafe(key), cause))
-					.doFirst(key::retain)
-					.doAfterTerminate(key::release);
+					.doFirst(() -> {
+						key.retain();
+						value.retain();
+					})
+					.doAfterTerminate(() -> {
+						key.release();
+						value.release();
+					});
 		} finally {
 			key.release();
+			value.release();
 		}
 	}
 
@@ -170,38 +243,99 @@ public class LLMemoryDictionary implements LLDictionary {
 	public Mono<Delta<ByteBuf>> updateAndGetDelta(ByteBuf key,
 			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater,
 			boolean existsAlmostCertainly) {
-		return Mono.fromCallable(() -> {
-			AtomicReference<ByteBuf> oldRef = new AtomicReference<>(null);
-			var newValue = mainDb.compute(k(key), (_unused, old) -> {
-				if (old != null) {
-					oldRef.set(kk(old));
-				}
-				var v = updater.apply(old != null ? kk(old) : null);
-				try {
-					return k(v);
-				} finally {
-					if (v != null) {
-						v.release();
-					}
-				}
-			});
-			return new Delta<>(oldRef.get(), kk(newValue));
-		});
+		if (!secondaryIndexes.isEmpty()) {
+			return updateIndexedAndGetDelta(key, updater);
+		}
+		try {
+			return Mono
+					.fromCallable(() -> column.update(key, updater))
+					.onErrorMap(cause -> new IOException("Failed to read or write " + LLUtils.toStringSafe(key), cause))
+					.doFirst(key::retain)
+					.doAfterTerminate(key::release);
+		} finally {
+			key.release();
+		}
+	}
+
+	@Override
+	public void addSecondaryIndex(LLSecondaryIndex index) {
+		if (updateMode == UpdateMode.DISALLOW) {
+			throw new UnsupportedOperationException("Secondary indexes can't be used if update() is disallowed");
+		}
+		if (!(index.dictionary() instanceof LLMemoryDictionary indexDictionary)
+				|| indexDictionary.snapshots != snapshots) {
+			throw new IllegalArgumentException("The index column " + index.dictionary().getColumnName()
+					+ " is not in the same database");
+		}
+		secondaryIndexes.add(index);
+	}
+
+	/**
+	 * Update a value, then update the entries of its secondary indexes with the same sequence number.
+	 * The skip list could call the updater more than once, so the index entries are changed only after
+	 * the delta is known
+	 */
+	private Mono<Delta<ByteBuf>> updateIndexedAndGetDelta(ByteBuf key,
+			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater) {
+		try {
+			return Mono
+					.fromCallable(() -> column.update(key, updater, delta -> {
+						for (LLSecondaryIndex index : secondaryIndexes.get()) {
+							var indexColumn = ((LLMemoryDictionary) index.dictionary()).column;
+							ByteBuf prevIndexKey = index.getIndexKey(key, delta.previous());
+							ByteBuf newIndexKey = index.getIndexKey(key, delta.current());
+							try {
+								if (LLUtils.equals(prevIndexKey, newIndexKey)) {
+									continue;
+								}
+								if (prevIndexKey != null) {
+									var removedValue = indexColumn.remove(prevIndexKey);
+									if (removedValue != null) {
+										removedValue.release();
+									}
+								}
+								if (newIndexKey != null) {
+									var previousValue = indexColumn.put(newIndexKey, Unpooled.EMPTY_BUFFER);
+									if (previousValue != null) {
+										previousValue.release();
+									}
+								}
+							} finally {
+								if (prevIndexKey != null) {
+									prevIndexKey.release();
+								}
+								if (newIndexKey != null) {
+									newIndexKey.release();
+								}
+							}
+						}
+					}))
+					.onErrorMap(cause -> new IOException("Failed to read or write " + LLUtils.toStringSafe(key), cause))
+					.doFirst(key::retain)
+					.doAfterTerminate(key::release);
+		} finally {
+			key.release();
+		}
 	}
 
 	@Override
 	public Mono<Void> clear() {
-		return Mono.fromRunnable(mainDb::clear);
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.setRange(this, LLRange.all(), Flux.empty());
+		}
+		return Mono.fromRunnable(column::clear);
 	}
 
 	@Override
 	public Mono<ByteBuf> remove(ByteBuf key, LLDictionaryResultType resultType) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.remove(this, key, resultType);
+		}
 		try {
 			return Mono
-					.fromCallable(() -> mainDb.remove(k(key)))
-					// Don't retain the result because it has been removed from the skip list
+					.fromCallable(() -> column.remove(key))
+					.transform(result -> this.transformResult(result, resultType))
 					.onErrorMap(cause -> new IOException("Failed to read " + LLUtils.toStringSafe(key), cause))
-					.map(this::kk)
 					.doFirst(key::retain)
 					.doAfterTerminate(key::release);
 		} finally {
@@ -216,11 +350,11 @@ public class LLMemoryDictionary implements LLDictionary {
 		return keys
 				.flatMapSequential(key -> {
 					try {
-						ByteList v = snapshots.get(resolveSnapshot(snapshot)).get(k(key.getT2()));
+						var v = column.get(key.getT2(), resolveSnapshot(snapshot));
 						if (v == null) {
 							return Flux.empty();
 						} else {
-							return Flux.just(Tuples.of(key.getT1(), key.getT2().retain(), kk(v)));
+							return Flux.just(Tuples.of(key.getT1(), key.getT2().retain(), v));
 						}
 					} finally {
 						key.getT2().release();
@@ -228,18 +362,53 @@ public class LLMemoryDictionary implements LLDictionary {
 				});
 	}
 
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> getMultiValues(@Nullable LLSnapshot snapshot,
+			Flux<ByteBuf> keys,
+			boolean existsAlmostCertainly) {
+		return keys
+				.handle((key, sink) -> {
+					try {
+						var v = column.get(key, resolveSnapshot(snapshot));
+						if (v != null) {
+							sink.next(Map.entry(key.retain(), v));
+						}
+					} finally {
+						key.release();
+					}
+				});
+	}
+
+	@Override
+	public Flux<Boolean> containsMulti(@Nullable LLSnapshot snapshot, Flux<ByteBuf> keys) {
+		return keys
+				.map(key -> {
+					try {
+						return column.contains(key, resolveSnapshot(snapshot));
+					} finally {
+						key.release();
+					}
+				});
+	}
+
 	@Override
 	public Flux<Entry<ByteBuf, ByteBuf>> putMulti(Flux<Entry<ByteBuf, ByteBuf>> entries, boolean getOldValues) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.putMulti(this, entries, getOldValues);
+		}
 		return entries
 				.handle((entry, sink) -> {
 					var key = entry.getKey();
 					var val = entry.getValue();
 					try {
-						var v = mainDb.put(k(key), k(val));
-						if (v == null || !getOldValues) {
+						var v = column.put(key, val);
+						if (v == null) {
+							sink.complete();
+						} else if (!getOldValues) {
+							v.release();
 							sink.complete();
 						} else {
-							sink.next(Map.entry(key.retain(), kk(v)));
+							sink.next(Map.entry(key.retain(), v));
 						}
 					} finally {
 						key.release();
@@ -251,7 +420,36 @@ public class LLMemoryDictionary implements LLDictionary {
 	@Override
 	public <X> Flux<ExtraKeyOperationResult<ByteBuf, X>> updateMulti(Flux<Tuple2<ByteBuf, X>> entries,
 			BiFunction<ByteBuf, X, ByteBuf> updateFunction) {
-		return Flux.error(new UnsupportedOperationException("Not implemented"));
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.updateMulti(this, entries, updateFunction);
+		}
+		return entries
+				.map(entry -> {
+					var key = entry.getT1();
+					try {
+						var delta = column.update(key, previous -> {
+							if (previous != null) {
+								previous.release();
+							}
+							return updateFunction.apply(key.retain(), entry.getT2());
+						});
+						try {
+							return new ExtraKeyOperationResult<>(key.retain(),
+									entry.getT2(),
+									!LLUtils.equals(delta.previous(), delta.current())
+							);
+						} finally {
+							if (delta.previous() != null) {
+								delta.previous().release();
+							}
+							if (delta.current() != null) {
+								delta.current().release();
+							}
+						}
+					} finally {
+						key.release();
+					}
+				});
 	}
 
 	@Override
@@ -260,50 +458,124 @@ public class LLMemoryDictionary implements LLDictionary {
 			boolean existsAlmostCertainly) {
 		try {
 			if (range.isSingle()) {
-				return Mono.fromCallable(() -> {
-					var element = snapshots.get(resolveSnapshot(snapshot))
-							.get(k(range.getSingle()));
-					return Map.entry(range.getSingle().retain(), kk(element));
-				}).flux();
-			} else {
 				return Mono
-						.fromCallable(() -> mapSlice(snapshot, range))
-						.flatMapMany(map -> Flux.fromIterable(map.entrySet()))
-						.map(entry -> Map.entry(kk(entry.getKey()), kk(entry.getValue())));
+						.fromCallable(() -> {
+							var element = column.get(range.getSingle(), resolveSnapshot(snapshot));
+							if (element == null) {
+								return null;
+							}
+							return Map.entry(range.getSingle().retain(), element);
+						})
+						.flux()
+						.doFirst(range::retain)
+						.doAfterTerminate(range::release);
+			} else {
+				return this
+						.readRange(snapshot, sequenceNumber -> column.visibleEntries(mapSlice(range), sequenceNumber))
+						.doFirst(range::retain)
+						.doAfterTerminate(range::release);
 			}
 		} finally {
 			range.release();
 		}
 	}
 
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> getRange(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit) {
+		try {
+			return this
+					.readRange(snapshot, sequenceNumber -> column.visibleEntries(mapSlice(range, reverse, fromKeyExclusive),
+							sequenceNumber
+					))
+					.transform(flux -> limit >= 0 ? flux.take(limit, true) : flux)
+					.doFirst(() -> {
+						range.retain();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.retain();
+						}
+					})
+					.doAfterTerminate(() -> {
+						range.release();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.release();
+						}
+					});
+		} finally {
+			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
+		}
+	}
+
 	@Override
 	public Flux<List<Entry<ByteBuf, ByteBuf>>> getRangeGrouped(@Nullable LLSnapshot snapshot,
 			LLRange range,
 			int prefixLength,
 			boolean existsAlmostCertainly) {
-		return Flux.error(new UnsupportedOperationException("Not implemented"));
+		return getRange(snapshot, range, existsAlmostCertainly)
+				.bufferUntilChanged(e -> e.getKey().slice(e.getKey().readerIndex(), prefixLength), LLUtils::equals);
 	}
 
 	@Override
 	public Flux<ByteBuf> getRangeKeys(@Nullable LLSnapshot snapshot, LLRange range) {
 		try {
 			if (range.isSingle()) {
-				return Mono.fromCallable(() -> {
-					var contains = snapshots.get(resolveSnapshot(snapshot))
-							.containsKey(k(range.getSingle()));
-					return contains ? range.getSingle().retain() : null;
-				}).flux();
-			} else {
 				return Mono
-						.fromCallable(() -> mapSlice(snapshot, range))
-						.flatMapMany(map -> Flux.fromIterable(map.entrySet()))
-						.map(entry -> kk(entry.getKey()));
+						.fromCallable(() -> {
+							var contains = column.contains(range.getSingle(), resolveSnapshot(snapshot));
+							return contains ? range.getSingle().retain() : null;
+						})
+						.flux()
+						.doFirst(range::retain)
+						.doAfterTerminate(range::release);
+			} else {
+				return this
+						.readRange(snapshot, sequenceNumber -> VersionedColumn.visibleKeys(mapSlice(range), sequenceNumber))
+						.doFirst(range::retain)
+						.doAfterTerminate(range::release);
 			}
 		} finally {
 			range.release();
 		}
 	}
 
+	@Override
+	public Flux<ByteBuf> getRangeKeys(@Nullable LLSnapshot snapshot,
+			LLRange range,
+			boolean reverse,
+			@Nullable ByteBuf fromKeyExclusive,
+			long limit) {
+		try {
+			return this
+					.readRange(snapshot, sequenceNumber -> VersionedColumn.visibleKeys(mapSlice(range, reverse, fromKeyExclusive),
+							sequenceNumber
+					))
+					.transform(flux -> limit >= 0 ? flux.take(limit, true) : flux)
+					.doFirst(() -> {
+						range.retain();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.retain();
+						}
+					})
+					.doAfterTerminate(() -> {
+						range.release();
+						if (fromKeyExclusive != null) {
+							fromKeyExclusive.release();
+						}
+					});
+		} finally {
+			range.release();
+			if (fromKeyExclusive != null) {
+				fromKeyExclusive.release();
+			}
+		}
+	}
+
 	@Override
 	public Flux<List<ByteBuf>> getRangeKeysGrouped(@Nullable LLSnapshot snapshot, LLRange range, int prefixLength) {
 		return getRangeKeys(snapshot, range)
@@ -324,32 +596,120 @@ public class LLMemoryDictionary implements LLDictionary {
 
 	@Override
 	public Mono<Void> setRange(LLRange range, Flux<Entry<ByteBuf, ByteBuf>> entries) {
-		return Mono.error(new UnsupportedOperationException("Not implemented"));
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.setRange(this, range, entries);
+		}
+		try {
+			return entries
+					.collectList()
+					.doOnDiscard(Entry.class, discardedEntry -> {
+						//noinspection unchecked
+						var entry = (Entry<ByteBuf, ByteBuf>) discardedEntry;
+						entry.getKey().release();
+						entry.getValue().release();
+					})
+					.<Void>flatMap(entriesList -> Mono.fromCallable(() -> {
+						try {
+							column.replaceRange(mapSlice(range), entriesList);
+							return null;
+						} finally {
+							for (Entry<ByteBuf, ByteBuf> entry : entriesList) {
+								entry.getKey().release();
+								entry.getValue().release();
+							}
+						}
+					}))
+					.onErrorMap(cause -> new IOException("Failed to write range", cause))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
 	}
 
 	@Override
 	public Mono<Boolean> isRangeEmpty(@Nullable LLSnapshot snapshot, LLRange range) {
-		return Mono.error(new UnsupportedOperationException("Not implemented"));
+		try {
+			return Mono
+					.fromCallable(() -> readRangeNow(snapshot, sequenceNumber -> !VersionedColumn.anyVisible(mapSlice(range), sequenceNumber)))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
 	}
 
 	@Override
 	public Mono<Long> sizeRange(@Nullable LLSnapshot snapshot, LLRange range, boolean fast) {
-		return Mono.fromCallable(() -> (long) mapSlice(snapshot, range).size());
+		try {
+			return Mono
+					.fromCallable(() -> readRangeNow(snapshot, sequenceNumber -> VersionedColumn.countVisible(mapSlice(range), sequenceNumber)))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
 	}
 
 	@Override
 	public Mono<Entry<ByteBuf, ByteBuf>> getOne(@Nullable LLSnapshot snapshot, LLRange range) {
-		return Mono.error(new UnsupportedOperationException("Not implemented"));
+		try {
+			return Mono
+					.fromCallable(() -> readRangeNow(snapshot, sequenceNumber -> first(column.visibleEntries(mapSlice(range), sequenceNumber))))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
 	}
 
 	@Override
 	public Mono<ByteBuf> getOneKey(@Nullable LLSnapshot snapshot, LLRange range) {
-		return Mono.error(new UnsupportedOperationException("Not implemented"));
+		try {
+			return Mono
+					.fromCallable(() -> readRangeNow(snapshot, sequenceNumber -> first(VersionedColumn.visibleKeys(mapSlice(range), sequenceNumber))))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
+	}
+
+	private static <T> @Nullable T first(Iterable<T> iterable) {
+		var iterator = iterable.iterator();
+		return iterator.hasNext() ? iterator.next() : null;
 	}
 
 	@Override
 	public Mono<Entry<ByteBuf, ByteBuf>> removeOne(LLRange range) {
-		return Mono.error(new UnsupportedOperationException("Not implemented"));
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.pollMulti(this, range, 1).singleOrEmpty();
+		}
+		try {
+			return Mono
+					.fromCallable(() -> first(column.removeFirst(mapSlice(range), 1)))
+					.onErrorMap(cause -> new IOException("Failed to delete " + range.toString(), cause))
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
+	}
+
+	@Override
+	public Flux<Entry<ByteBuf, ByteBuf>> pollMulti(LLRange range, int count) {
+		if (!secondaryIndexes.isEmpty()) {
+			return LLSecondaryIndexes.pollMulti(this, range, count);
+		}
+		try {
+			return Mono
+					.fromCallable(() -> column.removeFirst(mapSlice(range), count))
+					.<Entry<ByteBuf, ByteBuf>>flatMapIterable(entries -> entries)
+					.doFirst(range::retain)
+					.doAfterTerminate(range::release);
+		} finally {
+			range.release();
+		}
 	}
 
 	@Override
@@ -4,14 +4,15 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import it.cavallium.dbengine.client.DatabaseOptions;
 import it.cavallium.dbengine.database.Column;
+import it.cavallium.dbengine.database.LLChange;
 import it.cavallium.dbengine.database.LLDictionary;
 import it.cavallium.dbengine.database.LLKeyValueDatabase;
 import it.cavallium.dbengine.database.LLKeyValueDatabaseStructure;
+import it.cavallium.dbengine.database.LLSecondaryIndexes;
 import it.cavallium.dbengine.database.LLSingleton;
 import it.cavallium.dbengine.database.LLSnapshot;
 import it.cavallium.dbengine.database.LLSnapshottable;
 import it.cavallium.dbengine.database.UpdateMode;
-import it.unimi.dsi.fastutil.bytes.ByteList;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.List;
@@ -19,7 +20,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 import org.jetbrains.annotations.Nullable;
 import org.rocksdb.ColumnFamilyHandle;
@@ -32,18 +32,25 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 	private final String name;
 	private final AtomicLong nextSnapshotNumber = new AtomicLong(1);
 
-	private final ConcurrentHashMap<Long, ConcurrentHashMap<String, ConcurrentSkipListMap<ByteList, ByteList>>> snapshots = new ConcurrentHashMap<>();
-	private final ConcurrentHashMap<String, ConcurrentSkipListMap<ByteList, ByteList>> mainDb;
+	private final VersionSequencer sequencer = new VersionSequencer();
+	/**
+	 * Sequence numbers of the snapshots, by snapshot id
+	 */
+	private final ConcurrentHashMap<Long, Long> snapshots = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, VersionedColumn> mainDb;
 	private final ConcurrentHashMap<String, LLMemoryDictionary> singletons = new ConcurrentHashMap<>();
+	/**
+	 * Secondary indexes of the columns, shared by all the dictionaries of the same column
+	 */
+	private final ConcurrentHashMap<String, LLSecondaryIndexes> secondaryIndexes = new ConcurrentHashMap<>();
 
 	public LLMemoryKeyValueDatabase(ByteBufAllocator allocator, String name, List<Column> columns) {
 		this.allocator = allocator;
 		this.name = name;
 		this.mainDb = new ConcurrentHashMap<>();
 		for (Column column : columns) {
-			mainDb.put(column.name(), new ConcurrentSkipListMap<>());
+			mainDb.put(column.name(), new VersionedColumn(allocator, sequencer));
 		}
-		this.snapshots.put(Long.MIN_VALUE + 1L, this.mainDb);
 	}
 
 	@Override
@@ -54,7 +61,8 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 				columnNameString,
 				UpdateMode.ALLOW,
 				snapshots,
-				mainDb
+				mainDb,
+				getSecondaryIndexes(columnNameString)
 		));
 		return Mono
 				.fromCallable(() -> new LLMemorySingleton(dict, singletonName)).flatMap(singleton -> singleton
@@ -72,15 +80,25 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 				columnNameString,
 				updateMode,
 				snapshots,
-				mainDb
+				mainDb,
+				getSecondaryIndexes(columnNameString)
 		));
 	}
 
+	private LLSecondaryIndexes getSecondaryIndexes(String columnName) {
+		return secondaryIndexes.computeIfAbsent(columnName, column -> new LLSecondaryIndexes());
+	}
+
 	@Override
 	public Mono<Long> getProperty(String propertyName) {
 		return Mono.empty();
 	}
 
+	@Override
+	public Flux<LLChange> changes(long fromSequenceNumber) {
+		return Flux.error(new UnsupportedOperationException("In-memory databases don't have a changes log"));
+	}
+
 	@Override
 	public Mono<Void> verifyChecksum() {
 		return Mono.empty();
@@ -95,11 +113,9 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 	public Mono<Void> close() {
 		return Mono
 				.fromRunnable(() -> {
-					snapshots.forEach((snapshot, dbs) -> dbs.forEach((columnName, db) -> {
-						db.clear();
-					}));
+					snapshots.clear();
 					mainDb.forEach((columnName, db) -> {
-						db.clear();
+						db.release();
 					});
 				});
 	}
@@ -114,12 +130,7 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 		return Mono
 				.fromCallable(() -> {
 					var snapshotNumber = nextSnapshotNumber.getAndIncrement();
-					var snapshot = new ConcurrentHashMap<String, ConcurrentSkipListMap<ByteList, ByteList>>();
-					mainDb.forEach((columnName, column) -> {
-						var cloned = column.clone();
-						snapshot.put(columnName, cloned);
-					});
-					snapshots.put(snapshotNumber, snapshot);
+					snapshots.put(snapshotNumber, sequencer.takeSnapshot());
 					return new LLSnapshot(snapshotNumber);
 				});
 	}
@@ -127,7 +138,12 @@ public class LLMemoryKeyValueDatabase implements LLKeyValueDatabase {
 	@Override
 	public Mono<Void> releaseSnapshot(LLSnapshot snapshot) {
 		return Mono
-				.fromCallable(() -> snapshots.remove(snapshot.getSequenceNumber()))
-				.then();
+				.fromRunnable(() -> {
+					var sequenceNumber = snapshots.remove(snapshot.getSequenceNumber());
+					if (sequenceNumber != null) {
+						sequencer.releaseSnapshot(sequenceNumber);
+						mainDb.forEach((columnName, column) -> column.collectGarbage());
+					}
+				});
 	}
 }
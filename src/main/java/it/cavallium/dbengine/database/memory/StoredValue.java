@@ -0,0 +1,62 @@
+package it.cavallium.dbengine.database.memory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Value of an in-memory column, stored in a direct buffer.
+ *
+ * The column owns one reference, and the readers get retained slices of the buffer.
+ * The references are not counted on the buffer itself because pooled buffers are recycled: a reader that finds
+ * a value that has just been released could retain a buffer that now belongs to someone else
+ */
+final class StoredValue {
+
+	private final ByteBuf buffer;
+	private final AtomicInteger refCnt = new AtomicInteger(1);
+
+	private StoredValue(ByteBuf buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Copy a value into a new direct buffer
+	 */
+	public static StoredValue copyOf(ByteBufAllocator allocator, ByteBuf value) {
+		int length = value.readableBytes();
+		var buffer = allocator.directBuffer(length, length);
+		try {
+			buffer.writeBytes(value, value.readerIndex(), length);
+			return new StoredValue(buffer);
+		} catch (Throwable ex) {
+			buffer.release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return a retained slice of the value, or null if the value has already been released
+	 */
+	public @Nullable ByteBuf tryRetainedSlice() {
+		int currentRefCnt;
+		do {
+			currentRefCnt = refCnt.get();
+			if (currentRefCnt <= 0) {
+				return null;
+			}
+		} while (!refCnt.compareAndSet(currentRefCnt, currentRefCnt + 1));
+		try {
+			return buffer.retainedSlice();
+		} finally {
+			release();
+		}
+	}
+
+	public void release() {
+		if (refCnt.decrementAndGet() == 0) {
+			buffer.release();
+		}
+	}
+}
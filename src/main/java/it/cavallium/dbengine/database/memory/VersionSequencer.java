@@ -0,0 +1,119 @@
+package it.cavallium.dbengine.database.memory;
+
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
+
+/**
+ * Sequence numbers of the writes and of the live snapshots of an in-memory database.
+ *
+ * Every write gets a new sequence number, and writes can run concurrently. A write is committed when it
+ * and all the writes with a lower sequence number have finished: the reads without a snapshot and the new
+ * snapshots read at the last committed sequence number, so they never see a write that is still running
+ */
+class VersionSequencer {
+
+	/**
+	 * Sequence number used to read the newest values, including the values of the writes that are still running
+	 */
+	public static final long LATEST = Long.MAX_VALUE;
+	/**
+	 * Sequence number used to read the values of the last committed write
+	 */
+	public static final long LAST_COMMITTED = -1;
+
+	/**
+	 * Sequence number of the write running in the current thread.
+	 * The writes nested in it use the same sequence number, so they are committed together
+	 */
+	private final ThreadLocal<Long> currentWrite = new ThreadLocal<>();
+	/**
+	 * Sequence numbers of the writes that are still running. Guarded by this
+	 */
+	private final LongSortedSet runningWrites = new LongRBTreeSet();
+	/**
+	 * Guarded by this
+	 */
+	private long lastSequenceNumber = 0;
+	private volatile long lastCommitted = 0;
+	/**
+	 * Sequence numbers of the live snapshots, with the count of snapshots that use them
+	 */
+	private final ConcurrentSkipListMap<Long, Integer> liveSnapshots = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Run a write with a new sequence number, and wait until it's committed
+	 */
+	public <T> T write(LongFunction<T> writer) {
+		var outerWrite = currentWrite.get();
+		if (outerWrite != null) {
+			return writer.apply(outerWrite);
+		}
+		long sequenceNumber;
+		synchronized (this) {
+			sequenceNumber = ++lastSequenceNumber;
+			runningWrites.add(sequenceNumber);
+		}
+		currentWrite.set(sequenceNumber);
+		try {
+			return writer.apply(sequenceNumber);
+		} finally {
+			currentWrite.remove();
+			commit(sequenceNumber);
+		}
+	}
+
+	private synchronized void commit(long sequenceNumber) {
+		runningWrites.remove(sequenceNumber);
+		long committed = runningWrites.isEmpty() ? lastSequenceNumber : runningWrites.firstLong() - 1;
+		if (committed > lastCommitted) {
+			lastCommitted = committed;
+			notifyAll();
+		}
+		// Wait for the older writes, so the writer can read its own write when this method returns
+		boolean interrupted = false;
+		while (lastCommitted < sequenceNumber) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getLastCommitted() {
+		return lastCommitted;
+	}
+
+	/**
+	 * Take a snapshot of the last committed write. It's also used to read a range without a snapshot:
+	 * the versions read by a live snapshot are not pruned
+	 * @return the sequence number of the snapshot
+	 */
+	public synchronized long takeSnapshot() {
+		long sequenceNumber = lastCommitted;
+		liveSnapshots.merge(sequenceNumber, 1, Integer::sum);
+		return sequenceNumber;
+	}
+
+	public void releaseSnapshot(long sequenceNumber) {
+		liveSnapshots.computeIfPresent(sequenceNumber, (_unused, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * @return the oldest sequence number that can still be read, by a live snapshot or by a new read
+	 * of the last committed write
+	 */
+	public synchronized long getOldestSnapshot() {
+		var oldest = liveSnapshots.firstEntry();
+		if (oldest == null) {
+			return lastCommitted;
+		} else {
+			return Math.min(oldest.getKey(), lastCommitted);
+		}
+	}
+}
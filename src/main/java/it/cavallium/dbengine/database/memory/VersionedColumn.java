@@ -0,0 +1,512 @@
+package it.cavallium.dbengine.database.memory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import it.cavallium.dbengine.database.Delta;
+import it.cavallium.dbengine.database.LLUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import org.warp.commonutils.locks.Striped;
+
+/**
+ * Column of an in-memory database.
+ *
+ * Every key has a chain of versions, from the newest to the oldest, tagged with the sequence number of
+ * the write that created them. Reading at a snapshot returns the newest version that is not newer than
+ * the snapshot, so taking a snapshot doesn't copy anything.
+ * The old versions are kept only while a live snapshot or a read of the last committed write can read them:
+ * they are pruned when the write that replaced them is committed, or by {@link #collectGarbage()} after a
+ * snapshot has been released.
+ *
+ * Values are stored in direct buffers and read as retained slices, without copying them.
+ * Keys are stored on the heap, because the skip list can still compare a key with the key of a node
+ * that is being removed concurrently, so freeing the memory of the removed keys would not be safe
+ */
+class VersionedColumn {
+
+	private static final int STRIPES = 512;
+
+	private final ByteBufAllocator allocator;
+	private final VersionSequencer sequencer;
+	private final ConcurrentSkipListMap<ByteBuf, Version> versions = new ConcurrentSkipListMap<>();
+	/**
+	 * Keys that could have versions that are not needed anymore after a snapshot is released
+	 */
+	private final Set<ByteBuf> keysWithOldVersions = ConcurrentHashMap.newKeySet();
+	/**
+	 * Serializes the updates of the same key that have dependent writes
+	 */
+	private final Striped<StampedLock> keysLock = Striped.readWriteStampedLock(STRIPES);
+
+	/**
+	 * @param value the value, or null if the key has been deleted
+	 * @param previous the previous version, or null if the key didn't exist or if it's not needed anymore
+	 */
+	record Version(long sequenceNumber, @Nullable StoredValue value, @Nullable Version previous) {
+
+		/**
+		 * @return the value visible at the specified sequence number, or null if the key doesn't exist there
+		 */
+		public @Nullable StoredValue valueAt(long sequenceNumber) {
+			for (var version = this; version != null; version = version.previous) {
+				if (version.sequenceNumber <= sequenceNumber) {
+					return version.value;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Result of a single call of the updater. The skip list can discard it and call the updater again
+	 */
+	private static final class UpdateAttempt {
+
+		private final @Nullable ByteBuf previous;
+		/**
+		 * Values of the versions removed from the chain, released when the new chain has been stored
+		 */
+		private final List<StoredValue> dropped = new ArrayList<>();
+		private @Nullable StoredValue current;
+		private @Nullable ByteBuf currentSlice;
+
+		private UpdateAttempt(@Nullable ByteBuf previous) {
+			this.previous = previous;
+		}
+
+		private void discard() {
+			if (previous != null) {
+				previous.release();
+			}
+			if (currentSlice != null) {
+				currentSlice.release();
+			}
+			if (current != null) {
+				current.release();
+			}
+		}
+	}
+
+	public VersionedColumn(ByteBufAllocator allocator, VersionSequencer sequencer) {
+		this.allocator = allocator;
+		this.sequencer = sequencer;
+	}
+
+	private static void collectValues(@Nullable Version version, List<StoredValue> values) {
+		for (; version != null; version = version.previous) {
+			if (version.value != null) {
+				values.add(version.value);
+			}
+		}
+	}
+
+	/**
+	 * Remove the versions that can't be read by the snapshots, and the deletions of keys that didn't exist
+	 * @param dropped the values of the removed versions are added to this list
+	 * @return the pruned chain, or null if the key doesn't exist for any snapshot
+	 */
+	private static @Nullable Version prune(@Nullable Version version, long oldestSnapshot, List<StoredValue> dropped) {
+		if (version == null) {
+			return null;
+		}
+		if (version.sequenceNumber > oldestSnapshot) {
+			var previous = prune(version.previous, oldestSnapshot, dropped);
+			if (previous == null && version.value == null) {
+				return null;
+			} else if (previous == version.previous) {
+				return version;
+			} else {
+				return new Version(version.sequenceNumber, version.value, previous);
+			}
+		} else {
+			// This is the version read by the oldest snapshot, the older versions can't be read anymore
+			collectValues(version.previous, dropped);
+			if (version.value == null) {
+				return null;
+			} else if (version.previous == null) {
+				return version;
+			} else {
+				return new Version(version.sequenceNumber, version.value, null);
+			}
+		}
+	}
+
+	private static boolean hasOldVersions(@Nullable Version version) {
+		return version != null && (version.previous != null || version.value == null);
+	}
+
+	/**
+	 * Resolve {@link VersionSequencer#LAST_COMMITTED}. Call it after reading the version chain:
+	 * the chain has not been pruned past the last committed write of a later moment
+	 */
+	private long resolve(long sequenceNumber) {
+		if (sequenceNumber == VersionSequencer.LAST_COMMITTED) {
+			return sequencer.getLastCommitted();
+		} else {
+			return sequenceNumber;
+		}
+	}
+
+	/**
+	 * Read the value of a key visible at the specified sequence number
+	 * @return a retained slice of the value, or null if the key doesn't exist there
+	 */
+	private @Nullable ByteBuf readValue(ByteBuf key, @Nullable Version version, long sequenceNumber) {
+		while (version != null) {
+			var value = version.valueAt(resolve(sequenceNumber));
+			if (value == null) {
+				return null;
+			}
+			var slice = value.tryRetainedSlice();
+			if (slice != null) {
+				return slice;
+			}
+			// The version has been pruned concurrently, so a newer version is visible at this sequence number
+			version = versions.get(key);
+		}
+		return null;
+	}
+
+	/**
+	 * Get the value of a key
+	 * @param sequenceNumber sequence number of the snapshot, or {@link VersionSequencer#LAST_COMMITTED}
+	 * @return a retained slice of the value
+	 */
+	public @Nullable ByteBuf get(ByteBuf key, long sequenceNumber) {
+		return readValue(key, versions.get(key), sequenceNumber);
+	}
+
+	/**
+	 * @param sequenceNumber sequence number of the snapshot, or {@link VersionSequencer#LAST_COMMITTED}
+	 */
+	public boolean contains(ByteBuf key, long sequenceNumber) {
+		var version = versions.get(key);
+		return version != null && version.valueAt(resolve(sequenceNumber)) != null;
+	}
+
+	/**
+	 * Start reading multiple keys at the last committed write. The versions read are kept until {@link #endRead(long)}
+	 * @return the sequence number to read
+	 */
+	public long beginRead() {
+		return sequencer.takeSnapshot();
+	}
+
+	public void endRead(long sequenceNumber) {
+		sequencer.releaseSnapshot(sequenceNumber);
+		collectGarbage();
+	}
+
+	/**
+	 * Get the version chains of all the keys, including the keys that have been deleted.
+	 * Use {@link #visibleEntries(Map, long)} to read the values
+	 */
+	public NavigableMap<ByteBuf, Version> versions() {
+		return versions;
+	}
+
+	/**
+	 * Get the entries that are visible at the specified sequence number, in the same order of the map.
+	 * Keys and values are retained slices
+	 */
+	public Iterable<Entry<ByteBuf, ByteBuf>> visibleEntries(Map<ByteBuf, Version> versions, long sequenceNumber) {
+		return () -> versions
+				.entrySet()
+				.stream()
+				.<Entry<ByteBuf, ByteBuf>>mapMulti((entry, consumer) -> {
+					var value = readValue(entry.getKey(), entry.getValue(), sequenceNumber);
+					if (value != null) {
+						consumer.accept(Map.entry(entry.getKey().retainedSlice(), value));
+					}
+				})
+				.iterator();
+	}
+
+	/**
+	 * Get the keys that are visible at the specified sequence number, in the same order of the map.
+	 * Keys are retained slices
+	 */
+	public static Iterable<ByteBuf> visibleKeys(Map<ByteBuf, Version> versions, long sequenceNumber) {
+		return () -> versions
+				.entrySet()
+				.stream()
+				.filter(entry -> entry.getValue().valueAt(sequenceNumber) != null)
+				.map(entry -> entry.getKey().retainedSlice())
+				.iterator();
+	}
+
+	public static boolean anyVisible(Map<ByteBuf, Version> versions, long sequenceNumber) {
+		return versions
+				.values()
+				.stream()
+				.anyMatch(version -> version.valueAt(sequenceNumber) != null);
+	}
+
+	public static long countVisible(Map<ByteBuf, Version> versions, long sequenceNumber) {
+		return versions
+				.values()
+				.stream()
+				.filter(version -> version.valueAt(sequenceNumber) != null)
+				.count();
+	}
+
+	/**
+	 * Update the latest value of a key atomically.
+	 * Like {@link ConcurrentSkipListMap#compute}, the updater could be called more than once.
+	 * The updater receives a retained slice of the latest value, and the value that it returns is copied and released
+	 * @return retained slices of the previous and of the current latest value
+	 */
+	public Delta<ByteBuf> update(ByteBuf key, Function<@Nullable ByteBuf, @Nullable ByteBuf> updater) {
+		var delta = sequencer.write(sequenceNumber -> update(key, updater, sequenceNumber));
+		pruneCommitted(key);
+		return delta;
+	}
+
+	/**
+	 * Update the latest value of a key, then run the writes that depend on its change with the same
+	 * sequence number, so they are committed together.
+	 * The updates of the same key made by this method are serialized, and the dependent writes run only once
+	 * @param dependentWrites receives the change of the value, it must not release it
+	 * @return retained slices of the previous and of the current latest value
+	 */
+	public Delta<ByteBuf> update(ByteBuf key,
+			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater,
+			Consumer<Delta<ByteBuf>> dependentWrites) {
+		var lock = keysLock.getAt(Math.abs(LLUtils.hashCode(key) % STRIPES));
+		var delta = sequencer.write(sequenceNumber -> {
+			// Lock inside the write: the commit waits for the older writes, which could be waiting for this lock
+			long stamp = lock.writeLock();
+			try {
+				var result = update(key, updater, sequenceNumber);
+				try {
+					dependentWrites.accept(result);
+				} catch (Throwable ex) {
+					release(result);
+					throw ex;
+				}
+				return result;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		});
+		pruneCommitted(key);
+		return delta;
+	}
+
+	private Delta<ByteBuf> update(ByteBuf key,
+			Function<@Nullable ByteBuf, @Nullable ByteBuf> updater,
+			long sequenceNumber) {
+		long oldestSnapshot = sequencer.getOldestSnapshot();
+		var lastAttempt = new AtomicReference<UpdateAttempt>();
+		Version newVersion;
+		try {
+			BiFunction<ByteBuf, @Nullable Version, @Nullable Version> remapping = (_unused, latest) -> {
+				var previousAttempt = lastAttempt.getAndSet(null);
+				if (previousAttempt != null) {
+					previousAttempt.discard();
+				}
+				ByteBuf previousValue = null;
+				if (latest != null && latest.value != null) {
+					previousValue = latest.value.tryRetainedSlice();
+					if (previousValue == null) {
+						// The latest version has already been replaced, the skip list will call this function again
+						return latest;
+					}
+				}
+				var attempt = new UpdateAttempt(previousValue);
+				lastAttempt.set(attempt);
+				var newValue = updater.apply(previousValue != null ? previousValue.retainedSlice() : null);
+				if (newValue == null) {
+					if (previousValue == null) {
+						return latest;
+					}
+					return prune(new Version(sequenceNumber, null, latest), oldestSnapshot, attempt.dropped);
+				}
+				try {
+					attempt.current = StoredValue.copyOf(allocator, newValue);
+				} finally {
+					newValue.release();
+				}
+				attempt.currentSlice = attempt.current.tryRetainedSlice();
+				return prune(new Version(sequenceNumber, attempt.current, latest), oldestSnapshot, attempt.dropped);
+			};
+			newVersion = versions.computeIfPresent(key, remapping);
+			if (lastAttempt.get() == null) {
+				// The key is stored only when a new node is inserted, the existing nodes keep their key
+				newVersion = versions.compute(Unpooled.copiedBuffer(key), remapping);
+			}
+		} catch (Throwable ex) {
+			var attempt = lastAttempt.getAndSet(null);
+			if (attempt != null) {
+				attempt.discard();
+			}
+			throw ex;
+		}
+		var attempt = lastAttempt.get();
+		attempt.dropped.forEach(StoredValue::release);
+		if (hasOldVersions(newVersion)) {
+			addKeyWithOldVersions(key);
+		}
+		return new Delta<>(attempt.previous, attempt.currentSlice);
+	}
+
+	private static Function<@Nullable ByteBuf, @Nullable ByteBuf> replaceWith(@Nullable ByteBuf value) {
+		return previous -> {
+			if (previous != null) {
+				previous.release();
+			}
+			return value != null ? value.retain() : null;
+		};
+	}
+
+	private static void release(Delta<ByteBuf> delta) {
+		if (delta.previous() != null) {
+			delta.previous().release();
+		}
+		if (delta.current() != null) {
+			delta.current().release();
+		}
+	}
+
+	/**
+	 * @return a retained slice of the previous latest value
+	 */
+	public @Nullable ByteBuf put(ByteBuf key, ByteBuf value) {
+		var delta = update(key, replaceWith(value));
+		if (delta.current() != null) {
+			delta.current().release();
+		}
+		return delta.previous();
+	}
+
+	/**
+	 * @return a retained slice of the previous latest value
+	 */
+	public @Nullable ByteBuf remove(ByteBuf key) {
+		return update(key, replaceWith(null)).previous();
+	}
+
+	/**
+	 * Delete all the keys of a range and write the new entries with a single sequence number,
+	 * so every snapshot sees either the old keys or the new entries. The entries are not released
+	 * @param range a view of {@link #versions()}
+	 */
+	public void replaceRange(Map<ByteBuf, Version> range, List<Entry<ByteBuf, ByteBuf>> entries) {
+		sequencer.write(sequenceNumber -> {
+			for (ByteBuf key : range.keySet()) {
+				release(update(key, replaceWith(null), sequenceNumber));
+			}
+			for (Entry<ByteBuf, ByteBuf> entry : entries) {
+				release(update(entry.getKey(), replaceWith(entry.getValue()), sequenceNumber));
+			}
+			return null;
+		});
+		collectGarbage();
+	}
+
+	/**
+	 * Delete the first keys of a range with a single sequence number
+	 * @param range a view of {@link #versions()}
+	 * @return retained slices of the deleted keys and of their values
+	 */
+	public List<Entry<ByteBuf, ByteBuf>> removeFirst(Map<ByteBuf, Version> range, int count) {
+		var removed = sequencer.write(sequenceNumber -> {
+			var entries = new ArrayList<Entry<ByteBuf, ByteBuf>>();
+			for (var key : visibleKeys(range, VersionSequencer.LATEST)) {
+				if (entries.size() >= count) {
+					key.release();
+					break;
+				}
+				// The entry could have been removed by another consumer
+				var removedValue = update(key, replaceWith(null), sequenceNumber).previous();
+				if (removedValue != null) {
+					entries.add(Map.entry(key, removedValue));
+				} else {
+					key.release();
+				}
+			}
+			return entries;
+		});
+		collectGarbage();
+		return removed;
+	}
+
+	/**
+	 * Delete all the keys. The snapshots can still read them
+	 */
+	public void clear() {
+		replaceRange(versions, List.of());
+	}
+
+	/**
+	 * Prune a key written by a committed write.
+	 * The previous version has been kept while the write was running, for the reads of the last committed write
+	 */
+	private void pruneCommitted(ByteBuf key) {
+		if (!keysWithOldVersions.isEmpty()) {
+			prune(key, sequencer.getOldestSnapshot());
+		}
+	}
+
+	private void prune(ByteBuf key, long oldestSnapshot) {
+		// Remove the key before pruning, so a concurrent write can add it again
+		if (!keysWithOldVersions.remove(key)) {
+			return;
+		}
+		var dropped = new ArrayList<StoredValue>();
+		var newVersion = versions.computeIfPresent(key, (_unused, version) -> {
+			dropped.clear();
+			return prune(version, oldestSnapshot, dropped);
+		});
+		dropped.forEach(StoredValue::release);
+		if (hasOldVersions(newVersion)) {
+			addKeyWithOldVersions(key);
+		}
+	}
+
+	/**
+	 * @param key the key, it's copied only if it's not in the set already
+	 */
+	private void addKeyWithOldVersions(ByteBuf key) {
+		if (!keysWithOldVersions.contains(key)) {
+			keysWithOldVersions.add(Unpooled.copiedBuffer(key));
+		}
+	}
+
+	/**
+	 * Remove the versions that are not needed anymore by the live snapshots
+	 */
+	public void collectGarbage() {
+		if (keysWithOldVersions.isEmpty()) {
+			return;
+		}
+		long oldestSnapshot = sequencer.getOldestSnapshot();
+		for (ByteBuf key : keysWithOldVersions) {
+			prune(key, oldestSnapshot);
+		}
+	}
+
+	/**
+	 * Release all the values. The column can't be used anymore
+	 */
+	public void release() {
+		var values = new ArrayList<StoredValue>();
+		versions.values().forEach(version -> collectValues(version, values));
+		versions.clear();
+		keysWithOldVersions.clear();
+		values.forEach(StoredValue::release);
+	}
+}
@@ -0,0 +1,28 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Codec that works directly on the buffers, without stream wrappers.
+ * The serialized size is computed before serializing, so the output buffer is allocated only once
+ */
+public interface BufferCodec<A> {
+
+	/**
+	 * @return the exact number of bytes written by {@link #serialize(ByteBuf, int, Object)}
+	 */
+	int getSerializedSize(@NotNull A deserialized);
+
+	/**
+	 * Read the value from the reader index of the buffer and move the reader index after it.
+	 * Don't release the buffer
+	 */
+	@NotNull A deserialize(@NotNull ByteBuf serialized);
+
+	/**
+	 * Write the value starting from the specified index, with absolute setters.
+	 * The buffer has enough capacity for the serialized size, don't move its indices
+	 */
+	void serialize(@NotNull ByteBuf output, int index, @NotNull A deserialized);
+}
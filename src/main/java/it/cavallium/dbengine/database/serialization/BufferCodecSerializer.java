@@ -0,0 +1,86 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.function.IntFunction;
+import org.jetbrains.annotations.NotNull;
+import org.warp.commonutils.error.IndexOutOfBoundsException;
+
+/**
+ * Versioned serializer like {@link CodecSerializer}, but the codecs read and write the buffers directly
+ * and the output buffer is allocated with the exact serialized size
+ */
+public class BufferCodecSerializer<A> implements Serializer<A, ByteBuf> {
+
+	private final ByteBufAllocator allocator;
+	private final IntFunction<BufferCodec<A>> deserializationCodecs;
+	private final BufferCodec<A> serializationCodec;
+	private final int serializationCodecId;
+	private final boolean microCodecs;
+
+	/**
+	 * @param deserializationCodecs get the codec of a codec id, or null if the id is unknown
+	 * @param microCodecs if true, allow only codecs with a value from 0 to 255 to save disk space
+	 */
+	public BufferCodecSerializer(
+			ByteBufAllocator allocator,
+			IntFunction<BufferCodec<A>> deserializationCodecs,
+			BufferCodec<A> serializationCodec,
+			int serializationCodecId,
+			boolean microCodecs) {
+		this.allocator = allocator;
+		this.deserializationCodecs = deserializationCodecs;
+		this.serializationCodec = serializationCodec;
+		this.serializationCodecId = serializationCodecId;
+		this.microCodecs = microCodecs;
+		if (microCodecs && (serializationCodecId > 255 || serializationCodecId < 0)) {
+			throw new IndexOutOfBoundsException(serializationCodecId, 0, 255);
+		}
+	}
+
+	@Override
+	public @NotNull A deserialize(@NotNull ByteBuf serialized) {
+		try {
+			int codecId;
+			if (microCodecs) {
+				codecId = serialized.readUnsignedByte();
+			} else {
+				codecId = serialized.readInt();
+			}
+			var codec = deserializationCodecs.apply(codecId);
+			if (codec == null) {
+				throw new IllegalArgumentException("Unknown codec id: " + codecId);
+			}
+			return codec.deserialize(serialized);
+		} finally {
+			serialized.release();
+		}
+	}
+
+	@Override
+	public @NotNull ByteBuf serialize(@NotNull A deserialized) {
+		int headersBytes = getCodecHeadersBytes();
+		int size = headersBytes + serializationCodec.getSerializedSize(deserialized);
+		ByteBuf buf = allocator.buffer(size, size);
+		try {
+			if (microCodecs) {
+				buf.setByte(0, serializationCodecId);
+			} else {
+				buf.setInt(0, serializationCodecId);
+			}
+			serializationCodec.serialize(buf, headersBytes, deserialized);
+			buf.writerIndex(size);
+			return buf.retain();
+		} finally {
+			buf.release();
+		}
+	}
+
+	public int getCodecHeadersBytes() {
+		if (microCodecs) {
+			return Byte.BYTES;
+		} else {
+			return Integer.BYTES;
+		}
+	}
+}
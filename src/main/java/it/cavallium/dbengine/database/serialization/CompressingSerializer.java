@@ -0,0 +1,116 @@
+package it.cavallium.dbengine.database.serialization;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import it.cavallium.dbengine.database.LLUtils;
+import org.jetbrains.annotations.NotNull;
+
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+
+/**
+ * Serializer that compresses every value with zstd, using the trained dictionaries of the column.
+ *
+ * The serialized value starts with a header:
+ * <pre>
+ * byte format          0: not compressed, 1: zstd, 2: zstd with dictionary
+ * int dictionaryId     only if format is 2
+ * int originalLength   only if format is 1 or 2
+ * </pre>
+ * Small values and values that don't get smaller are stored without compression.
+ */
+public class CompressingSerializer<A> implements Serializer<A, ByteBuf> {
+
+	private static final byte FORMAT_RAW = 0;
+	private static final byte FORMAT_ZSTD = 1;
+	private static final byte FORMAT_ZSTD_DICTIONARY = 2;
+
+	private final ByteBufAllocator allocator;
+	private final Serializer<A, ByteBuf> serializer;
+	private final ZstdDictionaries dictionaries;
+	private final int minCompressedLength;
+
+	/**
+	 * @param minCompressedLength values shorter than this length, in bytes, are not compressed
+	 */
+	public CompressingSerializer(ByteBufAllocator allocator,
+			Serializer<A, ByteBuf> serializer,
+			ZstdDictionaries dictionaries,
+			int minCompressedLength) {
+		this.allocator = allocator;
+		this.serializer = serializer;
+		this.dictionaries = dictionaries;
+		this.minCompressedLength = minCompressedLength;
+	}
+
+	@Override
+	public @NotNull A deserialize(@NotNull ByteBuf serialized) {
+		try {
+			byte format = serialized.readByte();
+			if (format == FORMAT_RAW) {
+				return serializer.deserialize(serialized.retain());
+			}
+			ZstdDictDecompress dictionary = switch (format) {
+				case FORMAT_ZSTD -> null;
+				case FORMAT_ZSTD_DICTIONARY -> dictionaries.getDecompressDictionary(serialized.readInt());
+				default -> throw new IllegalArgumentException("Unknown compression format: " + format);
+			};
+			int originalLength = serialized.readInt();
+			byte[] compressed = LLUtils.toArray(serialized);
+			serialized.readerIndex(serialized.writerIndex());
+			byte[] decompressed;
+			if (dictionary == null) {
+				decompressed = Zstd.decompress(compressed, originalLength);
+			} else {
+				decompressed = Zstd.decompress(compressed, dictionary, originalLength);
+			}
+			return serializer.deserialize(wrappedBuffer(decompressed));
+		} finally {
+			serialized.release();
+		}
+	}
+
+	@Override
+	public @NotNull ByteBuf serialize(@NotNull A deserialized) {
+		ByteBuf original = serializer.serialize(deserialized);
+		try {
+			int originalLength = original.readableBytes();
+			if (originalLength >= minCompressedLength) {
+				byte[] originalBytes = LLUtils.toArray(original);
+				var dictionary = dictionaries.acquireCompressDictionary();
+				byte[] compressed;
+				int headerLength;
+				if (dictionary == null) {
+					compressed = Zstd.compress(originalBytes, dictionaries.getCompressionLevel());
+					headerLength = Byte.BYTES + Integer.BYTES;
+				} else {
+					try {
+						compressed = Zstd.compress(originalBytes, dictionary.dictionary());
+					} finally {
+						dictionary.release();
+					}
+					headerLength = Byte.BYTES + Integer.BYTES * 2;
+				}
+				if (headerLength + compressed.length < Byte.BYTES + originalLength) {
+					ByteBuf output = allocator.buffer(headerLength + compressed.length);
+					if (dictionary == null) {
+						output.writeByte(FORMAT_ZSTD);
+					} else {
+						output.writeByte(FORMAT_ZSTD_DICTIONARY);
+						output.writeInt(dictionary.id());
+					}
+					output.writeInt(originalLength);
+					output.writeBytes(compressed);
+					return output;
+				}
+			}
+			ByteBuf output = allocator.buffer(Byte.BYTES + originalLength);
+			output.writeByte(FORMAT_RAW);
+			output.writeBytes(original, original.readerIndex(), originalLength);
+			return output;
+		} finally {
+			original.release();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package it.cavallium.dbengine.database.serialization;
+
+/**
+ * Value with an expiration time
+ * @param expirationTimestamp expiration time, in milliseconds since the epoch
+ */
+public record Expiring<A>(A value, long expirationTimestamp) {
+
+	public static final long NEVER = Long.MAX_VALUE;
+
+	public boolean isExpired(long currentTimestamp) {
+		return expirationTimestamp <= currentTimestamp;
+	}
+}
@@ -0,0 +1,55 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Serializer that prepends the expiration time to every value.
+ *
+ * The serialized value starts with a header:
+ * <pre>
+ * long expirationTimestamp   milliseconds since the epoch
+ * </pre>
+ */
+public class ExpiringSerializer<A> implements Serializer<Expiring<A>, ByteBuf> {
+
+	private final ByteBufAllocator allocator;
+	private final Serializer<A, ByteBuf> serializer;
+
+	public ExpiringSerializer(ByteBufAllocator allocator, Serializer<A, ByteBuf> serializer) {
+		this.allocator = allocator;
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Check the expiration time of a serialized value, without deserializing the value.
+	 * The serialized value is not released
+	 */
+	public static boolean isExpired(ByteBuf serialized, long currentTimestamp) {
+		return serialized.getLong(serialized.readerIndex()) <= currentTimestamp;
+	}
+
+	@Override
+	public @NotNull Expiring<A> deserialize(@NotNull ByteBuf serialized) {
+		try {
+			long expirationTimestamp = serialized.readLong();
+			return new Expiring<>(serializer.deserialize(serialized.retain()), expirationTimestamp);
+		} finally {
+			serialized.release();
+		}
+	}
+
+	@Override
+	public @NotNull ByteBuf serialize(@NotNull Expiring<A> deserialized) {
+		ByteBuf value = serializer.serialize(deserialized.value());
+		try {
+			ByteBuf result = allocator.buffer(Long.BYTES + value.readableBytes());
+			result.writeLong(deserialized.expirationTimestamp());
+			result.writeBytes(value, value.readerIndex(), value.readableBytes());
+			return result;
+		} finally {
+			value.release();
+		}
+	}
+}
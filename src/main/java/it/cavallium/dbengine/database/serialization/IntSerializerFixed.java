@@ -0,0 +1,72 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fixed length serializer of int values, with methods that don't box the values
+ */
+public interface IntSerializerFixed extends SerializerFixedBinaryLength<Integer, ByteBuf> {
+
+	/**
+	 * Read the value at the specified index, without releasing the buffer
+	 */
+	int getInt(@NotNull ByteBuf serialized, int index);
+
+	/**
+	 * Write the value at the writer index of the buffer
+	 */
+	void writeInt(@NotNull ByteBuf output, int value);
+
+	@NotNull ByteBuf serializeInt(int value);
+
+	default int deserializeInt(@NotNull ByteBuf serialized) {
+		try {
+			if (serialized.readableBytes() != getSerializedBinaryLength()) {
+				throw new IllegalArgumentException(
+						"Fixed serializer with " + getSerializedBinaryLength() + " bytes has tried to deserialize an element with "
+								+ serialized.readableBytes() + " bytes instead");
+			}
+			int value = getInt(serialized, serialized.readerIndex());
+			serialized.skipBytes(getSerializedBinaryLength());
+			return value;
+		} finally {
+			serialized.release();
+		}
+	}
+
+	@Override
+	default @NotNull Integer deserialize(@NotNull ByteBuf serialized) {
+		return deserializeInt(serialized);
+	}
+
+	@Override
+	default @NotNull ByteBuf serialize(@NotNull Integer deserialized) {
+		return serializeInt(deserialized);
+	}
+
+	@Override
+	default int getSerializedBinaryLength() {
+		return Integer.BYTES;
+	}
+
+	static IntSerializerFixed create(ByteBufAllocator allocator) {
+		return new IntSerializerFixed() {
+			@Override
+			public int getInt(@NotNull ByteBuf serialized, int index) {
+				return serialized.getInt(index);
+			}
+
+			@Override
+			public void writeInt(@NotNull ByteBuf output, int value) {
+				output.writeInt(value);
+			}
+
+			@Override
+			public @NotNull ByteBuf serializeInt(int value) {
+				return allocator.buffer(Integer.BYTES).writeInt(value);
+			}
+		};
+	}
+}
@@ -0,0 +1,27 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Serializer that can also return a view of a serialized value, without decoding it
+ * @param <V> the view type
+ */
+public interface LazySerializer<A, V extends SerializedView<A>> extends Serializer<A, ByteBuf> {
+
+	/**
+	 * Create a view of the serialized value
+	 * @param serialized the serialized value, it will be owned and released by the view
+	 */
+	@NotNull V view(@NotNull ByteBuf serialized);
+
+	@Override
+	default @NotNull A deserialize(@NotNull ByteBuf serialized) {
+		V view = view(serialized);
+		try {
+			return view.materialize();
+		} finally {
+			view.release();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fixed length serializer of long values, with methods that don't box the values
+ */
+public interface LongSerializerFixed extends SerializerFixedBinaryLength<Long, ByteBuf> {
+
+	/**
+	 * Read the value at the specified index, without releasing the buffer
+	 */
+	long getLong(@NotNull ByteBuf serialized, int index);
+
+	/**
+	 * Write the value at the writer index of the buffer
+	 */
+	void writeLong(@NotNull ByteBuf output, long value);
+
+	@NotNull ByteBuf serializeLong(long value);
+
+	default long deserializeLong(@NotNull ByteBuf serialized) {
+		try {
+			if (serialized.readableBytes() != getSerializedBinaryLength()) {
+				throw new IllegalArgumentException(
+						"Fixed serializer with " + getSerializedBinaryLength() + " bytes has tried to deserialize an element with "
+								+ serialized.readableBytes() + " bytes instead");
+			}
+			long value = getLong(serialized, serialized.readerIndex());
+			serialized.skipBytes(getSerializedBinaryLength());
+			return value;
+		} finally {
+			serialized.release();
+		}
+	}
+
+	@Override
+	default @NotNull Long deserialize(@NotNull ByteBuf serialized) {
+		return deserializeLong(serialized);
+	}
+
+	@Override
+	default @NotNull ByteBuf serialize(@NotNull Long deserialized) {
+		return serializeLong(deserialized);
+	}
+
+	@Override
+	default int getSerializedBinaryLength() {
+		return Long.BYTES;
+	}
+
+	static LongSerializerFixed create(ByteBufAllocator allocator) {
+		return new LongSerializerFixed() {
+			@Override
+			public long getLong(@NotNull ByteBuf serialized, int index) {
+				return serialized.getLong(index);
+			}
+
+			@Override
+			public void writeLong(@NotNull ByteBuf output, long value) {
+				output.writeLong(value);
+			}
+
+			@Override
+			public @NotNull ByteBuf serializeLong(long value) {
+				return allocator.buffer(Long.BYTES).writeLong(value);
+			}
+		};
+	}
+}
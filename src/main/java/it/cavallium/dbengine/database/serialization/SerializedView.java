@@ -0,0 +1,37 @@
+package it.cavallium.dbengine.database.serialization;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Flyweight over a serialized value. The fields are read directly from the serialized buffer when they are
+ * accessed, so a caller that reads only some fields doesn't decode the whole value.
+ *
+ * The view owns the serialized buffer: call {@link #release()} when the view is not used anymore.
+ */
+public abstract class SerializedView<A> {
+
+	private final ByteBuf serialized;
+
+	/**
+	 * @param serialized the serialized value, it will be released by {@link #release()}
+	 */
+	protected SerializedView(ByteBuf serialized) {
+		this.serialized = serialized;
+	}
+
+	/**
+	 * Get the serialized value. Don't release it and don't modify its indices, read it with absolute getters
+	 */
+	protected final ByteBuf serialized() {
+		return serialized;
+	}
+
+	/**
+	 * Decode the whole value
+	 */
+	public abstract A materialize();
+
+	public void release() {
+		serialized.release();
+	}
+}
@@ -92,61 +92,11 @@ public interface SerializerFixedBinaryLength<A, B> extends Serializer<A, B> {
 		};
 	}
 
-	static SerializerFixedBinaryLength<Integer, ByteBuf> intSerializer(ByteBufAllocator allocator) {
-		return new SerializerFixedBinaryLength<>() {
-			@Override
-			public @NotNull Integer deserialize(@NotNull ByteBuf serialized) {
-				try {
-					if (serialized.readableBytes() != getSerializedBinaryLength()) {
-						throw new IllegalArgumentException(
-								"Fixed serializer with " + getSerializedBinaryLength() + " bytes has tried to deserialize an element with "
-										+ serialized.readableBytes() + " bytes instead");
-					}
-					return serialized.readInt();
-				} finally {
-					serialized.release();
-				}
-			}
-
-			@Override
-			public @NotNull ByteBuf serialize(@NotNull Integer deserialized) {
-				ByteBuf buf = allocator.buffer(Integer.BYTES);
-				return buf.writeInt(deserialized);
-			}
-
-			@Override
-			public int getSerializedBinaryLength() {
-				return Integer.BYTES;
-			}
-		};
+	static IntSerializerFixed intSerializer(ByteBufAllocator allocator) {
+		return IntSerializerFixed.create(allocator);
 	}
 
-	static SerializerFixedBinaryLength<Long, ByteBuf> longSerializer(ByteBufAllocator allocator) {
-		return new SerializerFixedBinaryLength<>() {
-			@Override
-			public @NotNull Long deserialize(@NotNull ByteBuf serialized) {
-				try {
-					if (serialized.readableBytes() != getSerializedBinaryLength()) {
-						throw new IllegalArgumentException(
-								"Fixed serializer with " + getSerializedBinaryLength() + " bytes has tried to deserialize an element with "
-										+ serialized.readableBytes() + " bytes instead");
-					}
-					return serialized.readLong();
-				} finally {
-					serialized.release();
-				}
-			}
-
-			@Override
-			public @NotNull ByteBuf serialize(@NotNull Long deserialized) {
-				ByteBuf buf = allocator.buffer(Long.BYTES);
-				return buf.writeLong(deserialized);
-			}
-
-			@Override
-			public int getSerializedBinaryLength() {
-				return Long.BYTES;
-			}
-		};
+	static LongSerializerFixed longSerializer(ByteBufAllocator allocator) {
+		return LongSerializerFixed.create(allocator);
 	}
 }
@@ -0,0 +1,233 @@
+package it.cavallium.dbengine.database.serialization;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.LLRange;
+import it.cavallium.dbengine.database.LLUtils;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+
+/**
+ * Trained zstd dictionaries of a column, stored in a special column.
+ *
+ * Every dictionary has an id and it's never deleted, so the values compressed with an old dictionary can
+ * still be read after training a new one. The new values are compressed with the last dictionary.
+ * The ids are allocated by this instance, so a dictionaries column must be used by a single instance,
+ * and the stored dictionaries must be loaded before training a new one.
+ *
+ * The dictionaries use native memory: close this instance when the serializers don't use it anymore,
+ * before closing the database.
+ */
+public class ZstdDictionaries implements AutoCloseable {
+
+	private final LLDictionary dictionariesColumn;
+	private final int compressionLevel;
+	private final ConcurrentHashMap<Integer, ZstdDictDecompress> decompressDictionaries = new ConcurrentHashMap<>();
+	private volatile @Nullable CompressDictionary current;
+	/**
+	 * The greatest id of the known dictionaries
+	 */
+	private final AtomicInteger lastId = new AtomicInteger(0);
+	/**
+	 * Written while holding the monitor
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * @param dictionariesColumn a special column used only to store the dictionaries of a single column
+	 */
+	public ZstdDictionaries(LLDictionary dictionariesColumn, int compressionLevel) {
+		this.dictionariesColumn = dictionariesColumn;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Load the stored dictionaries. Call this method before using the dictionaries
+	 */
+	public Mono<Void> load() {
+		return Flux
+				.defer(() -> dictionariesColumn.getRange(null, LLRange.all()))
+				.doOnNext(entry -> {
+					try {
+						register(entry.getKey().getInt(entry.getKey().readerIndex()), LLUtils.toArray(entry.getValue()));
+					} finally {
+						entry.getKey().release();
+						entry.getValue().release();
+					}
+				})
+				.then();
+	}
+
+	/**
+	 * Train a new dictionary and use it to compress the new values
+	 * @param samples some values of the column, they will be released
+	 * @param samplesSize maximum total size of the samples, in bytes
+	 * @param dictionarySize maximum size of the dictionary, in bytes
+	 * @return the id of the new dictionary
+	 */
+	public Mono<Integer> train(Flux<ByteBuf> samples, int samplesSize, int dictionarySize) {
+		return samples
+				.collect(() -> new ZstdDictTrainer(samplesSize, dictionarySize), (trainer, sample) -> {
+					try {
+						trainer.addSample(LLUtils.toArray(sample));
+					} finally {
+						sample.release();
+					}
+				})
+				.publishOn(Schedulers.boundedElastic())
+				.map(ZstdDictTrainer::trainSamples)
+				.flatMap(dictionary -> {
+					// Concurrent trainings get different ids
+					int id = lastId.incrementAndGet();
+					ByteBuf key = dictionariesColumn.getAllocator().buffer(Integer.BYTES).writeInt(id);
+					try {
+						return dictionariesColumn
+								.get(null, key.retain())
+								.flatMap(existingDictionary -> {
+									existingDictionary.release();
+									return Mono.<Integer>error(new IllegalStateException("Zstd dictionary " + id
+											+ " already exists, the dictionaries must be loaded before training a new one"));
+								})
+								.switchIfEmpty(Mono.defer(() -> dictionariesColumn
+										.put(key.retain(), wrappedBuffer(dictionary), LLDictionaryResultType.VOID)
+										.then(Mono.fromCallable(() -> {
+											register(id, dictionary);
+											return id;
+										}))
+								))
+								.doFirst(key::retain)
+								.doAfterTerminate(key::release);
+					} finally {
+						key.release();
+					}
+				});
+	}
+
+	/**
+	 * @throws IllegalStateException if a dictionary with the same id is already registered
+	 */
+	private synchronized void register(int id, byte[] dictionary) {
+		ensureOpen();
+		var decompressDictionary = new ZstdDictDecompress(dictionary);
+		if (decompressDictionaries.putIfAbsent(id, decompressDictionary) != null) {
+			decompressDictionary.close();
+			throw new IllegalStateException("Zstd dictionary " + id + " already exists");
+		}
+		lastId.accumulateAndGet(id, Math::max);
+		var currentDictionary = this.current;
+		if (currentDictionary == null || currentDictionary.id() < id) {
+			this.current = new CompressDictionary(id, new ZstdDictCompress(dictionary, compressionLevel));
+			if (currentDictionary != null) {
+				// The replaced dictionary is closed when the running compressions release it
+				currentDictionary.release();
+			}
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("The zstd dictionaries are closed");
+		}
+	}
+
+	/**
+	 * @return the dictionary used to compress the new values, or null if no dictionary has been trained.
+	 * Release it after compressing
+	 */
+	public @Nullable CompressDictionary acquireCompressDictionary() {
+		while (true) {
+			var dictionary = current;
+			if (dictionary == null) {
+				ensureOpen();
+				return null;
+			}
+			if (dictionary.tryRetain()) {
+				return dictionary;
+			}
+			// The dictionary has just been replaced, use the new one
+		}
+	}
+
+	public ZstdDictDecompress getDecompressDictionary(int id) {
+		ensureOpen();
+		var dictionary = decompressDictionaries.get(id);
+		if (dictionary == null) {
+			throw new IllegalStateException("Zstd dictionary " + id + " not found");
+		}
+		return dictionary;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Close all the dictionaries
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		var currentDictionary = this.current;
+		this.current = null;
+		if (currentDictionary != null) {
+			currentDictionary.release();
+		}
+		decompressDictionaries.values().forEach(ZstdDictDecompress::close);
+		decompressDictionaries.clear();
+	}
+
+	/**
+	 * Dictionary used to compress the new values.
+	 * {@link ZstdDictionaries} owns one reference until the dictionary is replaced or closed,
+	 * and the native dictionary is closed when all the references are released
+	 */
+	public static final class CompressDictionary {
+
+		private final int id;
+		private final ZstdDictCompress dictionary;
+		private final AtomicInteger refCnt = new AtomicInteger(1);
+
+		private CompressDictionary(int id, ZstdDictCompress dictionary) {
+			this.id = id;
+			this.dictionary = dictionary;
+		}
+
+		public int id() {
+			return id;
+		}
+
+		public ZstdDictCompress dictionary() {
+			return dictionary;
+		}
+
+		private boolean tryRetain() {
+			int currentRefCnt;
+			do {
+				currentRefCnt = refCnt.get();
+				if (currentRefCnt <= 0) {
+					return false;
+				}
+			} while (!refCnt.compareAndSet(currentRefCnt, currentRefCnt + 1));
+			return true;
+		}
+
+		public void release() {
+			if (refCnt.decrementAndGet() == 0) {
+				dictionary.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package it.cavallium.dbengine.lucene;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the keys of the documents of an index reader, segment by segment.
+ *
+ * The keys are read from the key doc values, so the documents must be read in increasing docId order.
+ * The documents indexed without the key doc values fall back to the stored key field
+ */
+class KeyFieldReader {
+
+	private final IndexReader indexReader;
+	private final List<LeafReaderContext> leaves;
+	private final String keyFieldName;
+
+	private @Nullable LeafReaderContext leaf;
+	private @Nullable BinaryDocValues keyDocValues;
+
+	public KeyFieldReader(IndexReader indexReader, String keyFieldName) {
+		this.indexReader = indexReader;
+		this.leaves = indexReader.leaves();
+		this.keyFieldName = keyFieldName;
+	}
+
+	/**
+	 * @param docId the docId of the document, not lower than the docId of the previous document
+	 * @throws NoSuchElementException when the key is not found
+	 * @throws IOException when an error occurs when reading the document
+	 */
+	public String keyOf(int docId) throws IOException, NoSuchElementException {
+		if (docId < 0 || docId >= indexReader.maxDoc()) {
+			throw new IOException("Document " + docId + " >= maxDoc (" + indexReader.maxDoc() + ")");
+		}
+		if (leaf == null || docId >= leaf.docBase + leaf.reader().maxDoc()) {
+			leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+			keyDocValues = leaf.reader().getBinaryDocValues(LuceneUtils.getKeyDocValuesFieldName(keyFieldName));
+		}
+		if (keyDocValues != null && keyDocValues.advanceExact(docId - leaf.docBase)) {
+			return keyDocValues.binaryValue().utf8ToString();
+		} else {
+			// The document has been indexed before the key doc values were added
+			return LuceneUtils.keyOfTopDoc(docId, indexReader, keyFieldName);
+		}
+	}
+}
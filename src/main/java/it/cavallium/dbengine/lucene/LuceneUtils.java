@@ -20,13 +20,16 @@ import it.cavallium.dbengine.lucene.searcher.IndexSearchers;
 import it.cavallium.dbengine.lucene.searcher.LocalQueryParams;
 import it.cavallium.dbengine.lucene.searcher.LuceneMultiSearcher;
 import it.cavallium.dbengine.lucene.similarity.NGramSimilarity;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -178,6 +181,15 @@ public class LuceneUtils {
 		return minCompetitiveScore == null || score >= minCompetitiveScore;
 	}
 
+	/**
+	 * The keys are indexed also as binary doc values in a separate field, because the schema of the key field
+	 * can't change in the existing indices
+	 * @return the name of the doc values field of the key
+	 */
+	public static String getKeyDocValuesFieldName(String keyFieldName) {
+		return keyFieldName + "$docvalues";
+	}
+
 	/**
 	 * @throws NoSuchElementException when the key is not found
 	 * @throws IOException when an error occurs when reading the document
@@ -349,26 +361,60 @@ public class LuceneUtils {
 			String keyFieldName,
 			Scheduler scheduler) {
 
-		return Flux
-				.fromArray(hits)
-				.flatMapSequential(hit -> Mono.fromCallable(() -> {
-					int shardDocId = hit.doc;
-					int shardIndex = hit.shardIndex;
-					float score = hit.score;
-					var indexSearcher = indexSearchers.shard(shardIndex);
-					try {
-						String collectedDoc = keyOfTopDoc(shardDocId, indexSearcher.getIndexReader(), keyFieldName);
-						return new LLKeyScore(shardDocId, score, Mono.just(collectedDoc));
-					} catch (NoSuchElementException ex) {
-						logger.debug("Error: document " + shardDocId + " key is not present!");
-						return null;
-					} catch (Exception ex) {
-						return new LLKeyScore(shardDocId, score, Mono.error(ex));
-					}
-				}))
+		return Mono
+				.fromCallable(() -> convertHits(hits, indexSearchers, keyFieldName))
+				.flatMapMany(Flux::fromIterable)
 				.subscribeOn(scheduler);
 	}
 
+	/**
+	 * Read the keys of the hits shard by shard and segment by segment, in docId order,
+	 * then return the results in the order of the hits
+	 */
+	private static List<LLKeyScore> convertHits(ScoreDoc[] hits, IndexSearchers indexSearchers, String keyFieldName) {
+		int[] docIdOrder = new int[hits.length];
+		for (int i = 0; i < docIdOrder.length; i++) {
+			docIdOrder[i] = i;
+		}
+		IntArrays.quickSort(docIdOrder, (a, b) -> {
+			int shardIndexCompare = Integer.compare(hits[a].shardIndex, hits[b].shardIndex);
+			if (shardIndexCompare != 0) {
+				return shardIndexCompare;
+			}
+			return Integer.compare(hits[a].doc, hits[b].doc);
+		});
+
+		LLKeyScore[] keyScores = new LLKeyScore[hits.length];
+		int keyFieldReaderShardIndex = 0;
+		KeyFieldReader keyFieldReader = null;
+		for (int hitIndex : docIdOrder) {
+			ScoreDoc hit = hits[hitIndex];
+			int shardDocId = hit.doc;
+			float score = hit.score;
+			try {
+				if (keyFieldReader == null || keyFieldReaderShardIndex != hit.shardIndex) {
+					var indexSearcher = indexSearchers.shard(hit.shardIndex);
+					keyFieldReader = new KeyFieldReader(indexSearcher.getIndexReader(), keyFieldName);
+					keyFieldReaderShardIndex = hit.shardIndex;
+				}
+				String collectedDoc = keyFieldReader.keyOf(shardDocId);
+				keyScores[hitIndex] = new LLKeyScore(shardDocId, score, Mono.just(collectedDoc));
+			} catch (NoSuchElementException ex) {
+				logger.debug("Error: document " + shardDocId + " key is not present!");
+			} catch (Exception ex) {
+				keyScores[hitIndex] = new LLKeyScore(shardDocId, score, Mono.error(ex));
+			}
+		}
+
+		List<LLKeyScore> results = new ArrayList<>(hits.length);
+		for (LLKeyScore keyScore : keyScores) {
+			if (keyScore != null) {
+				results.add(keyScore);
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * Transform a flux of results to take elements while the minimum competitive score is valid
 	 */
@@ -0,0 +1,61 @@
+package it.cavallium.dbengine;
+
+import it.cavallium.dbengine.TestBufferCodecSerializer.User;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare {@link it.cavallium.dbengine.database.serialization.CodecSerializer}
+ * with {@link it.cavallium.dbengine.database.serialization.BufferCodecSerializer}, using the same format
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferCodecBenchmark {
+
+	@Param({"8", "1024"})
+	public int nameLength;
+
+	private User value;
+	private Serializer<User, ByteBuf> codecSerializer;
+	private Serializer<User, ByteBuf> bufferCodecSerializer;
+
+	@Setup
+	public void setup() {
+		value = new User(1234, "a".repeat(nameLength));
+		codecSerializer = TestBufferCodecSerializer.codecSerializer(true);
+		bufferCodecSerializer = TestBufferCodecSerializer.bufferCodecSerializer(true);
+	}
+
+	@Benchmark
+	public User codecSerializer() {
+		return codecSerializer.deserialize(codecSerializer.serialize(value));
+	}
+
+	@Benchmark
+	public User bufferCodecSerializer() {
+		return bufferCodecSerializer.deserialize(bufferCodecSerializer.serialize(value));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(BufferCodecBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -16,6 +16,7 @@ import it.cavallium.dbengine.database.collections.SubStageGetterHashMap;
 import it.cavallium.dbengine.database.collections.SubStageGetterMap;
 import it.cavallium.dbengine.client.DatabaseOptions;
 import it.cavallium.dbengine.database.disk.LLLocalDatabaseConnection;
+import it.cavallium.dbengine.database.memory.LLMemoryDatabaseConnection;
 import it.cavallium.dbengine.database.serialization.Serializer;
 import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
 import java.io.IOException;
@@ -38,7 +39,42 @@ public class DbTestUtils {
 	public static final ByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true);
 	public static final AtomicInteger dbId = new AtomicInteger(0);
 
+	/**
+	 * Key-value database implementations
+	 */
+	public enum DbBackend {
+		LOCAL,
+		MEMORY
+	}
+
+	private static final List<Column> TEST_COLUMNS = List.of(Column.dictionary("testmap"),
+			Column.dictionary("testindex"),
+			Column.special("ints"),
+			Column.special("longs")
+	);
+
+	public static <U> Flux<U> tempDb(DbBackend backend, Function<LLKeyValueDatabase, Publisher<U>> action) {
+		if (backend == DbBackend.MEMORY) {
+			return Flux.usingWhen(new LLMemoryDatabaseConnection(DbTestUtils.ALLOCATOR)
+							.connect()
+							.flatMap(conn -> conn.getDatabase("testdb",
+									TEST_COLUMNS,
+									new DatabaseOptions(Map.of(), true, false, true, false, true, true, true, true)
+							)),
+					action,
+					LLKeyValueDatabase::close
+			);
+		} else {
+			return tempDb(action);
+		}
+	}
+
 	public static <U> Flux<U> tempDb(Function<LLKeyValueDatabase, Publisher<U>> action) {
+		return tempDb(new DatabaseOptions(Map.of(), true, false, true, false, true, true, true, true), action);
+	}
+
+	public static <U> Flux<U> tempDb(DatabaseOptions databaseOptions,
+			Function<LLKeyValueDatabase, Publisher<U>> action) {
 		var wrkspcPath = Path.of("/tmp/.cache/tempdb-" + dbId.incrementAndGet() + "/");
 		return Flux.usingWhen(Mono
 						.<LLKeyValueDatabase>fromCallable(() -> {
@@ -56,10 +92,7 @@ public class DbTestUtils {
 						})
 						.subscribeOn(Schedulers.boundedElastic())
 						.then(new LLLocalDatabaseConnection(DbTestUtils.ALLOCATOR, wrkspcPath).connect())
-						.flatMap(conn -> conn.getDatabase("testdb",
-								List.of(Column.dictionary("testmap"), Column.special("ints"), Column.special("longs")),
-								new DatabaseOptions(Map.of(), true, false, true, false, true, true, true, true)
-						)),
+						.flatMap(conn -> conn.getDatabase("testdb", TEST_COLUMNS, databaseOptions)),
 				action,
 				db -> db.close().then(Mono.fromCallable(() -> {
 					if (Files.exists(wrkspcPath)) {
@@ -0,0 +1,151 @@
+package it.cavallium.dbengine;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import it.cavallium.dbengine.database.serialization.BufferCodec;
+import it.cavallium.dbengine.database.serialization.BufferCodecSerializer;
+import it.cavallium.dbengine.database.serialization.Codec;
+import it.cavallium.dbengine.database.serialization.CodecSerializer;
+import it.cavallium.dbengine.database.serialization.CodecsArray;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TestBufferCodecSerializer {
+
+	private static final int CODEC_ID = 3;
+	private static final List<User> VALUES = List.of(new User(0, ""),
+			new User(1, "user"),
+			new User(-5, "utente è àòù 日本語"),
+			new User(Long.MAX_VALUE, "x".repeat(100_000))
+	);
+
+	record User(long id, String name) {}
+
+	/**
+	 * Stream codec, the format is the id, the length of the name and the utf-8 name
+	 */
+	static class UserCodec implements Codec<User> {
+
+		@Override
+		public @NotNull User deserialize(@NotNull ByteBufInputStream serialized) throws IOException {
+			long id = serialized.readLong();
+			var name = new byte[serialized.readInt()];
+			serialized.readFully(name);
+			return new User(id, new String(name, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void serialize(@NotNull ByteBufOutputStream outputStream, @NotNull User deserialized) throws IOException {
+			var name = deserialized.name().getBytes(StandardCharsets.UTF_8);
+			outputStream.writeLong(deserialized.id());
+			outputStream.writeInt(name.length);
+			outputStream.write(name);
+		}
+	}
+
+	/**
+	 * Buffer codec with the same format of {@link UserCodec}
+	 */
+	static class UserBufferCodec implements BufferCodec<User> {
+
+		@Override
+		public int getSerializedSize(@NotNull User deserialized) {
+			return Long.BYTES + Integer.BYTES + ByteBufUtil.utf8Bytes(deserialized.name());
+		}
+
+		@Override
+		public @NotNull User deserialize(@NotNull ByteBuf serialized) {
+			long id = serialized.readLong();
+			int nameLength = serialized.readInt();
+			var name = serialized.toString(serialized.readerIndex(), nameLength, StandardCharsets.UTF_8);
+			serialized.skipBytes(nameLength);
+			return new User(id, name);
+		}
+
+		@Override
+		public void serialize(@NotNull ByteBuf output, int index, @NotNull User deserialized) {
+			output.setLong(index, deserialized.id());
+			int nameLength = output.setCharSequence(index + Long.BYTES + Integer.BYTES,
+					deserialized.name(),
+					StandardCharsets.UTF_8
+			);
+			output.setInt(index + Long.BYTES, nameLength);
+		}
+	}
+
+	static CodecSerializer<User> codecSerializer(boolean microCodecs) {
+		var codecs = new CodecsArray<User>();
+		var codec = new UserCodec();
+		codecs.registerCodec(CODEC_ID, codec);
+		return new CodecSerializer<>(ALLOCATOR, codecs, codec, CODEC_ID, microCodecs);
+	}
+
+	static BufferCodecSerializer<User> bufferCodecSerializer(boolean microCodecs) {
+		var codec = new UserBufferCodec();
+		return new BufferCodecSerializer<>(ALLOCATOR, id -> id == CODEC_ID ? codec : null, codec, CODEC_ID, microCodecs);
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	public void testRoundTrip(boolean microCodecs) {
+		var serializer = bufferCodecSerializer(microCodecs);
+		for (User value : VALUES) {
+			Assertions.assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	public void testPresizedOutput(boolean microCodecs) {
+		var serializer = bufferCodecSerializer(microCodecs);
+		for (User value : VALUES) {
+			ByteBuf serialized = serializer.serialize(value);
+			try {
+				Assertions.assertEquals(0, serialized.readerIndex());
+				Assertions.assertEquals(serialized.capacity(), serialized.writerIndex());
+				Assertions.assertEquals(serializer.getCodecHeadersBytes() + new UserBufferCodec().getSerializedSize(value),
+						serialized.readableBytes()
+				);
+			} finally {
+				serialized.release();
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	public void testSameFormatAsCodecSerializer(boolean microCodecs) {
+		var codecSerializer = codecSerializer(microCodecs);
+		var bufferCodecSerializer = bufferCodecSerializer(microCodecs);
+		for (User value : VALUES) {
+			ByteBuf streamSerialized = codecSerializer.serialize(value);
+			ByteBuf bufferSerialized = bufferCodecSerializer.serialize(value);
+			try {
+				Assertions.assertTrue(ByteBufUtil.equals(streamSerialized, bufferSerialized));
+				Assertions.assertEquals(value, bufferCodecSerializer.deserialize(streamSerialized.retain()));
+				Assertions.assertEquals(value, codecSerializer.deserialize(bufferSerialized.retain()));
+			} finally {
+				streamSerialized.release();
+				bufferSerialized.release();
+			}
+		}
+	}
+
+	@Test
+	public void testUnknownCodec() {
+		var serializer = bufferCodecSerializer(true);
+		ByteBuf serialized = ALLOCATOR.buffer().writeByte(CODEC_ID + 1).writeLong(0).writeInt(0);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> serializer.deserialize(serialized));
+		Assertions.assertEquals(0, serialized.refCnt());
+	}
+}
@@ -0,0 +1,213 @@
+package it.cavallium.dbengine;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+import static it.cavallium.dbengine.DbTestUtils.tempDb;
+import static it.cavallium.dbengine.DbTestUtils.tempDictionary;
+
+import com.github.luben.zstd.Zstd;
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.DbTestUtils.DbBackend;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.UpdateMode;
+import it.cavallium.dbengine.database.serialization.CompressingSerializer;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.cavallium.dbengine.database.serialization.ZstdDictionaries;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class TestCompressingSerializer {
+
+	private static final int SAMPLES_COUNT = 2000;
+	private static final int DICTIONARY_SIZE = 4096;
+	private static final String SMALL_VALUE = "small";
+	private static final String LONG_VALUE = "0123456789".repeat(100);
+
+	private static Stream<Arguments> provideArgumentsBackends() {
+		return Arrays.stream(DbBackend.values()).map(Arguments::of);
+	}
+
+	private static String sample(int i) {
+		return "{\"user\":\"user" + i + "\",\"email\":\"user" + i + "@example.com\",\"active\":" + (i % 2 == 0) + "}";
+	}
+
+	private static Flux<ByteBuf> samples() {
+		var serializer = Serializer.utf8(ALLOCATOR);
+		return Flux.range(0, SAMPLES_COUNT).map(i -> serializer.serialize(sample(i)));
+	}
+
+	private static Mono<Integer> train(ZstdDictionaries dictionaries) {
+		return dictionaries.train(samples(), 1024 * 1024, DICTIONARY_SIZE);
+	}
+
+	private static CompressingSerializer<String> serializer(ZstdDictionaries dictionaries, int minCompressedLength) {
+		return new CompressingSerializer<>(ALLOCATOR, Serializer.utf8(ALLOCATOR), dictionaries, minCompressedLength);
+	}
+
+	private static <T> Flux<T> tempDictionaries(LLDictionary dictionariesColumn,
+			Function<ZstdDictionaries, Publisher<T>> action) {
+		return Flux.usingWhen(Mono.fromCallable(() -> new ZstdDictionaries(dictionariesColumn, 3))
+						.flatMap(dictionaries -> dictionaries.load().thenReturn(dictionaries)),
+				action,
+				dictionaries -> Mono.fromRunnable(dictionaries::close)
+		);
+	}
+
+	/**
+	 * @return the format byte followed by the decoded value
+	 */
+	private static String roundTrip(CompressingSerializer<String> serializer, String value) {
+		ByteBuf serialized = serializer.serialize(value);
+		byte format = serialized.getByte(serialized.readerIndex());
+		return format + ":" + serializer.deserialize(serialized);
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testRawRoundTrip(DbBackend backend) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn,
+								dictionaries -> Mono.fromCallable(() -> roundTrip(serializer(dictionaries, 64), SMALL_VALUE))
+						))
+				))
+				.expectNext("0:" + SMALL_VALUE)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testZstdRoundTrip(DbBackend backend) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn,
+								dictionaries -> Mono.fromCallable(() -> roundTrip(serializer(dictionaries, 64), LONG_VALUE))
+						))
+				))
+				.expectNext("1:" + LONG_VALUE)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testZstdDictionaryRoundTrip(DbBackend backend) {
+		String value = sample(SAMPLES_COUNT + 1);
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn, dictionaries -> train(dictionaries)
+								.map(id -> id + ":" + roundTrip(serializer(dictionaries, 0), value))
+						))
+				))
+				.expectNext("1:2:" + value)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testDecodeWithOlderDictionary(DbBackend backend) {
+		String value = sample(SAMPLES_COUNT + 1);
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn, dictionaries -> train(dictionaries)
+								.map(firstId -> {
+									ByteBuf serialized = serializer(dictionaries, 0).serialize(value);
+									Assertions.assertEquals(firstId, serialized.getInt(serialized.readerIndex() + Byte.BYTES));
+									return serialized;
+								})
+								.flatMapMany(serialized -> train(dictionaries)
+										.doOnNext(secondId -> Assertions.assertEquals(2, secondId))
+										// Decode with the dictionaries loaded again from the column
+										.thenMany(tempDictionaries(dictionariesColumn,
+												loaded -> Mono.fromCallable(() -> serializer(loaded, 0).deserialize(serialized))
+										))
+								)
+						))
+				))
+				.expectNext(value)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testConcurrentTrainings(DbBackend backend) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn,
+								dictionaries -> Flux.merge(train(dictionaries), train(dictionaries)).sort()
+						))
+				))
+				.expectNext(1, 2)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testTrainWithoutLoading(DbBackend backend) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn, TestCompressingSerializer::train)
+								// This instance doesn't know the existing dictionary, so it must not overwrite it
+								.thenMany(Flux.using(() -> new ZstdDictionaries(dictionariesColumn, 3),
+										TestCompressingSerializer::train,
+										ZstdDictionaries::close
+								))
+						)
+				))
+				.verifyError(IllegalStateException.class);
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testRetrainWhileCompressing(DbBackend backend) {
+		byte[] value = sample(SAMPLES_COUNT + 1).getBytes(StandardCharsets.UTF_8);
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMapMany(dictionariesColumn -> tempDictionaries(dictionariesColumn, dictionaries -> train(dictionaries)
+								.map(firstId -> dictionaries.acquireCompressDictionary())
+								.flatMap(first -> train(dictionaries).map(secondId -> {
+									try {
+										var second = dictionaries.acquireCompressDictionary();
+										try {
+											Assertions.assertEquals(secondId, second.id());
+										} finally {
+											second.release();
+										}
+										// The replaced dictionary is still usable until it's released
+										return first.id() + ":" + (Zstd.compress(value, first.dictionary()).length > 0);
+									} finally {
+										first.release();
+									}
+								}))
+						))
+				))
+				.expectNext("1:true")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testClose(DbBackend backend) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, "testindex", UpdateMode.ALLOW)
+						.flatMap(dictionariesColumn -> Mono.using(() -> new ZstdDictionaries(dictionariesColumn, 3),
+								dictionaries -> train(dictionaries).doOnNext(id -> {
+									dictionaries.close();
+									Assertions.assertThrows(IllegalStateException.class, dictionaries::acquireCompressDictionary);
+									Assertions.assertThrows(IllegalStateException.class, () -> dictionaries.getDecompressDictionary(id));
+								}),
+								ZstdDictionaries::close
+						))
+				))
+				.expectNext(1)
+				.verifyComplete();
+	}
+}
@@ -3,14 +3,25 @@ package it.cavallium.dbengine;
 import static it.cavallium.dbengine.DbTestUtils.tempDb;
 import static it.cavallium.dbengine.DbTestUtils.tempDictionary;
 
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.DbTestUtils.DbBackend;
+import it.cavallium.dbengine.client.DatabaseOptions;
 import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.LLRange;
 import it.cavallium.dbengine.database.UpdateMode;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.stream.Stream;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
+import reactor.util.function.Tuples;
 
 public class TestDictionary {
 
@@ -18,14 +29,360 @@ public class TestDictionary {
 		return Arrays.stream(UpdateMode.values()).map(Arguments::of);
 	}
 
+	/**
+	 * Every backend must behave in the same way
+	 */
+	private static Stream<Arguments> provideArgumentsBackends() {
+		return Arrays
+				.stream(DbBackend.values())
+				.flatMap(backend -> Arrays.stream(UpdateMode.values()).map(updateMode -> Arguments.of(backend, updateMode)));
+	}
+
 	@ParameterizedTest
-	@MethodSource("provideArgumentsCreate")
-	public void testCreate(UpdateMode updateMode) {
+	@MethodSource("provideArgumentsBackends")
+	public void testCreate(DbBackend backend, UpdateMode updateMode) {
 		StepVerifier
-				.create(tempDb(db -> tempDictionary(db, updateMode)
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
 						.flatMap(LLDictionary::clear)
 						.then()
 				))
 				.verifyComplete();
 	}
+
+	private static ByteBuf key(LLDictionary dictionary, String key) {
+		var buf = dictionary.getAllocator().directBuffer();
+		buf.writeCharSequence(key, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	private static String string(ByteBuf buf) {
+		try {
+			return buf.toString(StandardCharsets.UTF_8);
+		} finally {
+			buf.release();
+		}
+	}
+
+	private static String string(Entry<ByteBuf, ByteBuf> entry) {
+		return string(entry.getKey()) + "=" + string(entry.getValue());
+	}
+
+	private static Mono<Void> putAll(LLDictionary dict, String... keys) {
+		return Flux
+				.fromArray(keys)
+				.concatMap(k -> dict.put(key(dict, k), key(dict, "v" + k), LLDictionaryResultType.VOID))
+				.then();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testPutGetRemove(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> Flux.concat(
+								dict.put(key(dict, "k1"), key(dict, "v1"), LLDictionaryResultType.PREVIOUS_VALUE).map(TestDictionary::string),
+								dict.put(key(dict, "k1"), key(dict, "v2"), LLDictionaryResultType.PREVIOUS_VALUE).map(TestDictionary::string),
+								dict.get(null, key(dict, "k1")).map(TestDictionary::string),
+								dict.remove(key(dict, "k1"), LLDictionaryResultType.PREVIOUS_VALUE).map(TestDictionary::string),
+								dict.get(null, key(dict, "k1")).map(TestDictionary::string)
+						))
+				))
+				.expectNext("v1", "v2", "v2")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testGetRangeOrder(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "b", "ab", "a", "c")
+								.thenMany(dict.getRange(null, LLRange.of(key(dict, "a"), key(dict, "c"))))
+								.map(TestDictionary::string)
+						)
+				))
+				.expectNext("a=va", "ab=vab", "b=vb")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testSetRange(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a", "b1", "b2", "c")
+								.then(dict.setRange(LLRange.of(key(dict, "b"), key(dict, "c")),
+										Flux.just(Map.entry(key(dict, "b3"), key(dict, "new")))
+								))
+								.thenMany(dict.getRange(null, LLRange.all()))
+								.map(TestDictionary::string)
+						)
+				))
+				.expectNext("a=va", "b3=new", "c=vc")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testIsRangeEmpty(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a", "c")
+								.thenMany(Flux.concat(
+										dict.isRangeEmpty(null, LLRange.of(key(dict, "b"), key(dict, "c"))),
+										dict.isRangeEmpty(null, LLRange.of(key(dict, "b"), key(dict, "d"))),
+										dict.isRangeEmpty(null, LLRange.single(key(dict, "a"))),
+										dict.isRangeEmpty(null, LLRange.single(key(dict, "b")))
+								))
+						)
+				))
+				.expectNext(true, false, false, true)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testGetOneRemoveOne(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a", "b", "c")
+								.thenMany(Flux.concat(
+										dict.getOne(null, LLRange.from(key(dict, "b"))).map(TestDictionary::string),
+										dict.getOneKey(null, LLRange.from(key(dict, "b"))).map(TestDictionary::string),
+										dict.removeOne(LLRange.from(key(dict, "b"))).map(TestDictionary::string),
+										dict.removeOne(LLRange.from(key(dict, "b"))).map(TestDictionary::string),
+										dict.removeOne(LLRange.from(key(dict, "b"))).map(TestDictionary::string),
+										dict.getOneKey(null, LLRange.all()).map(TestDictionary::string)
+								))
+						)
+				))
+				.expectNext("b=vb", "b", "b=vb", "c=vc", "a")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testUpdateMulti(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a", "b")
+								.thenMany(dict.updateMulti(Flux
+										.just("a", "b", "c")
+										.map(k -> Tuples.of(key(dict, k), k.equals("a") ? "va" : "changed")),
+										(key, newValue) -> {
+											key.release();
+											return key(dict, newValue);
+										}
+								))
+								.map(result -> {
+									result.key().release();
+									return result.extra() + " " + result.changed();
+								})
+								.concatWith(dict.getRange(null, LLRange.all()).map(TestDictionary::string))
+						)
+				))
+				.expectNext("va false", "changed true", "changed true")
+				.expectNext("a=va", "b=changed", "c=changed")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testSnapshot(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a", "b")
+								.then(db.takeSnapshot())
+								.flatMapMany(snapshot -> dict
+										.put(key(dict, "a"), key(dict, "new"), LLDictionaryResultType.VOID)
+										.then(dict.remove(key(dict, "b"), LLDictionaryResultType.VOID))
+										.then(putAll(dict, "c"))
+										.thenMany(Flux.concat(
+												dict.getRange(snapshot, LLRange.all()).map(TestDictionary::string),
+												dict.getRange(null, LLRange.all()).map(TestDictionary::string)
+										))
+										.concatWith(db.releaseSnapshot(snapshot).then(Mono.empty()))
+								)
+						)
+				))
+				.expectNext("a=va", "b=vb", "a=new", "c=vc")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testContainsMulti(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> dict
+								.put(key(dict, "present"), key(dict, "value"), LLDictionaryResultType.VOID)
+								.thenMany(dict.containsMulti(null, Flux.just("missing1", "present", "missing2")
+										.map(k -> key(dict, k))
+								))
+						)
+				))
+				.expectNext(false, true, false)
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsBackends")
+	public void testPollMulti(DbBackend backend, UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(backend, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> Flux
+								.just("k1", "k2", "k3")
+								.concatMap(k -> dict.put(key(dict, k), key(dict, "value"), LLDictionaryResultType.VOID))
+								.thenMany(Flux.concat(dict.pollMulti(LLRange.all(), 2), dict.pollMulti(LLRange.all(), 5)))
+								.map(entry -> {
+									try {
+										return entry.getKey().toString(StandardCharsets.UTF_8);
+									} finally {
+										entry.getKey().release();
+										entry.getValue().release();
+									}
+								})
+						)
+				))
+				.expectNext("k1", "k2", "k3")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsCreate")
+	public void testQueueHintsWriteBeforeHead(UpdateMode updateMode) {
+		var databaseOptions = new DatabaseOptions(Map.of("queueColumns", "testmap"),
+				true,
+				false,
+				true,
+				false,
+				true,
+				true,
+				true,
+				true
+		);
+		StepVerifier
+				.create(tempDb(databaseOptions, db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "k2", "k3")
+								.thenMany(Flux.concat(
+										dict.removeOne(LLRange.all()).map(TestDictionary::string),
+										// The new key is before the last consumed key, so the hint must not skip it
+										putAll(dict, "k1").then(Mono.empty()),
+										dict.removeOne(LLRange.all()).map(TestDictionary::string),
+										dict.pollMulti(LLRange.all(), 5).map(TestDictionary::string)
+								))
+						)
+				))
+				.expectNext("k2=vk2", "k1=vk1", "k3=vk3")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsCreate")
+	public void testChanges(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> dict
+								.put(key(dict, "k1"), key(dict, "v1"), LLDictionaryResultType.VOID)
+								.then(dict.remove(key(dict, "k1"), LLDictionaryResultType.VOID))
+								.thenMany(db.changes(0).take(2))
+								.map(change -> {
+									try {
+										return change.type() + " " + change.key().toString(StandardCharsets.UTF_8);
+									} finally {
+										change.release();
+									}
+								})
+						)
+				))
+				.expectNext("PUT k1", "DELETE k1")
+				.verifyComplete();
+	}
+
+	private static DatabaseOptions valueCacheOptions() {
+		return new DatabaseOptions(Map.of("valueCacheSize", "1048576", "valueCacheMisses", "true"),
+				true,
+				false,
+				true,
+				false,
+				true,
+				true,
+				true,
+				true
+		);
+	}
+
+	/**
+	 * Get a value twice, so the second read comes from the value cache
+	 */
+	private static Mono<String> getCached(LLDictionary dict, String key) {
+		return dict
+				.get(null, key(dict, key))
+				.doOnNext(ByteBuf::release)
+				.then(dict.get(null, key(dict, key)))
+				.map(buf -> {
+					// A cached value must be like a value read from the database
+					if (!buf.isDirect() || buf.isReadOnly()) {
+						buf.release();
+						throw new IllegalStateException("The cached value is not a writable direct buffer");
+					}
+					return string(buf);
+				})
+				.defaultIfEmpty("missing");
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsCreate")
+	public void testValueCacheInvalidation(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(valueCacheOptions(), db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> Flux.concat(
+								putAll(dict, "a", "b").then(getCached(dict, "a")),
+								dict.put(key(dict, "a"), key(dict, "new"), LLDictionaryResultType.VOID).then(getCached(dict, "a")),
+								dict.remove(key(dict, "a"), LLDictionaryResultType.VOID).then(getCached(dict, "a")),
+								getCached(dict, "b"),
+								dict
+										.setRange(LLRange.all(), Flux.just(Map.entry(key(dict, "b"), key(dict, "range"))))
+										.then(getCached(dict, "b"))
+						))
+				))
+				.expectNext("va", "new", "missing", "vb", "range")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsCreate")
+	public void testValueCacheMissingKey(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(valueCacheOptions(), db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> Flux.concat(
+								getCached(dict, "a"),
+								putAll(dict, "a").then(getCached(dict, "a"))
+						))
+				))
+				.expectNext("missing", "va")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsCreate")
+	public void testValueCacheSnapshot(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(valueCacheOptions(), db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> putAll(dict, "a")
+								.then(db.takeSnapshot())
+								.flatMapMany(snapshot -> Flux
+										.concat(
+												dict.put(key(dict, "a"), key(dict, "new"), LLDictionaryResultType.VOID)
+														.then(getCached(dict, "a")),
+												// The snapshot must not read the cached value
+												dict.get(snapshot, key(dict, "a")).map(TestDictionary::string)
+										)
+										.concatWith(db.releaseSnapshot(snapshot).then(Mono.empty()))
+								)
+						)
+				))
+				.expectNext("new", "va")
+				.verifyComplete();
+	}
 }
@@ -2,7 +2,22 @@ package it.cavallium.dbengine;
 
 import static it.cavallium.dbengine.DbTestUtils.*;
 
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.LLKeyValueDatabase;
+import it.cavallium.dbengine.database.LLRange;
 import it.cavallium.dbengine.database.UpdateMode;
+import it.cavallium.dbengine.database.collections.DatabaseMapDictionary;
+import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryExpiring;
+import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryLong;
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.serialization.LazySerializer;
+import it.cavallium.dbengine.database.serialization.SerializedView;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongList;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -12,14 +27,19 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 import reactor.test.StepVerifier.Step;
 import reactor.util.function.Tuple2;
+import reactor.util.function.Tuple4;
 import reactor.util.function.Tuples;
 
 public class TestDictionaryMap {
@@ -536,6 +556,358 @@ public class TestDictionaryMap {
 		}
 	}
 
+	private static Stream<Arguments> provideArgumentsGetAllValuesPage() {
+		return Stream
+				.of(true, false)
+				.flatMap(reverse -> Arrays.stream(UpdateMode.values()).map(updateMode -> Arguments.of(updateMode, reverse)));
+	}
+
+	@ParameterizedTest
+	@MethodSource("provideArgumentsGetAllValuesPage")
+	public void testGetAllValuesPage(UpdateMode updateMode, boolean reverse) {
+		var entries = Map.of("k0001", "a", "k0002", "b", "k0003", "c", "k0004", "d", "k0005", "e");
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.map(dict -> (DatabaseMapDictionary<String, String>) tempDatabaseMapDictionaryMap(dict, DbType.MAP, 5))
+						.flatMapMany(map -> Flux
+								.concat(
+										map.putMulti(Flux.fromIterable(entries.entrySet())).then(Mono.empty()),
+										map.getAllValues(null, reverse, "k0003", 1),
+										map.getAllValues(null, reverse, null, 2)
+								)
+								.map(Entry::getKey)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.expectNext(reverse ? "k0002" : "k0004")
+				.expectNext(reverse ? "k0005" : "k0001", reverse ? "k0004" : "k0002")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testLongMap(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.map(dict -> DatabaseMapDictionaryLong.simple(dict, Serializer.utf8(DbTestUtils.ALLOCATOR)))
+						.flatMapMany(map -> Flux
+								.concat(
+										map.putValue(3L, "c").then(map.putValue(1L, "a")).then(map.putValue(2L, "b")).then(Mono.empty()),
+										map.getValue(null, 2L),
+										map.getMulti(null, LongList.of(3L, 4L, 1L), false).map(Long2ObjectMap.Entry::getValue),
+										map.remove(2L).then(Mono.empty()),
+										map.getAllValuesLong(null).map(entry -> entry.getLongKey() + entry.getValue()),
+										map.getAllKeysLong(null, 1).map(Object::toString)
+								)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.expectNext("b", "c", "a", "1a", "3c", "[1]", "[3]")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = UpdateMode.class, names = {"ALLOW", "ALLOW_UNSAFE"})
+	public void testSecondaryIndex(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.flatMap(dict -> tempDictionary(db, "testindex", updateMode).map(indexDict -> {
+							var map = DatabaseMapDictionary.simple(dict,
+									SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1),
+									Serializer.utf8(DbTestUtils.ALLOCATOR)
+							);
+							var index = map.addIndex(indexDict,
+									SerializerFixedBinaryLength.intSerializer(DbTestUtils.ALLOCATOR),
+									String::length
+							);
+							return Tuples.of(map, index);
+						}))
+						.flatMapMany(tuple -> {
+							var map = tuple.getT1();
+							var index = tuple.getT2();
+							return Flux
+									.concat(
+											map.putValue("a", "xx").then(map.putValue("b", "yyy")).then(map.putValue("c", "zz")).then(Mono.empty()),
+											index.getByIndex(null, 2).map(Entry::getKey),
+											map.putValue("a", "xxx").then(map.remove("c")).then(Mono.empty()),
+											index.getByIndex(null, 2).map(Entry::getKey),
+											index.getByIndex(null, 3).map(Entry::getKey)
+									)
+									.doAfterTerminate(map::release);
+						})
+				))
+				.expectNext("a", "c", "a", "b")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = UpdateMode.class, names = {"ALLOW", "ALLOW_UNSAFE"})
+	public void testSecondaryIndexRebuild(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.flatMap(dict -> tempDictionary(db, "testindex", updateMode).map(indexDict -> {
+							var map = DatabaseMapDictionary.simple(dict,
+									SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1),
+									Serializer.utf8(DbTestUtils.ALLOCATOR)
+							);
+							return Tuples.of(map, indexDict);
+						}))
+						.flatMapMany(tuple -> {
+							var map = tuple.getT1();
+							var indexDict = tuple.getT2();
+							return Flux
+									.concat(
+											map.putValue("a", "xx").then(map.putValue("b", "yyy")).then(Mono.empty()),
+											Mono
+													.fromSupplier(() -> map.addIndex(indexDict,
+															SerializerFixedBinaryLength.intSerializer(DbTestUtils.ALLOCATOR),
+															String::length
+													))
+													.flatMapMany(index -> Flux.concat(
+															// The values written before adding the index are not indexed
+															index.getByIndex(null, 2).map(Entry::getKey),
+															index.rebuild().then(Mono.empty()),
+															index.getByIndex(null, 2).map(Entry::getKey),
+															index.getByIndex(null, 3).map(Entry::getKey)
+													))
+									)
+									.doAfterTerminate(map::release);
+						})
+				))
+				.expectNext("a", "b")
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = UpdateMode.class, names = {"ALLOW", "ALLOW_UNSAFE"})
+	public void testSecondaryIndexOtherWriters(UpdateMode updateMode) {
+		var keySerializer = SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1);
+		var valueSerializer = Serializer.utf8(DbTestUtils.ALLOCATOR);
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.flatMap(dict -> tempDictionary(db, "testindex", updateMode).map(indexDict -> {
+							var map = DatabaseMapDictionary.simple(dict, keySerializer, valueSerializer);
+							var index = map.addIndex(indexDict,
+									SerializerFixedBinaryLength.intSerializer(DbTestUtils.ALLOCATOR),
+									String::length
+							);
+							// The index is registered on the column, so the other instances update it too
+							var otherMap = DatabaseMapDictionary.simple(dict, keySerializer, valueSerializer);
+							return Tuples.of(dict, indexDict, map, otherMap, index);
+						}))
+						.flatMapMany(tuple -> {
+							var dict = tuple.getT1();
+							var indexDict = tuple.getT2();
+							var map = tuple.getT3();
+							var otherMap = tuple.getT4();
+							var index = tuple.getT5();
+							return Flux
+									.concat(
+											otherMap.putValue("a", "xx").then(Mono.empty()),
+											Mono
+													.defer(() -> dict.put(keySerializer.serialize("b"),
+															valueSerializer.serialize("yy"),
+															LLDictionaryResultType.VOID
+													))
+													.then(Mono.empty()),
+											index.getByIndex(null, 2).map(Entry::getKey),
+											otherMap.remove("a").then(Mono.empty()),
+											indexDict.sizeRange(null, LLRange.all(), false).map(Object::toString),
+											otherMap.clear().then(Mono.empty()),
+											indexDict.sizeRange(null, LLRange.all(), false).map(Object::toString)
+									)
+									.doAfterTerminate(map::release)
+									.doAfterTerminate(otherMap::release);
+						})
+				))
+				.expectNext("a", "b", "1", "0")
+				.verifyComplete();
+	}
+
+	/**
+	 * View of a string serialized by {@link Serializer#utf8}
+	 */
+	private static class Utf8View extends SerializedView<String> {
+
+		private Utf8View(ByteBuf serialized) {
+			super(serialized);
+		}
+
+		public int length() {
+			return serialized().getInt(serialized().readerIndex());
+		}
+
+		public int refCnt() {
+			return serialized().refCnt();
+		}
+
+		@Override
+		public String materialize() {
+			return serialized().toString(serialized().readerIndex() + Integer.BYTES, length(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static class Utf8LazySerializer implements LazySerializer<String, Utf8View> {
+
+		private final Serializer<String, ByteBuf> serializer = Serializer.utf8(DbTestUtils.ALLOCATOR);
+
+		@Override
+		public @NotNull Utf8View view(@NotNull ByteBuf serialized) {
+			return new Utf8View(serialized);
+		}
+
+		@Override
+		public @NotNull ByteBuf serialize(@NotNull String deserialized) {
+			return serializer.serialize(deserialized);
+		}
+	}
+
+	private static Mono<DatabaseMapDictionary<String, String>> tempLazyMap(LLKeyValueDatabase db, UpdateMode updateMode) {
+		return tempDictionary(db, updateMode).map(dict -> DatabaseMapDictionary.simple(dict,
+				SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1),
+				new Utf8LazySerializer()
+		));
+	}
+
+	/**
+	 * Read the view, then release it
+	 * @return the key, the materialized value, the length field and the reference count after the release
+	 */
+	private static Tuple4<String, String, Integer, Integer> consumeView(Entry<String, Utf8View> entry) {
+		var view = entry.getValue();
+		String value;
+		int length;
+		try {
+			value = view.materialize();
+			length = view.length();
+		} finally {
+			view.release();
+		}
+		return Tuples.of(entry.getKey(), value, length, view.refCnt());
+	}
+
+	@Test
+	public void testLazySerializer() {
+		var serializer = new Utf8LazySerializer();
+		var view = serializer.view(serializer.serialize("abc"));
+		try {
+			Assertions.assertEquals(3, view.length());
+			Assertions.assertEquals("abc", view.materialize());
+			// The view doesn't move the indices of the serialized value
+			Assertions.assertEquals("abc", view.materialize());
+		} finally {
+			view.release();
+		}
+		Assertions.assertEquals(0, view.refCnt());
+
+		ByteBuf serialized = serializer.serialize("abc");
+		Assertions.assertEquals("abc", serializer.deserialize(serialized));
+		Assertions.assertEquals(0, serialized.refCnt());
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testGetMultiViews(UpdateMode updateMode) {
+		var keys = List.of("a", "x", "c");
+		StepVerifier
+				.create(tempDb(db -> tempLazyMap(db, updateMode)
+						.flatMapMany(map -> map
+								.putMulti(Flux.just(Map.entry("a", "aa"), Map.entry("b", "bbb"), Map.entry("c", "")))
+								.then(map.getMulti(null, Flux.fromIterable(keys)).collectList())
+								.zipWhen(values -> map
+										.<Utf8View>getMultiViews(null, Flux.fromIterable(keys), false)
+										.map(TestDictionaryMap::consumeView)
+										.collectList()
+								)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.assertNext(lists -> {
+					var values = lists.getT1();
+					var views = lists.getT2();
+					Assertions.assertEquals(List.of(Map.entry("a", "aa"), Map.entry("c", "")), values);
+					Assertions.assertEquals(values.size(), views.size());
+					for (int i = 0; i < values.size(); i++) {
+						Assertions.assertEquals(values.get(i).getKey(), views.get(i).getT1());
+						Assertions.assertEquals(values.get(i).getValue(), views.get(i).getT2());
+						Assertions.assertEquals(values.get(i).getValue().length(), views.get(i).getT3());
+						Assertions.assertEquals(0, views.get(i).getT4());
+					}
+				})
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testGetAllValueViews(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempLazyMap(db, updateMode)
+						.flatMapMany(map -> map
+								.putMulti(Flux.just(Map.entry("a", "aa"), Map.entry("b", "bbb")))
+								.thenMany(map.<Utf8View>getAllValueViews(null))
+								.map(TestDictionaryMap::consumeView)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.expectNext(Tuples.of("a", "aa", 2, 0))
+				.expectNext(Tuples.of("b", "bbb", 3, 0))
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testViewsWithoutLazySerializer(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.map(dict -> DatabaseMapDictionary.simple(dict,
+								SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1),
+								Serializer.utf8(DbTestUtils.ALLOCATOR)
+						))
+						.map(map -> {
+							try {
+								return Tuples.of(
+										Assertions.assertThrows(UnsupportedOperationException.class,
+												() -> map.getMultiViews(null, Flux.just("a"), false)
+										) != null,
+										Assertions.assertThrows(UnsupportedOperationException.class,
+												() -> map.getAllValueViews(null)
+										) != null
+								);
+							} finally {
+								map.release();
+							}
+						})
+				))
+				.expectNext(Tuples.of(true, true))
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testExpiringMap(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.flatMapMany(dict -> {
+							var map = DatabaseMapDictionaryExpiring.simple(dict,
+									SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 1),
+									Serializer.utf8(DbTestUtils.ALLOCATOR),
+									Duration.ofHours(1)
+							);
+							return Flux
+									.concat(
+											map.putValue("a", "x").then(map.putValue("b", "y", Duration.ZERO)).then(Mono.empty()),
+											map.getValue(null, "a"),
+											map.getValue(null, "b"),
+											map.getAllValues(null).map(Entry::getKey),
+											map.removeExpired().then(dict.sizeRange(null, LLRange.all(), false)).map(Object::toString)
+									)
+									.doAfterTerminate(map::release);
+						})
+				))
+				.expectNext("x", "a", "1")
+				.verifyComplete();
+	}
+
 	@ParameterizedTest
 	@MethodSource("provideArgumentsPutMulti")
 	public void testPutMultiGet(DbType dbType, UpdateMode updateMode, Map<String, String> entries, boolean shouldFail) {
@@ -5,6 +5,11 @@ import static it.cavallium.dbengine.DbTestUtils.tempDb;
 import static it.cavallium.dbengine.DbTestUtils.tempDictionary;
 
 import it.cavallium.dbengine.database.UpdateMode;
+import it.cavallium.dbengine.database.collections.DatabaseMapDictionaryDeep;
+import it.cavallium.dbengine.database.collections.SubStageGetterMap;
+import it.cavallium.dbengine.database.collections.SubStageGetterMapDeep;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.cavallium.dbengine.database.serialization.SerializerFixedBinaryLength;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,6 +20,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -988,4 +994,50 @@ public class TestDictionaryMapDeep {
 			stpVer.expectNext(true, entries.isEmpty(), true).verifyComplete();
 		}
 	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testGetMultiMissingKey(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.map(dict -> tempDatabaseMapDictionaryDeepMap(dict, 5, 6))
+						.flatMapMany(map -> Flux
+								.concat(
+										map.putValue("key01", Map.of("key001", "a")).then(Mono.empty()),
+										map.getMulti(null, Flux.just("key01", "key02"))
+								)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.expectNext(Map.entry("key01", Map.of("key001", "a")), Map.entry("key02", Map.of()))
+				.verifyComplete();
+	}
+
+	@ParameterizedTest
+	@EnumSource(UpdateMode.class)
+	public void testGetMultiMissingKeyDeep(UpdateMode updateMode) {
+		StepVerifier
+				.create(tempDb(db -> tempDictionary(db, updateMode)
+						.map(dict -> DatabaseMapDictionaryDeep.deepTail(dict,
+								SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 5),
+								6 + 7,
+								new SubStageGetterMapDeep<>(new SubStageGetterMap<>(SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR,
+										7
+								), Serializer.utf8(DbTestUtils.ALLOCATOR), true),
+										SerializerFixedBinaryLength.utf8(DbTestUtils.ALLOCATOR, 6),
+										7,
+										true
+								)
+						))
+						.flatMapMany(map -> Flux
+								.concat(
+										map.putValue("key01", Map.of("key001", Map.of("key0001", "a"))).then(Mono.empty()),
+										map.getMulti(null, Flux.just("key01", "key02"))
+								)
+								.doAfterTerminate(map::release)
+						)
+				))
+				.expectNext(Map.entry("key01", Map.of("key001", Map.of("key0001", "a"))), Map.entry("key02", Map.of()))
+				.verifyComplete();
+	}
 }
@@ -0,0 +1,156 @@
+package it.cavallium.dbengine.database.collections;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import it.cavallium.dbengine.database.serialization.Serializer;
+import it.unimi.dsi.fastutil.objects.ObjectArraySet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestHashedBucketSerializer {
+
+	private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+
+	private final HashedBucketSerializer<String, String> serializer = new HashedBucketSerializer<>(ALLOCATOR,
+			Serializer.utf8(ALLOCATOR),
+			Serializer.utf8(ALLOCATOR)
+	);
+
+	private ByteBuf put(ByteBuf bucket, String key, String value) {
+		return serializer.putValue(bucket, serializer.serializeKey(key), value);
+	}
+
+	private String get(ByteBuf bucket, String key) {
+		return serializer.getValue(bucket.retain(), serializer.serializeKey(key));
+	}
+
+	private Set<Entry<String, String>> entries(ByteBuf bucket) {
+		return Set.copyOf(serializer.deserialize(bucket.retain()));
+	}
+
+	@Test
+	public void testHashCollision() {
+		// "Aa" and "BB" have the same length and the same hash
+		ByteBuf bucket = put(null, "Aa", "first");
+		bucket = put(bucket, "zzz", "other");
+		bucket = put(bucket, "BB", "second");
+		try {
+			Assertions.assertEquals("first", get(bucket, "Aa"));
+			Assertions.assertEquals("second", get(bucket, "BB"));
+			Assertions.assertEquals("other", get(bucket, "zzz"));
+			Assertions.assertNull(get(bucket, "Ab"));
+			Assertions.assertEquals(Set.of(Map.entry("Aa", "first"), Map.entry("BB", "second"), Map.entry("zzz", "other")),
+					entries(bucket)
+			);
+		} finally {
+			bucket.release();
+		}
+	}
+
+	@Test
+	public void testPatchValueInPlace() {
+		ByteBuf bucket = put(null, "a", "12345");
+		bucket = put(bucket, "b", "bbb");
+		int previousLength = bucket.readableBytes();
+		bucket = put(bucket, "a", "67890");
+		try {
+			Assertions.assertEquals(previousLength, bucket.readableBytes());
+			Assertions.assertEquals("67890", get(bucket, "a"));
+			Assertions.assertEquals("bbb", get(bucket, "b"));
+		} finally {
+			bucket.release();
+		}
+	}
+
+	@Test
+	public void testChangeValueLength() {
+		ByteBuf bucket = put(null, "a", "1");
+		bucket = put(bucket, "b", "bbb");
+		int previousLength = bucket.readableBytes();
+		bucket = put(bucket, "a", "1234567");
+		try {
+			Assertions.assertEquals(previousLength + 6, bucket.readableBytes());
+			Assertions.assertEquals("1234567", get(bucket, "a"));
+			Assertions.assertEquals("bbb", get(bucket, "b"));
+			Assertions.assertEquals(Set.of(Map.entry("a", "1234567"), Map.entry("b", "bbb")), entries(bucket));
+		} finally {
+			bucket.release();
+		}
+	}
+
+	@Test
+	public void testRemoveValue() {
+		ByteBuf bucket = put(null, "a", "aaa");
+		bucket = put(bucket, "b", "bbb");
+		bucket = serializer.removeValue(bucket, serializer.serializeKey("a"));
+		Assertions.assertNotNull(bucket);
+		try {
+			Assertions.assertNull(get(bucket, "a"));
+			Assertions.assertEquals("bbb", get(bucket, "b"));
+		} finally {
+			bucket.release();
+		}
+	}
+
+	@Test
+	public void testRemoveLastValue() {
+		ByteBuf bucket = put(null, "a", "aaa");
+		Assertions.assertNull(serializer.removeValue(bucket, serializer.serializeKey("a")));
+	}
+
+	@Test
+	public void testReadLegacyBucket() {
+		ByteBuf legacyBucket = ALLOCATOR.buffer();
+		legacyBucket.writeInt(2);
+		for (String s : new String[] {"a", "aaa", "b", "bbb"}) {
+			ByteBuf serialized = Serializer.utf8(ALLOCATOR).serialize(s);
+			try {
+				legacyBucket.writeBytes(serialized);
+			} finally {
+				serialized.release();
+			}
+		}
+		try {
+			Assertions.assertEquals(Set.of(Map.entry("a", "aaa"), Map.entry("b", "bbb")), entries(legacyBucket));
+			Assertions.assertEquals("aaa", get(legacyBucket, "a"));
+			Assertions.assertEquals("bbb", get(legacyBucket, "b"));
+		} finally {
+			legacyBucket.release();
+		}
+	}
+
+	@Test
+	public void testUpgradeLegacyBucket() {
+		ByteBuf legacyBucket = ALLOCATOR.buffer();
+		legacyBucket.writeInt(1);
+		for (String s : new String[] {"a", "aaa"}) {
+			ByteBuf serialized = Serializer.utf8(ALLOCATOR).serialize(s);
+			try {
+				legacyBucket.writeBytes(serialized);
+			} finally {
+				serialized.release();
+			}
+		}
+		ByteBuf bucket = put(legacyBucket, "b", "bbb");
+		try {
+			Assertions.assertNotEquals(0, bucket.getByte(bucket.readerIndex()));
+			Assertions.assertEquals(Set.of(Map.entry("a", "aaa"), Map.entry("b", "bbb")), entries(bucket));
+		} finally {
+			bucket.release();
+		}
+	}
+
+	@Test
+	public void testUnknownFormat() {
+		ByteBuf bucket = ALLOCATOR.buffer().writeByte(0x7F).writeInt(0);
+		try {
+			Assertions.assertThrows(IllegalStateException.class, () -> serializer.deserialize(bucket.retain()));
+		} finally {
+			bucket.release();
+		}
+	}
+}
@@ -69,6 +69,56 @@ public class TestRanges {
 			);
 		}
 	}
+	@Test
+	public void testComposeKey() {
+		var prefix = wrappedBuffer(new byte[] {0x01, 0x02});
+		var suffix = wrappedBuffer(new byte[] {0x03, 0x04, 0x05});
+		var key = DatabaseMapDictionaryDeep.composeKey(PooledByteBufAllocator.DEFAULT, prefix, suffix, 2, 3, 2, 1);
+		try {
+			Assertions.assertTrue(key.isDirect());
+			Assertions.assertEquals(8, key.capacity());
+			Assertions.assertArrayEquals(new byte[] {0x01, 0x02, 0x03, 0x04, 0x05, 0x00, 0x00}, LLUtils.toArray(key));
+		} finally {
+			key.release();
+		}
+		Assertions.assertEquals(1, prefix.refCnt());
+		Assertions.assertEquals(1, suffix.refCnt());
+	}
+
+	@Test
+	public void testComposeKeyWithoutSuffix() {
+		var prefix = wrappedBuffer(new byte[] {0x00, 0x01, 0x02}).readerIndex(1);
+		var key = DatabaseMapDictionaryDeep.composeKey(PooledByteBufAllocator.DEFAULT, prefix, null, 2, 2, 1, 0);
+		try {
+			Assertions.assertArrayEquals(new byte[] {0x01, 0x02, 0x00, 0x00, 0x00}, LLUtils.toArray(key));
+		} finally {
+			key.release();
+		}
+	}
+
+	@Test
+	public void testIncrementPrefix() {
+		testIncrementPrefix(new byte[] {0x00, 0x00, 0x07}, 2, new byte[] {0x00, 0x01, 0x07});
+		testIncrementPrefix(new byte[] {0x00, (byte) 0xFF, 0x07}, 2, new byte[] {0x01, 0x00, 0x07});
+		testIncrementPrefix(new byte[] {0x05, (byte) 0xFE, 0x07}, 3, new byte[] {0x05, (byte) 0xFE, 0x08});
+		testIncrementPrefix(new byte[] {(byte) 0xFF, (byte) 0xFF, 0x07},
+				2,
+				new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00}
+		);
+	}
+
+	private void testIncrementPrefix(byte[] key, int prefixLength, byte[] expected) {
+		// Start from a non-zero reader index, the prefix must be read from it
+		var buf = PooledByteBufAllocator.DEFAULT.directBuffer(key.length + 2);
+		try {
+			buf.writeByte(0x42).writeBytes(key).readerIndex(1);
+			DatabaseMapDictionaryDeep.incrementPrefix(buf, prefixLength);
+			Assertions.assertArrayEquals(expected, LLUtils.toArray(buf));
+		} finally {
+			buf.release();
+		}
+	}
+
 	@Test
 	public void testNextRangeKeyWithSuffix() {
 		testNextRangeKeyWithSuffix(new byte[] {0x00, 0x01, (byte) 0xFF}, new byte[] {0x00, 0x00, 0x00});
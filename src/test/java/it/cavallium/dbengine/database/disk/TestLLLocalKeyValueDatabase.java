@@ -0,0 +1,121 @@
+package it.cavallium.dbengine.database.disk;
+
+import static it.cavallium.dbengine.DbTestUtils.tempDb;
+import static it.cavallium.dbengine.DbTestUtils.tempDictionary;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.client.DatabaseOptions;
+import it.cavallium.dbengine.database.LLChange;
+import it.cavallium.dbengine.database.LLDictionary;
+import it.cavallium.dbengine.database.LLDictionaryResultType;
+import it.cavallium.dbengine.database.UpdateMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class TestLLLocalKeyValueDatabase {
+
+	private static ByteBuf buf(LLDictionary dictionary, String value) {
+		var buf = dictionary.getAllocator().directBuffer();
+		buf.writeCharSequence(value, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	private static String toString(LLChange change) {
+		try {
+			return change.type() + " " + change.key().toString(StandardCharsets.UTF_8);
+		} finally {
+			change.release();
+		}
+	}
+
+	@Test
+	public void testChangesAfterFlush() {
+		// The low memory profile doesn't keep the WAL files, so the flags must take precedence over it
+		var databaseOptions = new DatabaseOptions(Map.of("walTtlSeconds", "3600", "walSizeLimitMB", "1024"),
+				true,
+				true,
+				true,
+				false,
+				true,
+				true,
+				true,
+				true
+		);
+		StepVerifier
+				.create(tempDb(databaseOptions, db -> tempDictionary(db, UpdateMode.ALLOW)
+						.flatMapMany(dict -> dict
+								.put(buf(dict, "k1"), buf(dict, "v1"), LLDictionaryResultType.VOID)
+								.then(db.changes(0).next())
+								.map(change -> {
+									try {
+										return change.sequenceNumber();
+									} finally {
+										change.release();
+									}
+								})
+								.flatMapMany(savedSequenceNumber -> dict
+										.put(buf(dict, "k2"), buf(dict, "v2"), LLDictionaryResultType.VOID)
+										.then(Mono.defer(() -> ((LLLocalKeyValueDatabase) db).flush()))
+										.then(dict.put(buf(dict, "k3"), buf(dict, "v3"), LLDictionaryResultType.VOID))
+										.thenMany(db.changes(savedSequenceNumber + 1).take(2))
+								)
+								.map(TestLLLocalKeyValueDatabase::toString)
+						)
+				))
+				.expectNext("PUT k2", "PUT k3")
+				.verifyComplete();
+	}
+
+	private static Mono<String> getString(LLDictionary dictionary, String key) {
+		return dictionary.get(null, buf(dictionary, key)).map(value -> {
+			try {
+				return value.toString(StandardCharsets.UTF_8);
+			} finally {
+				value.release();
+			}
+		});
+	}
+
+	@Test
+	public void testTtlColumn() {
+		var databaseOptions = new DatabaseOptions(Map.of("ttlColumns", "hash_map_testmap=1"),
+				true,
+				false,
+				true,
+				false,
+				true,
+				true,
+				true,
+				true
+		);
+		StepVerifier
+				.create(tempDb(databaseOptions, db -> tempDictionary(db, UpdateMode.ALLOW)
+						.zipWith(tempDictionary(db, "testindex", UpdateMode.ALLOW))
+						.flatMapMany(dicts -> {
+							var ttlDict = dicts.getT1();
+							var dict = dicts.getT2();
+							return Flux.<Object>concat(
+									ttlDict.put(buf(ttlDict, "k1"), buf(ttlDict, "v1"), LLDictionaryResultType.VOID).then(),
+									dict.put(buf(dict, "k2"), buf(dict, "v2"), LLDictionaryResultType.VOID).then(),
+									// The timestamps of TtlDB are not visible
+									getString(ttlDict, "k1"),
+									getString(dict, "k2"),
+									db.changes(0).take(2).map(TestLLLocalKeyValueDatabase::toString),
+									Mono.delay(Duration.ofMillis(2500)).then(),
+									Mono.defer(() -> ((LLLocalKeyValueDatabase) db).flush()),
+									Mono.defer(() -> ((LLLocalKeyValueDatabase) db).compact()),
+									// The compaction drops only the expired entries of the column with a time to live
+									getString(ttlDict, "k1").defaultIfEmpty("expired"),
+									getString(dict, "k2")
+							);
+						})
+				))
+				.expectNext("v1", "v2", "PUT k1", "PUT k2", "expired", "v2")
+				.verifyComplete();
+	}
+}
@@ -0,0 +1,105 @@
+package it.cavallium.dbengine.database.disk;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLRange;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestLLLocalQueueHints {
+
+	private static ByteBuf key(String key) {
+		var buf = ALLOCATOR.buffer();
+		buf.writeCharSequence(key, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	private static String string(byte[] key) {
+		return key == null ? null : new String(key, StandardCharsets.UTF_8);
+	}
+
+	private static void consume(LLLocalQueueHints hints, LLRange range, String key) {
+		var keyBuf = key(key);
+		try {
+			hints.startPoll();
+			hints.setLastConsumedKey(range, keyBuf);
+		} finally {
+			hints.endPoll();
+			keyBuf.release();
+		}
+	}
+
+	private static void write(LLLocalQueueHints hints, String key) {
+		var keyBuf = key(key);
+		try {
+			hints.onKeyWritten(keyBuf);
+		} finally {
+			keyBuf.release();
+		}
+	}
+
+	@Test
+	public void testWriteAfterHead() {
+		var hints = new LLLocalQueueHints();
+		var range = LLRange.all();
+		consume(hints, range, "k2");
+		write(hints, "k3");
+		write(hints, "k2");
+		Assertions.assertEquals("k2", string(hints.getSeekKey(range)));
+	}
+
+	@Test
+	public void testWriteBeforeHead() {
+		var hints = new LLLocalQueueHints();
+		var range = LLRange.all();
+		consume(hints, range, "k2");
+		write(hints, "k1");
+		Assertions.assertNull(hints.getSeekKey(range));
+	}
+
+	@Test
+	public void testWriteRemovesOnlyTheSkippingHints() {
+		var hints = new LLLocalQueueHints();
+		var rangeA = LLRange.from(key("a"));
+		var rangeB = LLRange.from(key("b"));
+		var rangeC = LLRange.from(key("c"));
+		try {
+			consume(hints, rangeA, "a5");
+			consume(hints, rangeB, "b5");
+			consume(hints, rangeC, "c5");
+			// The hint of a range is replaced by the next consumed key
+			consume(hints, rangeC, "c6");
+			write(hints, "b1");
+			Assertions.assertEquals("a5", string(hints.getSeekKey(rangeA)));
+			Assertions.assertNull(hints.getSeekKey(rangeB));
+			Assertions.assertNull(hints.getSeekKey(rangeC));
+			consume(hints, rangeC, "c7");
+			write(hints, "c6");
+			Assertions.assertEquals("a5", string(hints.getSeekKey(rangeA)));
+			Assertions.assertNull(hints.getSeekKey(rangeC));
+		} finally {
+			rangeA.release();
+			rangeB.release();
+			rangeC.release();
+		}
+	}
+
+	@Test
+	public void testWriteDuringPoll() {
+		var hints = new LLLocalQueueHints();
+		var range = LLRange.all();
+		var consumedKey = key("k2");
+		try {
+			hints.startPoll();
+			// The poll could have missed this key, so the hint must not be set
+			write(hints, "k1");
+			hints.setLastConsumedKey(range, consumedKey);
+		} finally {
+			hints.endPoll();
+			consumedKey.release();
+		}
+		Assertions.assertNull(hints.getSeekKey(range));
+	}
+}
@@ -0,0 +1,84 @@
+package it.cavallium.dbengine.database.disk;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestLLLocalValueCache {
+
+	private static final byte[] OLD_VALUE = "old".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] NEW_VALUE = "new".getBytes(StandardCharsets.UTF_8);
+
+	private static ByteBuf key(String key) {
+		var buf = ALLOCATOR.buffer();
+		buf.writeCharSequence(key, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	@Test
+	public void testPut() {
+		var cache = new LLLocalValueCache(1024 * 1024, true);
+		var key = key("a");
+		try {
+			cache.put(key, cache.getVersion(key), NEW_VALUE);
+			Assertions.assertSame(NEW_VALUE, cache.get(key));
+			cache.invalidate(key);
+			Assertions.assertNull(cache.get(key));
+			cache.putMissing(key, cache.getVersion(key));
+			Assertions.assertSame(LLLocalValueCache.MISSING, cache.get(key));
+		} finally {
+			key.release();
+		}
+	}
+
+	@Test
+	public void testReadInterleavedWithWrite() {
+		var cache = new LLLocalValueCache(1024 * 1024, true);
+		var key = key("a");
+		try {
+			// The reader takes the version and reads the old value
+			long readerVersion = cache.getVersion(key);
+			// The writer writes the new value and invalidates the key
+			cache.invalidate(key);
+			// The reader caches the value that it has read
+			cache.put(key, readerVersion, OLD_VALUE);
+			Assertions.assertNull(cache.get(key));
+			// The following reads see the new value
+			cache.put(key, cache.getVersion(key), NEW_VALUE);
+			Assertions.assertSame(NEW_VALUE, cache.get(key));
+		} finally {
+			key.release();
+		}
+	}
+
+	@Test
+	public void testOutdatedValueNeverVisible() throws InterruptedException {
+		var cache = new LLLocalValueCache(1024 * 1024, true);
+		var key = key("a");
+		try {
+			var done = new AtomicBoolean();
+			var readerAndWriter = new Thread(() -> {
+				try {
+					for (int i = 0; i < 100_000; i++) {
+						long readerVersion = cache.getVersion(key);
+						cache.invalidate(key);
+						cache.put(key, readerVersion, OLD_VALUE);
+					}
+				} finally {
+					done.set(true);
+				}
+			});
+			readerAndWriter.start();
+			while (!done.get()) {
+				Assertions.assertNotSame(OLD_VALUE, cache.get(key));
+			}
+			readerAndWriter.join();
+		} finally {
+			key.release();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package it.cavallium.dbengine.database.disk;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+
+import io.netty.buffer.ByteBuf;
+import it.cavallium.dbengine.database.LLRange;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+public class TestPooledReadOptions {
+
+	private static final List<String> KEYS = List.of("a", "b", "c", "d", "e");
+
+	static {
+		RocksDB.loadLibrary();
+	}
+
+	@TempDir
+	Path dbPath;
+	private Options options;
+	private RocksDB db;
+
+	@BeforeEach
+	public void openDb() throws RocksDBException {
+		options = new Options().setCreateIfMissing(true);
+		db = RocksDB.open(options, dbPath.toString());
+		for (String key : KEYS) {
+			db.put(bytes(key), bytes(key));
+		}
+	}
+
+	@AfterEach
+	public void closeDb() {
+		db.close();
+		options.close();
+	}
+
+	private static byte[] bytes(String key) {
+		return key.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuf key(String key) {
+		var buf = ALLOCATOR.directBuffer();
+		buf.writeCharSequence(key, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	private List<String> readKeys(PooledReadOptions readOptions) {
+		var keys = new ArrayList<String>();
+		try (var rocksIterator = db.newIterator(readOptions.readOptions())) {
+			rocksIterator.seekToFirst();
+			while (rocksIterator.isValid()) {
+				keys.add(new String(rocksIterator.key(), StandardCharsets.UTF_8));
+				rocksIterator.next();
+			}
+		}
+		return keys;
+	}
+
+	@Test
+	public void testBoundsReuse() {
+		var range = LLRange.of(key("b"), key("d"));
+		var otherRange = LLRange.from(key("c"));
+		try {
+			PooledReadOptions pooled;
+			try (var readOptions = PooledReadOptions.acquire(null, range)) {
+				pooled = readOptions;
+				Assertions.assertEquals(List.of("b", "c"), readKeys(readOptions));
+			}
+			try (var readOptions = PooledReadOptions.acquire(null, otherRange)) {
+				Assertions.assertSame(pooled, readOptions);
+				Assertions.assertEquals(List.of("c", "d", "e"), readKeys(readOptions));
+			}
+			try (var readOptions = PooledReadOptions.acquire(null, range)) {
+				Assertions.assertSame(pooled, readOptions);
+				Assertions.assertEquals(List.of("b", "c"), readKeys(readOptions));
+			}
+		} finally {
+			range.release();
+			otherRange.release();
+		}
+	}
+
+	@Test
+	public void testModifiedOptionsReset() {
+		var range = LLRange.all();
+		try (var readOptions = PooledReadOptions.acquire(null, range)) {
+			readOptions.readOptions().setFillCache(false).setReadaheadSize(32 * 1024);
+		}
+		try (var readOptions = PooledReadOptions.acquire(null, range)) {
+			Assertions.assertTrue(readOptions.readOptions().fillCache());
+			Assertions.assertEquals(0, readOptions.readOptions().readaheadSize());
+			Assertions.assertEquals(KEYS, readKeys(readOptions));
+		}
+	}
+
+	@Test
+	public void testLargeBoundFallback() {
+		var largeMin = ALLOCATOR.directBuffer(PooledReadOptions.MAX_BOUND_SIZE + 1);
+		largeMin.writeCharSequence("b", StandardCharsets.UTF_8);
+		largeMin.writeZero(PooledReadOptions.MAX_BOUND_SIZE);
+		var largeRange = LLRange.of(largeMin, key("e"));
+		var smallRange = LLRange.all();
+		try {
+			PooledReadOptions pooled;
+			try (var readOptions = PooledReadOptions.acquire(null, smallRange)) {
+				pooled = readOptions;
+			}
+			try (var readOptions = PooledReadOptions.acquire(null, largeRange)) {
+				Assertions.assertNotSame(pooled, readOptions);
+				Assertions.assertEquals(List.of("c", "d"), readKeys(readOptions));
+			}
+			// The fallback doesn't take the pooled instance
+			try (var readOptions = PooledReadOptions.acquire(null, smallRange)) {
+				Assertions.assertSame(pooled, readOptions);
+			}
+		} finally {
+			largeRange.release();
+			smallRange.release();
+		}
+	}
+
+	@Test
+	public void testReentrantFallback() {
+		var outerRange = LLRange.of(key("a"), key("c"));
+		var innerRange = LLRange.from(key("d"));
+		var snapshot = db.getSnapshot();
+		try {
+			try (var outer = PooledReadOptions.acquire(null, outerRange)) {
+				try (var inner = PooledReadOptions.acquire(null, innerRange)) {
+					Assertions.assertNotSame(outer, inner);
+					Assertions.assertEquals(List.of("d", "e"), readKeys(inner));
+				}
+				// The nested read must not overwrite the bounds of the outer read
+				Assertions.assertEquals(List.of("a", "b"), readKeys(outer));
+				try (var point = PooledReadOptions.acquire(snapshot)) {
+					Assertions.assertNotSame(outer, point);
+				}
+				Assertions.assertEquals(List.of("a", "b"), readKeys(outer));
+			}
+		} finally {
+			db.releaseSnapshot(snapshot);
+			outerRange.release();
+			innerRange.release();
+		}
+	}
+
+	@Test
+	public void testCloseFromOtherThread() throws InterruptedException {
+		var range = LLRange.to(key("c"));
+		try {
+			var readOptions = PooledReadOptions.acquire(null, range);
+			var closer = new Thread(readOptions::close);
+			closer.start();
+			closer.join();
+			try (var reacquired = PooledReadOptions.acquire(null, range)) {
+				Assertions.assertSame(readOptions, reacquired);
+				Assertions.assertEquals(List.of("a", "b"), readKeys(reacquired));
+			}
+		} finally {
+			range.release();
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws RocksDBException {
+		var range = LLRange.all();
+		var snapshot = db.getSnapshot();
+		try {
+			db.delete(bytes("a"));
+			try (var readOptions = PooledReadOptions.acquire(snapshot, range)) {
+				Assertions.assertEquals(KEYS, readKeys(readOptions));
+			}
+			try (var readOptions = PooledReadOptions.acquire(null, range)) {
+				Assertions.assertEquals(KEYS.subList(1, KEYS.size()), readKeys(readOptions));
+			}
+		} finally {
+			db.releaseSnapshot(snapshot);
+			range.release();
+		}
+	}
+}
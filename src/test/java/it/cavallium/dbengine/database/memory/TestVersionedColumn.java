@@ -0,0 +1,244 @@
+package it.cavallium.dbengine.database.memory;
+
+import static it.cavallium.dbengine.DbTestUtils.ALLOCATOR;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import it.cavallium.dbengine.database.memory.VersionedColumn.Version;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestVersionedColumn {
+
+	private static final int KEYS_COUNT = 100;
+
+	private static ByteBuf buf(String value) {
+		var buf = ALLOCATOR.buffer();
+		buf.writeCharSequence(value, StandardCharsets.UTF_8);
+		return buf;
+	}
+
+	private static String key(int i) {
+		return String.format("%03d", i);
+	}
+
+	private static List<Entry<ByteBuf, ByteBuf>> entries(String value) {
+		var entries = new ArrayList<Entry<ByteBuf, ByteBuf>>(KEYS_COUNT);
+		for (int i = 0; i < KEYS_COUNT; i++) {
+			entries.add(Map.entry(buf(key(i)), buf(value)));
+		}
+		return entries;
+	}
+
+	private static void release(List<Entry<ByteBuf, ByteBuf>> entries) {
+		for (Entry<ByteBuf, ByteBuf> entry : entries) {
+			entry.getKey().release();
+			entry.getValue().release();
+		}
+	}
+
+	/**
+	 * Read all the values of the column at the last committed write
+	 */
+	private static List<String> readValues(VersionedColumn column) {
+		long sequenceNumber = column.beginRead();
+		try {
+			var values = new ArrayList<String>();
+			for (Entry<ByteBuf, ByteBuf> entry : column.visibleEntries(column.versions(), sequenceNumber)) {
+				values.add(entry.getValue().toString(StandardCharsets.UTF_8));
+				entry.getKey().release();
+				entry.getValue().release();
+			}
+			return values;
+		} finally {
+			column.endRead(sequenceNumber);
+		}
+	}
+
+	private static List<StoredValue> storedValues(Version version) {
+		var values = new ArrayList<StoredValue>();
+		for (; version != null; version = version.previous()) {
+			values.add(version.value());
+		}
+		return values;
+	}
+
+	private static void runConcurrently(Runnable writer, Runnable reader) throws InterruptedException {
+		var done = new AtomicBoolean();
+		var error = new Throwable[1];
+		var writerThread = new Thread(() -> {
+			try {
+				writer.run();
+			} catch (Throwable ex) {
+				error[0] = ex;
+			} finally {
+				done.set(true);
+			}
+		});
+		writerThread.start();
+		while (!done.get()) {
+			reader.run();
+		}
+		writerThread.join();
+		if (error[0] != null) {
+			Assertions.fail(error[0]);
+		}
+	}
+
+	@Test
+	public void testReplaceRangeAtomicWithoutSnapshot() throws InterruptedException {
+		var column = new VersionedColumn(ALLOCATOR, new VersionSequencer());
+		try {
+			var initialEntries = entries("a");
+			column.replaceRange(column.versions(), initialEntries);
+			release(initialEntries);
+			runConcurrently(() -> {
+				for (int i = 0; i < 200; i++) {
+					var entries = entries(i % 2 == 0 ? "b" : "a");
+					try {
+						column.replaceRange(column.versions(), entries);
+					} finally {
+						release(entries);
+					}
+				}
+			}, () -> {
+				var values = readValues(column);
+				Assertions.assertEquals(KEYS_COUNT, values.size());
+				Assertions.assertEquals(1, new HashSet<>(values).size(), "Partially replaced range: " + values);
+			});
+		} finally {
+			column.release();
+		}
+	}
+
+	@Test
+	public void testRemoveFirstAtomicWithoutSnapshot() throws InterruptedException {
+		var column = new VersionedColumn(ALLOCATOR, new VersionSequencer());
+		try {
+			var initialEntries = entries("a");
+			column.replaceRange(column.versions(), initialEntries);
+			release(initialEntries);
+			runConcurrently(() -> {
+				for (int i = 0; i < KEYS_COUNT / 10; i++) {
+					var removed = column.removeFirst(column.versions(), 10);
+					try {
+						Assertions.assertEquals(10, removed.size());
+					} finally {
+						release(removed);
+					}
+				}
+			}, () -> {
+				int size = readValues(column).size();
+				Assertions.assertEquals(0, size % 10, "Partially removed entries: " + size);
+			});
+			Assertions.assertEquals(List.of(), readValues(column));
+		} finally {
+			column.release();
+		}
+	}
+
+	@Test
+	public void testUpdateKeepsStoredKey() {
+		var column = new VersionedColumn(ALLOCATOR, new VersionSequencer());
+		var key = buf("key");
+		var value = buf("value");
+		try {
+			Assertions.assertNull(column.put(key, value));
+			var storedKey = column.versions().firstKey();
+			Assertions.assertNotSame(key, storedKey);
+			for (int i = 0; i < 3; i++) {
+				var previous = column.put(key, value);
+				Assertions.assertNotNull(previous);
+				previous.release();
+				Assertions.assertSame(storedKey, column.versions().firstKey());
+			}
+		} finally {
+			key.release();
+			value.release();
+			column.release();
+		}
+	}
+
+	@Test
+	public void testOldVersionsReleased() {
+		var allocator = new UnpooledByteBufAllocator(true);
+		var sequencer = new VersionSequencer();
+		var column = new VersionedColumn(allocator, sequencer);
+		var key = buf("key");
+		try {
+			var initialValue = buf("v00");
+			Assertions.assertNull(column.put(key, initialValue));
+			initialValue.release();
+			long snapshot = sequencer.takeSnapshot();
+			for (int i = 1; i <= 10; i++) {
+				var value = buf(String.format("v%02d", i));
+				var previous = column.put(key, value);
+				Assertions.assertNotNull(previous);
+				previous.release();
+				value.release();
+			}
+			// The snapshot can read the first value, so the versions written after it are kept
+			var storedValues = storedValues(column.versions().get(key));
+			Assertions.assertEquals(11, storedValues.size());
+			Assertions.assertEquals(11 * 3, allocator.metric().usedDirectMemory());
+			var snapshotValue = column.get(key, snapshot);
+			Assertions.assertNotNull(snapshotValue);
+			try {
+				Assertions.assertEquals("v00", snapshotValue.toString(StandardCharsets.UTF_8));
+			} finally {
+				snapshotValue.release();
+			}
+
+			sequencer.releaseSnapshot(snapshot);
+			column.collectGarbage();
+
+			var latestValue = storedValues.get(0);
+			Assertions.assertEquals(List.of(latestValue), storedValues(column.versions().get(key)));
+			for (StoredValue prunedValue : storedValues.subList(1, storedValues.size())) {
+				Assertions.assertNull(prunedValue.tryRetainedSlice(), "Pruned value not released");
+			}
+			Assertions.assertEquals(3, allocator.metric().usedDirectMemory());
+			var latest = latestValue.tryRetainedSlice();
+			Assertions.assertNotNull(latest);
+			try {
+				Assertions.assertEquals("v10", latest.toString(StandardCharsets.UTF_8));
+			} finally {
+				latest.release();
+			}
+		} finally {
+			key.release();
+			column.release();
+		}
+		Assertions.assertEquals(0, allocator.metric().usedDirectMemory());
+	}
+
+	@Test
+	public void testReadYourWrites() {
+		var column = new VersionedColumn(ALLOCATOR, new VersionSequencer());
+		var key = buf("key");
+		var value = buf("value");
+		try {
+			var previous = column.put(key, value);
+			Assertions.assertNull(previous);
+			var read = column.get(key, VersionSequencer.LAST_COMMITTED);
+			Assertions.assertNotNull(read);
+			try {
+				Assertions.assertEquals("value", read.toString(StandardCharsets.UTF_8));
+			} finally {
+				read.release();
+			}
+			Assertions.assertTrue(column.contains(key, VersionSequencer.LAST_COMMITTED));
+		} finally {
+			key.release();
+			value.release();
+			column.release();
+		}
+	}
+}